@@ -0,0 +1,122 @@
+package io.github.waileong.fcm.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.config.FcmProperties;
+import io.github.waileong.fcm.service.domain.FcmAndroid;
+import io.github.waileong.fcm.service.domain.FcmAndroidMessagePriority;
+import io.github.waileong.fcm.service.domain.FcmAndroidNotification;
+import io.github.waileong.fcm.service.domain.FcmApns;
+import io.github.waileong.fcm.service.domain.FcmApnsAps;
+import io.github.waileong.fcm.service.domain.FcmApnsApsAlert;
+import io.github.waileong.fcm.service.domain.FcmApnsPayload;
+import io.github.waileong.fcm.service.domain.FcmFcmOptions;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmNotification;
+import io.github.waileong.fcm.service.domain.FcmWebpush;
+import io.github.waileong.fcm.service.domain.FcmWebpushFcmOptions;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Shared fixtures for the benchmarks: a generated service account and a fully populated message.
+ *
+ * @author Wai Leong
+ */
+final class BenchmarkFixtures {
+    static final String PROJECT_ID = "benchmark-project";
+    static final String TOKEN = "fGbRkD1xQ0yUuN3j9Z4kPq:APA91bHun4MxP5egoKMwt2KZFBaFUH-1RYqx6iP2CrrZ7Bb4Vq1nl6p8cJ0Yq7"
+            + "mGkT9lV1sW5dX3eR8tY2uI6oP0aS4dF7gH1jK5lZ9xC3vB6nM8qW2eR4tY7uI9oP1aS3dF5gH7jK9lZ";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates credentials backed by a freshly generated 2048-bit RSA key.
+     */
+    static FcmProperties.Credential credential() {
+        KeyPairGenerator generator;
+        try {
+            generator = KeyPairGenerator.getInstance("RSA");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        generator.initialize(2048);
+        FcmProperties.Credential credential = new FcmProperties.Credential();
+        credential.setProjectId(PROJECT_ID);
+        credential.setPrivateKeyId("benchmark-key-id");
+        credential.setClientEmail("firebase-adminsdk@" + PROJECT_ID + ".iam.gserviceaccount.com");
+        credential.setPrivateKey(Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded()));
+        credential.setJwtExpireDuration(Duration.ofHours(1));
+        return credential;
+    }
+
+    /**
+     * Creates an object mapper configured like the {@code fcmObjectMapper} bean.
+     */
+    static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        return objectMapper;
+    }
+
+    /**
+     * Creates a message with a notification, data, and Android, APNs and Webpush overrides.
+     */
+    static FcmMessage fullMessage() {
+        Map<String, String> data = Map.of("orderId", "A-1029384756", "status", "SHIPPED",
+                "deepLink", "app://orders/A-1029384756", "eta", "2024-03-01T10:15:30Z");
+        return FcmMessage.Builder.aFcmMessage()
+                .token(TOKEN)
+                .notification(FcmNotification.Builder.aFcmNotification()
+                        .title("Your order has shipped")
+                        .body("Order A-1029384756 is on its way and should arrive tomorrow morning.")
+                        .image("https://cdn.example.com/images/parcel.png")
+                        .build())
+                .data(data)
+                .android(FcmAndroid.Builder.aFcmAndroid()
+                        .collapseKey("order-A-1029384756")
+                        .priority(FcmAndroidMessagePriority.HIGH)
+                        .ttl("3600s")
+                        .notification(FcmAndroidNotification.Builder.aFcmAndroidNotification()
+                                .channelId("orders")
+                                .icon("ic_parcel")
+                                .color("#3366ff")
+                                .clickAction("OPEN_ORDER")
+                                .tag("order-A-1029384756")
+                                .build())
+                        .build())
+                .apns(FcmApns.Builder.aFcmApns()
+                        .headers(Map.of("apns-priority", "10", "apns-collapse-id", "order-A-1029384756"))
+                        .payload(FcmApnsPayload.Builder.aFcmApnsPayload()
+                                .aps(FcmApnsAps.Builder.aFcmApnsAps()
+                                        .alert(FcmApnsApsAlert.Builder.aFcmApnsApsAlert()
+                                                .title("Your order has shipped")
+                                                .subtitle("Order A-1029384756")
+                                                .body("It should arrive tomorrow morning.")
+                                                .build())
+                                        .badge(3)
+                                        .category("ORDER_UPDATE")
+                                        .threadId("orders")
+                                        .mutableContent(1)
+                                        .build())
+                                .build())
+                        .build())
+                .webpush(FcmWebpush.Builder.aFcmWebpush()
+                        .headers(Map.of("Urgency", "high", "TTL", "3600"))
+                        .data(data)
+                        .fcmOptions(FcmWebpushFcmOptions.Builder.aFcmWebpushFcmOptions()
+                                .link("https://shop.example.com/orders/A-1029384756")
+                                .analyticsLabel("order_shipped_web")
+                                .build())
+                        .build())
+                .fcmOptions(FcmFcmOptions.Builder.aFcmFcmOptions()
+                        .analyticsLabel("order_shipped")
+                        .build())
+                .build();
+    }
+}
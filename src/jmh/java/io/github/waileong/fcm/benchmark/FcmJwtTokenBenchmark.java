@@ -0,0 +1,41 @@
+package io.github.waileong.fcm.benchmark;
+
+import io.github.waileong.fcm.authentication.FcmJwtToken;
+import io.github.waileong.fcm.authentication.FcmJwtTokenPooledObjectFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of minting a signed FCM access token with {@link FcmJwtTokenPooledObjectFactory#create()}.
+ *
+ * @author Wai Leong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FcmJwtTokenBenchmark {
+    private FcmJwtTokenPooledObjectFactory tokenFactory;
+
+    @Setup
+    public void setUp() {
+        tokenFactory = new FcmJwtTokenPooledObjectFactory(BenchmarkFixtures.credential());
+    }
+
+    @Benchmark
+    public FcmJwtToken create() throws Exception {
+        return tokenFactory.create();
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.waileong.fcm.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.service.FcmMessageTemplate;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization of a fully populated {@link FcmMessage}, with Android, APNs and Webpush overrides, both
+ * with Jackson and by splicing a token into a prepared {@link FcmMessageTemplate}.
+ *
+ * @author Wai Leong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FcmMessageSerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private FcmSendRequest sendRequest;
+    private FcmMessageTemplate template;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        FcmMessage message = BenchmarkFixtures.fullMessage();
+        sendRequest = FcmSendRequest.Builder.aFcmSendRequest().message(message).build();
+        template = new FcmMessageTemplate(objectMapper, message, null, FcmMessageTemplate.TargetType.TOKEN);
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(sendRequest);
+    }
+
+    @Benchmark
+    public byte[] template() {
+        return template.toByteArray(BenchmarkFixtures.TOKEN);
+    }
+}
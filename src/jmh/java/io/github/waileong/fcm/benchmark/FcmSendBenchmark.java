@@ -0,0 +1,139 @@
+package io.github.waileong.fcm.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.github.waileong.fcm.authentication.FcmAccessTokenProvider;
+import io.github.waileong.fcm.authentication.FcmJwtTokenPooledObjectFactory;
+import io.github.waileong.fcm.config.FcmProperties;
+import io.github.waileong.fcm.exception.FcmRestClientResponseErrorHandler;
+import io.github.waileong.fcm.resilience.FcmRetryPolicy;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.impl.FcmHttpTransport;
+import io.github.waileong.fcm.service.impl.FcmServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end cost of {@link FcmServiceImpl#send} and {@link FcmServiceImpl#sendAsync} against an
+ * in-process HTTP stub on the loopback interface, which answers every request immediately. The result is the overhead
+ * the library and the JDK {@code HttpClient} add on top of the network and FCM itself.
+ *
+ * @author Wai Leong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class FcmSendBenchmark {
+    private static final byte[] RESPONSE =
+            ("{\"name\":\"projects/" + BenchmarkFixtures.PROJECT_ID + "/messages/0:1500415314455276%31bd1c9631bd1c96\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private FcmServiceImpl fcmService;
+    private FcmSendRequest sendRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Without TCP_NODELAY, delayed ACKs would dominate every loopback round trip.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        server.start();
+        String sendUrl = "http://127.0.0.1:" + server.getAddress().getPort()
+                + "/v1/projects/" + BenchmarkFixtures.PROJECT_ID + "/messages:send";
+
+        // Mirrors the beans of FcmConnectionConfiguration, pointed at the stub.
+        ObjectMapper objectMapper = BenchmarkFixtures.objectMapper();
+        FcmRestClientResponseErrorHandler errorHandler = new FcmRestClientResponseErrorHandler(objectMapper);
+        // The stub speaks plain HTTP/1.1, so skip the h2c upgrade attempt.
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        MappingJackson2HttpMessageConverter messageConverter = new MappingJackson2HttpMessageConverter(objectMapper);
+        RestClient restClient = RestClient.builder()
+                .baseUrl(sendUrl)
+                .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .requestFactory(new JdkClientHttpRequestFactory(httpClient))
+                .messageConverters(converters -> {
+                    converters.clear();
+                    converters.add(new ByteArrayHttpMessageConverter());
+                    converters.add(messageConverter);
+                })
+                .defaultStatusHandler(errorHandler)
+                .build();
+        FcmHttpTransport transport = new FcmHttpTransport(httpClient, URI.create(sendUrl), Duration.ofSeconds(30),
+                objectMapper, errorHandler);
+        FcmAccessTokenProvider accessTokenProvider = new FcmAccessTokenProvider(
+                new FcmJwtTokenPooledObjectFactory(BenchmarkFixtures.credential()), Duration.ofMinutes(5), null);
+
+        fcmService = new FcmServiceImpl(restClient, accessTokenProvider, transport, new FcmProperties(),
+                FcmRetryPolicy.noRetry(), List.of());
+        sendRequest = FcmSendRequest.Builder.aFcmSendRequest().message(BenchmarkFixtures.fullMessage()).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public FcmMessage send() {
+        return fcmService.send(sendRequest);
+    }
+
+    @Benchmark
+    public FcmMessage sendAsync() {
+        return fcmService.sendAsync(sendRequest).join();
+    }
+}
@@ -0,0 +1,158 @@
+package io.github.waileong.fcm.authentication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Provides the OAuth access token used to authenticate requests to Firebase Cloud Messaging (FCM).
+ * <p>
+ * A single immutable {@link FcmJwtToken} is cached in an {@link AtomicReference} and shared by all callers, so
+ * reading the token on the send path is a volatile read and a timestamp comparison, without locks or allocation.
+ * Once the token enters its refresh window (the configured duration before {@code expireAt}), the first caller to
+ * notice schedules a refresh on the background executor and keeps using the current, still valid token.
+ * Only when no valid token exists at all do callers wait for a new one.
+ * </p>
+ * <p>
+ * Refreshes are single-flight: at most one call to {@link FcmJwtTokenPooledObjectFactory#create()} is in progress at
+ * any time, and every caller that needs a token while it runs shares its result.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmAccessTokenProvider {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final FcmJwtTokenPooledObjectFactory tokenFactory;
+    private final Executor refreshExecutor;
+    private final long refreshAheadMillis;
+    private final AtomicReference<FcmJwtToken> currentToken = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<FcmJwtToken>> inflightRefresh = new AtomicReference<>();
+    private volatile LongConsumer mintTimeRecorder;
+
+    /**
+     * Constructs a new {@link FcmAccessTokenProvider}.
+     *
+     * @param tokenFactory    The factory used to mint new JWT tokens.
+     * @param refreshAhead    How long before {@code expireAt} a background refresh is started.
+     * @param refreshExecutor The executor running background refreshes; {@code null} to refresh on the calling thread.
+     */
+    public FcmAccessTokenProvider(FcmJwtTokenPooledObjectFactory tokenFactory,
+                                  Duration refreshAhead,
+                                  Executor refreshExecutor) {
+        this.tokenFactory = tokenFactory;
+        this.refreshAheadMillis = refreshAhead != null ? refreshAhead.toMillis() : 0L;
+        this.refreshExecutor = refreshExecutor != null ? refreshExecutor : Runnable::run;
+    }
+
+    /**
+     * Returns a valid access token for FCM authentication, minting a new one only when required.
+     *
+     * @return A valid JWT token string for FCM authentication.
+     */
+    public String getAccessToken() {
+        FcmJwtToken token = currentToken.get();
+        if (token != null) {
+            long now = System.currentTimeMillis();
+            long expireAt = token.expireAt().getTime();
+            if (now < expireAt - refreshAheadMillis) {
+                return token.token();
+            }
+            if (now < expireAt) {
+                refresh(false);
+                return token.token();
+            }
+        }
+        return await(refresh(true)).token();
+    }
+
+    /**
+     * Returns the token currently cached by this provider, which may be {@code null} or expired.
+     *
+     * @return The cached {@link FcmJwtToken}, or {@code null} if no token has been minted yet.
+     */
+    public FcmJwtToken getCachedToken() {
+        return currentToken.get();
+    }
+
+    /**
+     * Sets a callback receiving the duration, in nanoseconds, of every attempt to mint a token.
+     *
+     * @param mintTimeRecorder The callback, or {@code null} to stop recording.
+     */
+    public void setMintTimeRecorder(LongConsumer mintTimeRecorder) {
+        this.mintTimeRecorder = mintTimeRecorder;
+    }
+
+    /**
+     * Starts a refresh unless one is already in flight, in which case the in-flight refresh is joined.
+     *
+     * @param inline {@code true} to mint on the calling thread, {@code false} to mint on the refresh executor.
+     * @return A future completed with the refreshed token.
+     */
+    private CompletableFuture<FcmJwtToken> refresh(boolean inline) {
+        while (true) {
+            CompletableFuture<FcmJwtToken> inflight = inflightRefresh.get();
+            if (inflight != null) {
+                return inflight;
+            }
+            CompletableFuture<FcmJwtToken> candidate = new CompletableFuture<>();
+            if (!inflightRefresh.compareAndSet(null, candidate)) {
+                continue;
+            }
+            // Another refresh may have completed between reading the token and winning the race.
+            FcmJwtToken token = currentToken.get();
+            if (token != null && System.currentTimeMillis() < token.expireAt().getTime() - refreshAheadMillis) {
+                inflightRefresh.compareAndSet(candidate, null);
+                candidate.complete(token);
+                return candidate;
+            }
+            if (inline) {
+                mint(candidate);
+            } else {
+                try {
+                    refreshExecutor.execute(() -> mint(candidate));
+                } catch (RejectedExecutionException ex) {
+                    logger.debug("FCM token refresh rejected by executor, refreshing on the calling thread", ex);
+                    mint(candidate);
+                }
+            }
+            return candidate;
+        }
+    }
+
+    private void mint(CompletableFuture<FcmJwtToken> result) {
+        long startNanos = System.nanoTime();
+        try {
+            FcmJwtToken token = tokenFactory.create();
+            currentToken.set(token);
+            result.complete(token);
+        } catch (Throwable ex) {
+            logger.warn("Failed to mint FCM access token", ex);
+            result.completeExceptionally(ex);
+        } finally {
+            inflightRefresh.compareAndSet(result, null);
+            LongConsumer recorder = mintTimeRecorder;
+            if (recorder != null) {
+                recorder.accept(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    private static FcmJwtToken await(CompletableFuture<FcmJwtToken> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to mint FCM access token", ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.waileong.fcm.authentication;
+
+import io.github.waileong.fcm.config.FcmProperties;
+import io.github.waileong.fcm.util.RSAKeyPairUtil;
+
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Holds the validated, pre-parsed credential material used to sign Firebase Cloud Messaging (FCM) JWT tokens.
+ * <p>
+ * The configured {@link FcmProperties.Credential} is validated and the PKCS#8 private key is parsed exactly once,
+ * when this object is constructed at application startup. Token minting then reuses the {@link RSAPrivateKey} and
+ * the immutable parts of every token (header parameters, issuer, subject and audience), so only the issuance and
+ * expiration times vary between tokens.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmCredentialMaterial {
+    /**
+     * The audience of every FCM JWT token.
+     */
+    public static final String FCM_ENDPOINT_URL = "https://fcm.googleapis.com/";
+
+    private final String privateKeyId;
+    private final String clientEmail;
+    private final RSAPrivateKey privateKey;
+    private final Duration jwtExpireDuration;
+    private final Map<String, Object> header;
+
+    /**
+     * Validates the given FCM credentials and parses the private key.
+     *
+     * @param credential The FCM credentials used to sign and issue JWT tokens.
+     * @throws IllegalArgumentException If a required credential is missing or the private key cannot be parsed.
+     */
+    public FcmCredentialMaterial(FcmProperties.Credential credential) {
+        if (isBlank(credential.getPrivateKeyId())) {
+            throw new IllegalArgumentException(
+                    "A Private Key ID is required for Firebase Cloud Messaging (FCM). " +
+                            "Please retrieve it from the 'private_key_id' field in the downloaded Firebase Admin SDK JSON file. " +
+                            "Then, input it into the configuration for fcm.credential.private-key-id");
+        }
+        if (isBlank(credential.getPrivateKey())) {
+            throw new IllegalArgumentException(
+                    "A Private Key is required for Firebase Cloud Messaging (FCM). " +
+                            "Please retrieve it from the 'private_key' field in the downloaded Firebase Admin SDK JSON file. " +
+                            "Then, input it into the configuration for fcm.credential.private-key");
+        }
+        if (isBlank(credential.getClientEmail())) {
+            throw new IllegalArgumentException(
+                    "A Client Email is required for Firebase Cloud Messaging (FCM). " +
+                            "Please retrieve it from the 'client_email' field in the downloaded Firebase Admin SDK JSON file. " +
+                            "Then, input it into the configuration for fcm.credential.client-email");
+        }
+        Duration expireDuration = credential.getJwtExpireDuration();
+        if (expireDuration == null || expireDuration.isNegative() || expireDuration.isZero()) {
+            throw new IllegalArgumentException("fcm.credential.jwt-expire-duration must be a positive duration");
+        }
+        this.privateKeyId = credential.getPrivateKeyId();
+        this.clientEmail = credential.getClientEmail();
+        this.privateKey = RSAKeyPairUtil.getPrivateKeyFromString(credential.getPrivateKey());
+        this.jwtExpireDuration = expireDuration;
+        this.header = Map.of("kid", privateKeyId, "typ", "JWT");
+    }
+
+    /**
+     * Gets the private key ID, used as the {@code kid} header of every token.
+     *
+     * @return The private key ID.
+     */
+    public String getPrivateKeyId() {
+        return privateKeyId;
+    }
+
+    /**
+     * Gets the client email, used as issuer and subject of every token.
+     *
+     * @return The client email.
+     */
+    public String getClientEmail() {
+        return clientEmail;
+    }
+
+    /**
+     * Gets the parsed private key used to sign tokens.
+     *
+     * @return The RSA private key.
+     */
+    public RSAPrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    /**
+     * Gets the time period a JWT token remains valid.
+     *
+     * @return The duration a JWT token remains valid.
+     */
+    public Duration getJwtExpireDuration() {
+        return jwtExpireDuration;
+    }
+
+    /**
+     * Gets the immutable JWT header parameters shared by every token.
+     *
+     * @return The JWT header parameters.
+     */
+    public Map<String, Object> getHeader() {
+        return header;
+    }
+}
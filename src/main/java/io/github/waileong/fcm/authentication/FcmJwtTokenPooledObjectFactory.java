@@ -1,7 +1,6 @@
 package io.github.waileong.fcm.authentication;
 
 import io.github.waileong.fcm.config.FcmProperties;
-import io.github.waileong.fcm.util.RSAKeyPairUtil;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.apache.commons.pool2.BasePooledObjectFactory;
@@ -13,14 +12,12 @@ import org.slf4j.LoggerFactory;
 import java.time.Instant;
 import java.util.Date;
 
-import static org.apache.commons.lang3.StringUtils.isBlank;
-
 /**
  * A factory for creating, wrapping, and validating {@link FcmJwtToken} objects for use in a pool.
  * This class extends {@link BasePooledObjectFactory} and is tailored to generate JWT tokens required
  * for authenticating with Firebase Cloud Messaging (FCM) services. It utilizes the credentials provided
- * by {@link FcmProperties.Credential} to generate tokens with a specific lifetime and signs them using
- * RS256 algorithm.
+ * by {@link FcmProperties.Credential}, pre-parsed once into {@link FcmCredentialMaterial}, to generate tokens with a
+ * specific lifetime and signs them using RS256 algorithm.
  * <p>
  * The generated tokens include information such as the issuer, subject, and audience, and are signed with
  * a private key. This class ensures that each token is valid for a specified duration (typically one hour),
@@ -30,64 +27,47 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
  */
 public class FcmJwtTokenPooledObjectFactory extends BasePooledObjectFactory<FcmJwtToken> {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
-    private final FcmProperties.Credential credential;
-    private static final String FCM_ENDPOINT_URL = "https://fcm.googleapis.com/";
+    private final FcmCredentialMaterial credentialMaterial;
 
     /**
-     * Constructs a new {@link FcmJwtTokenPooledObjectFactory} with the given FCM credentials.
+     * Constructs a new {@link FcmJwtTokenPooledObjectFactory} with the given FCM credentials. The credentials are
+     * validated and the private key is parsed immediately.
      *
      * @param credential The FCM credentials used to sign and issue JWT tokens.
      */
     public FcmJwtTokenPooledObjectFactory(FcmProperties.Credential credential) {
-        this.credential = credential;
+        this(new FcmCredentialMaterial(credential));
     }
 
     /**
-     * Creates a new {@link FcmJwtToken} instance, signed with RS256 algorithm using the provided FCM credentials.
+     * Constructs a new {@link FcmJwtTokenPooledObjectFactory} with already validated and parsed credential material.
+     *
+     * @param credentialMaterial The credential material used to sign and issue JWT tokens.
+     */
+    public FcmJwtTokenPooledObjectFactory(FcmCredentialMaterial credentialMaterial) {
+        this.credentialMaterial = credentialMaterial;
+    }
+
+    /**
+     * Creates a new {@link FcmJwtToken} instance, signed with RS256 algorithm using the cached FCM credential material.
      * The token is configured with an issuer, subject, audience, issuance time, and expiration time.
      *
      * @return A new {@link FcmJwtToken} instance, ready for use.
-     * @throws Exception If there is an error during token creation, such as an issue with key parsing.
+     * @throws Exception If there is an error during token creation.
      */
     @Override
     public FcmJwtToken create() throws Exception {
         Instant now = Instant.now();
-        Instant expiration = now.plus(credential.getJwtExpireDuration());
-        String privateKeyId = credential.getPrivateKeyId();
-        String clientEmail = credential.getClientEmail();
-        String privateKey = credential.getPrivateKey();
-
-        if (isBlank(privateKeyId)) {
-            throw new IllegalArgumentException(
-                    "A Private Key ID is required for Firebase Cloud Messaging (FCM). " +
-                            "Please retrieve it from the 'private_key_id' field in the downloaded Firebase Admin SDK JSON file. " +
-                            "Then, input it into the configuration for fcm.credential.private-key-id");
-        }
-        if (isBlank(privateKey)) {
-            throw new IllegalArgumentException(
-                    "A Private Key is required for Firebase Cloud Messaging (FCM). " +
-                            "Please retrieve it from the 'private_key' field in the downloaded Firebase Admin SDK JSON file. " +
-                            "Then, input it into the configuration for fcm.credential.private-key");
-        }
-        if (isBlank(clientEmail)) {
-            throw new IllegalArgumentException(
-                    "A Client Email is required for Firebase Cloud Messaging (FCM). " +
-                            "Please retrieve it from the 'client_email' field in the downloaded Firebase Admin SDK JSON file. " +
-                            "Then, input it into the configuration for fcm.credential.client-email");
-        }
-
-
         Date issuedAt = Date.from(now);
-        Date expireAt = Date.from(expiration);
+        Date expireAt = Date.from(now.plus(credentialMaterial.getJwtExpireDuration()));
         String token = Jwts.builder()
-                .setHeaderParam("kid", privateKeyId)
-                .setHeaderParam("typ", "JWT")
-                .setIssuer(clientEmail)
-                .setSubject(clientEmail)
-                .setAudience(FCM_ENDPOINT_URL)
+                .setHeaderParams(credentialMaterial.getHeader())
+                .setIssuer(credentialMaterial.getClientEmail())
+                .setSubject(credentialMaterial.getClientEmail())
+                .setAudience(FcmCredentialMaterial.FCM_ENDPOINT_URL)
                 .setIssuedAt(issuedAt)
                 .setExpiration(expireAt)
-                .signWith(RSAKeyPairUtil.getPrivateKeyFromString(privateKey), SignatureAlgorithm.RS256)
+                .signWith(credentialMaterial.getPrivateKey(), SignatureAlgorithm.RS256)
                 .compact();
         return new FcmJwtToken(token, expireAt);
     }
@@ -0,0 +1,261 @@
+package io.github.waileong.fcm.coalescing;
+
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A queued send path that coalesces messages superseding each other before they are sent, for producers of frequent
+ * updates such as live scores.
+ * <p>
+ * A message with a collapse key, given by {@code android.collapse_key} or else by the {@code apns-collapse-id} APNs
+ * header, tells FCM that only the newest message of that key matters to the device. The queue holds such a message
+ * for {@code linger} before sending it, and until a slot among {@code maxInFlight} requests is free. If a newer
+ * message with the same recipient and collapse key is submitted in the meantime, it replaces the pending one, and
+ * every submission of the key completes with the outcome of the message that is eventually sent. Messages without a
+ * collapse key are queued without linger and never replaced. Both kinds count towards {@code maxPending}, and
+ * {@link #submit(FcmSendRequest)} never blocks the caller.
+ * </p>
+ * <p>
+ * Sends go through {@link FcmService#sendAsync(FcmSendRequest)}, so retries and interceptors apply. A single
+ * dispatcher thread takes pending messages once they are due, in the order of their first submission, and waits for
+ * a free slot before sending each of them.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmCoalescingQueue implements AutoCloseable {
+    private static final String APNS_COLLAPSE_ID = "apns-collapse-id";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final FcmService fcmService;
+    private final long lingerNanos;
+    private final int maxPending;
+    private final Semaphore inFlight;
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final DelayQueue<Due> due = new DelayQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong uncollapsibleSequence = new AtomicLong();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private static final class Pending {
+        private final CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+        private volatile FcmSendRequest request;
+
+        private Pending(FcmSendRequest request) {
+            this.request = request;
+        }
+    }
+
+    private record Due(String key, long dueNanos) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Due) other).dueNanos);
+        }
+    }
+
+    /**
+     * Constructs a new {@link FcmCoalescingQueue} and starts its dispatcher thread.
+     *
+     * @param fcmService  The service the messages are sent with.
+     * @param linger      How long a message with a collapse key is held before it is sent.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @param maxPending  The maximum number of messages held at once.
+     */
+    public FcmCoalescingQueue(FcmService fcmService, Duration linger, int maxInFlight, int maxPending) {
+        if (maxInFlight < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("fcm.coalescing.max-in-flight and fcm.coalescing.max-pending must " +
+                    "be at least 1");
+        }
+        this.fcmService = fcmService;
+        this.lingerNanos = Math.max(0L, linger.toNanos());
+        this.maxPending = maxPending;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.dispatcher = new Thread(this::dispatch, "fcm-coalescing-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Submits a message to be sent, replacing a pending message with the same recipient and collapse key.
+     *
+     * @param sendRequest The request to send. Must not be null.
+     * @return A future completed with the message eventually sent for the recipient and collapse key, or failed with a
+     * {@link RejectedExecutionException} if too many messages are pending.
+     */
+    public CompletableFuture<FcmMessage> submit(FcmSendRequest sendRequest) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("FCM coalescing queue is closed"));
+        }
+        String key = key(sendRequest.getMessage());
+        long delayNanos = lingerNanos;
+        if (key == null) {
+            // Never matches the key of another message, so it is neither replaced nor held.
+            key = "\u0000" + uncollapsibleSequence.incrementAndGet();
+            delayNanos = 0L;
+        }
+        Pending[] created = new Pending[1];
+        Pending entry = pending.compute(key, (k, existing) -> {
+            if (existing != null) {
+                existing.request = sendRequest;
+                return existing;
+            }
+            created[0] = new Pending(sendRequest);
+            return created[0];
+        });
+        if (created[0] == null) {
+            coalescedCount.incrementAndGet();
+            return entry.result;
+        }
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            pending.remove(key, entry);
+            entry.result.completeExceptionally(new RejectedExecutionException("More than " + maxPending
+                    + " FCM messages are pending coalescing"));
+            return entry.result;
+        }
+        due.add(new Due(key, System.nanoTime() + delayNanos));
+        if (!running && pending.remove(key, entry)) {
+            // Closed since the check above, possibly after the dispatcher drained the queue.
+            pendingCount.decrementAndGet();
+            entry.result.completeExceptionally(new RejectedExecutionException("FCM coalescing queue is closed"));
+        }
+        return entry.result;
+    }
+
+    /**
+     * Gets the number of messages that were replaced by a newer one before being sent.
+     *
+     * @return The number of coalesced messages.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Gets the number of messages waiting to be sent.
+     *
+     * @return The number of pending messages.
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops accepting messages, sends the pending ones without waiting for their linger, and waits up to 30 seconds
+     * for them to be dispatched. Messages still pending after that fail with a {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                pendingCount.decrementAndGet();
+                entry.getValue().result.completeExceptionally(
+                        new RejectedExecutionException("FCM coalescing queue closed before the message was sent"));
+            }
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                Due next = due.take();
+                // Wait for a free slot first, so that the message keeps being replaced while FCM is the bottleneck.
+                inFlight.acquire();
+                Pending entry = pending.remove(next.key());
+                if (entry == null) {
+                    // Withdrawn by a submission that raced with closing.
+                    inFlight.release();
+                    continue;
+                }
+                pendingCount.decrementAndGet();
+                send(entry.request, entry.result);
+            } catch (InterruptedException ex) {
+                if (running) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } catch (RuntimeException ex) {
+                logger.error("FCM coalescing dispatch failed", ex);
+            }
+        }
+        // Closing: drain the remaining messages without their linger.
+        drain();
+    }
+
+    private void drain() {
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                pendingCount.decrementAndGet();
+                inFlight.acquireUninterruptibly();
+                send(entry.getValue().request, entry.getValue().result);
+            }
+        }
+        due.clear();
+    }
+
+    private void send(FcmSendRequest sendRequest, CompletableFuture<FcmMessage> result) {
+        CompletableFuture<FcmMessage> future;
+        try {
+            future = fcmService.sendAsync(sendRequest);
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((message, ex) -> {
+            inFlight.release();
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(message);
+            }
+        });
+    }
+
+    /**
+     * Gets the coalescing key of a message: its recipient and collapse key, or {@code null} if it has no collapse key.
+     */
+    private static String key(FcmMessage message) {
+        if (message == null) {
+            return null;
+        }
+        String collapseKey = message.getAndroid() != null ? message.getAndroid().getCollapseKey() : null;
+        if (collapseKey == null && message.getApns() != null && message.getApns().getHeaders() != null) {
+            collapseKey = message.getApns().getHeaders().get(APNS_COLLAPSE_ID);
+        }
+        if (collapseKey == null) {
+            return null;
+        }
+        String recipient = message.getToken() != null ? "token:" + message.getToken()
+                : message.getTopic() != null ? "topic:" + message.getTopic()
+                : "condition:" + message.getCondition();
+        return recipient + '\u0000' + collapseKey;
+    }
+}
@@ -0,0 +1,406 @@
+package io.github.waileong.fcm.coalescing;
+
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmApnsAps;
+import io.github.waileong.fcm.service.domain.FcmApnsContentState;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends Live Activity updates at most once per {@code minInterval} per activity, keeping only the latest content
+ * state, since APNs throttles frequent updates of an activity anyway.
+ * <p>
+ * A Live Activity update is a message whose APNs payload carries a {@link FcmApnsContentState}. Its activity is
+ * identified by {@link io.github.waileong.fcm.service.domain.FcmApns#getLiveActivityToken()}, or else by the
+ * recipient of the message. The first update of an activity is sent at once. An update submitted within
+ * {@code minInterval} of the previous send is held until the interval has passed, and is replaced by any newer update
+ * of the activity in the meantime, unless its {@code timestamp} is older. Every submission of a held update completes
+ * with the outcome of the update eventually sent. An {@code end} event is always sent at once, and replaces the held
+ * update of its activity.
+ * </p>
+ * <p>
+ * At most {@code maxPending} updates are held. Beyond that, the held update whose {@code stale-date} has passed, or
+ * else the one with the lowest {@code relevance-score}, is dropped: its submissions fail with a
+ * {@link RejectedExecutionException}. A held update whose stale date passes before it is due is dropped as well.
+ * Messages that are not Live Activity updates are sent at once.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmLiveActivityDispatcher implements AutoCloseable {
+    private static final String END_EVENT = "end";
+
+    private static final Comparator<Activity> BY_RELEVANCE = Comparator
+            .comparingDouble((Activity activity) -> activity.relevance)
+            .thenComparingLong(activity -> activity.sequence);
+
+    private static final Comparator<Activity> BY_STALE_DATE = Comparator
+            .comparingLong((Activity activity) -> activity.staleDate)
+            .thenComparingLong(activity -> activity.sequence);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final FcmService fcmService;
+    private final long minIntervalNanos;
+    private final int maxPending;
+    // Guarded by lock.
+    private final Map<String, Activity> activities = new HashMap<>();
+    private final TreeSet<Activity> heldByRelevance = new TreeSet<>(BY_RELEVANCE);
+    private final TreeSet<Activity> heldByStaleDate = new TreeSet<>(BY_STALE_DATE);
+    private long sequence;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final DelayQueue<Due> due = new DelayQueue<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * An activity with an update sent within the interval, and possibly an update held until the interval has passed.
+     */
+    private static final class Activity {
+        private final String key;
+        private long nextSendNanos;
+        private FcmSendRequest held;
+        private CompletableFuture<FcmMessage> result;
+        private long timestamp;
+        private double relevance;
+        private long staleDate;
+        private long sequence;
+
+        private Activity(String key) {
+            this.key = key;
+        }
+    }
+
+    private record Due(Activity activity, long dueNanos) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Due) other).dueNanos);
+        }
+    }
+
+    private record Send(FcmSendRequest request, CompletableFuture<FcmMessage> result) {
+    }
+
+    /**
+     * Constructs a new {@link FcmLiveActivityDispatcher} and starts its dispatcher thread.
+     *
+     * @param fcmService  The service the updates are sent with.
+     * @param minInterval The minimum time between two updates sent to the same activity.
+     * @param maxPending  The maximum number of updates held at once.
+     */
+    public FcmLiveActivityDispatcher(FcmService fcmService, Duration minInterval, int maxPending) {
+        if (minInterval == null || minInterval.isNegative()) {
+            throw new IllegalArgumentException("fcm.live-activity.min-interval must not be negative");
+        }
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("fcm.live-activity.max-pending must be at least 1");
+        }
+        this.fcmService = fcmService;
+        this.minIntervalNanos = minInterval.toNanos();
+        this.maxPending = maxPending;
+        this.dispatcher = new Thread(this::dispatch, "fcm-live-activity-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Submits a Live Activity update, which is sent at once, held, or merged into the held update of its activity.
+     *
+     * @param sendRequest The request to send. Must not be null.
+     * @return A future completed with the update eventually sent for the activity, or failed with a
+     * {@link RejectedExecutionException} if the update was dropped.
+     */
+    public CompletableFuture<FcmMessage> submit(FcmSendRequest sendRequest) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("FCM Live Activity dispatcher is " +
+                    "closed"));
+        }
+        FcmApnsAps aps = aps(sendRequest.getMessage());
+        String key = aps != null ? key(sendRequest.getMessage()) : null;
+        if (key == null) {
+            return send(sendRequest, new CompletableFuture<>());
+        }
+        List<Send> sends = new ArrayList<>(1);
+        List<CompletableFuture<FcmMessage>> dropped = new ArrayList<>(1);
+        CompletableFuture<FcmMessage> result;
+        lock.lock();
+        try {
+            result = submit(key, sendRequest, aps, sends, dropped);
+        } finally {
+            lock.unlock();
+        }
+        for (CompletableFuture<FcmMessage> future : dropped) {
+            droppedCount.incrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("Live Activity update dropped"));
+        }
+        for (Send send : sends) {
+            send(send.request(), send.result());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of updates that were replaced by a newer update of their activity before being sent.
+     *
+     * @return The number of coalesced updates.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Gets the number of updates dropped because they went stale, or because too many updates were held.
+     *
+     * @return The number of dropped updates.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops accepting updates and sends the held ones at once.
+     */
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<FcmMessage> submit(String key, FcmSendRequest sendRequest, FcmApnsAps aps,
+                                                 List<Send> sends, List<CompletableFuture<FcmMessage>> dropped) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("FCM Live Activity dispatcher is " +
+                    "closed"));
+        }
+        long now = System.nanoTime();
+        FcmApnsContentState contentState = aps.getContentState();
+        Activity activity = activities.get(key);
+        if (END_EVENT.equals(contentState.getEvent())) {
+            CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+            if (activity != null) {
+                activities.remove(key);
+                if (activity.held != null) {
+                    coalescedCount.incrementAndGet();
+                    result = release(activity).result();
+                }
+            }
+            sends.add(new Send(sendRequest, result));
+            return result;
+        }
+        if (activity == null) {
+            activity = new Activity(key);
+            activity.nextSendNanos = now + minIntervalNanos;
+            activity.timestamp = contentState.getTimestamp() != null ? contentState.getTimestamp() : Long.MIN_VALUE;
+            activities.put(key, activity);
+            due.add(new Due(activity, activity.nextSendNanos));
+            CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+            sends.add(new Send(sendRequest, result));
+            return result;
+        }
+        if (contentState.getTimestamp() != null) {
+            if (contentState.getTimestamp() < activity.timestamp) {
+                // Out of order: the update is older than the one already sent or held for the activity.
+                if (activity.held != null) {
+                    coalescedCount.incrementAndGet();
+                    return activity.result;
+                }
+                CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+                dropped.add(result);
+                return result;
+            }
+            activity.timestamp = contentState.getTimestamp();
+        }
+        if (activity.held != null) {
+            coalescedCount.incrementAndGet();
+            unindex(activity);
+            hold(activity, sendRequest, aps);
+            return activity.result;
+        }
+        if (heldByRelevance.size() >= maxPending) {
+            Activity victim = victim();
+            if (victim.staleDate > nowSeconds() && relevance(aps) <= victim.relevance) {
+                CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+                dropped.add(result);
+                return result;
+            }
+            dropped.add(release(victim).result());
+        }
+        activity.result = new CompletableFuture<>();
+        hold(activity, sendRequest, aps);
+        return activity.result;
+    }
+
+    private void dispatch() {
+        while (running) {
+            Due next;
+            try {
+                next = due.take();
+            } catch (InterruptedException ex) {
+                break;
+            }
+            Send send = null;
+            boolean stale = false;
+            lock.lock();
+            try {
+                Activity activity = next.activity();
+                if (activities.get(activity.key) != activity || activity.nextSendNanos != next.dueNanos()) {
+                    continue;
+                }
+                if (activity.held == null) {
+                    activities.remove(activity.key);
+                    continue;
+                }
+                stale = activity.staleDate <= nowSeconds();
+                send = release(activity);
+                if (stale) {
+                    activities.remove(activity.key);
+                } else {
+                    activity.nextSendNanos = System.nanoTime() + minIntervalNanos;
+                    due.add(new Due(activity, activity.nextSendNanos));
+                }
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (stale) {
+                    droppedCount.incrementAndGet();
+                    send.result().completeExceptionally(new RejectedExecutionException("Live Activity update went " +
+                            "stale before it was sent"));
+                } else {
+                    send(send.request(), send.result());
+                }
+            } catch (RuntimeException ex) {
+                logger.error("FCM Live Activity dispatch failed", ex);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Sends the held updates at once, when closing.
+     */
+    private void flush() {
+        List<Send> sends = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Activity activity : activities.values()) {
+                if (activity.held != null) {
+                    sends.add(release(activity));
+                }
+            }
+            activities.clear();
+            due.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (Send send : sends) {
+            send(send.request(), send.result());
+        }
+    }
+
+    private void hold(Activity activity, FcmSendRequest sendRequest, FcmApnsAps aps) {
+        activity.held = sendRequest;
+        activity.relevance = relevance(aps);
+        activity.staleDate = aps.getStaleDate() != null ? aps.getStaleDate() : Long.MAX_VALUE;
+        activity.sequence = sequence++;
+        heldByRelevance.add(activity);
+        if (aps.getStaleDate() != null) {
+            heldByStaleDate.add(activity);
+        }
+    }
+
+    private Send release(Activity activity) {
+        unindex(activity);
+        Send send = new Send(activity.held, activity.result);
+        activity.held = null;
+        activity.result = null;
+        return send;
+    }
+
+    private void unindex(Activity activity) {
+        heldByRelevance.remove(activity);
+        heldByStaleDate.remove(activity);
+    }
+
+    /**
+     * Gets the held update to drop under pressure: the one with the earliest stale date if it has passed, or else the
+     * one with the lowest relevance score.
+     */
+    private Activity victim() {
+        if (!heldByStaleDate.isEmpty() && heldByStaleDate.first().staleDate <= nowSeconds()) {
+            return heldByStaleDate.first();
+        }
+        return heldByRelevance.first();
+    }
+
+    private CompletableFuture<FcmMessage> send(FcmSendRequest sendRequest, CompletableFuture<FcmMessage> result) {
+        CompletableFuture<FcmMessage> future;
+        try {
+            future = fcmService.sendAsync(sendRequest);
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((message, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(message);
+            }
+        });
+        return result;
+    }
+
+    private static double relevance(FcmApnsAps aps) {
+        return aps.getRelevanceScore() != null ? aps.getRelevanceScore() : 0.0;
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static FcmApnsAps aps(FcmMessage message) {
+        if (message == null || message.getApns() == null || message.getApns().getPayload() == null) {
+            return null;
+        }
+        FcmApnsAps aps = message.getApns().getPayload().getAps();
+        return aps != null && aps.getContentState() != null ? aps : null;
+    }
+
+    private static String key(FcmMessage message) {
+        if (message.getApns().getLiveActivityToken() != null) {
+            return "activity:" + message.getApns().getLiveActivityToken();
+        }
+        return message.getToken() != null ? "token:" + message.getToken()
+                : message.getTopic() != null ? "topic:" + message.getTopic()
+                : message.getCondition() != null ? "condition:" + message.getCondition()
+                : null;
+    }
+}
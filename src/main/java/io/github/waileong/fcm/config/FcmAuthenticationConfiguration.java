@@ -1,16 +1,23 @@
 package io.github.waileong.fcm.config;
 
-import io.github.waileong.fcm.authentication.FcmJwtToken;
+import io.github.waileong.fcm.authentication.FcmAccessTokenProvider;
+import io.github.waileong.fcm.authentication.FcmCredentialMaterial;
 import io.github.waileong.fcm.authentication.FcmJwtTokenPooledObjectFactory;
-import org.apache.commons.pool2.impl.GenericObjectPool;
-import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME;
+
 /**
- * Configuration class for Firebase Cloud Messaging (FCM) authentication. This class sets up a pool of FCM JWT tokens,
- * optimizing the management and reuse of these tokens for communicating with FCM. The configuration is designed to
- * work within a Spring application context, leveraging Spring's dependency injection to provide configured beans.
+ * Configuration class for Firebase Cloud Messaging (FCM) authentication. This class sets up the factory that mints
+ * FCM JWT tokens and the provider that caches and refreshes them for communicating with FCM. The configuration is
+ * designed to work within a Spring application context, leveraging Spring's dependency injection to provide
+ * configured beans.
  * <p>
  * The configuration disables proxy bean methods to reduce runtime overhead, suitable for environments where inter-bean
  * method calls are not necessary.
@@ -22,37 +29,50 @@ import org.springframework.context.annotation.Configuration;
 public class FcmAuthenticationConfiguration {
 
     /**
-     * Creates a factory for pooled FCM JWT tokens. This factory is responsible for the lifecycle management of
-     * FcmJwtToken instances, used for authenticating requests to Firebase Cloud Messaging.
+     * Validates the configured FCM credentials and parses the private key once at startup, so that a
+     * misconfiguration fails fast and token minting never repeats the key parsing.
      *
      * @param fcmProperties Properties for FCM configuration, including credentials.
+     * @return The validated {@link FcmCredentialMaterial}.
+     */
+    @Bean
+    public FcmCredentialMaterial fcmCredentialMaterial(FcmProperties fcmProperties) {
+        return new FcmCredentialMaterial(fcmProperties.getCredential());
+    }
+
+    /**
+     * Creates a factory for FCM JWT tokens. This factory is responsible for minting the FcmJwtToken instances
+     * used for authenticating requests to Firebase Cloud Messaging.
+     *
+     * @param fcmCredentialMaterial The validated credential material used to sign tokens.
      * @return A new instance of {@link FcmJwtTokenPooledObjectFactory}, configured with FCM credentials.
      */
     @Bean
-    public FcmJwtTokenPooledObjectFactory fcmJwtTokenPooledObjectFactory(FcmProperties fcmProperties) {
-        return new FcmJwtTokenPooledObjectFactory(fcmProperties.getCredential());
+    public FcmJwtTokenPooledObjectFactory fcmJwtTokenPooledObjectFactory(FcmCredentialMaterial fcmCredentialMaterial) {
+        return new FcmJwtTokenPooledObjectFactory(fcmCredentialMaterial);
     }
 
     /**
-     * Configures and provides a pool of FCM JWT tokens. This method sets up a {@link GenericObjectPool} for
-     * {@link FcmJwtToken}, optimizing token reuse and management for FCM authentication. The pool configuration
-     * is customized according to the FCM properties, including maximum pool size and validation settings.
+     * Configures and provides the {@link FcmAccessTokenProvider} that caches a single FCM JWT token and refreshes it
+     * in the background shortly before it expires.
      *
-     * @param fcmJwtTokenPooledObjectFactory The factory to create and manage FcmJwtToken instances.
-     * @param fcmProperties                  The properties for FCM configuration, used to customize the pool settings.
-     * @return A configured {@link GenericObjectPool} of {@link FcmJwtToken} for efficient token management.
+     * @param fcmJwtTokenPooledObjectFactory The factory used to mint new tokens.
+     * @param fcmVirtualThreadExecutor       An ObjectProvider for the FCM virtual thread executor, which runs
+     *                                       background refreshes when available.
+     * @param applicationTaskExecutor        An ObjectProvider for the application's task executor, used to run
+     *                                       background refreshes otherwise.
+     * @param fcmProperties                  The properties for FCM configuration, used to configure the refresh window.
+     * @return A configured {@link FcmAccessTokenProvider}.
      */
     @Bean
-    public GenericObjectPool<FcmJwtToken> fcmJwtTokenPool(
+    public FcmAccessTokenProvider fcmAccessTokenProvider(
             FcmJwtTokenPooledObjectFactory fcmJwtTokenPooledObjectFactory,
+            @Qualifier("fcmVirtualThreadExecutor") ObjectProvider<ExecutorService> fcmVirtualThreadExecutor,
+            @Qualifier(APPLICATION_TASK_EXECUTOR_BEAN_NAME) ObjectProvider<Executor> applicationTaskExecutor,
             FcmProperties fcmProperties) {
-        GenericObjectPoolConfig<FcmJwtToken> config = new GenericObjectPoolConfig<>();
-        config.setJmxEnabled(false);
-        config.setMaxTotal(fcmProperties.getJwtTokenPoolSetting().getMaxTotal());
-        config.setMaxIdle(fcmProperties.getJwtTokenPoolSetting().getMaxIdle());
-        config.setTestOnBorrow(true);
-        config.setTestOnReturn(true);
-        config.setTestWhileIdle(true);
-        return new GenericObjectPool<>(fcmJwtTokenPooledObjectFactory, config);
+        Executor refreshExecutor = fcmVirtualThreadExecutor.getIfAvailable();
+        return new FcmAccessTokenProvider(fcmJwtTokenPooledObjectFactory,
+                fcmProperties.getCredential().getJwtRefreshAheadDuration(),
+                refreshExecutor != null ? refreshExecutor : applicationTaskExecutor.getIfAvailable());
     }
 }
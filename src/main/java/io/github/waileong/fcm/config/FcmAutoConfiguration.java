@@ -1,17 +1,57 @@
 package io.github.waileong.fcm.config;
 
-import io.github.waileong.fcm.authentication.FcmJwtToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.authentication.FcmAccessTokenProvider;
+import io.github.waileong.fcm.coalescing.FcmCoalescingQueue;
+import io.github.waileong.fcm.coalescing.FcmLiveActivityDispatcher;
+import io.github.waileong.fcm.idempotency.FcmIdempotencyGuard;
+import io.github.waileong.fcm.idempotency.FcmIdempotencyStore;
+import io.github.waileong.fcm.idempotency.FcmInMemoryIdempotencyStore;
+import io.github.waileong.fcm.metrics.FcmMetrics;
+import io.github.waileong.fcm.metrics.FcmRejectionMetrics;
+import io.github.waileong.fcm.outbox.FcmFileOutbox;
+import io.github.waileong.fcm.outbox.FcmJdbcOutbox;
+import io.github.waileong.fcm.outbox.FcmOutboxLog;
+import io.github.waileong.fcm.resilience.FcmCircuitBreaker;
+import io.github.waileong.fcm.resilience.FcmConcurrencyLimiter;
+import io.github.waileong.fcm.resilience.FcmPriorityScheduler;
+import io.github.waileong.fcm.resilience.FcmRateLimiter;
+import io.github.waileong.fcm.resilience.FcmRetryPolicy;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.impl.FcmHttpTransport;
+import io.github.waileong.fcm.service.impl.FcmReactiveServiceImpl;
 import io.github.waileong.fcm.service.impl.FcmServiceImpl;
-import org.apache.commons.pool2.impl.GenericObjectPool;
+import io.github.waileong.fcm.token.FcmBackgroundThrottle;
+import io.github.waileong.fcm.token.FcmDeadTokenListener;
+import io.github.waileong.fcm.token.FcmDeadTokenRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.AutoConfigureOrder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestClient;
+import reactor.core.publisher.Flux;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.function.IntSupplier;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
 /**
  * Provides automatic configuration for Firebase Cloud Messaging (FCM) integration in Spring Boot applications.
@@ -26,7 +66,8 @@ import org.springframework.web.client.RestClient;
  *
  * @author Wai Leong
  */
-@AutoConfiguration(after = TaskExecutionAutoConfiguration.class)
+@AutoConfiguration(after = TaskExecutionAutoConfiguration.class,
+        afterName = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
 @AutoConfigureOrder(Ordered.HIGHEST_PRECEDENCE)
 @EnableConfigurationProperties(FcmProperties.class)
 @Import({FcmAuthenticationConfiguration.class, FcmConnectionConfiguration.class})
@@ -41,11 +82,355 @@ public class FcmAutoConfiguration {
      *
      * @param fcmRestClient The {@link RestClient} qualified for FCM, pre-configured with necessary settings for
      *                      communication with Firebase Cloud Messaging services.
+     * @param fcmAccessTokenProvider The provider of the cached access token used to authenticate FCM requests.
+     * @param fcmHttpTransport       The transport used for asynchronous sends.
+     * @param fcmProperties          The properties for FCM configuration, including send settings.
+     * @param fcmRetryPolicy         The policy deciding which failed sends are retried.
+     * @param fcmSendInterceptors    The interceptors invoked around every send attempt, in order.
+     * @param fcmIdempotencyGuard    The guard swallowing repeats of recent sends, if enabled.
+     * @param fcmBackgroundThrottle  The throttle suppressing background messages sent to a token too often, if enabled.
      * @return An instance of {@link FcmServiceImpl}, ready to be used for FCM operations within the application.
      */
     @Bean
     public FcmServiceImpl fcmService(@Qualifier("fcmRestClient") RestClient fcmRestClient,
-                                     @Qualifier("fcmJwtTokenPool") GenericObjectPool<FcmJwtToken> googleFcmJwtTokenPool) {
-        return new FcmServiceImpl(fcmRestClient, googleFcmJwtTokenPool);
+                                     FcmAccessTokenProvider fcmAccessTokenProvider,
+                                     @Qualifier("fcmHttpTransport") FcmHttpTransport fcmHttpTransport,
+                                     FcmProperties fcmProperties,
+                                     FcmRetryPolicy fcmRetryPolicy,
+                                     ObjectProvider<FcmSendInterceptor> fcmSendInterceptors,
+                                     ObjectProvider<FcmIdempotencyGuard> fcmIdempotencyGuard,
+                                     ObjectProvider<FcmBackgroundThrottle> fcmBackgroundThrottle) {
+        return new FcmServiceImpl(fcmRestClient, fcmAccessTokenProvider, fcmHttpTransport, fcmProperties,
+                fcmRetryPolicy, fcmSendInterceptors.orderedStream().toList(), fcmIdempotencyGuard.getIfAvailable(),
+                fcmBackgroundThrottle.getIfAvailable());
+    }
+
+    /**
+     * Defines the {@link FcmBackgroundThrottle} that suppresses background messages sent to a token more often than
+     * the device accepts them. Only created when {@code fcm.background-throttle.enabled} is set.
+     *
+     * @param fcmProperties The properties for FCM configuration, including background throttle settings.
+     * @return The configured {@link FcmBackgroundThrottle}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.background-throttle", name = "enabled", havingValue = "true")
+    public FcmBackgroundThrottle fcmBackgroundThrottle(FcmProperties fcmProperties) {
+        FcmProperties.BackgroundThrottleSetting backgroundThrottle = fcmProperties.getBackgroundThrottle();
+        return new FcmBackgroundThrottle(backgroundThrottle.getMinInterval(), backgroundThrottle.getMode(),
+                backgroundThrottle.getTimeToLive(), backgroundThrottle.getMaxTokens());
+    }
+
+    /**
+     * Defines the in-memory {@link FcmIdempotencyStore} of recent sends, unless another store is declared, for
+     * example one shared by all nodes. Only created when {@code fcm.idempotency.enabled} is set.
+     *
+     * @param fcmProperties The properties for FCM configuration, including idempotency settings.
+     * @return The configured {@link FcmInMemoryIdempotencyStore}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.idempotency", name = "enabled", havingValue = "true")
+    @ConditionalOnMissingBean(FcmIdempotencyStore.class)
+    public FcmInMemoryIdempotencyStore fcmIdempotencyStore(FcmProperties fcmProperties) {
+        return new FcmInMemoryIdempotencyStore(fcmProperties.getIdempotency().getMaxEntries());
+    }
+
+    /**
+     * Defines the {@link FcmIdempotencyGuard} that swallows repeats of a recent send within the deduplication window.
+     * Only created when {@code fcm.idempotency.enabled} is set.
+     *
+     * @param fcmIdempotencyStore The store recording the keys of recent sends.
+     * @param fcmProperties       The properties for FCM configuration, including idempotency settings.
+     * @return The configured {@link FcmIdempotencyGuard}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.idempotency", name = "enabled", havingValue = "true")
+    public FcmIdempotencyGuard fcmIdempotencyGuard(FcmIdempotencyStore fcmIdempotencyStore,
+                                                   FcmProperties fcmProperties) {
+        return new FcmIdempotencyGuard(fcmIdempotencyStore, fcmProperties.getIdempotency().getWindow());
+    }
+
+    /**
+     * Defines the {@link FcmRetryPolicy} applied to every send. Unless {@code fcm.retry.enabled} is set, the policy
+     * never retries.
+     *
+     * @param fcmProperties The properties for FCM configuration, including retry settings.
+     * @return The configured {@link FcmRetryPolicy}.
+     */
+    @Bean
+    public FcmRetryPolicy fcmRetryPolicy(FcmProperties fcmProperties) {
+        FcmProperties.RetrySetting retry = fcmProperties.getRetry();
+        if (!retry.isEnabled()) {
+            return FcmRetryPolicy.noRetry();
+        }
+        return FcmRetryPolicy.Builder.aFcmRetryPolicy()
+                .maxAttempts(retry.getMaxAttempts())
+                .initialBackoff(retry.getInitialBackoff())
+                .maxBackoff(retry.getMaxBackoff())
+                .multiplier(retry.getMultiplier())
+                .jitter(retry.getJitter())
+                .deadline(retry.getDeadline())
+                .build();
+    }
+
+    /**
+     * Defines the {@link FcmRateLimiter} that paces sends to stay within the FCM project quota. Only created when
+     * {@code fcm.rateLimit.enabled} is set.
+     *
+     * @param fcmProperties The properties for FCM configuration, including rate limit settings.
+     * @return The configured {@link FcmRateLimiter}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.rate-limit", name = "enabled", havingValue = "true")
+    public FcmRateLimiter fcmRateLimiter(FcmProperties fcmProperties) {
+        FcmProperties.RateLimitSetting rateLimit = fcmProperties.getRateLimit();
+        int burst = rateLimit.getBurst() > 0
+                ? rateLimit.getBurst()
+                : (int) Math.max(1L, Math.min(Integer.MAX_VALUE, rateLimit.getPermitsPerMinute() / 60));
+        return new FcmRateLimiter(rateLimit.getPermitsPerMinute(), burst, rateLimit.getMode(),
+                rateLimit.getMaxWait(), rateLimit.isAdaptive(), rateLimit.getMinPermitsPerMinute(),
+                rateLimit.getDecreaseFactor(), rateLimit.getRecoveryInterval(), rateLimit.getRecoveryStep(),
+                rateLimit.getCriticalShare());
+    }
+
+    /**
+     * Defines the {@link FcmConcurrencyLimiter} that adapts the number of requests in flight to the concurrency FCM
+     * currently sustains. Only created when {@code fcm.concurrencyLimit.enabled} is set.
+     *
+     * @param fcmProperties The properties for FCM configuration, including concurrency limit settings.
+     * @return The configured {@link FcmConcurrencyLimiter}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.concurrency-limit", name = "enabled", havingValue = "true")
+    public FcmConcurrencyLimiter fcmConcurrencyLimiter(FcmProperties fcmProperties) {
+        FcmProperties.ConcurrencyLimitSetting concurrencyLimit = fcmProperties.getConcurrencyLimit();
+        return new FcmConcurrencyLimiter(concurrencyLimit.getInitialLimit(), concurrencyLimit.getMinLimit(),
+                concurrencyLimit.getMaxLimit(), concurrencyLimit.getMode(), concurrencyLimit.getMaxWait(),
+                concurrencyLimit.getDecreaseFactor(), concurrencyLimit.getLatencyTolerance());
+    }
+
+    /**
+     * Defines the {@link FcmCircuitBreaker} that rejects sends without a request to FCM while it is degraded. Only
+     * created when {@code fcm.circuitBreaker.enabled} is set.
+     *
+     * @param fcmProperties The properties for FCM configuration, including circuit breaker settings.
+     * @return The configured {@link FcmCircuitBreaker}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.circuit-breaker", name = "enabled", havingValue = "true")
+    public FcmCircuitBreaker fcmCircuitBreaker(FcmProperties fcmProperties) {
+        FcmProperties.CircuitBreakerSetting circuitBreaker = fcmProperties.getCircuitBreaker();
+        return new FcmCircuitBreaker(circuitBreaker.getFailureRateThreshold(),
+                circuitBreaker.getSlowCallRateThreshold(), circuitBreaker.getSlowCallDuration(),
+                circuitBreaker.getSlidingWindow(), circuitBreaker.getMinimumCalls(), circuitBreaker.getOpenDuration(),
+                circuitBreaker.getHalfOpenCalls(), circuitBreaker.getMode(), circuitBreaker.getMaxWait());
+    }
+
+    /**
+     * Defines the {@link FcmPriorityScheduler} that reserves a share of the requests in flight for latency-critical
+     * sends and schedules waiting sends by lane. Its capacity follows the {@link FcmConcurrencyLimiter} when there is
+     * one. Only created when {@code fcm.priority.enabled} is set.
+     *
+     * @param fcmProperties         The properties for FCM configuration, including priority lane settings.
+     * @param fcmConcurrencyLimiter The adaptive concurrency limiter, if enabled.
+     * @return The configured {@link FcmPriorityScheduler}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.priority", name = "enabled", havingValue = "true")
+    public FcmPriorityScheduler fcmPriorityScheduler(FcmProperties fcmProperties,
+                                                     ObjectProvider<FcmConcurrencyLimiter> fcmConcurrencyLimiter) {
+        FcmProperties.PrioritySetting priority = fcmProperties.getPriority();
+        FcmConcurrencyLimiter limiter = fcmConcurrencyLimiter.getIfAvailable();
+        int maxInFlight = priority.getMaxInFlight();
+        if (limiter == null && maxInFlight < 1) {
+            throw new IllegalArgumentException("fcm.priority.max-in-flight must be at least 1");
+        }
+        IntSupplier capacity = limiter != null ? limiter::getLimit : () -> maxInFlight;
+        return new FcmPriorityScheduler(capacity, priority.getCriticalShare(), priority.getStandardShare(),
+                priority.getScheduling(), priority.getCriticalWeight(), priority.getStandardWeight(),
+                priority.getBulkWeight(), priority.getMode(), priority.getMaxWait());
+    }
+
+    /**
+     * Defines the {@link FcmDeadTokenRegistry} that rejects sends to registration tokens FCM already reported as no
+     * longer valid, and passes newly detected ones to the {@link FcmDeadTokenListener} beans. Only created when
+     * {@code fcm.deadToken.enabled} is set.
+     *
+     * @param fcmProperties         The properties for FCM configuration, including dead token settings.
+     * @param fcmDeadTokenListeners The listeners notified of dead tokens.
+     * @return The configured {@link FcmDeadTokenRegistry}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.dead-token", name = "enabled", havingValue = "true")
+    public FcmDeadTokenRegistry fcmDeadTokenRegistry(FcmProperties fcmProperties,
+                                                     ObjectProvider<FcmDeadTokenListener> fcmDeadTokenListeners) {
+        FcmProperties.DeadTokenSetting deadToken = fcmProperties.getDeadToken();
+        return new FcmDeadTokenRegistry(deadToken.getMaxTokens(), deadToken.getListenerBatchSize(),
+                deadToken.getListenerFlushInterval(), fcmDeadTokenListeners.orderedStream().toList());
+    }
+
+    /**
+     * Defines the {@link FcmCoalescingQueue} that replaces a queued message by a newer one with the same recipient and
+     * collapse key before it is sent. Only created when {@code fcm.coalescing.enabled} is set.
+     *
+     * @param fcmService    The FCM service the queued messages are sent with.
+     * @param fcmProperties The properties for FCM configuration, including coalescing settings.
+     * @return The configured {@link FcmCoalescingQueue}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.coalescing", name = "enabled", havingValue = "true")
+    public FcmCoalescingQueue fcmCoalescingQueue(FcmService fcmService, FcmProperties fcmProperties) {
+        FcmProperties.CoalescingSetting coalescing = fcmProperties.getCoalescing();
+        return new FcmCoalescingQueue(fcmService, coalescing.getLinger(), coalescing.getMaxInFlight(),
+                coalescing.getMaxPending());
+    }
+
+    /**
+     * Defines the {@link FcmLiveActivityDispatcher} that keeps only the latest content state of a Live Activity and
+     * sends it at most once per interval. Only created when {@code fcm.live-activity.enabled} is set.
+     *
+     * @param fcmService    The FCM service the updates are sent with.
+     * @param fcmProperties The properties for FCM configuration, including Live Activity settings.
+     * @return The configured {@link FcmLiveActivityDispatcher}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "fcm.live-activity", name = "enabled", havingValue = "true")
+    public FcmLiveActivityDispatcher fcmLiveActivityDispatcher(FcmService fcmService, FcmProperties fcmProperties) {
+        FcmProperties.LiveActivitySetting liveActivity = fcmProperties.getLiveActivity();
+        return new FcmLiveActivityDispatcher(fcmService, liveActivity.getMinInterval(), liveActivity.getMaxPending());
+    }
+
+    /**
+     * Provides the durable outbox backed by local segment files, the default store of {@code fcm.outbox}.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(prefix = "fcm.outbox", name = "store", havingValue = "file", matchIfMissing = true)
+    static class FcmFileOutboxConfiguration {
+
+        /**
+         * Defines the {@link FcmFileOutbox} that stores messages on disk and sends them in the background, at least
+         * once across restarts. Only created when {@code fcm.outbox.enabled} is set.
+         *
+         * @param fcmService      The FCM service the queued messages are sent with.
+         * @param fcmObjectMapper The custom {@link ObjectMapper} for FCM, used to store the messages.
+         * @param fcmProperties   The properties for FCM configuration, including outbox settings.
+         * @return The configured {@link FcmFileOutbox}.
+         */
+        @Bean
+        @ConditionalOnProperty(prefix = "fcm.outbox", name = "enabled", havingValue = "true")
+        public FcmFileOutbox fcmOutbox(FcmService fcmService,
+                                       @Qualifier("fcmObjectMapper") ObjectMapper fcmObjectMapper,
+                                       FcmProperties fcmProperties) {
+            FcmProperties.OutboxSetting outbox = fcmProperties.getOutbox();
+            if (isBlank(outbox.getDirectory())) {
+                throw new IllegalArgumentException("fcm.outbox.directory is required when the FCM outbox is enabled");
+            }
+            long segmentBytes = outbox.getSegmentSize().toBytes();
+            if (segmentBytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("fcm.outbox.segment-size must be less than 2GB");
+            }
+            Path directory = Path.of(outbox.getDirectory());
+            FcmOutboxLog log = new FcmOutboxLog(directory, (int) segmentBytes);
+            FcmOutboxLog deadLetterLog = new FcmOutboxLog(directory.resolve("dead-letter"), (int) segmentBytes);
+            return new FcmFileOutbox(log, deadLetterLog, fcmService, fcmObjectMapper, outbox.getBatchSize(),
+                    outbox.getMaxAttempts(), outbox.getPollInterval(), outbox.getFlushInterval());
+        }
+    }
+
+    /**
+     * Provides the durable outbox backed by a table in the application's database when {@code fcm.outbox.store} is
+     * {@code jdbc} and Spring JDBC is on the classpath.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(JdbcTemplate.class)
+    @ConditionalOnProperty(prefix = "fcm.outbox", name = "store", havingValue = "jdbc")
+    static class FcmJdbcOutboxConfiguration {
+
+        /**
+         * Defines the {@link FcmJdbcOutbox} that stores messages in the outbox table, in the transaction of the
+         * caller, and sends them from every node in the background. Only created when {@code fcm.outbox.enabled} is
+         * set.
+         *
+         * @param fcmService         The FCM service the queued messages are sent with.
+         * @param fcmObjectMapper    The custom {@link ObjectMapper} for FCM, used to store the messages.
+         * @param dataSource         The data source holding the outbox table.
+         * @param transactionManager The transaction manager each dispatched batch runs in.
+         * @param fcmProperties      The properties for FCM configuration, including outbox settings.
+         * @return The configured {@link FcmJdbcOutbox}.
+         */
+        @Bean
+        @ConditionalOnProperty(prefix = "fcm.outbox", name = "enabled", havingValue = "true")
+        @DependsOnDatabaseInitialization
+        public FcmJdbcOutbox fcmOutbox(FcmService fcmService,
+                                       @Qualifier("fcmObjectMapper") ObjectMapper fcmObjectMapper,
+                                       DataSource dataSource,
+                                       PlatformTransactionManager transactionManager,
+                                       FcmProperties fcmProperties) {
+            FcmProperties.OutboxSetting outbox = fcmProperties.getOutbox();
+            return new FcmJdbcOutbox(new JdbcTemplate(dataSource), new TransactionTemplate(transactionManager),
+                    fcmService, fcmObjectMapper, outbox.getTableName(), outbox.getBatchSize(),
+                    outbox.getMaxInFlight(), outbox.getMaxAttempts(), outbox.getPollInterval(),
+                    outbox.getRetryBackoff());
+        }
+    }
+
+    /**
+     * Records Micrometer metrics of the send path when Micrometer is on the classpath and a {@link MeterRegistry} bean
+     * is available, unless {@code fcm.metrics.enabled} is set to {@code false}.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "fcm.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class FcmMetricsConfiguration {
+
+        /**
+         * Defines the {@link FcmMetrics} interceptor and binds its token mint timer to the access token provider.
+         *
+         * @param meterRegistry          The registry the FCM meters are registered with.
+         * @param fcmAccessTokenProvider The provider whose token minting is timed.
+         * @param fcmProperties          The properties for FCM configuration, including metrics settings.
+         * @return The configured {@link FcmMetrics}.
+         */
+        @Bean
+        public FcmMetrics fcmMetrics(MeterRegistry meterRegistry,
+                                     FcmAccessTokenProvider fcmAccessTokenProvider,
+                                     FcmProperties fcmProperties) {
+            FcmProperties.MetricsSetting metrics = fcmProperties.getMetrics();
+            FcmMetrics fcmMetrics = new FcmMetrics(meterRegistry, metrics.getPercentiles(),
+                    metrics.isPercentileHistogram());
+            fcmMetrics.bindTo(fcmAccessTokenProvider);
+            return fcmMetrics;
+        }
+
+        /**
+         * Defines the {@link FcmRejectionMetrics} interceptor, which counts the attempts rejected locally.
+         *
+         * @param meterRegistry The registry the FCM meters are registered with.
+         * @return The configured {@link FcmRejectionMetrics}.
+         */
+        @Bean
+        public FcmRejectionMetrics fcmRejectionMetrics(MeterRegistry meterRegistry) {
+            return new FcmRejectionMetrics(meterRegistry);
+        }
+    }
+
+    /**
+     * Provides the reactive variant of the FCM service when Project Reactor is on the classpath.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(Flux.class)
+    static class FcmReactiveConfiguration {
+
+        /**
+         * Defines the {@link FcmReactiveServiceImpl}, which sends through the asynchronous path of the FCM service.
+         *
+         * @param fcmService    The FCM service the reactive sends are delegated to.
+         * @param fcmProperties The properties for FCM configuration, including send settings.
+         * @return The configured {@link FcmReactiveServiceImpl}.
+         */
+        @Bean
+        public FcmReactiveServiceImpl fcmReactiveService(FcmService fcmService, FcmProperties fcmProperties) {
+            return new FcmReactiveServiceImpl(fcmService, fcmProperties);
+        }
     }
 }
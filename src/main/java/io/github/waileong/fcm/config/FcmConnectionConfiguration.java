@@ -3,8 +3,13 @@ package io.github.waileong.fcm.config;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.waileong.fcm.exception.FcmRestClientResponseErrorHandler;
+import io.github.waileong.fcm.service.impl.FcmHttpClientPool;
+import io.github.waileong.fcm.service.impl.FcmHttpTransport;
+import io.github.waileong.fcm.service.impl.FcmPooledClientHttpRequestFactory;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.ssl.SslBundle;
 import org.springframework.boot.ssl.SslBundles;
 import org.springframework.context.annotation.Bean;
@@ -13,11 +18,17 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.RestClient;
 
+import java.net.URI;
 import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME;
@@ -37,41 +48,119 @@ import static org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfi
 public class FcmConnectionConfiguration {
 
     /**
-     * Configures a {@link ClientHttpRequestFactory} for FCM, supporting custom SSL contexts and executor
-     * configurations. This factory is used to create HTTP requests for communicating with FCM services, allowing
-     * for customization of connection and read timeouts.
+     * Provides the dedicated virtual-thread-per-task executor FCM requests run on when
+     * {@code fcm.connection.virtual-threads} is set. The send path only parks on {@code java.util.concurrent}
+     * primitives, never inside a monitor, so these virtual threads do not pin their carrier threads.
+     *
+     * @return A new virtual-thread-per-task executor.
+     * @throws IllegalArgumentException If the JVM does not support virtual threads.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "fcm.connection", name = "virtual-threads", havingValue = "true")
+    public ExecutorService fcmVirtualThreadExecutor() {
+        try {
+            // Looked up reflectively, as the library is compiled for JDK 17.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException("fcm.connection.virtual-threads requires JDK 21 or later", ex);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Failed to create the FCM virtual thread executor", ex);
+        }
+    }
+
+    /**
+     * Configures the JDK {@link HttpClient} used for all communication with FCM, supporting custom SSL contexts,
+     * connect timeouts and the preferred HTTP version. The same client backs both the blocking {@link RestClient} and
+     * the asynchronous send path, and is the first client of the {@link FcmHttpClientPool}.
      *
-     * @param applicationTaskExecutor  An ObjectProvider for the application's task executor, used for asynchronous
-     *                                 request processing.
      * @param sslBundlesObjectProvider An ObjectProvider for SSLBundles, used to obtain SSL configurations.
+     * @param fcmVirtualThreadExecutor An ObjectProvider for the FCM virtual thread executor, which runs the client's
+     *                                 asynchronous tasks when available.
      * @param fcmProperties            Properties containing FCM connection settings, including timeouts and SSL bundle names.
+     * @return A configured {@link HttpClient} instance for FCM communication.
+     */
+    @Bean
+    public HttpClient fcmHttpClient(ObjectProvider<SslBundles> sslBundlesObjectProvider,
+                                    @Qualifier("fcmVirtualThreadExecutor") ObjectProvider<ExecutorService> fcmVirtualThreadExecutor,
+                                    FcmProperties fcmProperties) {
+        return buildHttpClient(sslBundlesObjectProvider.getIfAvailable(), fcmVirtualThreadExecutor.getIfAvailable(),
+                fcmProperties.getConnection());
+    }
+
+    /**
+     * Configures the {@link FcmHttpClientPool} FCM requests are spread across. The FCM {@link HttpClient} is its
+     * first client; the remaining clients, up to {@code fcm.connection.client-count}, are built the same way so that
+     * each opens its own connection.
+     *
+     * @param fcmHttpClient            The JDK HTTP client for FCM.
+     * @param sslBundlesObjectProvider An ObjectProvider for SSLBundles, used to obtain SSL configurations.
+     * @param fcmVirtualThreadExecutor An ObjectProvider for the FCM virtual thread executor.
+     * @param fcmProperties            Properties containing FCM connection settings.
+     * @return A configured {@link FcmHttpClientPool} instance.
+     */
+    @Bean
+    public FcmHttpClientPool fcmHttpClientPool(@Qualifier("fcmHttpClient") HttpClient fcmHttpClient,
+                                               ObjectProvider<SslBundles> sslBundlesObjectProvider,
+                                               @Qualifier("fcmVirtualThreadExecutor") ObjectProvider<ExecutorService> fcmVirtualThreadExecutor,
+                                               FcmProperties fcmProperties) {
+        final FcmProperties.ConnectionSetting connection = fcmProperties.getConnection();
+        if (connection.getClientCount() < 1) {
+            throw new IllegalArgumentException("fcm.connection.client-count must be at least 1");
+        }
+        if (connection.getMaxConcurrentStreams() < 0) {
+            throw new IllegalArgumentException("fcm.connection.max-concurrent-streams must not be negative");
+        }
+        List<HttpClient> httpClients = new ArrayList<>(connection.getClientCount());
+        httpClients.add(fcmHttpClient);
+        SslBundles sslBundles = sslBundlesObjectProvider.getIfAvailable();
+        ExecutorService executor = fcmVirtualThreadExecutor.getIfAvailable();
+        while (httpClients.size() < connection.getClientCount()) {
+            httpClients.add(buildHttpClient(sslBundles, executor, connection));
+        }
+        return new FcmHttpClientPool(httpClients, connection.getClientSelection(),
+                connection.getMaxConcurrentStreams());
+    }
+
+    /**
+     * Configures a {@link ClientHttpRequestFactory} for FCM on top of the {@link FcmHttpClientPool}, supporting
+     * executor configurations. This factory is used to create HTTP requests for communicating with FCM services,
+     * allowing for customization of the read timeout. With a single client and no stream limit, requests go straight
+     * to the FCM {@link HttpClient}.
+     *
+     * @param fcmHttpClientPool        The pool of JDK HTTP clients for FCM.
+     * @param fcmVirtualThreadExecutor An ObjectProvider for the FCM virtual thread executor, which takes precedence
+     *                                 over the application's task executor when available.
+     * @param applicationTaskExecutor  An ObjectProvider for the application's task executor, used for asynchronous
+     *                                 request processing.
+     * @param fcmProperties            Properties containing FCM connection settings, including timeouts.
      * @return A configured {@link ClientHttpRequestFactory} instance for FCM communication.
      */
     @Bean
     public ClientHttpRequestFactory fcmClientHttpRequestFactory(
+            @Qualifier("fcmHttpClientPool") FcmHttpClientPool fcmHttpClientPool,
+            @Qualifier("fcmVirtualThreadExecutor") ObjectProvider<ExecutorService> fcmVirtualThreadExecutor,
             @Qualifier(APPLICATION_TASK_EXECUTOR_BEAN_NAME) ObjectProvider<Executor> applicationTaskExecutor,
-            ObjectProvider<SslBundles> sslBundlesObjectProvider,
             FcmProperties fcmProperties) {
         final FcmProperties.ConnectionSetting connection = fcmProperties.getConnection();
-        HttpClient.Builder builder = HttpClient.newBuilder();
-        if (connection.getConnectTimeout() != null) {
-            builder.connectTimeout(connection.getConnectTimeout());
+        Executor executor = fcmVirtualThreadExecutor.getIfAvailable();
+        if (executor == null) {
+            executor = applicationTaskExecutor.getIfAvailable();
         }
-        SslBundles sslBundles = sslBundlesObjectProvider.getIfAvailable();
-        if (sslBundles != null && !isBlank(connection.getSslBundleName())) {
-            SslBundle bundle = sslBundles.getBundle(connection.getSslBundleName());
-            builder.sslContext(bundle.createSslContext());
-        }
-        HttpClient httpClient = builder.build();
-        Executor executor = applicationTaskExecutor.getIfAvailable();
-        JdkClientHttpRequestFactory jdkClientHttpRequestFactory = executor != null
-                ? new JdkClientHttpRequestFactory(httpClient, executor)
-                : new JdkClientHttpRequestFactory(httpClient);
-        if (connection.getReadTimeout() != null) {
-            jdkClientHttpRequestFactory.setReadTimeout(connection.getReadTimeout());
+        List<JdkClientHttpRequestFactory> requestFactories = new ArrayList<>(fcmHttpClientPool.size());
+        for (int i = 0; i < fcmHttpClientPool.size(); i++) {
+            HttpClient httpClient = fcmHttpClientPool.getHttpClient(i);
+            JdkClientHttpRequestFactory jdkClientHttpRequestFactory = executor != null
+                    ? new JdkClientHttpRequestFactory(httpClient, executor)
+                    : new JdkClientHttpRequestFactory(httpClient);
+            if (connection.getReadTimeout() != null) {
+                jdkClientHttpRequestFactory.setReadTimeout(connection.getReadTimeout());
+            }
+            requestFactories.add(jdkClientHttpRequestFactory);
         }
 
-        return jdkClientHttpRequestFactory;
+        return fcmHttpClientPool.isSingleUnlimited()
+                ? requestFactories.get(0)
+                : new FcmPooledClientHttpRequestFactory(fcmHttpClientPool, requestFactories);
     }
 
     /**
@@ -134,25 +223,80 @@ public class FcmConnectionConfiguration {
             @Qualifier("fcmMessageConverter") MappingJackson2HttpMessageConverter fcmMessageConverter,
             @Qualifier("fcmRestClientResponseErrorHandler") FcmRestClientResponseErrorHandler fcmRestClientResponseErrorHandler,
             FcmProperties fcmProperties) {
-        String projectId = fcmProperties.getCredential().getProjectId();
-        if (isBlank(projectId)) {
-            throw new IllegalArgumentException("A Project ID is required for Firebase Cloud Messaging (FCM). " +
-                    "Please retrieve it from the 'project_id' field in the downloaded Firebase Admin SDK JSON file. " +
-                    "Then, input it into the configuration for fcm.credential.project-id");
-        }
         return RestClient.builder()
-                .baseUrl("https://fcm.googleapis.com/v1/projects/" + projectId + "/messages:send")
+                .baseUrl(fcmSendUrl(fcmProperties))
                 .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .requestFactory(fcmClientHttpRequestFactory)
                 .messageConverters(httpMessageConverters -> {
-                    // override the default message converters
+                    // override the default message converters; pre-serialized request bodies are written as is
                     httpMessageConverters.clear();
+                    httpMessageConverters.add(new ByteArrayHttpMessageConverter());
                     httpMessageConverters.add(fcmMessageConverter);
                 })
                 .defaultStatusHandler(fcmRestClientResponseErrorHandler)
                 .build();
     }
 
+    /**
+     * Provides the {@link FcmHttpTransport} used for asynchronous sends. It shares the {@link FcmHttpClientPool},
+     * {@link ObjectMapper} and {@link FcmRestClientResponseErrorHandler} with the {@link RestClient}.
+     *
+     * @param fcmHttpClientPool                 The pool of JDK HTTP clients for FCM.
+     * @param fcmObjectMapper                   The custom {@link ObjectMapper} for FCM.
+     * @param fcmRestClientResponseErrorHandler The error handler for FCM responses.
+     * @param fcmProperties                     Properties containing the FCM project ID and read timeout.
+     * @return A configured {@link FcmHttpTransport} instance.
+     */
+    @Bean
+    public FcmHttpTransport fcmHttpTransport(
+            @Qualifier("fcmHttpClientPool") FcmHttpClientPool fcmHttpClientPool,
+            @Qualifier("fcmObjectMapper") ObjectMapper fcmObjectMapper,
+            @Qualifier("fcmRestClientResponseErrorHandler") FcmRestClientResponseErrorHandler fcmRestClientResponseErrorHandler,
+            FcmProperties fcmProperties) {
+        return new FcmHttpTransport(fcmHttpClientPool,
+                URI.create(fcmSendUrl(fcmProperties)),
+                fcmProperties.getConnection().getReadTimeout(),
+                fcmObjectMapper,
+                fcmRestClientResponseErrorHandler);
+    }
+
+    /**
+     * Builds the FCM {@code messages:send} URL of the configured project, relative to the configured base URL.
+     *
+     * @param fcmProperties Properties containing the FCM base URL and project ID.
+     * @return The send URL.
+     */
+    static String fcmSendUrl(FcmProperties fcmProperties) {
+        String projectId = fcmProperties.getCredential().getProjectId();
+        if (isBlank(projectId)) {
+            throw new IllegalArgumentException("A Project ID is required for Firebase Cloud Messaging (FCM). " +
+                    "Please retrieve it from the 'project_id' field in the downloaded Firebase Admin SDK JSON file. " +
+                    "Then, input it into the configuration for fcm.credential.project-id");
+        }
+        String baseUrl = fcmProperties.getConnection().getBaseUrl();
+        if (isBlank(baseUrl)) {
+            throw new IllegalArgumentException("fcm.connection.base-url must not be blank");
+        }
+        return StringUtils.removeEnd(baseUrl, "/") + "/v1/projects/" + projectId + "/messages:send";
+    }
 
+    private static HttpClient buildHttpClient(SslBundles sslBundles, Executor executor,
+                                              FcmProperties.ConnectionSetting connection) {
+        HttpClient.Builder builder = HttpClient.newBuilder();
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        if (connection.getHttpVersion() != null) {
+            builder.version(connection.getHttpVersion());
+        }
+        if (connection.getConnectTimeout() != null) {
+            builder.connectTimeout(connection.getConnectTimeout());
+        }
+        if (sslBundles != null && !isBlank(connection.getSslBundleName())) {
+            SslBundle bundle = sslBundles.getBundle(connection.getSslBundleName());
+            builder.sslContext(bundle.createSslContext());
+        }
+        return builder.build();
+    }
 }
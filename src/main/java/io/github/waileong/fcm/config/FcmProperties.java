@@ -1,7 +1,15 @@
 package io.github.waileong.fcm.config;
 
+import io.github.waileong.fcm.authentication.FcmAccessTokenProvider;
+import io.github.waileong.fcm.outbox.FcmOutbox;
+import io.github.waileong.fcm.resilience.FcmPriorityScheduler;
+import io.github.waileong.fcm.resilience.FcmRateLimiter;
+import io.github.waileong.fcm.service.impl.FcmHttpClientPool;
+import io.github.waileong.fcm.token.FcmBackgroundThrottle;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.DeprecatedConfigurationProperty;
 import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.util.unit.DataSize;
 
 import javax.net.ssl.SSLContext;
 import java.net.http.HttpClient;
@@ -11,7 +19,7 @@ import java.time.Duration;
  * Configuration properties class for Firebase Cloud Messaging (FCM) integration.
  * <p>
  * This class facilitates the externalization of configuration properties related to FCM, specifically focusing on
- * service account credentials, HTTP client connection settings, and settings for JWT token pool management.
+ * service account credentials, HTTP client connection settings, and settings for JWT token management.
  * It enables easy and flexible configuration of these properties through application properties files, enhancing
  * the security and efficiency of FCM service authentication and communication.
  * </p>
@@ -23,10 +31,37 @@ import java.time.Duration;
  * fcm.credential.privateKeyId=your-private-key-id
  * fcm.credential.privateKey=your-private-key
  * fcm.credential.clientEmail=your-client-email
+ * fcm.credential.jwtExpireDuration=PT1H
+ * fcm.credential.jwtRefreshAheadDuration=PT5M
  * fcm.connection.connectTimeout=PT10S
  * fcm.connection.readTimeout=PT30S
- * fcm.jwtTokenPoolSetting.maxTotal=20
- * fcm.jwtTokenPoolSetting.maxIdle=10
+ * fcm.connection.httpVersion=HTTP_2
+ * fcm.connection.clientCount=4
+ * fcm.connection.maxConcurrentStreams=100
+ * fcm.connection.virtualThreads=true
+ * fcm.send.maxInFlight=100
+ * fcm.retry.enabled=true
+ * fcm.retry.maxAttempts=3
+ * fcm.rateLimit.enabled=true
+ * fcm.rateLimit.permitsPerMinute=600000
+ * fcm.deadToken.enabled=true
+ * fcm.metrics.percentiles=0.5,0.95,0.99
+ * fcm.concurrencyLimit.enabled=true
+ * fcm.concurrencyLimit.maxLimit=1000
+ * fcm.circuitBreaker.enabled=true
+ * fcm.circuitBreaker.failureRateThreshold=0.5
+ * fcm.outbox.enabled=true
+ * fcm.outbox.directory=/var/lib/app/fcm-outbox
+ * fcm.priority.enabled=true
+ * fcm.priority.criticalShare=0.2
+ * fcm.idempotency.enabled=true
+ * fcm.idempotency.window=PT5M
+ * fcm.coalescing.enabled=true
+ * fcm.coalescing.linger=PT0.5S
+ * fcm.live-activity.enabled=true
+ * fcm.live-activity.min-interval=PT1S
+ * fcm.background-throttle.enabled=true
+ * fcm.background-throttle.min-interval=PT5M
  * </pre>
  *
  * @author Wai Leong
@@ -44,115 +79,2367 @@ public class FcmProperties {
     private final Credential credential = new Credential();
 
     /**
-     * Settings for managing the JWT token pool used in FCM authentication.
+     * Settings for sending messages, such as bulk send concurrency.
      */
+    private final SendSetting send = new SendSetting();
+
+    /**
+     * Settings for retrying sends that fail with a retriable FCM error.
+     */
+    private final RetrySetting retry = new RetrySetting();
+
+    /**
+     * Settings for pacing sends to stay within the FCM project send quota.
+     */
+    private final RateLimitSetting rateLimit = new RateLimitSetting();
+
+    /**
+     * Settings for remembering registration tokens that FCM reported as no longer valid.
+     */
+    private final DeadTokenSetting deadToken = new DeadTokenSetting();
+
+    /**
+     * Settings for the Micrometer metrics recorded when Micrometer is on the classpath.
+     */
+    private final MetricsSetting metrics = new MetricsSetting();
+
+    /**
+     * Settings for adapting the number of requests in flight to the concurrency FCM currently sustains.
+     */
+    private final ConcurrencyLimitSetting concurrencyLimit = new ConcurrencyLimitSetting();
+
+    /**
+     * Settings for failing fast while FCM is degraded, instead of waiting for the read timeout.
+     */
+    private final CircuitBreakerSetting circuitBreaker = new CircuitBreakerSetting();
+
+    /**
+     * Settings for the durable outbox that stores messages on disk and sends them in the background.
+     */
+    private final OutboxSetting outbox = new OutboxSetting();
+
+    /**
+     * Settings for the priority lanes that let latency-critical sends bypass bulk traffic.
+     */
+    private final PrioritySetting priority = new PrioritySetting();
+
+    /**
+     * Settings for idempotent sends, which swallow repeats of a recent send.
+     */
+    private final IdempotencySetting idempotency = new IdempotencySetting();
+
+    /**
+     * Settings for coalescing queued messages that share a recipient and collapse key.
+     */
+    private final CoalescingSetting coalescing = new CoalescingSetting();
+
+    /**
+     * Settings for the dispatcher of Live Activity updates, which coalesces and throttles them per activity.
+     */
+    private final LiveActivitySetting liveActivity = new LiveActivitySetting();
+
+    /**
+     * Settings for the per-token throttle of background messages, which suppresses those the device would not accept.
+     */
+    private final BackgroundThrottleSetting backgroundThrottle = new BackgroundThrottleSetting();
+
+    /**
+     * Settings for the former JWT token pool used in FCM authentication. No longer used.
+     */
+    @Deprecated
     private final JwtTokenPoolSetting jwtTokenPoolSetting = new JwtTokenPoolSetting();
 
 
     /**
-     * Gets the connection settings for FCM.
-     *
-     * @return the connection settings
+     * Gets the connection settings for FCM.
+     *
+     * @return the connection settings
+     */
+    public ConnectionSetting getConnection() {
+        return connection;
+    }
+
+    /**
+     * Gets the service account credentials for FCM.
+     *
+     * @return the service account credentials
+     */
+    public Credential getCredential() {
+        return credential;
+    }
+
+    /**
+     * Gets the send settings for FCM.
+     *
+     * @return the send settings
+     */
+    public SendSetting getSend() {
+        return send;
+    }
+
+    /**
+     * Gets the retry settings for FCM.
+     *
+     * @return the retry settings
+     */
+    public RetrySetting getRetry() {
+        return retry;
+    }
+
+    /**
+     * Gets the rate limit settings for FCM.
+     *
+     * @return the rate limit settings
+     */
+    public RateLimitSetting getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Gets the dead token settings for FCM.
+     *
+     * @return the dead token settings
+     */
+    public DeadTokenSetting getDeadToken() {
+        return deadToken;
+    }
+
+    /**
+     * Gets the metrics settings for FCM.
+     *
+     * @return the metrics settings
+     */
+    public MetricsSetting getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the concurrency limit settings for FCM.
+     *
+     * @return the concurrency limit settings
+     */
+    public ConcurrencyLimitSetting getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Gets the circuit breaker settings for FCM.
+     *
+     * @return the circuit breaker settings
+     */
+    public CircuitBreakerSetting getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Gets the outbox settings for FCM.
+     *
+     * @return the outbox settings
+     */
+    public OutboxSetting getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * Gets the priority lane settings for FCM.
+     *
+     * @return the priority lane settings
+     */
+    public PrioritySetting getPriority() {
+        return priority;
+    }
+
+    /**
+     * Gets the idempotency settings for FCM.
+     *
+     * @return the idempotency settings
+     */
+    public IdempotencySetting getIdempotency() {
+        return idempotency;
+    }
+
+    /**
+     * Gets the coalescing settings for FCM.
+     *
+     * @return the coalescing settings
+     */
+    public CoalescingSetting getCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * Gets the Live Activity settings for FCM.
+     *
+     * @return the Live Activity settings
+     */
+    public LiveActivitySetting getLiveActivity() {
+        return liveActivity;
+    }
+
+    /**
+     * Gets the background throttle settings for FCM.
+     *
+     * @return the background throttle settings
+     */
+    public BackgroundThrottleSetting getBackgroundThrottle() {
+        return backgroundThrottle;
+    }
+
+    /**
+     * Gets the JWT token pool settings for FCM.
+     *
+     * @return the JWT token pool settings
+     * @deprecated tokens are no longer pooled; a single token is cached by {@link FcmAccessTokenProvider}.
+     */
+    @Deprecated
+    public JwtTokenPoolSetting getJwtTokenPoolSetting() {
+        return jwtTokenPoolSetting;
+    }
+
+    /**
+     * Inner class to encapsulate connection settings for HTTP client used with FCM.
+     */
+    public static class ConnectionSetting {
+        /**
+         * Connect timeout duration for {@code HttpClient}.
+         *
+         * @see HttpClient.Builder#connectTimeout(Duration)
+         */
+        private Duration connectTimeout;
+
+        /**
+         * Read timeout duration for the underlying HTTP client.
+         *
+         * @see JdkClientHttpRequestFactory#setReadTimeout(Duration)
+         */
+        private Duration readTimeout;
+
+        /**
+         * SSL bundle name for setting up SSL context in {@code HttpClient}.
+         *
+         * @see HttpClient.Builder#sslContext(SSLContext)
+         */
+        private String sslBundleName;
+
+        /**
+         * Base URL of the FCM API. Only needs to be changed to point the client at a stand-in server for testing.
+         */
+        private String baseUrl = "https://fcm.googleapis.com";
+
+        /**
+         * HTTP protocol version preferred by {@code HttpClient}. HTTP/2 multiplexes concurrent requests over one
+         * connection, and falls back to HTTP/1.1 when the server does not support it.
+         *
+         * @see HttpClient.Builder#version(HttpClient.Version)
+         */
+        private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+
+        /**
+         * Number of independent {@code HttpClient} instances requests are spread across. Each one opens its own
+         * HTTP/2 connection to FCM, so raising it lifts the ceiling set by the stream limit of a single connection.
+         */
+        private int clientCount = 1;
+
+        /**
+         * How a client is chosen for each request when more than one is configured.
+         */
+        private FcmHttpClientPool.Selection clientSelection = FcmHttpClientPool.Selection.ROUND_ROBIN;
+
+        /**
+         * Maximum number of requests in flight per client, or {@code 0} for no limit. Requests beyond the capacity of
+         * all clients wait until one has room, instead of queueing inside the connection.
+         */
+        private int maxConcurrentStreams;
+
+        /**
+         * Whether FCM requests run on a dedicated virtual-thread-per-task executor instead of the application task
+         * executor. It also serves as the executor of every {@code HttpClient} and of background token refreshes.
+         * Requires JDK 21 or later.
+         */
+        private boolean virtualThreads;
+
+        /**
+         * Gets the connect timeout duration.
+         *
+         * @return the connect timeout duration
+         */
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        /**
+         * Sets the connect timeout duration.
+         *
+         * @param connectTimeout the connect timeout duration to set
+         */
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        /**
+         * Gets the read timeout duration.
+         *
+         * @return the read timeout duration
+         */
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        /**
+         * Sets the read timeout duration.
+         *
+         * @param readTimeout the read timeout duration to set
+         */
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        /**
+         * Gets the SSL bundle name.
+         *
+         * @return the SSL bundle name
+         */
+        public String getSslBundleName() {
+            return sslBundleName;
+        }
+
+        /**
+         * Sets the SSL bundle name.
+         *
+         * @param sslBundleName the SSL bundle name to set
+         */
+        public void setSslBundleName(String sslBundleName) {
+            this.sslBundleName = sslBundleName;
+        }
+
+        /**
+         * Gets the base URL of the FCM API.
+         *
+         * @return the base URL
+         */
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * Sets the base URL of the FCM API.
+         *
+         * @param baseUrl the base URL to set
+         */
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * Gets the HTTP protocol version.
+         *
+         * @return the HTTP protocol version
+         */
+        public HttpClient.Version getHttpVersion() {
+            return httpVersion;
+        }
+
+        /**
+         * Sets the HTTP protocol version.
+         *
+         * @param httpVersion the HTTP protocol version to set
+         */
+        public void setHttpVersion(HttpClient.Version httpVersion) {
+            this.httpVersion = httpVersion;
+        }
+
+        /**
+         * Gets the number of clients.
+         *
+         * @return the number of clients
+         */
+        public int getClientCount() {
+            return clientCount;
+        }
+
+        /**
+         * Sets the number of clients.
+         *
+         * @param clientCount the number of clients to set
+         */
+        public void setClientCount(int clientCount) {
+            this.clientCount = clientCount;
+        }
+
+        /**
+         * Gets the client selection strategy.
+         *
+         * @return the client selection strategy
+         */
+        public FcmHttpClientPool.Selection getClientSelection() {
+            return clientSelection;
+        }
+
+        /**
+         * Sets the client selection strategy.
+         *
+         * @param clientSelection the client selection strategy to set
+         */
+        public void setClientSelection(FcmHttpClientPool.Selection clientSelection) {
+            this.clientSelection = clientSelection;
+        }
+
+        /**
+         * Gets the maximum number of requests in flight per client.
+         *
+         * @return the maximum number of requests in flight per client
+         */
+        public int getMaxConcurrentStreams() {
+            return maxConcurrentStreams;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight per client.
+         *
+         * @param maxConcurrentStreams the maximum number of requests in flight per client to set
+         */
+        public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+            this.maxConcurrentStreams = maxConcurrentStreams;
+        }
+
+        /**
+         * Gets whether FCM requests run on a dedicated virtual-thread-per-task executor.
+         *
+         * @return whether FCM requests run on virtual threads
+         */
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * Sets whether FCM requests run on a dedicated virtual-thread-per-task executor.
+         *
+         * @param virtualThreads whether FCM requests run on virtual threads
+         */
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate settings for sending messages to FCM.
+     */
+    public static class SendSetting {
+        /**
+         * Default maximum number of requests in flight for a single bulk send.
+         */
+        private int maxInFlight = 100;
+
+        /**
+         * Gets the default maximum number of requests in flight for a single bulk send.
+         *
+         * @return the maximum number of in-flight requests
+         */
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        /**
+         * Sets the default maximum number of requests in flight for a single bulk send.
+         *
+         * @param maxInFlight the maximum number of in-flight requests to set
+         */
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the retry policy for sends that fail with {@code UNAVAILABLE}, {@code INTERNAL} or
+     * {@code QUOTA_EXCEEDED} (HTTP 503, 500 and 429), or with an I/O error.
+     */
+    public static class RetrySetting {
+        /**
+         * Whether failed sends are retried. Disabled by default.
+         */
+        private boolean enabled;
+
+        /**
+         * Maximum number of attempts, including the first one.
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * Delay before the first retry.
+         */
+        private Duration initialBackoff = Duration.ofMillis(500);
+
+        /**
+         * Upper bound of the exponential backoff.
+         */
+        private Duration maxBackoff = Duration.ofSeconds(30);
+
+        /**
+         * Factor by which the backoff grows after each attempt.
+         */
+        private double multiplier = 2.0;
+
+        /**
+         * Maximum fraction, between 0 and 1, by which each backoff is randomly reduced.
+         */
+        private double jitter = 0.5;
+
+        /**
+         * Total time, measured from the first attempt, after which no retry is started.
+         */
+        private Duration deadline = Duration.ofSeconds(60);
+
+        /**
+         * Gets whether failed sends are retried.
+         *
+         * @return {@code true} if retries are enabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether failed sends are retried.
+         *
+         * @param enabled {@code true} to enable retries
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the maximum number of attempts, including the first one.
+         *
+         * @return the maximum number of attempts
+         */
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * Sets the maximum number of attempts, including the first one.
+         *
+         * @param maxAttempts the maximum number of attempts to set
+         */
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        /**
+         * Gets the delay before the first retry.
+         *
+         * @return the initial backoff
+         */
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        /**
+         * Sets the delay before the first retry.
+         *
+         * @param initialBackoff the initial backoff to set
+         */
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        /**
+         * Gets the upper bound of the exponential backoff.
+         *
+         * @return the maximum backoff
+         */
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        /**
+         * Sets the upper bound of the exponential backoff.
+         *
+         * @param maxBackoff the maximum backoff to set
+         */
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        /**
+         * Gets the factor by which the backoff grows after each attempt.
+         *
+         * @return the backoff multiplier
+         */
+        public double getMultiplier() {
+            return multiplier;
+        }
+
+        /**
+         * Sets the factor by which the backoff grows after each attempt.
+         *
+         * @param multiplier the backoff multiplier to set
+         */
+        public void setMultiplier(double multiplier) {
+            this.multiplier = multiplier;
+        }
+
+        /**
+         * Gets the maximum fraction by which each backoff is randomly reduced.
+         *
+         * @return the jitter
+         */
+        public double getJitter() {
+            return jitter;
+        }
+
+        /**
+         * Sets the maximum fraction by which each backoff is randomly reduced.
+         *
+         * @param jitter the jitter to set
+         */
+        public void setJitter(double jitter) {
+            this.jitter = jitter;
+        }
+
+        /**
+         * Gets the total time after which no retry is started.
+         *
+         * @return the retry deadline
+         */
+        public Duration getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Sets the total time after which no retry is started.
+         *
+         * @param deadline the retry deadline to set
+         */
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the token-bucket rate limiter that keeps sends within the FCM project quota.
+     * FCM allows 600,000 sends per minute per project by default.
+     */
+    public static class RateLimitSetting {
+        /**
+         * Whether sends are rate limited. Disabled by default.
+         */
+        private boolean enabled;
+
+        /**
+         * Maximum sustained number of sends per minute.
+         */
+        private long permitsPerMinute = 600_000;
+
+        /**
+         * Number of sends allowed at once after an idle period. 0 means one second worth of permits.
+         */
+        private int burst = 0;
+
+        /**
+         * Behaviour when no permit is available: wait for one, or fail fast.
+         */
+        private FcmRateLimiter.Mode mode = FcmRateLimiter.Mode.BLOCK;
+
+        /**
+         * Longest time a send waits for a permit in blocking mode.
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * Whether the rate is lowered automatically when FCM returns QUOTA_EXCEEDED (HTTP 429).
+         */
+        private boolean adaptive = true;
+
+        /**
+         * Lowest rate an adaptive limiter goes down to.
+         */
+        private long minPermitsPerMinute = 6_000;
+
+        /**
+         * Factor, between 0 and 1, the rate is multiplied by when FCM returns QUOTA_EXCEEDED.
+         */
+        private double decreaseFactor = 0.5;
+
+        /**
+         * Minimum time between two decreases of the rate, and before each increase.
+         */
+        private Duration recoveryInterval = Duration.ofSeconds(10);
+
+        /**
+         * Fraction of the configured rate added back after each recovery interval without QUOTA_EXCEEDED.
+         */
+        private double recoveryStep = 0.1;
+
+        /**
+         * Fraction of the rate, from 0 inclusive to 1 exclusive, reserved for sends in the critical lane. 0 means that
+         * all lanes share one schedule of permits.
+         */
+        private double criticalShare = 0.0;
+
+        /**
+         * Indicates whether sends are rate limited.
+         *
+         * @return {@code true} if sends are rate limited
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether sends are rate limited.
+         *
+         * @param enabled {@code true} if sends are rate limited
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the maximum sustained number of sends per minute.
+         *
+         * @return the maximum sustained number of sends per minute
+         */
+        public long getPermitsPerMinute() {
+            return permitsPerMinute;
+        }
+
+        /**
+         * Sets the maximum sustained number of sends per minute.
+         *
+         * @param permitsPerMinute the maximum sustained number of sends per minute to set
+         */
+        public void setPermitsPerMinute(long permitsPerMinute) {
+            this.permitsPerMinute = permitsPerMinute;
+        }
+
+        /**
+         * Gets the number of sends allowed at once after an idle period.
+         *
+         * @return the number of sends allowed at once after an idle period
+         */
+        public int getBurst() {
+            return burst;
+        }
+
+        /**
+         * Sets the number of sends allowed at once after an idle period.
+         *
+         * @param burst the number of sends allowed at once after an idle period to set
+         */
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        /**
+         * Gets the behaviour when no permit is available: wait for one, or fail fast.
+         *
+         * @return the behaviour when no permit is available: wait for one, or fail fast
+         */
+        public FcmRateLimiter.Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * Sets the behaviour when no permit is available: wait for one, or fail fast.
+         *
+         * @param mode the behaviour when no permit is available: wait for one, or fail fast to set
+         */
+        public void setMode(FcmRateLimiter.Mode mode) {
+            this.mode = mode;
+        }
+
+        /**
+         * Gets the longest time a send waits for a permit in blocking mode.
+         *
+         * @return the longest time a send waits for a permit in blocking mode
+         */
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        /**
+         * Sets the longest time a send waits for a permit in blocking mode.
+         *
+         * @param maxWait the longest time a send waits for a permit in blocking mode to set
+         */
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        /**
+         * Indicates whether the rate is lowered automatically when FCM returns QUOTA_EXCEEDED (HTTP 429).
+         *
+         * @return {@code true} if the rate is lowered automatically when FCM returns QUOTA_EXCEEDED (HTTP 429)
+         */
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        /**
+         * Sets whether the rate is lowered automatically when FCM returns QUOTA_EXCEEDED (HTTP 429).
+         *
+         * @param adaptive {@code true} if the rate is lowered automatically when FCM returns QUOTA_EXCEEDED (HTTP 429)
+         */
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        /**
+         * Gets the lowest rate an adaptive limiter goes down to.
+         *
+         * @return the lowest rate an adaptive limiter goes down to
+         */
+        public long getMinPermitsPerMinute() {
+            return minPermitsPerMinute;
+        }
+
+        /**
+         * Sets the lowest rate an adaptive limiter goes down to.
+         *
+         * @param minPermitsPerMinute the lowest rate an adaptive limiter goes down to to set
+         */
+        public void setMinPermitsPerMinute(long minPermitsPerMinute) {
+            this.minPermitsPerMinute = minPermitsPerMinute;
+        }
+
+        /**
+         * Gets the factor, between 0 and 1, the rate is multiplied by when FCM returns QUOTA_EXCEEDED.
+         *
+         * @return the factor, between 0 and 1, the rate is multiplied by when FCM returns QUOTA_EXCEEDED
+         */
+        public double getDecreaseFactor() {
+            return decreaseFactor;
+        }
+
+        /**
+         * Sets the factor, between 0 and 1, the rate is multiplied by when FCM returns QUOTA_EXCEEDED.
+         *
+         * @param decreaseFactor the factor, between 0 and 1, the rate is multiplied by when FCM returns QUOTA_EXCEEDED to set
+         */
+        public void setDecreaseFactor(double decreaseFactor) {
+            this.decreaseFactor = decreaseFactor;
+        }
+
+        /**
+         * Gets the minimum time between two decreases of the rate, and before each increase.
+         *
+         * @return the minimum time between two decreases of the rate, and before each increase
+         */
+        public Duration getRecoveryInterval() {
+            return recoveryInterval;
+        }
+
+        /**
+         * Sets the minimum time between two decreases of the rate, and before each increase.
+         *
+         * @param recoveryInterval the minimum time between two decreases of the rate, and before each increase to set
+         */
+        public void setRecoveryInterval(Duration recoveryInterval) {
+            this.recoveryInterval = recoveryInterval;
+        }
+
+        /**
+         * Gets the fraction of the configured rate added back after each recovery interval without QUOTA_EXCEEDED.
+         *
+         * @return the fraction of the configured rate added back after each recovery interval without QUOTA_EXCEEDED
+         */
+        public double getRecoveryStep() {
+            return recoveryStep;
+        }
+
+        /**
+         * Sets the fraction of the configured rate added back after each recovery interval without QUOTA_EXCEEDED.
+         *
+         * @param recoveryStep the fraction of the configured rate added back after each recovery interval without QUOTA_EXCEEDED to set
+         */
+        public void setRecoveryStep(double recoveryStep) {
+            this.recoveryStep = recoveryStep;
+        }
+
+        /**
+         * Gets the fraction of the rate reserved for sends in the critical lane.
+         *
+         * @return the fraction of the rate reserved for sends in the critical lane
+         */
+        public double getCriticalShare() {
+            return criticalShare;
+        }
+
+        /**
+         * Sets the fraction of the rate reserved for sends in the critical lane.
+         *
+         * @param criticalShare the fraction of the rate reserved for sends in the critical lane to set
+         */
+        public void setCriticalShare(double criticalShare) {
+            this.criticalShare = criticalShare;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the registry of registration tokens that FCM reported as {@code UNREGISTERED} or
+     * invalid, to which sends are rejected locally.
+     */
+    public static class DeadTokenSetting {
+        /**
+         * Whether dead tokens are remembered and sends to them rejected. Disabled by default.
+         */
+        private boolean enabled;
+
+        /**
+         * Maximum number of dead tokens remembered. The oldest ones are forgotten first.
+         */
+        private int maxTokens = 100_000;
+
+        /**
+         * Maximum number of dead tokens passed to the listeners at once.
+         */
+        private int listenerBatchSize = 500;
+
+        /**
+         * Longest time a detected dead token waits before the listeners are notified.
+         */
+        private Duration listenerFlushInterval = Duration.ofSeconds(5);
+
+        /**
+         * Indicates whether dead tokens are remembered and sends to them rejected.
+         *
+         * @return {@code true} if dead tokens are remembered and sends to them rejected
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether dead tokens are remembered and sends to them rejected.
+         *
+         * @param enabled {@code true} if dead tokens are remembered and sends to them rejected
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the maximum number of dead tokens remembered.
+         *
+         * @return the maximum number of dead tokens remembered
+         */
+        public int getMaxTokens() {
+            return maxTokens;
+        }
+
+        /**
+         * Sets the maximum number of dead tokens remembered.
+         *
+         * @param maxTokens the maximum number of dead tokens remembered to set
+         */
+        public void setMaxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        /**
+         * Gets the maximum number of dead tokens passed to the listeners at once.
+         *
+         * @return the maximum number of dead tokens passed to the listeners at once
+         */
+        public int getListenerBatchSize() {
+            return listenerBatchSize;
+        }
+
+        /**
+         * Sets the maximum number of dead tokens passed to the listeners at once.
+         *
+         * @param listenerBatchSize the maximum number of dead tokens passed to the listeners at once to set
+         */
+        public void setListenerBatchSize(int listenerBatchSize) {
+            this.listenerBatchSize = listenerBatchSize;
+        }
+
+        /**
+         * Gets the longest time a detected dead token waits before the listeners are notified.
+         *
+         * @return the longest time a detected dead token waits before the listeners are notified
+         */
+        public Duration getListenerFlushInterval() {
+            return listenerFlushInterval;
+        }
+
+        /**
+         * Sets the longest time a detected dead token waits before the listeners are notified.
+         *
+         * @param listenerFlushInterval the longest time a detected dead token waits before the listeners are notified to set
+         */
+        public void setListenerFlushInterval(Duration listenerFlushInterval) {
+            this.listenerFlushInterval = listenerFlushInterval;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the Micrometer metrics of the send path, recorded when a {@code MeterRegistry}
+     * bean is available.
+     */
+    public static class MetricsSetting {
+        /**
+         * Whether FCM metrics are recorded. Enabled by default.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Percentiles published for the send latency timers.
+         */
+        private double[] percentiles = {0.5, 0.95, 0.99};
+
+        /**
+         * Whether histogram buckets for aggregable percentiles are published.
+         */
+        private boolean percentileHistogram;
+
+        /**
+         * Indicates whether FCM metrics are recorded.
+         *
+         * @return {@code true} if FCM metrics are recorded
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether FCM metrics are recorded.
+         *
+         * @param enabled {@code true} if FCM metrics are recorded
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the percentiles published for the send latency timers.
+         *
+         * @return the percentiles published for the send latency timers
+         */
+        public double[] getPercentiles() {
+            return percentiles;
+        }
+
+        /**
+         * Sets the percentiles published for the send latency timers.
+         *
+         * @param percentiles the percentiles published for the send latency timers to set
+         */
+        public void setPercentiles(double[] percentiles) {
+            this.percentiles = percentiles;
+        }
+
+        /**
+         * Indicates whether histogram buckets for aggregable percentiles are published.
+         *
+         * @return {@code true} if histogram buckets for aggregable percentiles are published
+         */
+        public boolean isPercentileHistogram() {
+            return percentileHistogram;
+        }
+
+        /**
+         * Sets whether histogram buckets for aggregable percentiles are published.
+         *
+         * @param percentileHistogram {@code true} if histogram buckets for aggregable percentiles are published
+         */
+        public void setPercentileHistogram(boolean percentileHistogram) {
+            this.percentileHistogram = percentileHistogram;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the adaptive limit on the number of requests in flight to FCM, which is raised
+     * while latency stays stable and lowered when latency rises or FCM answers 429 or 503.
+     */
+    public static class ConcurrencyLimitSetting {
+        /**
+         * Whether the number of requests in flight is limited adaptively.
+         */
+        private boolean enabled;
+
+        /**
+         * Number of requests allowed in flight before any latency has been observed.
+         */
+        private int initialLimit = 100;
+
+        /**
+         * Lowest number of requests in flight the limit goes down to.
+         */
+        private int minLimit = 10;
+
+        /**
+         * Highest number of requests in flight the limit goes up to.
+         */
+        private int maxLimit = 1_000;
+
+        /**
+         * Behavior when the limit is reached: wait for a request to complete, or reject the send.
+         */
+        private FcmRateLimiter.Mode mode = FcmRateLimiter.Mode.BLOCK;
+
+        /**
+         * Longest a send waits for a request to complete in {@code BLOCK} mode.
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * Factor the limit is multiplied by when FCM answers 429 or 503, or a request times out.
+         */
+        private double decreaseFactor = 0.5;
+
+        /**
+         * Ratio of short-term to baseline latency above which the limit is lowered.
+         */
+        private double latencyTolerance = 1.5;
+
+        /**
+         * Indicates whether the number of requests in flight is limited adaptively.
+         *
+         * @return {@code true} if the number of requests in flight is limited adaptively
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether the number of requests in flight is limited adaptively.
+         *
+         * @param enabled {@code true} if the number of requests in flight is limited adaptively
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the number of requests allowed in flight before any latency has been observed.
+         *
+         * @return the number of requests allowed in flight before any latency has been observed
+         */
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        /**
+         * Sets the number of requests allowed in flight before any latency has been observed.
+         *
+         * @param initialLimit the number of requests allowed in flight before any latency has been observed to set
+         */
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        /**
+         * Gets the lowest number of requests in flight the limit goes down to.
+         *
+         * @return the lowest number of requests in flight the limit goes down to
+         */
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        /**
+         * Sets the lowest number of requests in flight the limit goes down to.
+         *
+         * @param minLimit the lowest number of requests in flight the limit goes down to to set
+         */
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        /**
+         * Gets the highest number of requests in flight the limit goes up to.
+         *
+         * @return the highest number of requests in flight the limit goes up to
+         */
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        /**
+         * Sets the highest number of requests in flight the limit goes up to.
+         *
+         * @param maxLimit the highest number of requests in flight the limit goes up to to set
+         */
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        /**
+         * Gets the behavior when the limit is reached: wait for a request to complete, or reject the send.
+         *
+         * @return the behavior when the limit is reached: wait for a request to complete, or reject the send
+         */
+        public FcmRateLimiter.Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * Sets the behavior when the limit is reached: wait for a request to complete, or reject the send.
+         *
+         * @param mode the behavior when the limit is reached: wait for a request to complete, or reject the send to set
+         */
+        public void setMode(FcmRateLimiter.Mode mode) {
+            this.mode = mode;
+        }
+
+        /**
+         * Gets the longest a send waits for a request to complete in {@code BLOCK} mode.
+         *
+         * @return the longest a send waits for a request to complete in {@code BLOCK} mode
+         */
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        /**
+         * Sets the longest a send waits for a request to complete in {@code BLOCK} mode.
+         *
+         * @param maxWait the longest a send waits for a request to complete in {@code BLOCK} mode to set
+         */
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        /**
+         * Gets the factor the limit is multiplied by when FCM answers 429 or 503, or a request times out.
+         *
+         * @return the factor the limit is multiplied by when FCM answers 429 or 503, or a request times out
+         */
+        public double getDecreaseFactor() {
+            return decreaseFactor;
+        }
+
+        /**
+         * Sets the factor the limit is multiplied by when FCM answers 429 or 503, or a request times out.
+         *
+         * @param decreaseFactor the factor the limit is multiplied by when FCM answers 429 or 503, or a request times out to set
+         */
+        public void setDecreaseFactor(double decreaseFactor) {
+            this.decreaseFactor = decreaseFactor;
+        }
+
+        /**
+         * Gets the ratio of short-term to baseline latency above which the limit is lowered.
+         *
+         * @return the ratio of short-term to baseline latency above which the limit is lowered
+         */
+        public double getLatencyTolerance() {
+            return latencyTolerance;
+        }
+
+        /**
+         * Sets the ratio of short-term to baseline latency above which the limit is lowered.
+         *
+         * @param latencyTolerance the ratio of short-term to baseline latency above which the limit is lowered to set
+         */
+        public void setLatencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the circuit breaker that rejects sends while FCM is degraded, judged by the
+     * rate of failed and slow attempts, and probes it again after a while.
+     */
+    public static class CircuitBreakerSetting {
+        /**
+         * Whether sends are rejected while FCM is degraded.
+         */
+        private boolean enabled;
+
+        /**
+         * Fraction of failed attempts, 5xx, 429 or I/O errors, that opens the breaker.
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * Fraction of slow attempts that opens the breaker.
+         */
+        private double slowCallRateThreshold = 0.8;
+
+        /**
+         * Duration from which an attempt counts as slow.
+         */
+        private Duration slowCallDuration = Duration.ofSeconds(5);
+
+        /**
+         * Period over which attempt outcomes are recorded.
+         */
+        private Duration slidingWindow = Duration.ofSeconds(10);
+
+        /**
+         * Number of attempts the sliding window must hold before the rates are evaluated.
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * How long the breaker rejects sends before probing FCM again.
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * Number of successful probe attempts that close the breaker again.
+         */
+        private int halfOpenCalls = 5;
+
+        /**
+         * Behavior when the breaker does not let a send through: reject it, or park it.
+         */
+        private FcmRateLimiter.Mode mode = FcmRateLimiter.Mode.FAIL_FAST;
+
+        /**
+         * Longest a send is parked in {@code BLOCK} mode.
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * Indicates whether sends are rejected while FCM is degraded.
+         *
+         * @return {@code true} if sends are rejected while FCM is degraded
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether sends are rejected while FCM is degraded.
+         *
+         * @param enabled {@code true} if sends are rejected while FCM is degraded
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the fraction of failed attempts, 5xx, 429 or I/O errors, that opens the breaker.
+         *
+         * @return the fraction of failed attempts, 5xx, 429 or I/O errors, that opens the breaker
+         */
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        /**
+         * Sets the fraction of failed attempts, 5xx, 429 or I/O errors, that opens the breaker.
+         *
+         * @param failureRateThreshold the fraction of failed attempts, 5xx, 429 or I/O errors, that opens the breaker to set
+         */
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        /**
+         * Gets the fraction of slow attempts that opens the breaker.
+         *
+         * @return the fraction of slow attempts that opens the breaker
+         */
+        public double getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        /**
+         * Sets the fraction of slow attempts that opens the breaker.
+         *
+         * @param slowCallRateThreshold the fraction of slow attempts that opens the breaker to set
+         */
+        public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        /**
+         * Gets the duration from which an attempt counts as slow.
+         *
+         * @return the duration from which an attempt counts as slow
+         */
+        public Duration getSlowCallDuration() {
+            return slowCallDuration;
+        }
+
+        /**
+         * Sets the duration from which an attempt counts as slow.
+         *
+         * @param slowCallDuration the duration from which an attempt counts as slow to set
+         */
+        public void setSlowCallDuration(Duration slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+        }
+
+        /**
+         * Gets the period over which attempt outcomes are recorded.
+         *
+         * @return the period over which attempt outcomes are recorded
+         */
+        public Duration getSlidingWindow() {
+            return slidingWindow;
+        }
+
+        /**
+         * Sets the period over which attempt outcomes are recorded.
+         *
+         * @param slidingWindow the period over which attempt outcomes are recorded to set
+         */
+        public void setSlidingWindow(Duration slidingWindow) {
+            this.slidingWindow = slidingWindow;
+        }
+
+        /**
+         * Gets the number of attempts the sliding window must hold before the rates are evaluated.
+         *
+         * @return the number of attempts the sliding window must hold before the rates are evaluated
+         */
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        /**
+         * Sets the number of attempts the sliding window must hold before the rates are evaluated.
+         *
+         * @param minimumCalls the number of attempts the sliding window must hold before the rates are evaluated to set
+         */
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        /**
+         * Gets the how long the breaker rejects sends before probing FCM again.
+         *
+         * @return the how long the breaker rejects sends before probing FCM again
+         */
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        /**
+         * Sets the how long the breaker rejects sends before probing FCM again.
+         *
+         * @param openDuration the how long the breaker rejects sends before probing FCM again to set
+         */
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        /**
+         * Gets the number of successful probe attempts that close the breaker again.
+         *
+         * @return the number of successful probe attempts that close the breaker again
+         */
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        /**
+         * Sets the number of successful probe attempts that close the breaker again.
+         *
+         * @param halfOpenCalls the number of successful probe attempts that close the breaker again to set
+         */
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+
+        /**
+         * Gets the behavior when the breaker does not let a send through: reject it, or park it.
+         *
+         * @return the behavior when the breaker does not let a send through: reject it, or park it
+         */
+        public FcmRateLimiter.Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * Sets the behavior when the breaker does not let a send through: reject it, or park it.
+         *
+         * @param mode the behavior when the breaker does not let a send through: reject it, or park it to set
+         */
+        public void setMode(FcmRateLimiter.Mode mode) {
+            this.mode = mode;
+        }
+
+        /**
+         * Gets the longest a send is parked in {@code BLOCK} mode.
+         *
+         * @return the longest a send is parked in {@code BLOCK} mode
+         */
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        /**
+         * Sets the longest a send is parked in {@code BLOCK} mode.
+         *
+         * @param maxWait the longest a send is parked in {@code BLOCK} mode to set
+         */
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the durable, file-backed outbox, whose queued messages survive restarts and are
+     * delivered at least once.
+     */
+    public static class OutboxSetting {
+        /**
+         * Whether the durable outbox is enabled.
+         */
+        private boolean enabled;
+
+        /**
+         * Store backing the outbox: local segment files, or a table in the application's database.
+         */
+        private FcmOutbox.Store store = FcmOutbox.Store.FILE;
+
+        /**
+         * Directory holding the outbox segment files. Required when the outbox is enabled with the file store.
+         */
+        private String directory;
+
+        /**
+         * Size of each memory-mapped segment file, which bounds the size of a single message.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Maximum number of messages the dispatcher sends per batch.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Time the dispatcher waits before looking for new messages once the outbox is drained.
+         */
+        private Duration pollInterval = Duration.ofMillis(100);
+
+        /**
+         * Interval at which queued messages are written through to the storage device.
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * Name of the outbox table, optionally qualified by its schema. Only used by the JDBC store.
+         */
+        private String tableName = "fcm_outbox";
+
+        /**
+         * Maximum number of messages of a batch in flight at any time. Only used by the JDBC store.
+         */
+        private int maxInFlight = 16;
+
+        /**
+         * Number of transient failures after which a message is marked as failed, or moved to the dead-letter log of
+         * the file store.
+         */
+        private int maxAttempts = 10;
+
+        /**
+         * Delay before the first retry of a transiently failed message, doubled with each attempt. Only used by the
+         * JDBC store.
+         */
+        private Duration retryBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Indicates whether the durable outbox is enabled.
+         *
+         * @return {@code true} if the durable outbox is enabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether the durable outbox is enabled.
+         *
+         * @param enabled {@code true} if the durable outbox is enabled
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the store backing the outbox.
+         *
+         * @return the store backing the outbox
+         */
+        public FcmOutbox.Store getStore() {
+            return store;
+        }
+
+        /**
+         * Sets the store backing the outbox.
+         *
+         * @param store the store backing the outbox to set
+         */
+        public void setStore(FcmOutbox.Store store) {
+            this.store = store;
+        }
+
+        /**
+         * Gets the directory holding the outbox segment files.
+         *
+         * @return the directory holding the outbox segment files
+         */
+        public String getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Sets the directory holding the outbox segment files.
+         *
+         * @param directory the directory holding the outbox segment files to set
+         */
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Gets the size of each memory-mapped segment file.
+         *
+         * @return the size of each segment file
+         */
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        /**
+         * Sets the size of each memory-mapped segment file.
+         *
+         * @param segmentSize the size of each segment file to set
+         */
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        /**
+         * Gets the maximum number of messages the dispatcher sends per batch.
+         *
+         * @return the maximum number of messages the dispatcher sends per batch
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Sets the maximum number of messages the dispatcher sends per batch.
+         *
+         * @param batchSize the maximum number of messages the dispatcher sends per batch to set
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Gets the time the dispatcher waits before looking for new messages once the outbox is drained.
+         *
+         * @return the time the dispatcher waits before looking for new messages once the outbox is drained
+         */
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        /**
+         * Sets the time the dispatcher waits before looking for new messages once the outbox is drained.
+         *
+         * @param pollInterval the time the dispatcher waits before looking for new messages once the outbox is drained to set
+         */
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        /**
+         * Gets the interval at which queued messages are written through to the storage device.
+         *
+         * @return the interval at which queued messages are written through to the storage device
+         */
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        /**
+         * Sets the interval at which queued messages are written through to the storage device.
+         *
+         * @param flushInterval the interval at which queued messages are written through to the storage device to set
+         */
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        /**
+         * Gets the name of the outbox table.
+         *
+         * @return the name of the outbox table
+         */
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * Sets the name of the outbox table.
+         *
+         * @param tableName the name of the outbox table to set
+         */
+        public void setTableName(String tableName) {
+            this.tableName = tableName;
+        }
+
+        /**
+         * Gets the maximum number of messages of a batch in flight at any time.
+         *
+         * @return the maximum number of messages of a batch in flight
+         */
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        /**
+         * Sets the maximum number of messages of a batch in flight at any time.
+         *
+         * @param maxInFlight the maximum number of messages of a batch in flight to set
+         */
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        /**
+         * Gets the number of transient failures after which a message is marked as failed.
+         *
+         * @return the maximum number of attempts per message
+         */
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * Sets the number of transient failures after which a message is marked as failed.
+         *
+         * @param maxAttempts the maximum number of attempts per message to set
+         */
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        /**
+         * Gets the delay before the first retry of a transiently failed message.
+         *
+         * @return the delay before the first retry
+         */
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        /**
+         * Sets the delay before the first retry of a transiently failed message.
+         *
+         * @param retryBackoff the delay before the first retry to set
+         */
+        public void setRetryBackoff(Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate the priority lanes, which reserve a share of the requests in flight for
+     * latency-critical sends and schedule the waiting sends of each lane.
+     */
+    public static class PrioritySetting {
+        /**
+         * Whether sends are scheduled in priority lanes.
+         */
+        private boolean enabled;
+
+        /**
+         * Maximum number of requests in flight across all lanes. Ignored when the adaptive concurrency limit is
+         * enabled, whose current limit is used instead.
+         */
+        private int maxInFlight = 256;
+
+        /**
+         * Fraction of the requests in flight reserved for the critical lane.
+         */
+        private double criticalShare = 0.2;
+
+        /**
+         * Fraction of the requests in flight reserved for the standard lane.
+         */
+        private double standardShare = 0.0;
+
+        /**
+         * How the waiting sends of the lanes are served: strictly by priority, or in proportion to the lane weights.
+         */
+        private FcmPriorityScheduler.Scheduling scheduling = FcmPriorityScheduler.Scheduling.WEIGHTED;
+
+        /**
+         * Weight of the critical lane in weighted scheduling.
+         */
+        private int criticalWeight = 16;
+
+        /**
+         * Weight of the standard lane in weighted scheduling.
+         */
+        private int standardWeight = 4;
+
+        /**
+         * Weight of the bulk lane in weighted scheduling.
+         */
+        private int bulkWeight = 1;
+
+        /**
+         * Whether a send waits for a slot in its lane, or is rejected at once when none is free.
+         */
+        private FcmRateLimiter.Mode mode = FcmRateLimiter.Mode.BLOCK;
+
+        /**
+         * Maximum time a send waits for a slot in its lane in BLOCK mode.
+         */
+        private Duration maxWait = Duration.ofSeconds(60);
+
+        /**
+         * Indicates whether sends are scheduled in priority lanes.
+         *
+         * @return {@code true} if sends are scheduled in priority lanes
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether sends are scheduled in priority lanes.
+         *
+         * @param enabled {@code true} if sends are scheduled in priority lanes
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the maximum number of requests in flight across all lanes.
+         *
+         * @return the maximum number of requests in flight across all lanes
+         */
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight across all lanes.
+         *
+         * @param maxInFlight the maximum number of requests in flight across all lanes to set
+         */
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        /**
+         * Gets the fraction of the requests in flight reserved for the critical lane.
+         *
+         * @return the fraction of the requests in flight reserved for the critical lane
+         */
+        public double getCriticalShare() {
+            return criticalShare;
+        }
+
+        /**
+         * Sets the fraction of the requests in flight reserved for the critical lane.
+         *
+         * @param criticalShare the fraction of the requests in flight reserved for the critical lane to set
+         */
+        public void setCriticalShare(double criticalShare) {
+            this.criticalShare = criticalShare;
+        }
+
+        /**
+         * Gets the fraction of the requests in flight reserved for the standard lane.
+         *
+         * @return the fraction of the requests in flight reserved for the standard lane
+         */
+        public double getStandardShare() {
+            return standardShare;
+        }
+
+        /**
+         * Sets the fraction of the requests in flight reserved for the standard lane.
+         *
+         * @param standardShare the fraction of the requests in flight reserved for the standard lane to set
+         */
+        public void setStandardShare(double standardShare) {
+            this.standardShare = standardShare;
+        }
+
+        /**
+         * Gets the how the waiting sends of the lanes are served: strictly by priority, or in proportion to the lane weights.
+         *
+         * @return the how the waiting sends of the lanes are served: strictly by priority, or in proportion to the lane weights
+         */
+        public FcmPriorityScheduler.Scheduling getScheduling() {
+            return scheduling;
+        }
+
+        /**
+         * Sets the how the waiting sends of the lanes are served: strictly by priority, or in proportion to the lane weights.
+         *
+         * @param scheduling the how the waiting sends of the lanes are served: strictly by priority, or in proportion to the lane weights to set
+         */
+        public void setScheduling(FcmPriorityScheduler.Scheduling scheduling) {
+            this.scheduling = scheduling;
+        }
+
+        /**
+         * Gets the weight of the critical lane in weighted scheduling.
+         *
+         * @return the weight of the critical lane in weighted scheduling
+         */
+        public int getCriticalWeight() {
+            return criticalWeight;
+        }
+
+        /**
+         * Sets the weight of the critical lane in weighted scheduling.
+         *
+         * @param criticalWeight the weight of the critical lane in weighted scheduling to set
+         */
+        public void setCriticalWeight(int criticalWeight) {
+            this.criticalWeight = criticalWeight;
+        }
+
+        /**
+         * Gets the weight of the standard lane in weighted scheduling.
+         *
+         * @return the weight of the standard lane in weighted scheduling
+         */
+        public int getStandardWeight() {
+            return standardWeight;
+        }
+
+        /**
+         * Sets the weight of the standard lane in weighted scheduling.
+         *
+         * @param standardWeight the weight of the standard lane in weighted scheduling to set
+         */
+        public void setStandardWeight(int standardWeight) {
+            this.standardWeight = standardWeight;
+        }
+
+        /**
+         * Gets the weight of the bulk lane in weighted scheduling.
+         *
+         * @return the weight of the bulk lane in weighted scheduling
+         */
+        public int getBulkWeight() {
+            return bulkWeight;
+        }
+
+        /**
+         * Sets the weight of the bulk lane in weighted scheduling.
+         *
+         * @param bulkWeight the weight of the bulk lane in weighted scheduling to set
+         */
+        public void setBulkWeight(int bulkWeight) {
+            this.bulkWeight = bulkWeight;
+        }
+
+        /**
+         * Indicates whether a send waits for a slot in its lane, or is rejected at once when none is free.
+         *
+         * @return {@code true} if a send waits for a slot in its lane, or is rejected at once when none is free
+         */
+        public FcmRateLimiter.Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * Sets whether a send waits for a slot in its lane, or is rejected at once when none is free.
+         *
+         * @param mode {@code true} if a send waits for a slot in its lane, or is rejected at once when none is free
+         */
+        public void setMode(FcmRateLimiter.Mode mode) {
+            this.mode = mode;
+        }
+
+        /**
+         * Gets the maximum time a send waits for a slot in its lane in BLOCK mode.
+         *
+         * @return the maximum time a send waits for a slot in its lane in BLOCK mode
+         */
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        /**
+         * Sets the maximum time a send waits for a slot in its lane in BLOCK mode.
+         *
+         * @param maxWait the maximum time a send waits for a slot in its lane in BLOCK mode to set
+         */
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Inner class to encapsulate idempotent sends, which swallow repeats of the same message within a
+     * deduplication window.
      */
-    public ConnectionSetting getConnection() {
-        return connection;
+    public static class IdempotencySetting {
+        /**
+         * Whether repeats of a recent send are swallowed.
+         */
+        private boolean enabled;
+
+        /**
+         * Time during which a repeat of a send is swallowed.
+         */
+        private Duration window = Duration.ofMinutes(5);
+
+        /**
+         * Maximum number of recent sends remembered by the in-memory store.
+         */
+        private int maxEntries = 100_000;
+
+        /**
+         * Indicates whether repeats of a recent send are swallowed.
+         *
+         * @return {@code true} if repeats of a recent send are swallowed
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether repeats of a recent send are swallowed.
+         *
+         * @param enabled {@code true} if repeats of a recent send are swallowed
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the time during which a repeat of a send is swallowed.
+         *
+         * @return the time during which a repeat of a send is swallowed
+         */
+        public Duration getWindow() {
+            return window;
+        }
+
+        /**
+         * Sets the time during which a repeat of a send is swallowed.
+         *
+         * @param window the time during which a repeat of a send is swallowed to set
+         */
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        /**
+         * Gets the maximum number of recent sends remembered by the in-memory store.
+         *
+         * @return the maximum number of recent sends remembered by the in-memory store
+         */
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        /**
+         * Sets the maximum number of recent sends remembered by the in-memory store.
+         *
+         * @param maxEntries the maximum number of recent sends remembered by the in-memory store to set
+         */
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
     }
 
     /**
-     * Gets the service account credentials for FCM.
-     *
-     * @return the service account credentials
+     * Inner class to encapsulate the coalescing queue, which replaces a queued message by a newer one with the
+     * same recipient and collapse key.
      */
-    public Credential getCredential() {
-        return credential;
+    public static class CoalescingSetting {
+        /**
+         * Whether the coalescing queue is created.
+         */
+        private boolean enabled;
+
+        /**
+         * Time a message with a collapse key is held, waiting for a newer one, before it is sent.
+         */
+        private Duration linger = Duration.ofMillis(500);
+
+        /**
+         * Maximum number of requests sent by the queue at the same time.
+         */
+        private int maxInFlight = 100;
+
+        /**
+         * Maximum number of messages held by the queue, with or without a collapse key.
+         */
+        private int maxPending = 100_000;
+
+        /**
+         * Indicates whether the coalescing queue is created.
+         *
+         * @return {@code true} if the coalescing queue is created
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether the coalescing queue is created.
+         *
+         * @param enabled {@code true} if the coalescing queue is created
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the time a message with a collapse key is held, waiting for a newer one, before it is sent.
+         *
+         * @return the time a message with a collapse key is held, waiting for a newer one, before it is sent
+         */
+        public Duration getLinger() {
+            return linger;
+        }
+
+        /**
+         * Sets the time a message with a collapse key is held, waiting for a newer one, before it is sent.
+         *
+         * @param linger the time a message with a collapse key is held, waiting for a newer one, before it is sent to set
+         */
+        public void setLinger(Duration linger) {
+            this.linger = linger;
+        }
+
+        /**
+         * Gets the maximum number of requests sent by the queue at the same time.
+         *
+         * @return the maximum number of requests sent by the queue at the same time
+         */
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        /**
+         * Sets the maximum number of requests sent by the queue at the same time.
+         *
+         * @param maxInFlight the maximum number of requests sent by the queue at the same time to set
+         */
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        /**
+         * Gets the maximum number of messages held by the queue.
+         *
+         * @return the maximum number of messages held by the queue
+         */
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        /**
+         * Sets the maximum number of messages held by the queue.
+         *
+         * @param maxPending the maximum number of messages held by the queue to set
+         */
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
     }
 
     /**
-     * Gets the JWT token pool settings for FCM.
-     *
-     * @return the JWT token pool settings
+     * Inner class to encapsulate the Live Activity dispatcher, which keeps only the latest content state of an
+     * activity and sends it at most once per interval.
      */
-    public JwtTokenPoolSetting getJwtTokenPoolSetting() {
-        return jwtTokenPoolSetting;
+    public static class LiveActivitySetting {
+        /**
+         * Whether the Live Activity dispatcher is created.
+         */
+        private boolean enabled;
+
+        /**
+         * Minimum time between two updates sent to the same activity. End events are always sent at once.
+         */
+        private Duration minInterval = Duration.ofSeconds(1);
+
+        /**
+         * Maximum number of updates held, beyond which stale or the least relevant updates are dropped.
+         */
+        private int maxPending = 10_000;
+
+        /**
+         * Indicates whether the Live Activity dispatcher is created.
+         *
+         * @return {@code true} if the Live Activity dispatcher is created
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether the Live Activity dispatcher is created.
+         *
+         * @param enabled {@code true} if the Live Activity dispatcher is created
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the minimum time between two updates sent to the same activity.
+         *
+         * @return the minimum time between two updates sent to the same activity
+         */
+        public Duration getMinInterval() {
+            return minInterval;
+        }
+
+        /**
+         * Sets the minimum time between two updates sent to the same activity.
+         *
+         * @param minInterval the minimum time between two updates sent to the same activity to set
+         */
+        public void setMinInterval(Duration minInterval) {
+            this.minInterval = minInterval;
+        }
+
+        /**
+         * Gets the maximum number of updates held, beyond which stale or the least relevant updates are dropped.
+         *
+         * @return the maximum number of updates held, beyond which stale or the least relevant updates are dropped
+         */
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        /**
+         * Sets the maximum number of updates held, beyond which stale or the least relevant updates are dropped.
+         *
+         * @param maxPending the maximum number of updates held, beyond which stale or the least relevant updates are dropped to set
+         */
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
     }
 
     /**
-     * Inner class to encapsulate connection settings for HTTP client used with FCM.
+     * Inner class to encapsulate the per-token throttle of background messages: APNs pushes with
+     * {@code content-available} set and data-only messages.
      */
-    public static class ConnectionSetting {
+    public static class BackgroundThrottleSetting {
         /**
-         * Connect timeout duration for {@code HttpClient}.
+         * Whether background messages sent to a token too often are suppressed.
+         */
+        private boolean enabled;
+
+        /**
+         * Minimum time between two background messages sent to the same token.
+         */
+        private Duration minInterval = Duration.ofMinutes(5);
+
+        /**
+         * What happens to the data of a suppressed message: merged into the next background message sent to the token,
+         * or dropped.
+         */
+        private FcmBackgroundThrottle.Mode mode = FcmBackgroundThrottle.Mode.MERGE;
+
+        /**
+         * Time a token is tracked after its last background message. Must be at least the minimum interval.
+         */
+        private Duration timeToLive = Duration.ofHours(1);
+
+        /**
+         * Maximum number of tokens tracked, beyond which the oldest ones are evicted early.
+         */
+        private int maxTokens = 1_000_000;
+
+        /**
+         * Indicates whether background messages sent to a token too often are suppressed.
          *
-         * @see HttpClient.Builder#connectTimeout(Duration)
+         * @return {@code true} if background messages sent to a token too often are suppressed
          */
-        private Duration connectTimeout;
+        public boolean isEnabled() {
+            return enabled;
+        }
 
         /**
-         * Read timeout duration for the underlying HTTP client.
+         * Sets whether background messages sent to a token too often are suppressed.
          *
-         * @see JdkClientHttpRequestFactory#setReadTimeout(Duration)
+         * @param enabled {@code true} if background messages sent to a token too often are suppressed
          */
-        private Duration readTimeout;
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
 
         /**
-         * SSL bundle name for setting up SSL context in {@code HttpClient}.
+         * Gets the minimum time between two background messages sent to the same token.
          *
-         * @see HttpClient.Builder#sslContext(SSLContext)
+         * @return the minimum time between two background messages sent to the same token
          */
-        private String sslBundleName;
+        public Duration getMinInterval() {
+            return minInterval;
+        }
 
         /**
-         * Gets the connect timeout duration.
+         * Sets the minimum time between two background messages sent to the same token.
          *
-         * @return the connect timeout duration
+         * @param minInterval the minimum time between two background messages sent to the same token to set
          */
-        public Duration getConnectTimeout() {
-            return connectTimeout;
+        public void setMinInterval(Duration minInterval) {
+            this.minInterval = minInterval;
         }
 
         /**
-         * Sets the connect timeout duration.
+         * Gets what happens to the data of a suppressed message.
          *
-         * @param connectTimeout the connect timeout duration to set
+         * @return the mode of the background throttle
          */
-        public void setConnectTimeout(Duration connectTimeout) {
-            this.connectTimeout = connectTimeout;
+        public FcmBackgroundThrottle.Mode getMode() {
+            return mode;
         }
 
         /**
-         * Gets the read timeout duration.
+         * Sets what happens to the data of a suppressed message.
          *
-         * @return the read timeout duration
+         * @param mode the mode of the background throttle to set
          */
-        public Duration getReadTimeout() {
-            return readTimeout;
+        public void setMode(FcmBackgroundThrottle.Mode mode) {
+            this.mode = mode;
         }
 
         /**
-         * Sets the read timeout duration.
+         * Gets the time a token is tracked after its last background message.
          *
-         * @param readTimeout the read timeout duration to set
+         * @return the time a token is tracked after its last background message
          */
-        public void setReadTimeout(Duration readTimeout) {
-            this.readTimeout = readTimeout;
+        public Duration getTimeToLive() {
+            return timeToLive;
         }
 
         /**
-         * Gets the SSL bundle name.
+         * Sets the time a token is tracked after its last background message.
          *
-         * @return the SSL bundle name
+         * @param timeToLive the time a token is tracked after its last background message to set
          */
-        public String getSslBundleName() {
-            return sslBundleName;
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
         }
 
         /**
-         * Sets the SSL bundle name.
+         * Gets the maximum number of tokens tracked, beyond which the oldest ones are evicted early.
          *
-         * @param sslBundleName the SSL bundle name to set
+         * @return the maximum number of tokens tracked, beyond which the oldest ones are evicted early
          */
-        public void setSslBundleName(String sslBundleName) {
-            this.sslBundleName = sslBundleName;
+        public int getMaxTokens() {
+            return maxTokens;
+        }
+
+        /**
+         * Sets the maximum number of tokens tracked, beyond which the oldest ones are evicted early.
+         *
+         * @param maxTokens the maximum number of tokens tracked, beyond which the oldest ones are evicted early to set
+         */
+        public void setMaxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
         }
     }
 
@@ -197,6 +2484,10 @@ public class FcmProperties {
          * The time period a JWT token remains valid, set to 1 hour by default.
          */
         private Duration jwtExpireDuration = Duration.ofHours(1);
+        /**
+         * How long before a JWT token expires a replacement is minted in the background, 5 minutes by default.
+         */
+        private Duration jwtRefreshAheadDuration = Duration.ofMinutes(5);
 
         /**
          * Gets the project ID of the Firebase service account.
@@ -287,11 +2578,32 @@ public class FcmProperties {
         public void setJwtExpireDuration(Duration jwtExpireDuration) {
             this.jwtExpireDuration = jwtExpireDuration;
         }
+
+        /**
+         * Gets how long before a JWT token expires a replacement is minted in the background.
+         *
+         * @return The refresh-ahead duration.
+         */
+        public Duration getJwtRefreshAheadDuration() {
+            return jwtRefreshAheadDuration;
+        }
+
+        /**
+         * Sets how long before a JWT token expires a replacement is minted in the background.
+         *
+         * @param jwtRefreshAheadDuration The refresh-ahead duration.
+         */
+        public void setJwtRefreshAheadDuration(Duration jwtRefreshAheadDuration) {
+            this.jwtRefreshAheadDuration = jwtRefreshAheadDuration;
+        }
     }
 
     /**
      * Configuration settings for managing the pool of JWT tokens used in FCM authentication.
+     *
+     * @deprecated tokens are no longer pooled; a single token is cached by {@link FcmAccessTokenProvider}.
      */
+    @Deprecated
     public static class JwtTokenPoolSetting {
         /**
          * Max total number of JWT tokens in the pool.
@@ -302,6 +2614,7 @@ public class FcmProperties {
          */
         private int maxIdle = 20;
 
+        @DeprecatedConfigurationProperty(reason = "JWT tokens are no longer pooled")
         public int getMaxTotal() {
             return maxTotal;
         }
@@ -310,6 +2623,7 @@ public class FcmProperties {
             this.maxTotal = maxTotal;
         }
 
+        @DeprecatedConfigurationProperty(reason = "JWT tokens are no longer pooled")
         public int getMaxIdle() {
             return maxIdle;
         }
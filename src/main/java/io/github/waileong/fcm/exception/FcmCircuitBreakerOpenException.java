@@ -0,0 +1,20 @@
+package io.github.waileong.fcm.exception;
+
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+/**
+ * Thrown when a send is rejected by the client-side circuit breaker because FCM is considered degraded.
+ *
+ * @author Wai Leong
+ */
+public class FcmCircuitBreakerOpenException extends FcmSendRejectedException {
+
+    /**
+     * Constructs a new FcmCircuitBreakerOpenException with the specified message.
+     *
+     * @param message The error message describing the nature of the rejection.
+     */
+    public FcmCircuitBreakerOpenException(String message) {
+        super(FcmErrorCode.UNAVAILABLE, message);
+    }
+}
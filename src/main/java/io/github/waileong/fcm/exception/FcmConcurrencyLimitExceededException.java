@@ -0,0 +1,21 @@
+package io.github.waileong.fcm.exception;
+
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+/**
+ * Thrown when a send is rejected by the client-side concurrency limiter because the number of requests in flight
+ * has reached the limit FCM is currently estimated to sustain.
+ *
+ * @author Wai Leong
+ */
+public class FcmConcurrencyLimitExceededException extends FcmSendRejectedException {
+
+    /**
+     * Constructs a new FcmConcurrencyLimitExceededException with the specified message.
+     *
+     * @param message The error message describing the nature of the rejection.
+     */
+    public FcmConcurrencyLimitExceededException(String message) {
+        super(FcmErrorCode.UNAVAILABLE, message);
+    }
+}
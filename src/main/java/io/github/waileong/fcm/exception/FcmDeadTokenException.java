@@ -0,0 +1,21 @@
+package io.github.waileong.fcm.exception;
+
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+/**
+ * Thrown when a send is rejected locally because FCM already reported its registration token as unregistered or
+ * invalid.
+ *
+ * @author Wai Leong
+ */
+public class FcmDeadTokenException extends FcmSendRejectedException {
+
+    /**
+     * Constructs a new FcmDeadTokenException with the specified message.
+     *
+     * @param message The error message describing the nature of the rejection.
+     */
+    public FcmDeadTokenException(String message) {
+        super(FcmErrorCode.UNREGISTERED, message);
+    }
+}
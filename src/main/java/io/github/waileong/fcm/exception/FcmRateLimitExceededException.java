@@ -0,0 +1,21 @@
+package io.github.waileong.fcm.exception;
+
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+/**
+ * Thrown when a send is rejected by the client-side rate limiter because the configured FCM send quota would be
+ * exceeded.
+ *
+ * @author Wai Leong
+ */
+public class FcmRateLimitExceededException extends FcmSendRejectedException {
+
+    /**
+     * Constructs a new FcmRateLimitExceededException with the specified message.
+     *
+     * @param message The error message describing the nature of the rejection.
+     */
+    public FcmRateLimitExceededException(String message) {
+        super(FcmErrorCode.QUOTA_EXCEEDED, message);
+    }
+}
@@ -1,6 +1,11 @@
 package io.github.waileong.fcm.exception;
 
 import io.github.waileong.fcm.service.domain.FcmError;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Custom exception type for errors encountered when interacting with Firebase Cloud Messaging (FCM) through a REST client.
@@ -13,8 +18,12 @@ import io.github.waileong.fcm.service.domain.FcmError;
  * @author Wai Leong
  */
 public class FcmRestClientException extends RuntimeException {
+    private static final String FCM_ERROR_TYPE = "type.googleapis.com/google.firebase.fcm.v1.FcmError";
+    private static final String BAD_REQUEST_TYPE = "type.googleapis.com/google.rpc.BadRequest";
+    private static final String TOKEN_FIELD = "message.token";
     private final int httpStatus;
     private final FcmError error;
+    private final Duration retryAfter;
 
     /**
      * Constructs a new FcmRestClientException with specified HTTP status code and FCM error details.
@@ -23,8 +32,21 @@ public class FcmRestClientException extends RuntimeException {
      * @param error      The {@link FcmError} object containing detailed information about the FCM error.
      */
     public FcmRestClientException(int httpStatus, FcmError error) {
+        this(httpStatus, error, null);
+    }
+
+    /**
+     * Constructs a new FcmRestClientException with specified HTTP status code, FCM error details and the delay
+     * requested by the {@code Retry-After} response header.
+     *
+     * @param httpStatus The HTTP status code associated with the REST client error.
+     * @param error      The {@link FcmError} object containing detailed information about the FCM error.
+     * @param retryAfter The delay requested by FCM before retrying, or {@code null} if none was given.
+     */
+    public FcmRestClientException(int httpStatus, FcmError error, Duration retryAfter) {
         this.httpStatus = httpStatus;
         this.error = error;
+        this.retryAfter = retryAfter;
     }
 
     /**
@@ -34,9 +56,22 @@ public class FcmRestClientException extends RuntimeException {
      * @param message    The error message describing the nature of the error.
      */
     public FcmRestClientException(int httpStatus, String message) {
+        this(httpStatus, message, null);
+    }
+
+    /**
+     * Constructs a new FcmRestClientException with specified HTTP status code, error message and the delay
+     * requested by the {@code Retry-After} response header.
+     *
+     * @param httpStatus The HTTP status code associated with the REST client error.
+     * @param message    The error message describing the nature of the error.
+     * @param retryAfter The delay requested by FCM before retrying, or {@code null} if none was given.
+     */
+    public FcmRestClientException(int httpStatus, String message, Duration retryAfter) {
         super(message);
         this.httpStatus = httpStatus;
         this.error = null;
+        this.retryAfter = retryAfter;
     }
 
     /**
@@ -57,6 +92,87 @@ public class FcmRestClientException extends RuntimeException {
         return error;
     }
 
+    /**
+     * Gets the delay FCM requested before the request is retried, as given by the {@code Retry-After} header.
+     *
+     * @return The requested delay, or {@code null} if FCM did not send a {@code Retry-After} header.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Gets the {@link FcmErrorCode} describing why the request failed.
+     * <p>
+     * The code is taken from the {@code google.firebase.fcm.v1.FcmError} entry of the error details when FCM provides
+     * one. Otherwise it is derived from the HTTP status code as documented for the FCM error codes.
+     * </p>
+     *
+     * @return The FCM error code, never {@code null}.
+     */
+    public FcmErrorCode getErrorCode() {
+        FcmErrorCode detailsErrorCode = getErrorCodeFromDetails();
+        if (detailsErrorCode != null) {
+            return detailsErrorCode;
+        }
+        return switch (httpStatus) {
+            case 400 -> FcmErrorCode.INVALID_ARGUMENT;
+            case 401 -> FcmErrorCode.THIRD_PARTY_AUTH_ERROR;
+            case 403 -> FcmErrorCode.SENDER_ID_MISMATCH;
+            case 404 -> FcmErrorCode.UNREGISTERED;
+            case 429 -> FcmErrorCode.QUOTA_EXCEEDED;
+            case 500 -> FcmErrorCode.INTERNAL;
+            case 503 -> FcmErrorCode.UNAVAILABLE;
+            default -> FcmErrorCode.UNSPECIFIED_ERROR;
+        };
+    }
+
+    /**
+     * Indicates whether the request failed because its registration token is no longer valid. This is the case for
+     * {@code UNREGISTERED} errors, and for {@code INVALID_ARGUMENT} errors whose {@code google.rpc.BadRequest} details
+     * report a violation of the {@code message.token} field.
+     *
+     * @return {@code true} if the registration token should not be used again.
+     */
+    public boolean isInvalidRegistrationToken() {
+        FcmErrorCode errorCode = getErrorCode();
+        if (errorCode == FcmErrorCode.UNREGISTERED) {
+            return true;
+        }
+        if (errorCode != FcmErrorCode.INVALID_ARGUMENT || error == null || error.getDetails() == null) {
+            return false;
+        }
+        for (Map<String, Object> detail : error.getDetails()) {
+            if (detail != null && BAD_REQUEST_TYPE.equals(detail.get("@type"))
+                    && detail.get("fieldViolations") instanceof List<?> violations) {
+                for (Object violation : violations) {
+                    if (violation instanceof Map<?, ?> map && TOKEN_FIELD.equals(map.get("field"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private FcmErrorCode getErrorCodeFromDetails() {
+        List<Map<String, Object>> details = error != null ? error.getDetails() : null;
+        if (details == null) {
+            return null;
+        }
+        for (Map<String, Object> detail : details) {
+            if (detail != null && FCM_ERROR_TYPE.equals(detail.get("@type"))
+                    && detail.get("errorCode") instanceof String errorCode) {
+                try {
+                    return FcmErrorCode.valueOf(errorCode);
+                } catch (IllegalArgumentException ex) {
+                    return FcmErrorCode.UNSPECIFIED_ERROR;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Overrides {@link RuntimeException#getMessage()} to provide a detailed error message including the HTTP status,
      * FCM error code, message, status, and details, if available.
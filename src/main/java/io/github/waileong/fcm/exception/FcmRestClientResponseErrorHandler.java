@@ -5,12 +5,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.waileong.fcm.service.domain.FcmErrorResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.DefaultResponseErrorHandler;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 /**
  * Custom response error handler for the FCM REST client.
@@ -41,20 +46,64 @@ public class FcmRestClientResponseErrorHandler extends DefaultResponseErrorHandl
     @Override
     protected void handleError(ClientHttpResponse response, HttpStatusCode statusCode) throws IOException {
         if (statusCode.is4xxClientError() || statusCode.is5xxServerError()) {
-            final String content = new String(getResponseBody(response), StandardCharsets.UTF_8);
-            try {
-                if (content.isBlank()) {
-                    throw new FcmRestClientException(statusCode.value(), content);
-                } else {
-                    final FcmErrorResponse errorResponse = this.objectMapper.readValue(
-                            content, FcmErrorResponse.class);
-                    throw new FcmRestClientException(statusCode.value(), errorResponse.getError());
-                }
-            } catch (JsonProcessingException ex) {
-                throw new FcmRestClientException(statusCode.value(), ex.getMessage());
-            }
+            throw createException(statusCode.value(),
+                    response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER),
+                    getResponseBody(response));
         } else {
             super.handleError(response, statusCode);
         }
     }
+
+    /**
+     * Creates the {@link FcmRestClientException} describing an FCM error response.
+     * <p>
+     * The response body is deserialized into an {@link FcmErrorResponse} when possible. A blank or unparsable body
+     * results in an exception carrying only the HTTP status and a plain message. This method is shared by the
+     * blocking {@link org.springframework.web.client.RestClient} path and the asynchronous send path so that both
+     * report errors identically.
+     * </p>
+     *
+     * @param statusCode The HTTP status code of the response.
+     * @param retryAfter The value of the {@code Retry-After} response header, or {@code null} if absent.
+     * @param body       The raw response body, possibly empty.
+     * @return The exception describing the error.
+     */
+    public FcmRestClientException createException(int statusCode, String retryAfter, byte[] body) {
+        final Duration retryAfterDuration = parseRetryAfter(retryAfter);
+        final String content = body != null ? new String(body, StandardCharsets.UTF_8) : "";
+        if (content.isBlank()) {
+            return new FcmRestClientException(statusCode, content, retryAfterDuration);
+        }
+        try {
+            final FcmErrorResponse errorResponse = this.objectMapper.readValue(content, FcmErrorResponse.class);
+            return new FcmRestClientException(statusCode, errorResponse.getError(), retryAfterDuration);
+        } catch (JsonProcessingException ex) {
+            logger.debug("Unable to parse FCM error response: {}", content, ex);
+            return new FcmRestClientException(statusCode, ex.getMessage(), retryAfterDuration);
+        }
+    }
+
+    /**
+     * Parses a {@code Retry-After} header value, given either as a number of seconds or as an HTTP date.
+     *
+     * @param retryAfter The header value, possibly {@code null}.
+     * @return The requested delay, or {@code null} if the value is absent or cannot be parsed.
+     */
+    static Duration parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0L, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException ex) {
+            // Not delta-seconds, try the HTTP-date form below.
+        }
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package io.github.waileong.fcm.exception;
+
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+/**
+ * Thrown when a send is rejected locally, before any request is made to Firebase Cloud Messaging (FCM).
+ * <p>
+ * Local rejections are reported with the {@link FcmErrorCode} FCM would most likely have returned had the request
+ * been sent, so that callers can handle them like the corresponding FCM error.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmSendRejectedException extends RuntimeException {
+    private final FcmErrorCode errorCode;
+
+    /**
+     * Constructs a new FcmSendRejectedException with the specified error code and message.
+     *
+     * @param errorCode The error code describing the rejection.
+     * @param message   The error message describing the nature of the rejection.
+     */
+    public FcmSendRejectedException(FcmErrorCode errorCode, String message) {
+        super(message);
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * Gets the error code describing the rejection.
+     *
+     * @return The error code.
+     */
+    public FcmErrorCode getErrorCode() {
+        return errorCode;
+    }
+}
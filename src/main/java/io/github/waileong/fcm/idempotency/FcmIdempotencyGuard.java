@@ -0,0 +1,246 @@
+package io.github.waileong.fcm.idempotency;
+
+import io.github.waileong.fcm.service.FcmMessageTemplate;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Swallows repeated sends of the same message within a deduplication window, so that retries of an upstream consumer
+ * neither cost quota nor show up as duplicate notifications.
+ * <p>
+ * A send is identified by the idempotency key set on its request, or else by a 128-bit fingerprint of its serialized
+ * request body, which covers the message and its recipient. A send of an {@link FcmMessageTemplate} is identified by
+ * the fingerprint of the template combined with its target, so that its body is never assembled for hashing. The
+ * first send of a key is recorded in the {@link FcmIdempotencyStore} and goes through; until the window has
+ * passed, a repeat completes with a copy of the first {@link FcmMessage} without a request to FCM. A repeat made
+ * while the first send is still in flight on the same node completes with the outcome of the first send; one made
+ * while it is in flight on another node completes at once with a message without a name. A failed send is removed
+ * from the store, so that it can be retried.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmIdempotencyGuard {
+    private static final String IN_FLIGHT = "";
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final FcmIdempotencyStore store;
+    private final Duration window;
+    private final ConcurrentHashMap<String, CompletableFuture<FcmMessage>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new {@link FcmIdempotencyGuard}.
+     *
+     * @param store  The store recording the keys of recent sends.
+     * @param window How long a repeated send is swallowed after the first one.
+     */
+    public FcmIdempotencyGuard(FcmIdempotencyStore store, Duration window) {
+        if (window == null || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("fcm.idempotency.window must be positive");
+        }
+        this.store = store;
+        this.window = window;
+    }
+
+    /**
+     * Sends a message through the given blocking sender, unless it repeats a recent send.
+     *
+     * @param idempotencyKey The key set by the caller, or {@code null} to identify the send by its body.
+     * @param body           The serialized request body.
+     * @param sender         Sends the message.
+     * @return The sent message, or a copy of the message of the first send.
+     */
+    public FcmMessage send(String idempotencyKey, byte[] body, Supplier<FcmMessage> sender) {
+        String key = key(idempotencyKey, body);
+        CompletableFuture<FcmMessage> claim = new CompletableFuture<>();
+        CompletableFuture<FcmMessage> pending = inFlight.putIfAbsent(key, claim);
+        if (pending != null) {
+            try {
+                return copy(pending.join());
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+            }
+        }
+        String previous = claim(key, claim);
+        if (previous != null) {
+            return duplicate(previous);
+        }
+        try {
+            FcmMessage message = sender.get();
+            complete(key, claim, message, null);
+            return message;
+        } catch (RuntimeException ex) {
+            complete(key, claim, null, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sends a message through the given asynchronous sender, unless it repeats a recent send.
+     *
+     * @param idempotencyKey The key set by the caller, or {@code null} to identify the send by its body.
+     * @param body           The serialized request body.
+     * @param sender         Starts the send of the message.
+     * @return A future completed with the sent message, or with a copy of the message of the first send.
+     */
+    public CompletableFuture<FcmMessage> sendAsync(String idempotencyKey, byte[] body,
+                                                   Supplier<CompletableFuture<FcmMessage>> sender) {
+        return sendAsync(key(idempotencyKey, body), sender);
+    }
+
+    /**
+     * Sends a message prepared as a template through the given asynchronous sender, unless it repeats a recent send
+     * of an equal template to the same target.
+     *
+     * @param template The template of the message.
+     * @param target   The registration token or topic the message is sent to.
+     * @param sender   Starts the send of the message.
+     * @return A future completed with the sent message, or with a copy of the message of the first send.
+     */
+    public CompletableFuture<FcmMessage> sendAsync(FcmMessageTemplate template, String target,
+                                                   Supplier<CompletableFuture<FcmMessage>> sender) {
+        return sendAsync(key(template, target), sender);
+    }
+
+    private CompletableFuture<FcmMessage> sendAsync(String key, Supplier<CompletableFuture<FcmMessage>> sender) {
+        CompletableFuture<FcmMessage> claim = new CompletableFuture<>();
+        CompletableFuture<FcmMessage> pending = inFlight.putIfAbsent(key, claim);
+        if (pending != null) {
+            return pending.thenApply(FcmIdempotencyGuard::copy);
+        }
+        String previous = claim(key, claim);
+        if (previous != null) {
+            return CompletableFuture.completedFuture(duplicate(previous));
+        }
+        CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+        CompletableFuture<FcmMessage> future;
+        try {
+            future = sender.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((message, ex) -> {
+            complete(key, claim, message, ex);
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(message);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Computes the key of a send: the caller's key, or a 128-bit fingerprint of the request body, read eight bytes at
+     * a time in two independently mixed lanes.
+     *
+     * @param idempotencyKey The key set by the caller, or {@code null}.
+     * @param body           The serialized request body.
+     * @return The key of the send.
+     */
+    static String key(String idempotencyKey, byte[] body) {
+        if (idempotencyKey != null) {
+            return "key:" + idempotencyKey;
+        }
+        return "fp:" + fingerprint(body.length, ~(long) body.length, body);
+    }
+
+    /**
+     * Computes the key of a template send: a 128-bit fingerprint of the target, seeded with the fingerprint of the
+     * template.
+     *
+     * @param template The template of the message.
+     * @param target   The registration token or topic the message is sent to.
+     * @return The key of the send.
+     */
+    static String key(FcmMessageTemplate template, String target) {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        UUID seed = template.getFingerprint();
+        byte[] bytes = target.getBytes(StandardCharsets.UTF_8);
+        return "tpl:" + fingerprint(seed.getMostSignificantBits() ^ bytes.length,
+                seed.getLeastSignificantBits() ^ ~(long) bytes.length, bytes);
+    }
+
+    private static UUID fingerprint(long h1, long h2, byte[] body) {
+        int i = 0;
+        for (; i + Long.BYTES <= body.length; i += Long.BYTES) {
+            long k = (long) LONGS.get(body, i);
+            h1 = Long.rotateLeft(h1 ^ Long.rotateLeft(k * C1, 31) * C2, 27) * 5 + 0x52dce729;
+            h2 = Long.rotateLeft(h2 ^ Long.rotateLeft(k * C2, 33) * C1, 31) * 5 + 0x38495ab5;
+        }
+        long tail = 0;
+        for (int shift = 0; i < body.length; i++, shift += 8) {
+            tail |= (body[i] & 0xffL) << shift;
+        }
+        h1 ^= Long.rotateLeft(tail * C1, 31) * C2;
+        h2 ^= Long.rotateLeft(tail * C2, 33) * C1;
+        h1 += h2;
+        h2 += h1;
+        return new UUID(mix(h1), mix(h2));
+    }
+
+    private String claim(String key, CompletableFuture<FcmMessage> claim) {
+        String previous;
+        try {
+            previous = store.putIfAbsent(key, IN_FLIGHT, window);
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, claim);
+            claim.completeExceptionally(ex);
+            throw ex;
+        }
+        if (previous != null) {
+            inFlight.remove(key, claim);
+            claim.complete(duplicate(previous));
+        }
+        return previous;
+    }
+
+    private void complete(String key, CompletableFuture<FcmMessage> claim, FcmMessage message, Throwable failure) {
+        try {
+            if (failure == null) {
+                store.put(key, message != null && message.getName() != null ? message.getName() : IN_FLIGHT, window);
+            } else {
+                store.remove(key);
+            }
+        } finally {
+            inFlight.remove(key, claim);
+            if (failure == null) {
+                claim.complete(message);
+            } else {
+                claim.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static FcmMessage duplicate(String name) {
+        return FcmMessage.Builder.aFcmMessage()
+                .name(name.isEmpty() ? null : name)
+                .build();
+    }
+
+    private static FcmMessage copy(FcmMessage message) {
+        return duplicate(message != null && message.getName() != null ? message.getName() : IN_FLIGHT);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
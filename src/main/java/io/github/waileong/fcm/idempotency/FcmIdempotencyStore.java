@@ -0,0 +1,44 @@
+package io.github.waileong.fcm.idempotency;
+
+import java.time.Duration;
+
+/**
+ * Stores the keys of recent sends for the {@link FcmIdempotencyGuard}, each for the length of the deduplication
+ * window.
+ * <p>
+ * The default {@link FcmInMemoryIdempotencyStore} only deduplicates the sends of one node. To deduplicate across
+ * nodes, declare a bean backed by a shared store; the operations map directly onto Redis {@code SET NX PX},
+ * {@code SET PX} and {@code DEL}, for example. Implementations must be thread-safe, and fast enough to be called
+ * once or twice per send.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public interface FcmIdempotencyStore {
+
+    /**
+     * Stores a value under a key for the given time to live, unless a value that has not expired is already stored.
+     *
+     * @param key        The key.
+     * @param value      The value to store.
+     * @param timeToLive How long the value is kept.
+     * @return The value already stored, or {@code null} if the given value was stored.
+     */
+    String putIfAbsent(String key, String value, Duration timeToLive);
+
+    /**
+     * Stores a value under a key for the given time to live, replacing any value already stored.
+     *
+     * @param key        The key.
+     * @param value      The value to store.
+     * @param timeToLive How long the value is kept.
+     */
+    void put(String key, String value, Duration timeToLive);
+
+    /**
+     * Removes the value stored under a key, if any.
+     *
+     * @param key The key.
+     */
+    void remove(String key);
+}
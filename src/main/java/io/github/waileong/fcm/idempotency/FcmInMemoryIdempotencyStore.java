@@ -0,0 +1,93 @@
+package io.github.waileong.fcm.idempotency;
+
+import io.github.waileong.fcm.util.BoundedExpiringMap;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded {@link FcmIdempotencyStore} held in memory, whose values expire after their time to live.
+ * <p>
+ * Lookups are a single {@link ConcurrentHashMap} read. Entries are held in a {@link BoundedExpiringMap}, so that
+ * whenever a value is stored, the oldest entries are evicted once they have expired or once the store holds more than
+ * {@code maxEntries} of them. Removed keys no longer count towards that bound. An expired entry that has not been
+ * evicted yet is ignored by lookups.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmInMemoryIdempotencyStore implements FcmIdempotencyStore {
+    private final BoundedExpiringMap<Entry> store;
+    private final ConcurrentMap<String, Entry> entries;
+
+    private static final class Entry extends BoundedExpiringMap.Entry {
+        private volatile String value;
+
+        private Entry(String key, String value, long expiresAtNanos) {
+            super(key, expiresAtNanos);
+            this.value = value;
+        }
+    }
+
+    /**
+     * Constructs a new {@link FcmInMemoryIdempotencyStore}.
+     *
+     * @param maxEntries The maximum number of keys held, beyond which the oldest ones are evicted early.
+     */
+    public FcmInMemoryIdempotencyStore(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("fcm.idempotency.max-entries must be at least 1");
+        }
+        this.store = new BoundedExpiringMap<>(maxEntries);
+        this.entries = store.map();
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value, Duration timeToLive) {
+        long now = System.nanoTime();
+        Entry created = new Entry(key, value, now + timeToLive.toNanos());
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                store.inserted(created, now);
+                return null;
+            }
+            if (!existing.isExpired(now)) {
+                return existing.value;
+            }
+            if (entries.replace(key, existing, created)) {
+                store.inserted(created, now);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void put(String key, String value, Duration timeToLive) {
+        long now = System.nanoTime();
+        Entry existing = entries.get(key);
+        if (existing != null && !existing.isExpired(now)) {
+            existing.value = value;
+            existing.setExpiresAtNanos(now + timeToLive.toNanos());
+            return;
+        }
+        Entry created = new Entry(key, value, now + timeToLive.toNanos());
+        entries.put(key, created);
+        store.inserted(created, now);
+    }
+
+    @Override
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Gets the number of keys held, including expired ones that have not been evicted yet.
+     *
+     * @return The number of keys held.
+     */
+    public int size() {
+        return store.size();
+    }
+}
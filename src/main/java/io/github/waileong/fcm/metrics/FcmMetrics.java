@@ -0,0 +1,147 @@
+package io.github.waileong.fcm.metrics;
+
+import io.github.waileong.fcm.authentication.FcmAccessTokenProvider;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.exception.FcmSendRejectedException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.Ordered;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records Micrometer metrics for every FCM send attempt.
+ * <p>
+ * The following meters are registered:
+ * </p>
+ * <ul>
+ *     <li>{@code fcm.send}: a timer of the HTTP attempts, tagged with {@code outcome} ({@code success},
+ *     {@code error} or {@code io_error}) and the FCM {@code error} code ({@code none} on success).</li>
+ *     <li>{@code fcm.send.in.flight}: a gauge of the attempts currently awaiting a response.</li>
+ *     <li>{@code fcm.send.payload.size}: a distribution of the serialized request sizes in bytes, once per send.</li>
+ *     <li>{@code fcm.send.retries}: a counter of the retry attempts.</li>
+ *     <li>{@code fcm.token.mint}: a timer of the access token minting, once bound to the
+ *     {@link FcmAccessTokenProvider}.</li>
+ * </ul>
+ * <p>
+ * Every meter is registered up front, and timers are looked up by {@link FcmErrorCode} ordinal, so recording an
+ * attempt neither allocates nor touches the registry. The interceptor runs last, closest to the HTTP exchange, so the
+ * in-flight gauge and the latency do not include time spent waiting on other interceptors such as the rate limiter.
+ * For the same reason, attempts rejected by another interceptor are not seen here; {@link FcmRejectionMetrics}
+ * counts them.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmMetrics implements FcmSendInterceptor, Ordered {
+    private static final String OUTCOME = "outcome";
+    private static final String ERROR = "error";
+
+    private final MeterRegistry registry;
+    private final double[] percentiles;
+    private final boolean percentileHistogram;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer successTimer;
+    private final Timer ioErrorTimer;
+    private final Timer[] errorTimers;
+    private final DistributionSummary payloadSize;
+    private final Counter retries;
+
+    /**
+     * Constructs a new {@link FcmMetrics} and registers its meters.
+     *
+     * @param registry            The registry the meters are registered with.
+     * @param percentiles         The percentiles published for the latency timers, for example {@code 0.99}.
+     * @param percentileHistogram Whether histogram buckets suitable for aggregable percentiles are published.
+     */
+    public FcmMetrics(MeterRegistry registry, double[] percentiles, boolean percentileHistogram) {
+        this.registry = registry;
+        this.percentiles = percentiles != null ? percentiles.clone() : new double[0];
+        this.percentileHistogram = percentileHistogram;
+        this.successTimer = sendTimer("success", "none");
+        this.ioErrorTimer = sendTimer("io_error", FcmErrorCode.UNSPECIFIED_ERROR.name());
+        FcmErrorCode[] errorCodes = FcmErrorCode.values();
+        this.errorTimers = new Timer[errorCodes.length];
+        for (FcmErrorCode errorCode : errorCodes) {
+            errorTimers[errorCode.ordinal()] = sendTimer("error", errorCode.name());
+        }
+        Gauge.builder("fcm.send.in.flight", inFlight, AtomicInteger::get)
+                .description("Number of FCM send attempts awaiting a response")
+                .register(registry);
+        this.payloadSize = DistributionSummary.builder("fcm.send.payload.size")
+                .description("Size of the serialized FCM send requests")
+                .baseUnit("bytes")
+                .register(registry);
+        this.retries = Counter.builder("fcm.send.retries")
+                .description("Number of FCM send attempts that were retries")
+                .register(registry);
+    }
+
+    /**
+     * Registers the {@code fcm.token.mint} timer and records every token minted by the given provider.
+     *
+     * @param accessTokenProvider The access token provider.
+     */
+    public void bindTo(FcmAccessTokenProvider accessTokenProvider) {
+        Timer mintTimer = Timer.builder("fcm.token.mint")
+                .description("Time taken to mint an FCM access token")
+                .register(registry);
+        accessTokenProvider.setMintTimeRecorder(nanos -> mintTimer.record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void beforeAttempt(FcmSendContext context, int attempt) {
+        if (attempt == 1) {
+            payloadSize.record(context.payloadSize());
+        } else {
+            retries.increment();
+        }
+        inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+        inFlight.decrementAndGet();
+        if (failure instanceof FcmSendRejectedException) {
+            return;
+        }
+        timerFor(failure).record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs after the other interceptors, so that only attempts actually sent to FCM are measured.
+     *
+     * @return The order of this interceptor.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    private Timer timerFor(Throwable failure) {
+        if (failure == null) {
+            return successTimer;
+        }
+        if (failure instanceof FcmRestClientException ex) {
+            return errorTimers[ex.getErrorCode().ordinal()];
+        }
+        return ioErrorTimer;
+    }
+
+    private Timer sendTimer(String outcome, String error) {
+        return Timer.builder("fcm.send")
+                .description("Time taken by FCM send attempts")
+                .tag(OUTCOME, outcome)
+                .tag(ERROR, error)
+                .publishPercentiles(percentiles)
+                .publishPercentileHistogram(percentileHistogram)
+                .register(registry);
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.waileong.fcm.metrics;
+
+import io.github.waileong.fcm.exception.FcmCircuitBreakerOpenException;
+import io.github.waileong.fcm.exception.FcmConcurrencyLimitExceededException;
+import io.github.waileong.fcm.exception.FcmDeadTokenException;
+import io.github.waileong.fcm.exception.FcmRateLimitExceededException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+
+/**
+ * Counts the FCM send attempts rejected locally by an interceptor, before any request is made.
+ * <p>
+ * {@link FcmMetrics} runs last, so it never sees an attempt rejected by the dead token registry, the circuit breaker,
+ * the priority scheduler or a limiter. This interceptor runs first instead: when a later interceptor rejects an
+ * attempt, the interceptors that already admitted it are notified with a latency of {@code 0}, and the rejection is
+ * counted in {@code fcm.send.rejected}, tagged with its {@code reason} ({@code dead_token}, {@code circuit_open},
+ * {@code concurrency_limit}, {@code rate_limit} or {@code other}). Every counter is registered up front.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmRejectionMetrics implements FcmSendInterceptor, Ordered {
+    private final Counter deadToken;
+    private final Counter circuitOpen;
+    private final Counter concurrencyLimit;
+    private final Counter rateLimit;
+    private final Counter other;
+
+    /**
+     * Constructs a new {@link FcmRejectionMetrics} and registers its counters.
+     *
+     * @param registry The registry the counters are registered with.
+     */
+    public FcmRejectionMetrics(MeterRegistry registry) {
+        this.deadToken = rejectedCounter(registry, "dead_token");
+        this.circuitOpen = rejectedCounter(registry, "circuit_open");
+        this.concurrencyLimit = rejectedCounter(registry, "concurrency_limit");
+        this.rateLimit = rejectedCounter(registry, "rate_limit");
+        this.other = rejectedCounter(registry, "other");
+    }
+
+    @Override
+    public void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+        if (failure == null || latencyNanos != 0L) {
+            return;
+        }
+        counterFor(failure).increment();
+    }
+
+    /**
+     * Runs before the other interceptors, so that it is notified of the rejections of all of them.
+     *
+     * @return The order of this interceptor.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private Counter counterFor(Throwable failure) {
+        if (failure instanceof FcmDeadTokenException) {
+            return deadToken;
+        }
+        if (failure instanceof FcmCircuitBreakerOpenException) {
+            return circuitOpen;
+        }
+        if (failure instanceof FcmConcurrencyLimitExceededException) {
+            return concurrencyLimit;
+        }
+        if (failure instanceof FcmRateLimitExceededException) {
+            return rateLimit;
+        }
+        return other;
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("fcm.send.rejected")
+                .description("Number of FCM send attempts rejected locally before any request was made")
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
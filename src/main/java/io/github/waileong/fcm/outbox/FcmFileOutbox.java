@@ -0,0 +1,232 @@
+package io.github.waileong.fcm.outbox;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link FcmOutbox} backed by an {@link FcmOutboxLog} on the local file system.
+ * <p>
+ * {@link #enqueue(FcmSendRequest)} serializes the request and appends it to the log, which is a copy into a
+ * memory-mapped file. The request is stored in a record together with its lane and idempotency key, which are not
+ * part of the request body sent to FCM, and the number of attempts made so far. A single dispatcher thread reads the log in batches, sends each batch with
+ * {@link FcmService#sendEach(Iterable)}, and acknowledges the batch once every send in it has completed, so that
+ * the requests of an unfinished batch are sent again after a restart.
+ * </p>
+ * <p>
+ * Sends that failed with a transient error, such as {@code UNAVAILABLE}, {@code INTERNAL}, {@code QUOTA_EXCEEDED} or
+ * an I/O error, are appended to the log again and retried later, after a backoff that doubles up to
+ * {@code 32 * pollInterval} while failures persist. Once a send has failed transiently {@code maxAttempts} times, or
+ * as soon as it fails otherwise, it is appended to the dead-letter log with its last error instead, where it is kept
+ * for inspection and never sent again.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmFileOutbox implements FcmOutbox, AutoCloseable {
+    private static final int MAX_BACKOFF_MULTIPLIER = 32;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final FcmOutboxLog log;
+    private final FcmOutboxLog deadLetterLog;
+    private final FcmService fcmService;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long pollIntervalNanos;
+    private final long flushIntervalNanos;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * A request stored in the log.
+     *
+     * @param request        The request, without its lane and idempotency key.
+     * @param lane           The lane of the request, or {@code null}.
+     * @param idempotencyKey The idempotency key of the request, or {@code null}.
+     * @param attempts       The number of failed attempts to send the request.
+     * @param lastError      The error of the last failed attempt, or {@code null}.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record StoredRequest(FcmSendRequest request, FcmSendLane lane, String idempotencyKey, int attempts,
+                         String lastError) {
+
+        private static StoredRequest of(FcmSendRequest request) {
+            return new StoredRequest(request, request.getLane(), request.getIdempotencyKey(), 0, null);
+        }
+
+        private FcmSendRequest toSendRequest() {
+            request.setLane(lane);
+            request.setIdempotencyKey(idempotencyKey);
+            return request;
+        }
+
+        private StoredRequest failed(String error) {
+            return new StoredRequest(request, lane, idempotencyKey, attempts + 1, error);
+        }
+    }
+
+    /**
+     * Constructs a new {@link FcmFileOutbox} and starts its dispatcher thread.
+     *
+     * @param log           The log the requests are stored in.
+     * @param deadLetterLog The log the requests that failed for good are moved to.
+     * @param fcmService    The service the requests are sent with.
+     * @param objectMapper  The object mapper the requests are serialized with.
+     * @param batchSize     The maximum number of requests sent per batch.
+     * @param maxAttempts   The number of transient failures after which a request is moved to the dead-letter log.
+     * @param pollInterval  How long the dispatcher waits before looking for new requests once the log is drained.
+     * @param flushInterval How often appended requests are written through to the storage device.
+     */
+    public FcmFileOutbox(FcmOutboxLog log, FcmOutboxLog deadLetterLog, FcmService fcmService,
+                         ObjectMapper objectMapper, int batchSize, int maxAttempts, Duration pollInterval,
+                         Duration flushInterval) {
+        this.log = log;
+        this.deadLetterLog = deadLetterLog;
+        this.fcmService = fcmService;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.pollIntervalNanos = Math.max(1L, pollInterval.toNanos());
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.dispatcher = new Thread(this::dispatch, "fcm-outbox-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public void enqueue(FcmSendRequest sendRequest) {
+        log.append(serialize(StoredRequest.of(sendRequest)));
+        LockSupport.unpark(dispatcher);
+    }
+
+    /**
+     * Gets the log the requests are stored in.
+     *
+     * @return The log.
+     */
+    public FcmOutboxLog getLog() {
+        return log;
+    }
+
+    /**
+     * Gets the log the requests that failed for good are moved to.
+     *
+     * @return The dead-letter log.
+     */
+    public FcmOutboxLog getDeadLetterLog() {
+        return deadLetterLog;
+    }
+
+    /**
+     * Stops the dispatcher, letting the batch in flight complete, and closes the logs. Requests still in the log are
+     * sent after the next start.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        deadLetterLog.close();
+    }
+
+    private void dispatch() {
+        long readOffset = log.getAckedOffset();
+        long lastFlushNanos = System.nanoTime();
+        int backoffMultiplier = 1;
+        while (running) {
+            List<FcmOutboxLog.Entry> entries;
+            try {
+                entries = log.read(readOffset, batchSize);
+                if (entries.isEmpty()) {
+                    LockSupport.parkNanos(this, pollIntervalNanos);
+                } else {
+                    int transientFailures = send(entries);
+                    readOffset = entries.get(entries.size() - 1).nextOffset();
+                    log.ack(readOffset);
+                    if (transientFailures > 0) {
+                        LockSupport.parkNanos(this, pollIntervalNanos * backoffMultiplier);
+                        backoffMultiplier = Math.min(MAX_BACKOFF_MULTIPLIER, backoffMultiplier * 2);
+                    } else {
+                        backoffMultiplier = 1;
+                    }
+                }
+                if (System.nanoTime() - lastFlushNanos >= flushIntervalNanos) {
+                    log.flush();
+                    deadLetterLog.flush();
+                    lastFlushNanos = System.nanoTime();
+                }
+            } catch (RuntimeException ex) {
+                // Nothing was acknowledged; the batch is read and sent again.
+                logger.error("FCM outbox dispatch failed", ex);
+                LockSupport.parkNanos(this, pollIntervalNanos * MAX_BACKOFF_MULTIPLIER);
+            }
+        }
+    }
+
+    /**
+     * Sends a batch, appends the requests that failed transiently to the log again, and moves those that failed for
+     * good to the dead-letter log.
+     *
+     * @return The number of transient failures retried.
+     */
+    private int send(List<FcmOutboxLog.Entry> entries) {
+        List<StoredRequest> records = new ArrayList<>(entries.size());
+        List<FcmSendRequest> requests = new ArrayList<>(entries.size());
+        for (FcmOutboxLog.Entry entry : entries) {
+            try {
+                StoredRequest record = objectMapper.readValue(entry.payload(), StoredRequest.class);
+                records.add(record);
+                requests.add(record.toSendRequest());
+            } catch (IOException ex) {
+                logger.error("Moving unreadable FCM outbox record at offset {} to the dead-letter log",
+                        entry.offset(), ex);
+                deadLetterLog.append(entry.payload());
+            }
+        }
+        List<FcmSendResult> results = fcmService.sendEach(requests);
+        int transientFailures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            FcmSendResult result = results.get(i);
+            if (result.isSuccess()) {
+                continue;
+            }
+            StoredRequest failed = records.get(i).failed(String.valueOf(result.errorCode()));
+            if (FcmOutbox.isTransient(result) && failed.attempts() < maxAttempts) {
+                log.append(serialize(failed));
+                transientFailures++;
+            } else {
+                logger.warn("FCM outbox send failed with {} (HTTP {}) after {} attempts", result.errorCode(),
+                        result.httpStatus(), failed.attempts());
+                deadLetterLog.append(serialize(failed));
+            }
+        }
+        return transientFailures;
+    }
+
+    private byte[] serialize(StoredRequest record) {
+        try {
+            return objectMapper.writeValueAsBytes(record);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Failed to serialize FCM send request", ex);
+        }
+    }
+}
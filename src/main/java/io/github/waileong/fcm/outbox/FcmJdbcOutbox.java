@@ -0,0 +1,240 @@
+package io.github.waileong.fcm.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * An {@link FcmOutbox} backed by a table in the application's database, which lets several nodes share the sending
+ * without a coordinator.
+ * <p>
+ * {@link #enqueue(FcmSendRequest)} inserts a row through a {@link JdbcTemplate}, so it joins the transaction of the
+ * caller: the notification is only sent if the business data written alongside it is committed. Each node runs a
+ * dispatcher thread that, in its own transaction, claims up to {@code batchSize} due rows with
+ * {@code SELECT ... FOR UPDATE SKIP LOCKED}, sends them with {@link FcmService#sendEach(Iterable, int)}, and marks
+ * them in batched updates before committing. Rows claimed by one node are skipped by the others, and the rows of a
+ * node that stops mid-batch are unlocked by the rollback and claimed again, so delivery is at-least-once.
+ * </p>
+ * <p>
+ * A row is marked {@code SENT} once FCM accepted it, and {@code FAILED} once FCM rejected it or it failed
+ * transiently {@code maxAttempts} times; transient failures before that are retried after a backoff that doubles
+ * with each attempt. The lane and idempotency key of the request, which are not part of its serialized form, are
+ * kept in columns of their own. The table is expected to look like this, adapted to the SQL dialect of the database:
+ * </p>
+ * <pre>
+ * CREATE TABLE fcm_outbox (
+ *     id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+ *     request         TEXT NOT NULL,
+ *     status          VARCHAR(16) NOT NULL,
+ *     attempts        INT NOT NULL,
+ *     next_attempt_at TIMESTAMP NOT NULL,
+ *     last_error      VARCHAR(64),
+ *     lane            VARCHAR(16),
+ *     idempotency_key VARCHAR(255)
+ * );
+ * CREATE INDEX fcm_outbox_due ON fcm_outbox (status, next_attempt_at);
+ * </pre>
+ * <p>
+ * Rows are never deleted by the outbox, so that sent and failed notifications can be audited; purge them as needed.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmJdbcOutbox implements FcmOutbox, AutoCloseable {
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+    private static final int MAX_BACKOFF_EXPONENT = 10;
+    private static final String PENDING = "PENDING";
+    private static final String SENT = "SENT";
+    private static final String FAILED = "FAILED";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FcmService fcmService;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final long pollIntervalNanos;
+    private final Duration retryBackoff;
+    private final String insertSql;
+    private final String claimSql;
+    private final String sentSql;
+    private final String retrySql;
+    private final String failedSql;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private record Row(long id, int attempts, String request, String lane, String idempotencyKey) {
+    }
+
+    /**
+     * Constructs a new {@link FcmJdbcOutbox} and starts its dispatcher thread.
+     *
+     * @param jdbcTemplate        The template the outbox table is accessed with.
+     * @param transactionTemplate The template each batch is claimed, sent and marked in.
+     * @param fcmService          The service the requests are sent with.
+     * @param objectMapper        The object mapper the requests are serialized with.
+     * @param tableName           The name of the outbox table, optionally qualified by its schema.
+     * @param batchSize           The maximum number of rows claimed per batch.
+     * @param maxInFlight         The maximum number of requests of a batch in flight at any time.
+     * @param maxAttempts         The number of transient failures after which a row is marked failed.
+     * @param pollInterval        How long the dispatcher waits before looking for due rows once none are left.
+     * @param retryBackoff        The delay before the first retry of a transient failure, doubled with each attempt.
+     */
+    public FcmJdbcOutbox(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, FcmService fcmService,
+                         ObjectMapper objectMapper, String tableName, int batchSize, int maxInFlight,
+                         int maxAttempts, Duration pollInterval, Duration retryBackoff) {
+        if (tableName == null || !TABLE_NAME.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("fcm.outbox.table-name must be a plain SQL identifier");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.fcmService = fcmService;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.pollIntervalNanos = Math.max(1L, pollInterval.toNanos());
+        this.retryBackoff = retryBackoff;
+        this.insertSql = "INSERT INTO " + tableName + " (request, lane, idempotency_key, status, attempts, "
+                + "next_attempt_at) VALUES (?, ?, ?, '" + PENDING + "', 0, ?)";
+        this.claimSql = "SELECT id, attempts, request, lane, idempotency_key FROM " + tableName + " WHERE status = '" + PENDING
+                + "' AND next_attempt_at <= ? ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+        this.sentSql = "UPDATE " + tableName + " SET status = '" + SENT + "', attempts = attempts + 1, "
+                + "last_error = NULL WHERE id = ?";
+        this.retrySql = "UPDATE " + tableName + " SET attempts = attempts + 1, next_attempt_at = ?, last_error = ? "
+                + "WHERE id = ?";
+        this.failedSql = "UPDATE " + tableName + " SET status = '" + FAILED + "', attempts = attempts + 1, "
+                + "last_error = ? WHERE id = ?";
+        this.dispatcher = new Thread(this::dispatch, "fcm-jdbc-outbox-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Inserts the request into the outbox table, within the transaction of the caller if there is one.
+     *
+     * @param sendRequest The request to send. Must not be null.
+     */
+    @Override
+    public void enqueue(FcmSendRequest sendRequest) {
+        String request;
+        try {
+            request = objectMapper.writeValueAsString(sendRequest);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Failed to serialize FCM send request", ex);
+        }
+        FcmSendLane lane = sendRequest.getLane();
+        jdbcTemplate.update(insertSql, request, lane != null ? lane.name() : null, sendRequest.getIdempotencyKey(),
+                Timestamp.from(Instant.now()));
+    }
+
+    /**
+     * Stops the dispatcher, letting the batch in flight complete. Rows still pending are sent by the other nodes, or
+     * after the next start.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                Integer claimed = transactionTemplate.execute(status -> dispatchBatch());
+                if (claimed == null || claimed < batchSize) {
+                    LockSupport.parkNanos(this, pollIntervalNanos);
+                }
+            } catch (RuntimeException ex) {
+                // The transaction was rolled back, so the claimed rows are due again.
+                logger.error("FCM outbox dispatch failed", ex);
+                LockSupport.parkNanos(this, pollIntervalNanos * 32);
+            }
+        }
+    }
+
+    /**
+     * Claims a batch of due rows, sends them and marks them, within the transaction of the caller.
+     *
+     * @return The number of rows claimed.
+     */
+    private int dispatchBatch() {
+        Instant now = Instant.now();
+        List<Row> rows = jdbcTemplate.query(claimSql,
+                (resultSet, rowNum) -> new Row(resultSet.getLong(1), resultSet.getInt(2), resultSet.getString(3),
+                        resultSet.getString(4), resultSet.getString(5)),
+                Timestamp.from(now), batchSize);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<Row> sendable = new ArrayList<>(rows.size());
+        List<FcmSendRequest> requests = new ArrayList<>(rows.size());
+        List<Object[]> sent = new ArrayList<>(rows.size());
+        List<Object[]> retried = new ArrayList<>();
+        List<Object[]> failed = new ArrayList<>();
+        for (Row row : rows) {
+            try {
+                FcmSendRequest request = objectMapper.readValue(row.request(), FcmSendRequest.class);
+                request.setLane(row.lane() != null ? FcmSendLane.valueOf(row.lane()) : null);
+                request.setIdempotencyKey(row.idempotencyKey());
+                requests.add(request);
+                sendable.add(row);
+            } catch (IOException | IllegalArgumentException ex) {
+                logger.error("Failing unreadable FCM outbox row {}", row.id(), ex);
+                failed.add(new Object[]{"UNREADABLE", row.id()});
+            }
+        }
+        List<FcmSendResult> results = fcmService.sendEach(requests, maxInFlight);
+        for (int i = 0; i < results.size(); i++) {
+            Row row = sendable.get(i);
+            FcmSendResult result = results.get(i);
+            if (result.isSuccess()) {
+                sent.add(new Object[]{row.id()});
+                continue;
+            }
+            String error = String.valueOf(result.errorCode());
+            if (FcmOutbox.isTransient(result) && row.attempts() + 1 < maxAttempts) {
+                Duration backoff = retryBackoff.multipliedBy(1L << Math.min(row.attempts(), MAX_BACKOFF_EXPONENT));
+                retried.add(new Object[]{Timestamp.from(now.plus(backoff)), error, row.id()});
+            } else {
+                logger.warn("FCM outbox send of row {} failed with {} (HTTP {})", row.id(), result.errorCode(),
+                        result.httpStatus());
+                failed.add(new Object[]{error, row.id()});
+            }
+        }
+        if (!sent.isEmpty()) {
+            jdbcTemplate.batchUpdate(sentSql, sent);
+        }
+        if (!retried.isEmpty()) {
+            jdbcTemplate.batchUpdate(retrySql, retried);
+        }
+        if (!failed.isEmpty()) {
+            jdbcTemplate.batchUpdate(failedSql, failed);
+        }
+        return rows.size();
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.waileong.fcm.outbox;
+
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+
+/**
+ * A durable queue of messages to send through Firebase Cloud Messaging (FCM), drained by a background dispatcher.
+ * <p>
+ * Enqueueing stores the request and returns, without a request to FCM on the caller's thread. Delivery is
+ * at-least-once: a request is only removed from the outbox once FCM has answered it, so requests that were queued
+ * or in flight when the application stopped are sent after it restarts, and may occasionally be sent twice.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public interface FcmOutbox {
+
+    /**
+     * Stores a request to be sent in the background.
+     *
+     * @param sendRequest The request to send. Must not be null.
+     */
+    void enqueue(FcmSendRequest sendRequest);
+
+    /**
+     * Indicates whether a failed send is worth retrying later: FCM was unavailable, failed internally or throttled
+     * the request, or no answer was received at all.
+     *
+     * @param result The result of the failed send.
+     * @return {@code true} if the send should be retried.
+     */
+    static boolean isTransient(FcmSendResult result) {
+        FcmErrorCode errorCode = result.errorCode();
+        return errorCode == FcmErrorCode.UNAVAILABLE
+                || errorCode == FcmErrorCode.INTERNAL
+                || errorCode == FcmErrorCode.QUOTA_EXCEEDED
+                || (errorCode == FcmErrorCode.UNSPECIFIED_ERROR && result.httpStatus() == 0);
+    }
+
+    /**
+     * The store backing the outbox.
+     */
+    enum Store {
+        /**
+         * Memory-mapped segment files in a local directory, see {@link FcmFileOutbox}.
+         */
+        FILE,
+        /**
+         * A table in the application's database, shared by every node, see {@link FcmJdbcOutbox}.
+         */
+        JDBC
+    }
+}
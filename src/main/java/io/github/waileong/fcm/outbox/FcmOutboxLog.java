@@ -0,0 +1,350 @@
+package io.github.waileong.fcm.outbox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of opaque records, stored in memory-mapped segment files, with a persistent acknowledged offset.
+ * <p>
+ * Each record is written as its length, a CRC32C checksum and its payload. Records are addressed by their logical
+ * offset, which grows monotonically across segments: a segment file is named after the offset of its first record,
+ * and a new one is started when the current one has no room left for a record. Appending is a copy into the mapped
+ * segment under a short lock, with no system call, so a record survives a crash of the process as soon as
+ * {@link #append(byte[])} returns. It survives a crash of the operating system once {@link #flush()} has run.
+ * </p>
+ * <p>
+ * Records below the acknowledged offset are considered consumed. Segments that only hold consumed records are deleted
+ * when the offset moves past them. On startup, the log resumes from the acknowledged offset, and the write position
+ * is recovered by scanning the last segment up to the first missing or torn record.
+ * </p>
+ * <p>
+ * Any number of threads may append. Reading and acknowledging are meant for a single consumer.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmOutboxLog implements AutoCloseable {
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("\\d{20}\\.log");
+    private static final String ACK_FILE = "ack.offset";
+
+    /**
+     * A record read from the log.
+     *
+     * @param offset     The offset of the record.
+     * @param nextOffset The offset following the record, which acknowledges it when passed to {@link #ack(long)}.
+     * @param payload    The payload of the record.
+     */
+    public record Entry(long offset, long nextOffset, byte[] payload) {
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final FileChannel ackChannel;
+    private final MappedByteBuffer ackBuffer;
+    private Segment active;
+    private boolean closed;
+    private volatile long endOffset;
+    private volatile long ackedOffset;
+
+    /**
+     * Opens the log in the given directory, creating it if needed, and recovers its state.
+     *
+     * @param directory    The directory holding the segment files.
+     * @param segmentBytes The size of each segment file, which bounds the size of a record.
+     * @throws UncheckedIOException If the log cannot be opened.
+     */
+    public FcmOutboxLog(Path directory, int segmentBytes) {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("fcm.outbox.segment-size is too small");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            this.ackChannel = FileChannel.open(directory.resolve(ACK_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.ackBuffer = ackChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            this.ackedOffset = ackBuffer.getLong(0);
+            recover();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open the FCM outbox log in " + directory, ex);
+        }
+    }
+
+    /**
+     * Appends a record to the log.
+     *
+     * @param payload The payload of the record.
+     * @return The offset of the record.
+     * @throws IllegalArgumentException If the record does not fit in a segment.
+     */
+    public long append(byte[] payload) {
+        int size = HEADER_BYTES + payload.length;
+        if (size > segmentBytes) {
+            throw new IllegalArgumentException("FCM outbox record of " + payload.length
+                    + " bytes exceeds the segment size");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("FCM outbox log is closed");
+            }
+            if (active.position + size > segmentBytes) {
+                roll();
+            }
+            int position = active.position;
+            MappedByteBuffer buffer = active.buffer;
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.put(position + HEADER_BYTES, payload);
+            // The length goes last, so that a record torn by a crash is never mistaken for a complete one.
+            buffer.putInt(position, payload.length);
+            active.position = position + size;
+            endOffset = active.baseOffset + active.position;
+            return active.baseOffset + position;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Reads up to {@code maxEntries} records, starting at the given offset.
+     *
+     * @param fromOffset The offset to read from, usually the {@code nextOffset} of the last record read.
+     * @param maxEntries The maximum number of records to read.
+     * @return The records read, possibly none.
+     */
+    public List<Entry> read(long fromOffset, int maxEntries) {
+        long end = endOffset;
+        long offset = Math.max(fromOffset, ackedOffset);
+        List<Entry> entries = new ArrayList<>(Math.min(maxEntries, 64));
+        while (offset < end && entries.size() < maxEntries) {
+            Map.Entry<Long, Segment> floor = segments.floorEntry(offset);
+            if (floor == null) {
+                break;
+            }
+            Segment segment = floor.getValue();
+            int position = (int) (offset - segment.baseOffset);
+            int length = position + HEADER_BYTES <= segmentBytes ? segment.buffer.getInt(position) : 0;
+            if (length <= 0) {
+                Long next = segments.higherKey(segment.baseOffset);
+                if (next == null) {
+                    break;
+                }
+                offset = next;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(position + HEADER_BYTES, payload);
+            long nextOffset = offset + HEADER_BYTES + length;
+            entries.add(new Entry(offset, nextOffset, payload));
+            offset = nextOffset;
+        }
+        return entries;
+    }
+
+    /**
+     * Acknowledges every record below the given offset, and deletes the segments that only hold acknowledged records.
+     *
+     * @param offset The offset following the last consumed record.
+     */
+    public void ack(long offset) {
+        if (offset <= ackedOffset) {
+            return;
+        }
+        ackedOffset = offset;
+        ackBuffer.putLong(0, offset);
+        Map.Entry<Long, Segment> first;
+        while ((first = segments.firstEntry()) != null) {
+            Long next = segments.higherKey(first.getKey());
+            if (next == null || next > offset) {
+                break;
+            }
+            segments.remove(first.getKey());
+            first.getValue().delete();
+        }
+    }
+
+    /**
+     * Gets the offset below which every record has been acknowledged.
+     *
+     * @return The acknowledged offset.
+     */
+    public long getAckedOffset() {
+        return ackedOffset;
+    }
+
+    /**
+     * Gets the offset following the last appended record.
+     *
+     * @return The end offset.
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Indicates whether every appended record has been acknowledged.
+     *
+     * @return {@code true} if no record is pending.
+     */
+    public boolean isEmpty() {
+        return read(ackedOffset, 1).isEmpty();
+    }
+
+    /**
+     * Writes the records and the acknowledged offset through to the storage device.
+     */
+    public void flush() {
+        Segment segment = active;
+        if (segment != null) {
+            segment.buffer.force();
+        }
+        ackBuffer.force();
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flush();
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            ackChannel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to close the FCM outbox log", ex);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            long baseOffset = parseBaseOffset(files.get(i));
+            boolean consumed = i + 1 < files.size() && parseBaseOffset(files.get(i + 1)) <= ackedOffset;
+            if (consumed) {
+                Files.delete(files.get(i));
+            } else {
+                segments.put(baseOffset, Segment.open(files.get(i), baseOffset, segmentBytes));
+            }
+        }
+        if (segments.isEmpty()) {
+            active = Segment.open(segmentPath(ackedOffset), ackedOffset, segmentBytes);
+            segments.put(ackedOffset, active);
+        } else {
+            active = segments.lastEntry().getValue();
+            active.position = active.scanEnd(segmentBytes);
+        }
+        endOffset = active.baseOffset + active.position;
+    }
+
+    private void roll() {
+        long baseOffset = active.baseOffset + active.position;
+        active.buffer.force();
+        try {
+            Segment segment = Segment.open(segmentPath(baseOffset), baseOffset, segmentBytes);
+            segments.put(baseOffset, segment);
+            active = segment;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to roll the FCM outbox log", ex);
+        }
+    }
+
+    private Path segmentPath(long baseOffset) {
+        return directory.resolve(String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+    }
+
+    private static long parseBaseOffset(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long baseOffset;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+
+        private Segment(Path path, long baseOffset, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.baseOffset = baseOffset;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(Path path, long baseOffset, int segmentBytes) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(path, baseOffset, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+
+        /**
+         * Finds the end of the last complete record, and clears whatever a crash may have left behind it.
+         */
+        private int scanEnd(int segmentBytes) {
+            int end = 0;
+            while (end + HEADER_BYTES <= segmentBytes) {
+                int length = buffer.getInt(end);
+                if (length <= 0 || length > segmentBytes - end - HEADER_BYTES) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(end + HEADER_BYTES, payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(end + 4)) {
+                    break;
+                }
+                end += HEADER_BYTES + length;
+            }
+            if (end + HEADER_BYTES <= segmentBytes) {
+                buffer.putLong(end, 0L);
+            }
+            return end;
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+
+        private void delete() {
+            try {
+                channel.close();
+                // The mapping itself is released once the buffer is garbage collected.
+                Files.deleteIfExists(path);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to delete FCM outbox segment " + path, ex);
+            }
+        }
+    }
+}
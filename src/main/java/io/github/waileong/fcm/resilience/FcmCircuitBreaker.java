@@ -0,0 +1,362 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmCircuitBreakerOpenException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A circuit breaker that stops sending to FCM while it is degraded, instead of letting every send wait for the read
+ * timeout.
+ * <p>
+ * While {@link State#CLOSED}, the outcome of every attempt is recorded in a sliding time window, split into ten
+ * buckets of lock-free counters. An attempt counts as failed when FCM answers with a 5xx or 429 status, or when the
+ * request fails with an I/O error such as a timeout; client errors such as {@code INVALID_ARGUMENT} say nothing about
+ * the health of FCM and count as successful. An attempt counts as slow when it takes at least {@code slowCallDuration}.
+ * Once the window holds at least {@code minimumCalls} attempts and either the failure rate or the slow call rate
+ * reaches its threshold, the breaker opens.
+ * </p>
+ * <p>
+ * While {@link State#OPEN}, sends are rejected with an {@link FcmCircuitBreakerOpenException} without a request to
+ * FCM. After {@code openDuration}, the breaker becomes {@link State#HALF_OPEN} and lets {@code halfOpenCalls} probe
+ * attempts through: if all of them succeed quickly the breaker closes, and the first failed or slow probe opens it
+ * again. Only the outcomes of the probes decide: an attempt let through while the breaker was closed that completes
+ * while it is half-open is ignored. Each time the breaker half-opens, it starts from a fresh set of probe permits,
+ * swapped in atomically with the state. Probes are told apart by their {@link FcmSendContext} instance and attempt
+ * number, so a context must not be shared between sends.
+ * </p>
+ * <p>
+ * In {@link FcmRateLimiter.Mode#BLOCK} mode, rejected sends wait for up to {@code maxWait} instead, and go through as
+ * soon as the breaker lets them: a blocking send parks its thread, while an asynchronous send schedules its next
+ * check on a timer, so that no thread is held while the breaker is open.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmCircuitBreaker implements FcmSendInterceptor, Ordered {
+    private static final int BUCKETS = 10;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * The state of the breaker.
+     */
+    public enum State {
+        /**
+         * Sends go through, and their outcomes are recorded.
+         */
+        CLOSED,
+        /**
+         * Sends are rejected.
+         */
+        OPEN,
+        /**
+         * A limited number of probe sends go through to decide whether to close again.
+         */
+        HALF_OPEN
+    }
+
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final FcmRateLimiter.Mode mode;
+    private final long maxWaitNanos;
+    private final long bucketNanos;
+
+    // Per bucket: the number of calls, of failed calls and of slow calls.
+    private final AtomicLongArray counters = new AtomicLongArray(BUCKETS * 3);
+    private final AtomicLongArray bucketEpochs = new AtomicLongArray(BUCKETS);
+    private final AtomicReference<Phase> phase = new AtomicReference<>(Phase.closed());
+    // The probe attempts in flight, with the half-open phase that let each of them through.
+    private final ConcurrentMap<Probe, Phase> probes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new {@link FcmCircuitBreaker}.
+     *
+     * @param failureRateThreshold  The fraction of failed attempts, between 0 and 1, that opens the breaker.
+     * @param slowCallRateThreshold The fraction of slow attempts, between 0 and 1, that opens the breaker.
+     * @param slowCallDuration      The duration from which an attempt counts as slow.
+     * @param slidingWindow         The period over which attempts are recorded.
+     * @param minimumCalls          The number of attempts the window must hold before the rates are evaluated.
+     * @param openDuration          How long the breaker stays open before probing FCM again.
+     * @param halfOpenCalls         The number of successful probe attempts that close the breaker again.
+     * @param mode                  How the breaker behaves when it does not let a send through.
+     * @param maxWait               The longest a send is parked in {@link FcmRateLimiter.Mode#BLOCK} mode.
+     */
+    public FcmCircuitBreaker(double failureRateThreshold, double slowCallRateThreshold, Duration slowCallDuration,
+                             Duration slidingWindow, int minimumCalls, Duration openDuration, int halfOpenCalls,
+                             FcmRateLimiter.Mode mode, Duration maxWait) {
+        if (slidingWindow.toNanos() < BUCKETS) {
+            throw new IllegalArgumentException("fcm.circuit-breaker.sliding-window must be positive");
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1
+                || slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+            throw new IllegalArgumentException("fcm.circuit-breaker rate thresholds must be between 0 exclusive " +
+                    "and 1 inclusive");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallDuration != null ? slowCallDuration.toNanos() : Long.MAX_VALUE;
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.mode = mode != null ? mode : FcmRateLimiter.Mode.FAIL_FAST;
+        this.maxWaitNanos = maxWait != null ? maxWait.toNanos() : 0L;
+        this.bucketNanos = slidingWindow.toNanos() / BUCKETS;
+        resetWindow();
+    }
+
+    /**
+     * Gets the current state of the breaker.
+     *
+     * @return The current state.
+     */
+    public State getState() {
+        return phase.get().state();
+    }
+
+    @Override
+    public void beforeAttempt(FcmSendContext context, int attempt) {
+        if (tryPermit(context, attempt)) {
+            return;
+        }
+        if (mode == FcmRateLimiter.Mode.FAIL_FAST || maxWaitNanos <= 0) {
+            throw open();
+        }
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (true) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw open();
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+            if (Thread.currentThread().isInterrupted()) {
+                throw new FcmCircuitBreakerOpenException("Interrupted while waiting for the FCM circuit breaker");
+            }
+            if (tryPermit(context, attempt)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> beforeAttemptAsync(FcmSendContext context, int attempt) {
+        if (tryPermit(context, attempt)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (mode == FcmRateLimiter.Mode.FAIL_FAST || maxWaitNanos <= 0) {
+            return CompletableFuture.failedFuture(open());
+        }
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        schedulePermit(permit, context, attempt, System.nanoTime() + maxWaitNanos);
+        return permit;
+    }
+
+    @Override
+    public void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+        Phase probedPhase = probes.isEmpty() ? null : probes.remove(new Probe(context, attempt));
+        if (latencyNanos == 0) {
+            // Rejected by a later interceptor; no request was made, so a probe permit is handed back.
+            if (probedPhase != null) {
+                probedPhase.permits().incrementAndGet();
+            }
+            return;
+        }
+        boolean failed = isFailure(failure);
+        boolean slow = latencyNanos >= slowCallNanos;
+        long now = System.nanoTime();
+        Phase current = phase.get();
+        if (probedPhase != null && probedPhase == current) {
+            if (failed || slow) {
+                trip(current, now);
+            } else if (current.successes().incrementAndGet() >= halfOpenCalls
+                    && phase.compareAndSet(current, Phase.closed())) {
+                resetWindow();
+                logger.info("FCM circuit breaker closed");
+            }
+        } else if (current.state() == State.CLOSED) {
+            record(now, failed, slow);
+            if ((failed || slow) && isOverThreshold(now)) {
+                trip(current, now);
+            }
+        }
+    }
+
+    /**
+     * Runs right after the dead-token registry, so that sends rejected by the breaker never take a concurrency slot
+     * or a rate limit permit.
+     *
+     * @return The order of this interceptor.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 200;
+    }
+
+    private void schedulePermit(CompletableFuture<Void> permit, FcmSendContext context, int attempt, long deadline) {
+        long now = System.nanoTime();
+        long remaining = deadline - now;
+        if (remaining <= 0) {
+            permit.completeExceptionally(open());
+            return;
+        }
+        // While open, nothing changes before the open duration has elapsed; once half-open, poll for a free probe.
+        long delay = MAX_PARK_NANOS;
+        Phase current = phase.get();
+        if (current.state() == State.OPEN) {
+            delay = Math.max(delay, current.openedAtNanos() + openNanos - now);
+        }
+        CompletableFuture.delayedExecutor(Math.min(remaining, delay), TimeUnit.NANOSECONDS).execute(() -> {
+            if (tryPermit(context, attempt)) {
+                permit.complete(null);
+            } else {
+                schedulePermit(permit, context, attempt, deadline);
+            }
+        });
+    }
+
+    private boolean tryPermit(FcmSendContext context, int attempt) {
+        Phase current = phase.get();
+        if (current.state() == State.OPEN) {
+            if (System.nanoTime() - current.openedAtNanos() < openNanos) {
+                return false;
+            }
+            // Only the thread that half-opens the breaker hands out the probe permits.
+            if (phase.compareAndSet(current, Phase.halfOpen(halfOpenCalls))) {
+                logger.info("FCM circuit breaker half-open, probing with {} sends", halfOpenCalls);
+            }
+            current = phase.get();
+        }
+        if (current.state() == State.HALF_OPEN) {
+            AtomicInteger permits = current.permits();
+            int available;
+            do {
+                available = permits.get();
+                if (available <= 0) {
+                    return false;
+                }
+            } while (!permits.compareAndSet(available, available - 1));
+            probes.put(new Probe(context, attempt), current);
+            return true;
+        }
+        return current.state() == State.CLOSED;
+    }
+
+    private void trip(Phase from, long now) {
+        if (phase.compareAndSet(from, Phase.open(now))) {
+            logger.warn("FCM circuit breaker opened, rejecting sends for {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(openNanos));
+        }
+    }
+
+    private void record(long now, boolean failed, boolean slow) {
+        long epoch = Math.floorDiv(now, bucketNanos);
+        int bucket = (int) Math.floorMod(epoch, BUCKETS);
+        long bucketEpoch = bucketEpochs.get(bucket);
+        // Counts racing with the reset of a bucket may be lost, which only makes the rates slightly approximate.
+        if (bucketEpoch != epoch && bucketEpochs.compareAndSet(bucket, bucketEpoch, epoch)) {
+            counters.set(bucket * 3, 0);
+            counters.set(bucket * 3 + 1, 0);
+            counters.set(bucket * 3 + 2, 0);
+        }
+        counters.incrementAndGet(bucket * 3);
+        if (failed) {
+            counters.incrementAndGet(bucket * 3 + 1);
+        }
+        if (slow) {
+            counters.incrementAndGet(bucket * 3 + 2);
+        }
+    }
+
+    private boolean isOverThreshold(long now) {
+        long epoch = Math.floorDiv(now, bucketNanos);
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (bucketEpochs.get(bucket) > epoch - BUCKETS) {
+                calls += counters.get(bucket * 3);
+                failures += counters.get(bucket * 3 + 1);
+                slowCalls += counters.get(bucket * 3 + 2);
+            }
+        }
+        return calls >= minimumCalls && (failures >= failureRateThreshold * calls
+                || slowCalls >= slowCallRateThreshold * calls);
+    }
+
+    private void resetWindow() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            bucketEpochs.set(bucket, Long.MIN_VALUE);
+        }
+    }
+
+    private FcmCircuitBreakerOpenException open() {
+        return new FcmCircuitBreakerOpenException("FCM circuit breaker is " + getState()
+                + ", send rejected without a request");
+    }
+
+    private static boolean isFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FcmRestClientException ex) {
+                return ex.getHttpStatus() >= 500 || ex.getHttpStatus() == 429;
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A state of the breaker, replaced as a whole on every transition so that the probe counters of a half-open phase
+     * are never shared with another one.
+     */
+    private record Phase(State state, long openedAtNanos, AtomicInteger permits, AtomicInteger successes) {
+
+        static Phase closed() {
+            return new Phase(State.CLOSED, 0L, null, null);
+        }
+
+        static Phase open(long now) {
+            return new Phase(State.OPEN, now, null, null);
+        }
+
+        static Phase halfOpen(int calls) {
+            return new Phase(State.HALF_OPEN, 0L, new AtomicInteger(calls), new AtomicInteger());
+        }
+    }
+
+    /**
+     * Identifies a probe attempt by the identity of its send, as contexts of distinct sends may be equal.
+     */
+    private record Probe(FcmSendContext context, int attempt) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Probe probe && probe.context == context && probe.attempt == attempt;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(context) + attempt;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmConcurrencyLimitExceededException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An adaptive limit on the number of requests in flight to FCM, which tracks the highest concurrency FCM sustains
+ * without its latency or error rate degrading.
+ * <p>
+ * The limit follows a gradient algorithm, updated at most once per window of one short-term latency: an
+ * exponentially weighted moving average of the observed latency is compared with the baseline latency, the lowest
+ * observed recently. While the average stays within {@code latencyTolerance} times the baseline, the limit grows by
+ * a fraction of its square root per window. Once requests queue up at FCM and the average rises, the ratio of the
+ * two pulls the limit back down. The baseline is re-learned periodically, so that a lasting change of the network
+ * path is not mistaken for congestion. The limit is only raised while at least half of it is in use, so that it does
+ * not drift upwards during quiet periods.
+ * </p>
+ * <p>
+ * On top of that, a {@code QUOTA_EXCEEDED} (HTTP 429) or {@code UNAVAILABLE} (HTTP 503) response, or a request
+ * timeout, multiplies the limit by {@code decreaseFactor}, at most once per short-term latency, so that a burst of
+ * failures from requests already in flight counts as a single overload signal.
+ * </p>
+ * <p>
+ * When the limit is reached, a send either waits for a request to complete ({@link FcmRateLimiter.Mode#BLOCK},
+ * bounded by {@code maxWait}) or is rejected immediately ({@link FcmRateLimiter.Mode#FAIL_FAST}) with an
+ * {@link FcmConcurrencyLimitExceededException}. A blocking send parks its thread while waiting; an asynchronous send
+ * is queued instead, and resumes on a pool thread when a slot is handed to it.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmConcurrencyLimiter implements FcmSendInterceptor, Ordered {
+    // Weight of the latency moving average: about the last 10 samples.
+    private static final double LATENCY_WEIGHT = 0.1;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final long MIN_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int BASELINE_WINDOWS = 1_000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final FcmRateLimiter.Mode mode;
+    private final long maxWaitNanos;
+    private final double decreaseFactor;
+    private final double latencyTolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition available = waitLock.newCondition();
+    private volatile int waiters;
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> asyncWaiters = new ConcurrentLinkedQueue<>();
+    private volatile int limit;
+
+    // Guarded by estimateLock.
+    private final ReentrantLock estimateLock = new ReentrantLock();
+    private double estimatedLimit;
+    private double latencyNanos;
+    private long baselineLatencyNanos;
+    private long windowStartNanos;
+    private int windowMaxInFlight;
+    private int windows;
+    private long lastDecreaseNanos;
+
+    /**
+     * Constructs a new {@link FcmConcurrencyLimiter}.
+     *
+     * @param initialLimit     The number of requests allowed in flight before any latency has been observed.
+     * @param minLimit         The lowest the limit goes down to.
+     * @param maxLimit         The highest the limit goes up to.
+     * @param mode             How the limiter behaves when the limit is reached.
+     * @param maxWait          The longest a send waits for a request to complete in {@link FcmRateLimiter.Mode#BLOCK}
+     *                         mode.
+     * @param decreaseFactor   The factor the limit is multiplied by on an overload response, between 0 and 1.
+     * @param latencyTolerance How much the short-term latency may exceed the baseline latency before the limit is
+     *                         lowered, at least 1.
+     */
+    public FcmConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, FcmRateLimiter.Mode mode,
+                                 Duration maxWait, double decreaseFactor, double latencyTolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("fcm.concurrency-limit.min-limit must be at least 1 and at most " +
+                    "fcm.concurrency-limit.max-limit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.mode = mode != null ? mode : FcmRateLimiter.Mode.BLOCK;
+        this.maxWaitNanos = maxWait != null ? maxWait.toNanos() : Long.MAX_VALUE;
+        this.decreaseFactor = Math.min(1.0, Math.max(0.01, decreaseFactor));
+        this.latencyTolerance = Math.max(1.0, latencyTolerance);
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Gets the number of requests currently allowed in flight.
+     *
+     * @return The current limit.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the number of requests currently in flight.
+     *
+     * @return The number of requests in flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Takes a slot for one request, waiting for it or rejecting the send according to the mode.
+     *
+     * @throws FcmConcurrencyLimitExceededException If no slot is available in time.
+     */
+    public void acquire() {
+        if (tryAcquire()) {
+            return;
+        }
+        if (mode == FcmRateLimiter.Mode.FAIL_FAST) {
+            throw limitExceeded();
+        }
+        long remaining = maxWaitNanos;
+        waitLock.lock();
+        try {
+            waiters++;
+            try {
+                // Registered as a waiter before retrying, so that a concurrent release is sure to signal.
+                while (!tryAcquire()) {
+                    if (remaining <= 0) {
+                        throw limitExceeded();
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } finally {
+                waiters--;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FcmConcurrencyLimitExceededException("Interrupted while waiting for an FCM concurrency slot");
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot for one request without blocking the caller. When no slot is available, the returned future
+     * completes once a slot is handed to it, or fails with an {@link FcmConcurrencyLimitExceededException} according
+     * to the mode.
+     *
+     * @return A future completed when the slot is taken.
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        if (tryAcquire()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (mode == FcmRateLimiter.Mode.FAIL_FAST) {
+            return CompletableFuture.failedFuture(limitExceeded());
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        asyncWaiters.add(waiter);
+        if (maxWaitNanos != Long.MAX_VALUE) {
+            CompletableFuture.delayedExecutor(maxWaitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                if (waiter.completeExceptionally(limitExceeded())) {
+                    asyncWaiters.remove(waiter);
+                }
+            });
+        }
+        // Queued before retrying, so that a concurrent release is sure to see the waiter.
+        handOff();
+        return waiter;
+    }
+
+    /**
+     * Releases a slot taken by {@link #acquire()} or {@link #acquireAsync()}.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        if (!asyncWaiters.isEmpty()) {
+            handOff();
+        }
+        if (waiters > 0) {
+            signal(false);
+        }
+    }
+
+    @Override
+    public void beforeAttempt(FcmSendContext context, int attempt) {
+        acquire();
+    }
+
+    @Override
+    public CompletableFuture<Void> beforeAttemptAsync(FcmSendContext context, int attempt) {
+        return acquireAsync();
+    }
+
+    @Override
+    public void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+        int inFlightDuringAttempt = inFlight.get();
+        release();
+        if (isOverload(failure)) {
+            decrease();
+        } else if (latencyNanos > 0 && (failure == null || failure instanceof FcmRestClientException)) {
+            sample(latencyNanos, inFlightDuringAttempt);
+        }
+    }
+
+    /**
+     * Runs just before the rate limiter, so that sends rejected by earlier interceptors never take a slot.
+     *
+     * @return The order of this interceptor.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 200;
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void handOff() {
+        while (!asyncWaiters.isEmpty() && tryAcquire()) {
+            CompletableFuture<Void> waiter = asyncWaiters.poll();
+            if (waiter == null) {
+                release();
+                return;
+            }
+            // Resumed on a pool thread, so that the send does not run nested in the release of another one.
+            ForkJoinPool.commonPool().execute(() -> {
+                if (!waiter.complete(null)) {
+                    // Timed out in the meantime: pass the slot on.
+                    release();
+                }
+            });
+        }
+    }
+
+    private void sample(long sampleNanos, int inFlightDuringAttempt) {
+        // Samples are plentiful; skip this one rather than queue behind another thread.
+        if (!estimateLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            if (baselineLatencyNanos == 0) {
+                latencyNanos = sampleNanos;
+                baselineLatencyNanos = sampleNanos;
+                windowStartNanos = now;
+            } else {
+                latencyNanos += (sampleNanos - latencyNanos) * LATENCY_WEIGHT;
+                baselineLatencyNanos = Math.min(baselineLatencyNanos, sampleNanos);
+            }
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlightDuringAttempt);
+            if (now - windowStartNanos < Math.max(MIN_WINDOW_NANOS, (long) latencyNanos)) {
+                return;
+            }
+            int maxInFlight = windowMaxInFlight;
+            windowStartNanos = now;
+            windowMaxInFlight = 0;
+            if (++windows % BASELINE_WINDOWS == 0) {
+                baselineLatencyNanos = (long) latencyNanos;
+            }
+            if (maxInFlight < estimatedLimit / 2) {
+                return;
+            }
+            double gradient = Math.max(MIN_GRADIENT,
+                    Math.min(1.0, latencyTolerance * baselineLatencyNanos / latencyNanos));
+            double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            update(estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING);
+        } finally {
+            estimateLock.unlock();
+        }
+    }
+
+    private void decrease() {
+        estimateLock.lock();
+        try {
+            long now = System.nanoTime();
+            long window = Math.max(MIN_WINDOW_NANOS, (long) latencyNanos);
+            if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < window) {
+                return;
+            }
+            lastDecreaseNanos = now;
+            update(estimatedLimit * decreaseFactor);
+            logger.warn("FCM is overloaded, lowering the concurrency limit to {}", limit);
+        } finally {
+            estimateLock.unlock();
+        }
+    }
+
+    private void update(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        int previous = limit;
+        limit = (int) estimatedLimit;
+        if (limit > previous) {
+            if (!asyncWaiters.isEmpty()) {
+                handOff();
+            }
+            if (waiters > 0) {
+                signal(true);
+            }
+        }
+    }
+
+    private void signal(boolean all) {
+        waitLock.lock();
+        try {
+            if (all) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private FcmConcurrencyLimitExceededException limitExceeded() {
+        return new FcmConcurrencyLimitExceededException("FCM concurrency limit of " + limit + " requests reached");
+    }
+
+    private static boolean isOverload(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FcmRestClientException ex) {
+                return ex.getHttpStatus() == 429 || ex.getHttpStatus() == 503
+                        || ex.getErrorCode() == FcmErrorCode.QUOTA_EXCEEDED
+                        || ex.getErrorCode() == FcmErrorCode.UNAVAILABLE;
+            }
+            if (cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
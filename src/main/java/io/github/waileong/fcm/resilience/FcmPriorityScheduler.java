@@ -0,0 +1,340 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmConcurrencyLimitExceededException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Schedules the requests in flight to FCM across priority lanes, so that latency-critical sends are not queued behind
+ * bulk traffic when the send path is saturated.
+ * <p>
+ * The scheduler admits at most {@code capacity} requests in flight, a fixed number or the current limit of the
+ * {@link FcmConcurrencyLimiter}. A share of that capacity is reserved for the {@link FcmSendLane#CRITICAL} and
+ * {@link FcmSendLane#STANDARD} lanes: other lanes can only use the capacity that is neither in use nor reserved, so
+ * a critical send finds a free slot at once even while bulk sends fill the rest. Sends that find no free slot wait in
+ * the FIFO queue of their lane, as a future completed when a slot is handed to them: a blocking send waits on it, an
+ * asynchronous send resumes on a pool thread without holding one while queued. When a slot is released, the queues are served either strictly by priority
+ * ({@link Scheduling#STRICT}), or in proportion to the lane weights with a smooth weighted round robin
+ * ({@link Scheduling#WEIGHTED}), which keeps bulk sends moving while higher lanes are busy.
+ * </p>
+ * <p>
+ * Since the scheduler runs before the concurrency and rate limiters, it also bounds how many sends can queue up in
+ * them ahead of a critical send. The scheduler only reserves concurrency: a critical send still takes its place in
+ * the schedule of the {@link FcmRateLimiter}, unless a share of the rate is reserved there for the critical lane too. When no slot is available in time, the send is rejected with an
+ * {@link FcmConcurrencyLimitExceededException}, at once in {@link FcmRateLimiter.Mode#FAIL_FAST} mode, or after
+ * {@code maxWait} in {@link FcmRateLimiter.Mode#BLOCK} mode.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmPriorityScheduler implements FcmSendInterceptor, Ordered {
+    private static final FcmSendLane[] LANES = FcmSendLane.values();
+
+    /**
+     * How the lane queues are served when a slot is released.
+     */
+    public enum Scheduling {
+        /**
+         * Always serve the highest lane with a waiting send.
+         */
+        STRICT,
+        /**
+         * Serve the lanes with a waiting send in proportion to their weights.
+         */
+        WEIGHTED
+    }
+
+    private final IntSupplier capacity;
+    private final double[] reservedShares = new double[LANES.length];
+    private final int[] weights = new int[LANES.length];
+    private final Scheduling scheduling;
+    private final FcmRateLimiter.Mode mode;
+    private final long maxWaitNanos;
+
+    // Guarded by lock.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int[] inFlight = new int[LANES.length];
+    private final int[] currentWeights = new int[LANES.length];
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<CompletableFuture<Void>>[] queues = new ArrayDeque[LANES.length];
+    private int totalInFlight;
+    private int waiting;
+
+    /**
+     * Constructs a new {@link FcmPriorityScheduler}.
+     *
+     * @param capacity       Supplies the number of requests allowed in flight, read whenever a slot is requested or
+     *                       released.
+     * @param criticalShare  The fraction of the capacity reserved for the critical lane, between 0 and 1.
+     * @param standardShare  The fraction of the capacity reserved for the standard lane, between 0 and 1.
+     * @param scheduling     How the lane queues are served.
+     * @param criticalWeight The weight of the critical lane in {@link Scheduling#WEIGHTED} scheduling.
+     * @param standardWeight The weight of the standard lane in {@link Scheduling#WEIGHTED} scheduling.
+     * @param bulkWeight     The weight of the bulk lane in {@link Scheduling#WEIGHTED} scheduling.
+     * @param mode           How the scheduler behaves when no slot is available.
+     * @param maxWait        The longest a send waits for a slot in {@link FcmRateLimiter.Mode#BLOCK} mode.
+     */
+    public FcmPriorityScheduler(IntSupplier capacity, double criticalShare, double standardShare,
+                                Scheduling scheduling, int criticalWeight, int standardWeight, int bulkWeight,
+                                FcmRateLimiter.Mode mode, Duration maxWait) {
+        if (criticalShare < 0 || standardShare < 0 || criticalShare + standardShare > 1) {
+            throw new IllegalArgumentException("fcm.priority reserved shares must be positive and add up to at " +
+                    "most 1");
+        }
+        this.capacity = capacity;
+        this.reservedShares[FcmSendLane.CRITICAL.ordinal()] = criticalShare;
+        this.reservedShares[FcmSendLane.STANDARD.ordinal()] = standardShare;
+        this.weights[FcmSendLane.CRITICAL.ordinal()] = Math.max(1, criticalWeight);
+        this.weights[FcmSendLane.STANDARD.ordinal()] = Math.max(1, standardWeight);
+        this.weights[FcmSendLane.BULK.ordinal()] = Math.max(1, bulkWeight);
+        this.scheduling = scheduling != null ? scheduling : Scheduling.STRICT;
+        this.mode = mode != null ? mode : FcmRateLimiter.Mode.BLOCK;
+        this.maxWaitNanos = maxWait != null ? maxWait.toNanos() : Long.MAX_VALUE;
+        for (int i = 0; i < LANES.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Gets the number of requests of a lane currently in flight.
+     *
+     * @param lane The lane.
+     * @return The number of requests in flight.
+     */
+    public int getInFlight(FcmSendLane lane) {
+        lock.lock();
+        try {
+            return inFlight[lane.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of sends of a lane waiting for a slot.
+     *
+     * @param lane The lane.
+     * @return The number of waiting sends.
+     */
+    public int getWaiting(FcmSendLane lane) {
+        lock.lock();
+        try {
+            return queues[lane.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot for one request of the given lane, waiting for it or rejecting the send according to the mode.
+     *
+     * @param lane The lane of the send.
+     * @throws FcmConcurrencyLimitExceededException If no slot is available in time.
+     */
+    public void acquire(FcmSendLane lane) {
+        CompletableFuture<Void> slot = acquireAsync(lane);
+        try {
+            slot.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            // Keeps the slot if it was handed over in the meantime, since the caller owns it then.
+            if (withdraw(slot, lane)) {
+                throw new FcmConcurrencyLimitExceededException("Interrupted while waiting for an FCM " + lane
+                        + " lane slot");
+            }
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException cause ? cause : noSlot(lane);
+        }
+    }
+
+    /**
+     * Takes a slot for one request of the given lane without blocking the caller. When no slot is free, the send is
+     * queued in its lane, and the returned future completes once a slot is handed to it, or fails with an
+     * {@link FcmConcurrencyLimitExceededException} according to the mode.
+     *
+     * @param lane The lane of the send.
+     * @return A future completed when the slot is taken.
+     */
+    public CompletableFuture<Void> acquireAsync(FcmSendLane lane) {
+        int index = lane.ordinal();
+        CompletableFuture<Void> slot = new CompletableFuture<>();
+        lock.lock();
+        try {
+            // Sends already waiting go first; a new send only skips the queues when nobody waits.
+            if (waiting == 0 && hasFreeSlot(index, capacity.getAsInt())) {
+                admit(index);
+                return CompletableFuture.completedFuture(null);
+            }
+            if (mode == FcmRateLimiter.Mode.FAIL_FAST || maxWaitNanos <= 0) {
+                return CompletableFuture.failedFuture(noSlot(lane));
+            }
+            queues[index].addLast(slot);
+            waiting++;
+            // A slot may have been freed for this lane by a capacity increase since the last release.
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+        if (maxWaitNanos != Long.MAX_VALUE) {
+            CompletableFuture.delayedExecutor(maxWaitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                if (withdraw(slot, lane)) {
+                    slot.completeExceptionally(noSlot(lane));
+                }
+            });
+        }
+        return slot;
+    }
+
+    /**
+     * Releases a slot taken by {@link #acquire(FcmSendLane)} or {@link #acquireAsync(FcmSendLane)}, and hands it to the next waiting send.
+     *
+     * @param lane The lane the slot was taken for.
+     */
+    public void release(FcmSendLane lane) {
+        lock.lock();
+        try {
+            inFlight[lane.ordinal()]--;
+            totalInFlight--;
+            if (waiting > 0) {
+                dispatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void beforeAttempt(FcmSendContext context, int attempt) {
+        acquire(lane(context));
+    }
+
+    @Override
+    public CompletableFuture<Void> beforeAttemptAsync(FcmSendContext context, int attempt) {
+        return acquireAsync(lane(context));
+    }
+
+    @Override
+    public void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+        release(lane(context));
+    }
+
+    /**
+     * Runs after the dead-token registry and the circuit breaker, and before the concurrency and rate limiters, so
+     * that sends wait in their own lane rather than in the shared queues of the limiters.
+     *
+     * @return The order of this interceptor.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 300;
+    }
+
+    /**
+     * Admits waiting sends while slots are free, picking the lane of each according to the scheduling.
+     */
+    private void dispatch() {
+        int slots = capacity.getAsInt();
+        while (waiting > 0) {
+            int index = scheduling == Scheduling.STRICT ? nextStrict(slots) : nextWeighted(slots);
+            if (index < 0) {
+                return;
+            }
+            CompletableFuture<Void> slot = queues[index].pollFirst();
+            waiting--;
+            admit(index);
+            // Completed outside the lock, so that the send does not run while holding it.
+            ForkJoinPool.commonPool().execute(() -> slot.complete(null));
+        }
+    }
+
+    /**
+     * Removes a send from the queue of its lane, unless a slot was already handed to it.
+     *
+     * @return {@code true} if the send was still queued.
+     */
+    private boolean withdraw(CompletableFuture<Void> slot, FcmSendLane lane) {
+        lock.lock();
+        try {
+            if (queues[lane.ordinal()].remove(slot)) {
+                waiting--;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int nextStrict(int slots) {
+        for (int i = 0; i < LANES.length; i++) {
+            if (!queues[i].isEmpty() && hasFreeSlot(i, slots)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int nextWeighted(int slots) {
+        int selected = -1;
+        int totalWeight = 0;
+        for (int i = 0; i < LANES.length; i++) {
+            if (!queues[i].isEmpty() && hasFreeSlot(i, slots)) {
+                currentWeights[i] += weights[i];
+                totalWeight += weights[i];
+                if (selected < 0 || currentWeights[i] > currentWeights[selected]) {
+                    selected = i;
+                }
+            }
+        }
+        if (selected >= 0) {
+            currentWeights[selected] -= totalWeight;
+        }
+        return selected;
+    }
+
+    /**
+     * Indicates whether a lane may take a slot: one of its own reserved slots is unused, or a slot is free that is not
+     * reserved for another lane.
+     */
+    private boolean hasFreeSlot(int index, int slots) {
+        if (inFlight[index] < reserved(index, slots)) {
+            return totalInFlight < slots;
+        }
+        int free = slots - totalInFlight;
+        for (int i = 0; i < LANES.length && free > 0; i++) {
+            if (i != index) {
+                free -= Math.max(0, reserved(i, slots) - inFlight[i]);
+            }
+        }
+        return free > 0;
+    }
+
+    private int reserved(int index, int slots) {
+        return (int) Math.ceil(reservedShares[index] * slots);
+    }
+
+    private void admit(int index) {
+        inFlight[index]++;
+        totalInFlight++;
+    }
+
+    private static FcmSendLane lane(FcmSendContext context) {
+        return context.lane() != null ? context.lane() : FcmSendLane.STANDARD;
+    }
+
+    private FcmConcurrencyLimitExceededException noSlot(FcmSendLane lane) {
+        return new FcmConcurrencyLimitExceededException("No FCM " + lane + " lane slot available, "
+                + totalInFlight + " requests in flight");
+    }
+}
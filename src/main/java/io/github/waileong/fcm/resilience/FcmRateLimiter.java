@@ -0,0 +1,356 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmRateLimitExceededException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free token-bucket rate limiter that paces sends to stay within the FCM project send quota.
+ * <p>
+ * The bucket is implemented with the generic cell rate algorithm: a single {@link AtomicLong} holds the theoretical
+ * arrival time of the next permit, and every send advances it by the current permit interval. Up to {@code burst}
+ * permits can be taken at once after an idle period. When no permit is available, the limiter either waits for one
+ * ({@link Mode#BLOCK}, bounded by {@code maxWait}) or rejects the send immediately ({@link Mode#FAIL_FAST}) with an
+ * {@link FcmRateLimitExceededException}. Only blocking sends park their thread while waiting; asynchronous sends are
+ * resumed by a scheduled task once their permit is due. A blocking send interrupted while it waits hands its permit
+ * back.
+ * </p>
+ * <p>
+ * The bucket is a single FIFO schedule, so a send waits behind every permit already reserved. To keep critical sends
+ * from waiting behind a campaign, a {@code criticalShare} of the rate can be reserved for the
+ * {@link FcmSendLane#CRITICAL} lane in a bucket of its own. The other lanes are then paced at the rest of the rate. A
+ * critical send takes a shared permit when one is free at once, and otherwise waits only for its reserved bucket, so
+ * the sum of both never exceeds the configured rate.
+ * </p>
+ * <p>
+ * When adaptive, the limiter multiplies its rate by {@code decreaseFactor} whenever FCM answers with
+ * {@code QUOTA_EXCEEDED} (HTTP 429), at most once per {@code recoveryInterval}, down to {@code minPermitsPerMinute}.
+ * After each {@code recoveryInterval} without a 429, the rate grows again by {@code recoveryStep} of the configured
+ * rate, until it reaches the configured rate. Decreases and increases are timed separately, so that a recent increase
+ * never delays the reaction to a 429.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmRateLimiter implements FcmSendInterceptor, Ordered {
+    private static final long UNAVAILABLE = Long.MAX_VALUE;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * How the limiter behaves when no permit is available.
+     */
+    public enum Mode {
+        /**
+         * Wait for a permit, up to the configured maximum wait.
+         */
+        BLOCK,
+        /**
+         * Reject the send immediately.
+         */
+        FAIL_FAST
+    }
+
+    private final Mode mode;
+    private final int burst;
+    private final long maxWaitNanos;
+    private final boolean adaptive;
+    private final double decreaseFactor;
+    private final long recoveryNanos;
+    private final long recoveryStepPermitsPerMinute;
+    private final long maxPermitsPerMinute;
+    private final long minPermitsPerMinute;
+    private final double criticalShare;
+
+    private final AtomicLong theoreticalArrivalNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong criticalArrivalNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong lastDecreaseNanos;
+    private final AtomicLong lastIncreaseNanos;
+    private final AtomicLong permitsPerMinute;
+
+    /**
+     * Constructs a new {@link FcmRateLimiter}.
+     *
+     * @param permitsPerMinute    The maximum sustained number of sends per minute.
+     * @param burst               The number of permits that can be taken at once after an idle period.
+     * @param mode                How the limiter behaves when no permit is available.
+     * @param maxWait             The longest a send waits for a permit in {@link Mode#BLOCK} mode.
+     * @param adaptive            Whether the rate is lowered automatically when FCM returns 429.
+     * @param minPermitsPerMinute The lowest rate an adaptive limiter goes down to.
+     * @param decreaseFactor      The factor the rate is multiplied by on a 429, between 0 and 1.
+     * @param recoveryInterval    The minimum time between two decreases of the rate, and before each increase.
+     * @param recoveryStep        The fraction of the configured rate added back after each quiet recovery interval.
+     */
+    public FcmRateLimiter(long permitsPerMinute, int burst, Mode mode, Duration maxWait, boolean adaptive,
+                          long minPermitsPerMinute, double decreaseFactor, Duration recoveryInterval,
+                          double recoveryStep) {
+        this(permitsPerMinute, burst, mode, maxWait, adaptive, minPermitsPerMinute, decreaseFactor, recoveryInterval,
+                recoveryStep, 0.0);
+    }
+
+    /**
+     * Constructs a new {@link FcmRateLimiter} that reserves a share of the rate for critical sends.
+     *
+     * @param permitsPerMinute    The maximum sustained number of sends per minute.
+     * @param burst               The number of permits that can be taken at once after an idle period.
+     * @param mode                How the limiter behaves when no permit is available.
+     * @param maxWait             The longest a send waits for a permit in {@link Mode#BLOCK} mode.
+     * @param adaptive            Whether the rate is lowered automatically when FCM returns 429.
+     * @param minPermitsPerMinute The lowest rate an adaptive limiter goes down to.
+     * @param decreaseFactor      The factor the rate is multiplied by on a 429, between 0 and 1.
+     * @param recoveryInterval    The minimum time between two decreases of the rate, and before each increase.
+     * @param recoveryStep        The fraction of the configured rate added back after each quiet recovery interval.
+     * @param criticalShare       The fraction of the rate reserved for the critical lane, from 0 inclusive to 1
+     *                            exclusive.
+     */
+    public FcmRateLimiter(long permitsPerMinute, int burst, Mode mode, Duration maxWait, boolean adaptive,
+                          long minPermitsPerMinute, double decreaseFactor, Duration recoveryInterval,
+                          double recoveryStep, double criticalShare) {
+        if (permitsPerMinute < 1) {
+            throw new IllegalArgumentException("fcm.rate-limit.permits-per-minute must be at least 1");
+        }
+        if (criticalShare < 0 || criticalShare >= 1) {
+            throw new IllegalArgumentException("fcm.rate-limit.critical-share must be at least 0 and below 1");
+        }
+        this.criticalShare = criticalShare;
+        this.maxPermitsPerMinute = permitsPerMinute;
+        this.minPermitsPerMinute = Math.max(1L, Math.min(minPermitsPerMinute, permitsPerMinute));
+        this.burst = Math.max(1, burst);
+        this.mode = mode != null ? mode : Mode.BLOCK;
+        this.maxWaitNanos = maxWait != null ? maxWait.toNanos() : Long.MAX_VALUE;
+        this.adaptive = adaptive;
+        this.decreaseFactor = Math.min(1.0, Math.max(0.01, decreaseFactor));
+        this.recoveryNanos = recoveryInterval.toNanos();
+        this.recoveryStepPermitsPerMinute = Math.max(1L, (long) (permitsPerMinute * recoveryStep));
+        this.permitsPerMinute = new AtomicLong(permitsPerMinute);
+        // The first 429 is reacted to at once.
+        this.lastDecreaseNanos = new AtomicLong(System.nanoTime() - recoveryNanos);
+        this.lastIncreaseNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Gets the rate currently enforced, which is lower than the configured rate after FCM returned 429.
+     *
+     * @return The current number of permits per minute.
+     */
+    public long getPermitsPerMinute() {
+        return permitsPerMinute.get();
+    }
+
+    /**
+     * Takes a permit for a standard send, waiting for it or rejecting the send according to the {@link Mode}. The
+     * calling thread is parked while it waits.
+     *
+     * @throws FcmRateLimitExceededException If no permit is available in time.
+     */
+    public void acquire() {
+        acquire(FcmSendLane.STANDARD);
+    }
+
+    /**
+     * Takes a permit for a send in the given lane, waiting for it or rejecting the send according to the
+     * {@link Mode}. The calling thread is parked while it waits.
+     *
+     * @param lane The lane of the send.
+     * @throws FcmRateLimitExceededException If no permit is available in time.
+     */
+    public void acquire(FcmSendLane lane) {
+        long interval = intervalNanos();
+        long waitNanos = reserve(lane, interval);
+        if (waitNanos > 0) {
+            long deadline = System.nanoTime() + waitNanos;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.currentThread().isInterrupted()) {
+                    // The permit is not used: hand it back to the next send. A critical send only waits in its own
+                    // bucket, as it takes a shared permit only when one is free at once.
+                    if (isReserved(lane)) {
+                        criticalArrivalNanos.addAndGet(-criticalIntervalNanos(interval));
+                    } else {
+                        theoreticalArrivalNanos.addAndGet(-sharedIntervalNanos(interval));
+                    }
+                    throw new FcmRateLimitExceededException("Interrupted while waiting for an FCM send permit");
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a permit for a standard send without blocking. In {@link Mode#BLOCK} mode, the wait for the permit is
+     * scheduled instead.
+     *
+     * @return A future completed once the permit may be used, or failed with an
+     * {@link FcmRateLimitExceededException} if no permit is available in time.
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        return acquireAsync(FcmSendLane.STANDARD);
+    }
+
+    /**
+     * Takes a permit for a send in the given lane without blocking. In {@link Mode#BLOCK} mode, the wait for the
+     * permit is scheduled instead.
+     *
+     * @param lane The lane of the send.
+     * @return A future completed once the permit may be used, or failed with an
+     * {@link FcmRateLimitExceededException} if no permit is available in time.
+     */
+    public CompletableFuture<Void> acquireAsync(FcmSendLane lane) {
+        long waitNanos;
+        try {
+            waitNanos = reserve(lane, intervalNanos());
+        } catch (FcmRateLimitExceededException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> permit.complete(null));
+        return permit;
+    }
+
+    @Override
+    public void beforeAttempt(FcmSendContext context, int attempt) {
+        acquire(context != null ? context.lane() : FcmSendLane.STANDARD);
+    }
+
+    @Override
+    public CompletableFuture<Void> beforeAttemptAsync(FcmSendContext context, int attempt) {
+        return acquireAsync(context != null ? context.lane() : FcmSendLane.STANDARD);
+    }
+
+    /**
+     * Reserves the next permit for a send in the given lane, or rejects the send if it cannot be taken in time.
+     *
+     * @param lane     The lane of the send.
+     * @param interval The current permit interval of the whole rate.
+     * @return The time to wait before the permit may be used, or a non-positive value if it may be used at once.
+     */
+    private long reserve(FcmSendLane lane, long interval) {
+        long maxWait = mode == Mode.FAIL_FAST ? 0L : maxWaitNanos;
+        long waitNanos;
+        if (isReserved(lane)) {
+            waitNanos = reserve(theoreticalArrivalNanos, sharedIntervalNanos(interval), 0L);
+            if (waitNanos == UNAVAILABLE) {
+                waitNanos = reserve(criticalArrivalNanos, criticalIntervalNanos(interval), maxWait);
+            }
+        } else {
+            waitNanos = reserve(theoreticalArrivalNanos, sharedIntervalNanos(interval), maxWait);
+        }
+        if (waitNanos == UNAVAILABLE) {
+            throw new FcmRateLimitExceededException("FCM send rate limit of " + permitsPerMinute.get()
+                    + " per minute exceeded");
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Reserves the next permit of a bucket.
+     *
+     * @param arrival  The theoretical arrival time of the next permit of the bucket.
+     * @param interval The permit interval of the bucket.
+     * @param maxWait  The longest the permit may be waited for.
+     * @return The time to wait before the permit may be used, or {@link #UNAVAILABLE} if it cannot be taken in time.
+     */
+    private long reserve(AtomicLong arrival, long interval, long maxWait) {
+        final long tolerance = interval * (burst - 1);
+        while (true) {
+            long now = System.nanoTime();
+            long tat = arrival.get();
+            long start = tat - now > 0 ? tat : now;
+            long waitNanos = start - tolerance - now;
+            if (waitNanos > maxWait) {
+                return UNAVAILABLE;
+            }
+            if (arrival.compareAndSet(tat, start + interval)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    @Override
+    public void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+        if (!adaptive) {
+            return;
+        }
+        if (isQuotaExceeded(failure)) {
+            decrease();
+        } else if (failure == null && permitsPerMinute.get() < maxPermitsPerMinute) {
+            recover();
+        }
+    }
+
+    /**
+     * Runs after the other interceptors, so that permits are only taken by sends that are actually made.
+     *
+     * @return The order of this interceptor.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 100;
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        long last = lastDecreaseNanos.get();
+        // Many in-flight requests fail together on a quota breach; the thread that wins the update reacts for all.
+        if (now - last >= recoveryNanos && lastDecreaseNanos.compareAndSet(last, now)) {
+            long lowered = permitsPerMinute.updateAndGet(rate ->
+                    Math.max(minPermitsPerMinute, (long) (rate * decreaseFactor)));
+            logger.warn("FCM returned QUOTA_EXCEEDED, lowering send rate to {} per minute", lowered);
+        }
+    }
+
+    private void recover() {
+        long now = System.nanoTime();
+        long last = lastIncreaseNanos.get();
+        if (now - last >= recoveryNanos && now - lastDecreaseNanos.get() >= recoveryNanos
+                && lastIncreaseNanos.compareAndSet(last, now)) {
+            long raised = permitsPerMinute.updateAndGet(rate ->
+                    Math.min(maxPermitsPerMinute, rate + recoveryStepPermitsPerMinute));
+            logger.debug("Raising FCM send rate to {} per minute", raised);
+        }
+    }
+
+    private long intervalNanos() {
+        return toIntervalNanos(permitsPerMinute.get());
+    }
+
+    private boolean isReserved(FcmSendLane lane) {
+        return lane == FcmSendLane.CRITICAL && criticalShare > 0;
+    }
+
+    private long sharedIntervalNanos(long interval) {
+        return criticalShare > 0 ? (long) (interval / (1 - criticalShare)) : interval;
+    }
+
+    private long criticalIntervalNanos(long interval) {
+        return (long) (interval / criticalShare);
+    }
+
+    private static boolean isQuotaExceeded(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FcmRestClientException ex) {
+                return ex.getHttpStatus() == 429 || ex.getErrorCode() == FcmErrorCode.QUOTA_EXCEEDED;
+            }
+        }
+        return false;
+    }
+
+    private static long toIntervalNanos(long permitsPerMinute) {
+        return Math.max(1L, TimeUnit.MINUTES.toNanos(1) / permitsPerMinute);
+    }
+}
@@ -0,0 +1,265 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed FCM send is retried.
+ * <p>
+ * FCM asks senders to retry requests that fail with {@code UNAVAILABLE}, {@code INTERNAL} or {@code QUOTA_EXCEEDED}
+ * (HTTP 503, 500 and 429) using exponential backoff, and to honor the {@code Retry-After} header when present.
+ * This policy retries those failures, as well as I/O failures that never received a response, up to a maximum
+ * number of attempts and within a total deadline measured from the first attempt.
+ * </p>
+ * <p>
+ * The delay before attempt {@code n + 1} is {@code initialBackoff * multiplier^(n - 1)}, capped at
+ * {@code maxBackoff} and reduced by a random fraction of up to {@code jitter} to spread out retries from concurrent
+ * senders. A {@code Retry-After} delay longer than the computed one takes precedence. A retry that would start after
+ * the deadline is not attempted.
+ * </p>
+ *
+ * @author Wai Leong
+ * @see <a href="https://firebase.google.com/docs/cloud-messaging/scale-fcm#handling-retries">Handling retries</a>
+ */
+public class FcmRetryPolicy {
+    private static final FcmRetryPolicy NO_RETRY = Builder.aFcmRetryPolicy().maxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double multiplier;
+    private final double jitter;
+    private final long deadlineNanos;
+    private final Set<FcmErrorCode> retryableErrorCodes;
+    private final Set<Integer> retryableHttpStatuses;
+    private final boolean retryOnIoException;
+
+    private FcmRetryPolicy(Builder builder) {
+        this.maxAttempts = Math.max(1, builder.maxAttempts);
+        this.initialBackoffNanos = builder.initialBackoff.toNanos();
+        this.maxBackoffNanos = builder.maxBackoff.toNanos();
+        this.multiplier = Math.max(1.0, builder.multiplier);
+        this.jitter = Math.min(1.0, Math.max(0.0, builder.jitter));
+        this.deadlineNanos = builder.deadline != null ? builder.deadline.toNanos() : Long.MAX_VALUE;
+        this.retryableErrorCodes = Set.copyOf(builder.retryableErrorCodes);
+        this.retryableHttpStatuses = Set.copyOf(builder.retryableHttpStatuses);
+        this.retryOnIoException = builder.retryOnIoException;
+    }
+
+    /**
+     * Returns a policy that never retries.
+     *
+     * @return The no-retry policy.
+     */
+    public static FcmRetryPolicy noRetry() {
+        return NO_RETRY;
+    }
+
+    /**
+     * Gets the maximum number of attempts, including the first one.
+     *
+     * @return The maximum number of attempts.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Indicates whether the given failure is worth retrying, regardless of the attempt count and deadline.
+     *
+     * @param failure The failure of an attempt, possibly wrapped in a {@link CompletionException}.
+     * @return {@code true} if the failure is retriable.
+     */
+    public boolean isRetryable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FcmRestClientException ex) {
+                return retryableHttpStatuses.contains(ex.getHttpStatus())
+                        || retryableErrorCodes.contains(ex.getErrorCode());
+            }
+            if (cause instanceof IOException) {
+                return retryOnIoException;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes how long to wait before the next attempt.
+     *
+     * @param attempt      The number of the attempt that just failed, starting at 1.
+     * @param failure      The failure of that attempt.
+     * @param elapsedNanos The time elapsed since the first attempt started.
+     * @return The delay in nanoseconds before the next attempt, or {@code -1} if the request must not be retried.
+     */
+    public long nextDelayNanos(int attempt, Throwable failure, long elapsedNanos) {
+        if (attempt >= maxAttempts || !isRetryable(failure)) {
+            return -1L;
+        }
+        double exponential = initialBackoffNanos * Math.pow(multiplier, attempt - 1);
+        long delay = (long) Math.min(maxBackoffNanos, exponential);
+        if (jitter > 0.0 && delay > 0L) {
+            delay -= (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+        }
+        Duration retryAfter = retryAfter(failure);
+        if (retryAfter != null) {
+            delay = Math.max(delay, retryAfter.toNanos());
+        }
+        if (elapsedNanos + delay > deadlineNanos) {
+            return -1L;
+        }
+        return delay;
+    }
+
+    private static Duration retryAfter(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FcmRestClientException ex) {
+                return ex.getRetryAfter();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builder class for {@link FcmRetryPolicy}.
+     * Provides a fluent interface for constructing an {@link FcmRetryPolicy} instance.
+     */
+    public static final class Builder {
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+        private double multiplier = 2.0;
+        private double jitter = 0.5;
+        private Duration deadline = Duration.ofSeconds(60);
+        private Set<FcmErrorCode> retryableErrorCodes =
+                EnumSet.of(FcmErrorCode.UNAVAILABLE, FcmErrorCode.INTERNAL, FcmErrorCode.QUOTA_EXCEEDED);
+        private Set<Integer> retryableHttpStatuses = Set.of(429, 500, 503);
+        private boolean retryOnIoException = true;
+
+        private Builder() {
+        }
+
+        /**
+         * Creates a new Builder instance, initialized with FCM's recommended defaults.
+         *
+         * @return A new instance of Builder.
+         */
+        public static Builder aFcmRetryPolicy() {
+            return new Builder();
+        }
+
+        /**
+         * Specifies the maximum number of attempts, including the first one.
+         *
+         * @param maxAttempts The maximum number of attempts.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Specifies the delay before the first retry.
+         *
+         * @param initialBackoff The initial backoff.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * Specifies the upper bound of the exponential backoff.
+         *
+         * @param maxBackoff The maximum backoff.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * Specifies the factor by which the backoff grows after each attempt.
+         *
+         * @param multiplier The backoff multiplier, at least 1.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder multiplier(double multiplier) {
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Specifies the maximum fraction by which each backoff is randomly reduced.
+         *
+         * @param jitter The jitter, between 0 (none) and 1.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder jitter(double jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Specifies the total time, measured from the first attempt, after which no retry is started.
+         *
+         * @param deadline The deadline, or {@code null} for none.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder deadline(Duration deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
+        /**
+         * Specifies the FCM error codes that are retried.
+         *
+         * @param retryableErrorCodes The retriable error codes.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder retryableErrorCodes(Set<FcmErrorCode> retryableErrorCodes) {
+            this.retryableErrorCodes = retryableErrorCodes;
+            return this;
+        }
+
+        /**
+         * Specifies the HTTP statuses that are retried, regardless of the FCM error code.
+         *
+         * @param retryableHttpStatuses The retriable HTTP statuses.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder retryableHttpStatuses(Set<Integer> retryableHttpStatuses) {
+            this.retryableHttpStatuses = retryableHttpStatuses;
+            return this;
+        }
+
+        /**
+         * Specifies whether I/O failures, such as timeouts and connection resets, are retried.
+         *
+         * @param retryOnIoException {@code true} to retry I/O failures.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder retryOnIoException(boolean retryOnIoException) {
+            this.retryOnIoException = retryOnIoException;
+            return this;
+        }
+
+        /**
+         * Builds and returns an {@link FcmRetryPolicy} instance with the configured properties.
+         *
+         * @return A new {@link FcmRetryPolicy} instance.
+         */
+        public FcmRetryPolicy build() {
+            return new FcmRetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package io.github.waileong.fcm.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Flow;
+
+/**
+ * A pre-serialized FCM send request whose target (a registration token or a topic) is supplied per send.
+ * <p>
+ * The template message is serialized by Jackson exactly once, with a unique placeholder as its target. The resulting
+ * JSON is split around the placeholder into an immutable prefix and suffix. Each request body is then assembled by
+ * placing the JSON-escaped target between the two, and handed to the JDK {@code HttpClient} as a sequence of byte
+ * arrays with a known content length, so neither the payload nor the prefix and suffix are ever copied or
+ * re-serialized.
+ * </p>
+ * <p>
+ * Every send of a template is scheduled in the {@link FcmSendLane} it was prepared with, so that a campaign fanned out
+ * from a template can be kept in the {@link FcmSendLane#BULK} lane.
+ * </p>
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public final class FcmMessageTemplate {
+    private final FcmMessage message;
+    private final TargetType targetType;
+    private final FcmSendLane lane;
+    private final byte[] prefix;
+    private final byte[] suffix;
+    private final UUID fingerprint;
+
+    /**
+     * The kind of target that is spliced into the template.
+     */
+    public enum TargetType {
+        /**
+         * The target is a device registration token, written to the {@code token} field.
+         */
+        TOKEN,
+        /**
+         * The target is a topic name, written to the {@code topic} field.
+         */
+        TOPIC
+    }
+
+    /**
+     * Serializes the given message into a template sent in the {@link FcmSendLane#STANDARD} lane.
+     *
+     * @param objectMapper The FCM object mapper used to serialize the message.
+     * @param message      The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param validateOnly Whether the prepared requests should only be validated by FCM, or {@code null}.
+     * @param targetType   The kind of target supplied per send.
+     * @throws IllegalArgumentException If the message cannot be serialized.
+     */
+    public FcmMessageTemplate(ObjectMapper objectMapper, FcmMessage message, Boolean validateOnly, TargetType targetType) {
+        this(objectMapper, message, validateOnly, targetType, FcmSendLane.STANDARD);
+    }
+
+    /**
+     * Serializes the given message into a template.
+     *
+     * @param objectMapper The FCM object mapper used to serialize the message.
+     * @param message      The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param validateOnly Whether the prepared requests should only be validated by FCM, or {@code null}.
+     * @param targetType   The kind of target supplied per send.
+     * @param lane         The priority lane every send of the template is scheduled in, or {@code null} for
+     *                     {@link FcmSendLane#STANDARD}.
+     * @throws IllegalArgumentException If the message cannot be serialized.
+     */
+    public FcmMessageTemplate(ObjectMapper objectMapper, FcmMessage message, Boolean validateOnly, TargetType targetType,
+                              FcmSendLane lane) {
+        String placeholder = "fcm-template-target-" + UUID.randomUUID();
+        FcmMessage placeholderMessage = message.withToken(null);
+        if (targetType == TargetType.TOPIC) {
+            placeholderMessage.setTopic(placeholder);
+        } else {
+            placeholderMessage.setToken(placeholder);
+        }
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(FcmSendRequest.Builder.aFcmSendRequest()
+                    .validateOnly(validateOnly)
+                    .message(placeholderMessage)
+                    .build());
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Failed to serialize FCM message template", ex);
+        }
+        byte[] placeholderBytes = placeholder.getBytes(StandardCharsets.US_ASCII);
+        int position = indexOf(json, placeholderBytes, 0);
+        if (position < 0 || indexOf(json, placeholderBytes, position + 1) >= 0) {
+            throw new IllegalStateException("Unable to locate the target placeholder in the serialized FCM message template");
+        }
+        this.message = message;
+        this.targetType = targetType;
+        this.lane = lane != null ? lane : FcmSendLane.STANDARD;
+        this.prefix = Arrays.copyOfRange(json, 0, position);
+        this.suffix = Arrays.copyOfRange(json, position + placeholderBytes.length, json.length);
+        // The placeholder is random, so it is left out.
+        byte[] parts = new byte[prefix.length + suffix.length];
+        System.arraycopy(prefix, 0, parts, 0, prefix.length);
+        System.arraycopy(suffix, 0, parts, prefix.length, suffix.length);
+        this.fingerprint = UUID.nameUUIDFromBytes(parts);
+    }
+
+    /**
+     * Gets the message this template was prepared from. The message must not be modified after the template has been
+     * prepared, as the serialized form would no longer match it.
+     *
+     * @return The template message.
+     */
+    public FcmMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the kind of target supplied per send.
+     *
+     * @return The target type.
+     */
+    public TargetType getTargetType() {
+        return targetType;
+    }
+
+    /**
+     * Gets the priority lane every send of this template is scheduled in.
+     *
+     * @return The lane.
+     */
+    public FcmSendLane getLane() {
+        return lane;
+    }
+
+    /**
+     * Gets a fingerprint of the serialized template without its target, which is equal for templates prepared from
+     * equal messages.
+     *
+     * @return The fingerprint, computed once when the template is prepared.
+     */
+    public UUID getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Creates the request body for the given target.
+     *
+     * @param target The registration token or topic to send the message to.
+     * @return A body publisher with a known content length.
+     */
+    public HttpRequest.BodyPublisher bodyPublisher(String target) {
+        byte[] escapedTarget = escape(target);
+        long contentLength = (long) prefix.length + escapedTarget.length + suffix.length;
+        return new SplicedBodyPublisher(
+                HttpRequest.BodyPublishers.ofByteArrays(List.of(prefix, escapedTarget, suffix)), contentLength);
+    }
+
+    /**
+     * Creates the complete request body for the given target as a single byte array.
+     *
+     * @param target The registration token or topic to send the message to.
+     * @return The UTF-8 encoded JSON body.
+     */
+    public byte[] toByteArray(String target) {
+        byte[] escapedTarget = escape(target);
+        byte[] body = new byte[prefix.length + escapedTarget.length + suffix.length];
+        System.arraycopy(prefix, 0, body, 0, prefix.length);
+        System.arraycopy(escapedTarget, 0, body, prefix.length, escapedTarget.length);
+        System.arraycopy(suffix, 0, body, prefix.length + escapedTarget.length, suffix.length);
+        return body;
+    }
+
+    private static byte[] escape(String target) {
+        if (target == null) {
+            throw new IllegalArgumentException("target must not be null");
+        }
+        int length = target.length();
+        for (int i = 0; i < length; i++) {
+            char c = target.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '"' || c == '\\') {
+                return JsonStringEncoder.getInstance().quoteAsUTF8(target);
+            }
+        }
+        // Registration tokens and topic names are printable ASCII, which needs no escaping.
+        return target.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int indexOf(byte[] source, byte[] target, int fromIndex) {
+        outer:
+        for (int i = fromIndex; i <= source.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (source[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * A body publisher that streams the template parts as they are, while still reporting the exact content length
+     * so that the request is not sent with chunked transfer encoding.
+     */
+    private record SplicedBodyPublisher(HttpRequest.BodyPublisher delegate,
+                                        long contentLength) implements HttpRequest.BodyPublisher {
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            delegate.subscribe(subscriber);
+        }
+    }
+}
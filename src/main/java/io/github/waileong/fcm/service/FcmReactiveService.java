@@ -0,0 +1,80 @@
+package io.github.waileong.fcm.service;
+
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Reactive variant of {@link FcmService}, for applications built on Project Reactor.
+ * <p>
+ * Sends are demand-driven: no more requests are taken from an upstream {@link Publisher} than there are free
+ * in-flight slots, so a slow FCM response naturally slows down the source, such as a Kafka consumer, instead of
+ * buffering requests without bound. No thread is held while a request is in flight.
+ * </p>
+ * <p>
+ * Results are emitted as soon as each send completes, paired with the zero-based position of its element in the
+ * source, like {@link Flux#index()} does. A slow send therefore holds back neither the results of later sends nor the
+ * demand for new elements.
+ * </p>
+ * <p>
+ * Only available when {@code reactor-core} is on the classpath.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public interface FcmReactiveService {
+
+    /**
+     * Sends a message to FCM when subscribed to.
+     * <p>
+     * If FCM returns an error response, the returned {@link Mono} fails with the same {@link FcmRestClientException}
+     * that {@link FcmService#send(FcmSendRequest)} throws.
+     * </p>
+     *
+     * @param sendRequest Contains the details of the message to be sent. Must not be null.
+     * @return A {@link Mono} emitting the sent message, as returned by FCM.
+     */
+    Mono<FcmMessage> send(FcmSendRequest sendRequest);
+
+    /**
+     * Sends every request emitted by the given publisher, with at most {@code fcm.send.max-in-flight} requests in
+     * flight.
+     *
+     * @param sendRequests The requests to send. Must not be null.
+     * @return The position and result of each request, in completion order.
+     * @see #sendEach(Publisher, int)
+     */
+    Flux<Tuple2<Long, FcmSendResult>> sendEach(Publisher<FcmSendRequest> sendRequests);
+
+    /**
+     * Sends every request emitted by the given publisher, with at most {@code maxInFlight} requests in flight.
+     * <p>
+     * The returned {@link Flux} never fails because of a failed send: each failure is reported in its
+     * {@link FcmSendResult}, like {@link FcmService#sendEach(Iterable, int)} does. An error signalled by
+     * {@code sendRequests} itself is propagated once the requests already in flight have completed.
+     * </p>
+     *
+     * @param sendRequests The requests to send. Must not be null.
+     * @param maxInFlight  The maximum number of requests in flight at any time.
+     * @return The position and result of each request, in completion order.
+     */
+    Flux<Tuple2<Long, FcmSendResult>> sendEach(Publisher<FcmSendRequest> sendRequests, int maxInFlight);
+
+    /**
+     * Sends the same message to every registration token emitted by the given publisher, with at most
+     * {@code maxInFlight} requests in flight. The message is serialized once, as with
+     * {@link FcmService#sendMulticast(FcmMessage, java.util.Collection, int)}, and failed sends are reported in
+     * their {@link FcmSendResult}.
+     *
+     * @param template    The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param tokens      The registration tokens of the recipients. Must not be null.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @return The position and result for each token, in completion order.
+     */
+    Flux<Tuple2<Long, FcmSendResult>> sendMulticast(FcmMessage template, Publisher<String> tokens, int maxInFlight);
+}
@@ -0,0 +1,33 @@
+package io.github.waileong.fcm.service;
+
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+
+/**
+ * Describes a single logical send, as seen by {@link FcmSendInterceptor} implementations.
+ * <p>
+ * One context is created per send and shared by all of its attempts. For sends of a {@link FcmMessageTemplate}, the
+ * {@code message} is the template message and the recipient is given by {@code token} or {@code topic}.
+ * </p>
+ *
+ * @param message     The message being sent.
+ * @param token       The registration token the message is sent to, or {@code null} if it is not sent to a token.
+ * @param topic       The topic the message is sent to, or {@code null} if it is not sent to a topic.
+ * @param payloadSize The size in bytes of the serialized request body.
+ * @param lane        The priority lane the send is scheduled in.
+ * @author Wai Leong
+ */
+public record FcmSendContext(FcmMessage message, String token, String topic, long payloadSize, FcmSendLane lane) {
+
+    /**
+     * Constructs a new {@link FcmSendContext} in the {@link FcmSendLane#STANDARD} lane.
+     *
+     * @param message     The message being sent.
+     * @param token       The registration token the message is sent to, or {@code null}.
+     * @param topic       The topic the message is sent to, or {@code null}.
+     * @param payloadSize The size in bytes of the serialized request body.
+     */
+    public FcmSendContext(FcmMessage message, String token, String topic, long payloadSize) {
+        this(message, token, topic, payloadSize, FcmSendLane.STANDARD);
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.waileong.fcm.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Callback interface for observing and guarding each HTTP attempt made by the {@link FcmService}.
+ * <p>
+ * Interceptors are invoked around every attempt, including retries, on both the blocking and the asynchronous send
+ * paths. On the blocking path, {@link #beforeAttempt} may block to pace sends, or throw a runtime exception to reject
+ * the attempt before any request is made. On the asynchronous path, {@link #beforeAttemptAsync} is called instead and
+ * must not block: it returns a future that completes once the attempt may proceed. For every admission that succeeds,
+ * {@link #afterAttempt} is called exactly once, even if a later interceptor rejects the attempt, which allows
+ * resources acquired before an attempt to be released reliably.
+ * </p>
+ * <p>
+ * Interceptors are applied in {@link org.springframework.core.Ordered} order before an attempt, and in reverse order
+ * after it. Implementations must be thread-safe and should avoid allocation, as they run on the hot send path.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public interface FcmSendInterceptor {
+
+    /**
+     * Called before an attempt is made.
+     *
+     * @param context The send being attempted.
+     * @param attempt The number of the attempt, starting at 1.
+     */
+    default void beforeAttempt(FcmSendContext context, int attempt) {
+    }
+
+    /**
+     * Called before an attempt is made on the asynchronous send paths, on a thread that must not be blocked.
+     * <p>
+     * The default implementation calls {@link #beforeAttempt}, which suits interceptors that never wait. Interceptors
+     * that may wait must override it, and complete the returned future once the attempt may proceed.
+     * </p>
+     *
+     * @param context The send being attempted.
+     * @param attempt The number of the attempt, starting at 1.
+     * @return A future completed once the attempt may proceed, or completed exceptionally to reject it.
+     */
+    default CompletableFuture<Void> beforeAttemptAsync(FcmSendContext context, int attempt) {
+        try {
+            beforeAttempt(context, attempt);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * Called after an attempt has completed, or after it was rejected by a later interceptor.
+     *
+     * @param context      The send that was attempted.
+     * @param attempt      The number of the attempt, starting at 1.
+     * @param latencyNanos The duration of the attempt in nanoseconds, or {@code 0} if no request was made.
+     * @param failure      The failure of the attempt, or {@code null} if it succeeded.
+     */
+    default void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+    }
+}
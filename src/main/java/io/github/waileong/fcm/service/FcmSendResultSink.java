@@ -0,0 +1,26 @@
+package io.github.waileong.fcm.service;
+
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+
+/**
+ * Callback interface receiving the result of each send of a streaming fan-out, as soon as it completes.
+ * <p>
+ * Results arrive in completion order, not in the order of the targets, and may be delivered concurrently from HTTP
+ * client threads, so implementations must be thread-safe. A sink should hand the result off quickly, for example to a
+ * queue or a counter, since the slot of the send is only freed for the next target once the sink returns.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+@FunctionalInterface
+public interface FcmSendResultSink {
+
+    /**
+     * Accepts the result of sending to a single target.
+     *
+     * @param index  The zero-based position of the target in the source.
+     * @param target The registration token or topic the message was sent to.
+     * @param result The result of the send.
+     */
+    void accept(long index, String target, FcmSendResult result);
+}
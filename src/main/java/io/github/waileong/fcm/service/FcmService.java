@@ -2,11 +2,20 @@ package io.github.waileong.fcm.service;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import io.github.waileong.fcm.exception.FcmRestClientException;
 import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
 import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
 /**
  * Service interface for sending messages through Firebase Cloud Messaging (FCM).
  *
@@ -22,4 +31,163 @@ public interface FcmService {
      * @return If successful, the response body contains an instance of Message.
      */
     FcmMessage send(@NotNull @Valid FcmSendRequest sendRequest) throws FcmRestClientException;
+
+    /**
+     * Sends a message to FCM asynchronously using the provided request data.
+     * <p>
+     * No thread is held while the request is in flight. If FCM returns an error response, the returned future
+     * completes exceptionally with the same {@link FcmRestClientException} that {@link #send(FcmSendRequest)} throws.
+     * </p>
+     *
+     * @param sendRequest Contains the details of the message to be sent. Must not be null.
+     * @return A future completed with the sent message, as returned by FCM.
+     */
+    CompletableFuture<FcmMessage> sendAsync(@NotNull @Valid FcmSendRequest sendRequest);
+
+    /**
+     * Sends every message in the given requests, with at most {@code fcm.send.max-in-flight} requests in flight.
+     *
+     * @param sendRequests The requests to send. Must not be null.
+     * @return The result of each request, in the iteration order of {@code sendRequests}.
+     * @see #sendEach(Iterable, int)
+     */
+    List<FcmSendResult> sendEach(@NotNull Iterable<FcmSendRequest> sendRequests);
+
+    /**
+     * Sends every message in the given requests, with at most {@code maxInFlight} requests in flight, and blocks
+     * until all of them have completed.
+     * <p>
+     * This method never throws because of a failed send: each failure is reported in its {@link FcmSendResult},
+     * with the {@link io.github.waileong.fcm.service.domain.FcmErrorCode} and HTTP status returned by FCM.
+     * </p>
+     *
+     * @param sendRequests The requests to send. Must not be null.
+     * @param maxInFlight  The maximum number of requests in flight at any time.
+     * @return The result of each request, in the iteration order of {@code sendRequests}.
+     */
+    List<FcmSendResult> sendEach(@NotNull Iterable<FcmSendRequest> sendRequests, @Positive int maxInFlight);
+
+    /**
+     * Sends the same message to every given registration token, with at most {@code fcm.send.max-in-flight}
+     * requests in flight.
+     *
+     * @param template The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param tokens   The registration tokens of the recipients. Must not be null.
+     * @return The result for each token, in the iteration order of {@code tokens}.
+     * @see #sendMulticast(FcmMessage, Collection, int)
+     */
+    List<FcmSendResult> sendMulticast(@NotNull @Valid FcmMessage template, @NotNull Collection<String> tokens);
+
+    /**
+     * Sends the same message to every given registration token, with at most {@code maxInFlight} requests in flight,
+     * and blocks until all of them have completed.
+     * <p>
+     * The template is serialized once into a {@link FcmMessageTemplate}, and each request body is assembled by
+     * splicing the recipient's token into the serialized payload. Like {@link #sendEach(Iterable, int)}, this method never throws
+     * because of a failed send.
+     * </p>
+     *
+     * @param template    The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param tokens      The registration tokens of the recipients. Must not be null.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @return The result for each token, in the iteration order of {@code tokens}.
+     */
+    List<FcmSendResult> sendMulticast(@NotNull @Valid FcmMessage template, @NotNull Collection<String> tokens,
+                                      @Positive int maxInFlight);
+
+    /**
+     * Serializes the given message once into a {@link FcmMessageTemplate}, which can then be sent to any number of
+     * registration tokens or topics without being serialized again.
+     *
+     * @param message    The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param targetType Whether the template is sent to registration tokens or to topics.
+     * @return The prepared template.
+     */
+    FcmMessageTemplate prepareTemplate(@NotNull @Valid FcmMessage message, @NotNull FcmMessageTemplate.TargetType targetType);
+
+    /**
+     * Serializes the given message once into a {@link FcmMessageTemplate} whose sends are all scheduled in the given
+     * lane. A campaign is kept out of the way of other sends by preparing it in the {@link FcmSendLane#BULK} lane and
+     * sending it with {@link #sendMulticast(FcmMessageTemplate, Collection, int)} or
+     * {@link #sendStream(FcmMessageTemplate, Iterator, int, FcmSendResultSink)}.
+     *
+     * @param message    The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param targetType Whether the template is sent to registration tokens or to topics.
+     * @param lane       The priority lane every send of the template is scheduled in.
+     * @return The prepared template.
+     */
+    FcmMessageTemplate prepareTemplate(@NotNull @Valid FcmMessage message, @NotNull FcmMessageTemplate.TargetType targetType,
+                                       @NotNull FcmSendLane lane);
+
+    /**
+     * Sends a prepared template to a single registration token or topic asynchronously.
+     *
+     * @param template The prepared template. Must not be null.
+     * @param target   The registration token or topic, according to the template's target type. Must not be null.
+     * @return A future completed with the sent message, as returned by FCM.
+     */
+    CompletableFuture<FcmMessage> sendAsync(@NotNull FcmMessageTemplate template, @NotNull String target);
+
+    /**
+     * Sends a prepared template to every given registration token or topic, with at most {@code maxInFlight}
+     * requests in flight, and blocks until all of them have completed. Like {@link #sendEach(Iterable, int)}, this
+     * method never throws because of a failed send.
+     *
+     * @param template    The prepared template. Must not be null.
+     * @param targets     The registration tokens or topics, according to the template's target type. Must not be null.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @return The result for each target, in the iteration order of {@code targets}.
+     */
+    List<FcmSendResult> sendMulticast(@NotNull FcmMessageTemplate template, @NotNull Collection<String> targets,
+                                      @Positive int maxInFlight);
+
+    /**
+     * Sends the same message to every registration token pulled from the given iterator, with at most
+     * {@code maxInFlight} requests in flight, and blocks until all of them have completed.
+     * <p>
+     * Unlike {@link #sendMulticast(FcmMessage, Collection, int)}, neither the tokens nor the results are collected: a
+     * token is pulled only when an in-flight slot is free, and each result is passed to the sink as soon as its send
+     * completes. Heap use therefore depends on {@code maxInFlight}, not on the size of the audience. Like
+     * {@link #sendEach(Iterable, int)}, this method never throws because of a failed send.
+     * </p>
+     *
+     * @param template    The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param tokens      The registration tokens of the recipients, pulled lazily. Must not be null.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @param sink        Receives the result for each token. Must not be null.
+     * @return The number of tokens sent to.
+     */
+    long sendStream(@NotNull @Valid FcmMessage template, @NotNull Iterator<String> tokens, @Positive int maxInFlight,
+                    @NotNull FcmSendResultSink sink);
+
+    /**
+     * Sends the same message to every registration token of the given stream, such as the lines of a file read with
+     * {@link java.nio.file.Files#lines} or {@link java.io.BufferedReader#lines}, with at most {@code maxInFlight}
+     * requests in flight, and blocks until all of them have completed. The stream is consumed lazily, and is not
+     * closed.
+     *
+     * @param template    The message to send. Its {@code token}, {@code topic} and {@code condition} are ignored.
+     * @param tokens      The registration tokens of the recipients. Must not be null.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @param sink        Receives the result for each token. Must not be null.
+     * @return The number of tokens sent to.
+     * @see #sendStream(FcmMessage, Iterator, int, FcmSendResultSink)
+     */
+    long sendStream(@NotNull @Valid FcmMessage template, @NotNull Stream<String> tokens, @Positive int maxInFlight,
+                    @NotNull FcmSendResultSink sink);
+
+    /**
+     * Sends a prepared template to every registration token or topic pulled from the given iterator, with at most
+     * {@code maxInFlight} requests in flight, and blocks until all of them have completed.
+     *
+     * @param template    The prepared template. Must not be null.
+     * @param targets     The registration tokens or topics, according to the template's target type, pulled lazily.
+     *                    Must not be null.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @param sink        Receives the result for each target. Must not be null.
+     * @return The number of targets sent to.
+     * @see #sendStream(FcmMessage, Iterator, int, FcmSendResultSink)
+     */
+    long sendStream(@NotNull FcmMessageTemplate template, @NotNull Iterator<String> targets, @Positive int maxInFlight,
+                    @NotNull FcmSendResultSink sink);
 }
@@ -9,6 +9,7 @@ import java.util.Map;
  * and APNs-specific options. The {@code headers} map allows for specifying HTTP header fields such as {@code apns-priority},
  * {@code apns-expiration}, etc. The {@code payload} contains the notification's content and behavior details,
  * and {@code fcmOptions} allows for setting APNs-specific message options like {@code analyticsLabel} and {@code image}.
+ * The {@code liveActivityToken} targets a Live Activity on the device.
  * </p>
  * <p>
  * For more details on APNs configuration in FCM messages, refer to the Firebase documentation:
@@ -21,6 +22,7 @@ public class FcmApns {
     private Map<String, String> headers;
     private FcmApnsPayload payload;
     private FcmApnsOptions fcmOptions;
+    private String liveActivityToken;
 
     /**
      * Gets the HTTP headers for the APNs message.
@@ -76,6 +78,25 @@ public class FcmApns {
         this.fcmOptions = fcmOptions;
     }
 
+    /**
+     * Gets the APNs token of the Live Activity the message updates.
+     *
+     * @return The Live Activity token.
+     */
+    public String getLiveActivityToken() {
+        return liveActivityToken;
+    }
+
+    /**
+     * Sets the APNs token of the Live Activity the message updates, obtained from the {@code pushToken} of the
+     * activity on the device.
+     *
+     * @param liveActivityToken The Live Activity token to set.
+     */
+    public void setLiveActivityToken(String liveActivityToken) {
+        this.liveActivityToken = liveActivityToken;
+    }
+
     /**
      * Builder class for {@link FcmApns}.
      * Provides a fluent interface for constructing an {@link FcmApns} instance with specified headers, payload, and options.
@@ -84,6 +105,7 @@ public class FcmApns {
         private Map<String, String> headers;
         private FcmApnsPayload payload;
         private FcmApnsOptions fcmOptions;
+        private String liveActivityToken;
 
         private Builder() {
         }
@@ -130,6 +152,17 @@ public class FcmApns {
             return this;
         }
 
+        /**
+         * Specifies the APNs token of the Live Activity the message updates.
+         *
+         * @param liveActivityToken The Live Activity token to set.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder liveActivityToken(String liveActivityToken) {
+            this.liveActivityToken = liveActivityToken;
+            return this;
+        }
+
         /**
          * Builds and returns an {@link FcmApns} instance with the configured properties.
          *
@@ -140,6 +173,7 @@ public class FcmApns {
             fcmApns.setHeaders(headers);
             fcmApns.setPayload(payload);
             fcmApns.setFcmOptions(fcmOptions);
+            fcmApns.setLiveActivityToken(liveActivityToken);
             return fcmApns;
         }
     }
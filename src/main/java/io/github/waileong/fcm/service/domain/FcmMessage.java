@@ -113,6 +113,30 @@ public class FcmMessage {
         this.condition = condition;
     }
 
+    /**
+     * Creates a shallow copy of this message that targets the given registration token.
+     * <p>
+     * Every other part of the payload (data, notification and the Android, Webpush and APNs configurations) is shared
+     * with this message rather than copied, which makes the copy cheap enough to create once per recipient. The
+     * {@code topic} and {@code condition} targets are cleared, as FCM accepts only one target per message.
+     * </p>
+     *
+     * @param token The registration token to send the message to.
+     * @return A new message sharing this message's payload.
+     */
+    public FcmMessage withToken(String token) {
+        FcmMessage fcmMessage = new FcmMessage();
+        fcmMessage.name = name;
+        fcmMessage.data = data;
+        fcmMessage.notification = notification;
+        fcmMessage.android = android;
+        fcmMessage.webpush = webpush;
+        fcmMessage.apns = apns;
+        fcmMessage.fcmOptions = fcmOptions;
+        fcmMessage.token = token;
+        return fcmMessage;
+    }
+
     /**
      * Builder class for {@link FcmMessage}. Provides a fluent interface for constructing instances of FcmMessage.
      */
@@ -0,0 +1,39 @@
+package io.github.waileong.fcm.service.domain;
+
+/**
+ * The priority lane of a send, which decides how it is scheduled against other sends when the send path is
+ * saturated. Lanes are listed from the highest to the lowest priority.
+ * <p>
+ * The lane of a send is the one set on its {@link FcmSendRequest}, or {@link #STANDARD} when none is set. It is not
+ * derived from the Android priority of the message: {@link FcmAndroidMessagePriority#HIGH} is common for ordinary
+ * user-visible notifications, which would otherwise crowd out the sends the critical lane is reserved for.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public enum FcmSendLane {
+    /**
+     * Latency-critical sends, such as one-time passwords and security alerts.
+     */
+    CRITICAL,
+
+    /**
+     * Regular sends.
+     */
+    STANDARD,
+
+    /**
+     * Bulk sends, such as marketing campaigns, that may be delayed in favour of the other lanes.
+     */
+    BULK;
+
+    /**
+     * Gets the lane of a send request: the lane set on it, or else {@link #STANDARD}.
+     *
+     * @param sendRequest The send request, may be null.
+     * @return The lane of the send request.
+     */
+    public static FcmSendLane of(FcmSendRequest sendRequest) {
+        return sendRequest != null && sendRequest.getLane() != null ? sendRequest.getLane() : STANDARD;
+    }
+}
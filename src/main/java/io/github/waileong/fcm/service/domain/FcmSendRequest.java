@@ -1,5 +1,6 @@
 package io.github.waileong.fcm.service.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
 import jakarta.validation.constraints.NotNull;
@@ -9,7 +10,9 @@ import jakarta.validation.constraints.NotNull;
  * <p>
  * This class is structured to include all necessary information for an FCM send message request. The {@code validateOnly} flag
  * indicates whether the message should be validated without actually being sent, useful for testing. The {@code message} field
- * contains the message payload, including target information and options.
+ * contains the message payload, including target information and options. The {@code lane} and {@code idempotencyKey} are
+ * not sent to FCM: the lane decides how the request is scheduled locally, see {@link FcmSendLane}, and the key
+ * identifies repeats of the request when idempotent sends are enabled.
  * </p>
  * <p>
  * The class uses {@link JsonNaming} with {@link PropertyNamingStrategies.SnakeCaseStrategy} to ensure JSON fields are
@@ -27,6 +30,10 @@ public class FcmSendRequest {
     private Boolean validateOnly;
     @NotNull
     private FcmMessage message;
+    @JsonIgnore
+    private FcmSendLane lane;
+    @JsonIgnore
+    private String idempotencyKey;
 
     /**
      * Gets whether the message should be validated only.
@@ -64,6 +71,42 @@ public class FcmSendRequest {
         this.message = message;
     }
 
+    /**
+     * Gets the priority lane the request is scheduled in.
+     *
+     * @return The lane, or {@code null} for {@link FcmSendLane#STANDARD}.
+     */
+    public FcmSendLane getLane() {
+        return lane;
+    }
+
+    /**
+     * Sets the priority lane the request is scheduled in.
+     *
+     * @param lane The lane, or {@code null} for {@link FcmSendLane#STANDARD}.
+     */
+    public void setLane(FcmSendLane lane) {
+        this.lane = lane;
+    }
+
+    /**
+     * Gets the key identifying repeats of this request.
+     *
+     * @return The idempotency key, or {@code null} to identify repeats by the serialized request.
+     */
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /**
+     * Sets the key identifying repeats of this request.
+     *
+     * @param idempotencyKey The idempotency key, or {@code null} to identify repeats by the serialized request.
+     */
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
     /**
      * Builder class for {@link FcmSendRequest}.
      * Provides a fluent interface for constructing an {@link FcmSendRequest} instance.
@@ -71,6 +114,8 @@ public class FcmSendRequest {
     public static final class Builder {
         private Boolean validateOnly;
         private FcmMessage message;
+        private FcmSendLane lane;
+        private String idempotencyKey;
 
         private Builder() {
         }
@@ -106,6 +151,28 @@ public class FcmSendRequest {
             return this;
         }
 
+        /**
+         * Specifies the priority lane the request is scheduled in.
+         *
+         * @param lane The lane, or {@code null} for {@link FcmSendLane#STANDARD}.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder lane(FcmSendLane lane) {
+            this.lane = lane;
+            return this;
+        }
+
+        /**
+         * Specifies the key identifying repeats of the request.
+         *
+         * @param idempotencyKey The idempotency key, or {@code null} to identify repeats by the serialized request.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder idempotencyKey(String idempotencyKey) {
+            this.idempotencyKey = idempotencyKey;
+            return this;
+        }
+
         /**
          * Builds and returns an {@link FcmSendRequest} instance with the configured properties.
          *
@@ -115,6 +182,8 @@ public class FcmSendRequest {
             FcmSendRequest fcmSendRequest = new FcmSendRequest();
             fcmSendRequest.setValidateOnly(validateOnly);
             fcmSendRequest.setMessage(message);
+            fcmSendRequest.setLane(lane);
+            fcmSendRequest.setIdempotencyKey(idempotencyKey);
             return fcmSendRequest;
         }
     }
@@ -0,0 +1,64 @@
+package io.github.waileong.fcm.service.domain;
+
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.exception.FcmSendRejectedException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Represents the outcome of sending a single message as part of a bulk send.
+ * <p>
+ * A successful send carries the {@code name} FCM assigned to the message and a {@code null} error code. A failed
+ * send carries the {@link FcmErrorCode} and HTTP status reported by FCM, or {@link FcmErrorCode#UNSPECIFIED_ERROR}
+ * and an HTTP status of {@code 0} when the request never received a response (for example, an I/O failure). Sends
+ * rejected locally by an {@link io.github.waileong.fcm.service.FcmSendInterceptor} carry the rejection's error code
+ * and an HTTP status of {@code 0}.
+ * </p>
+ *
+ * @param messageName The name of the sent message, as returned by FCM, or {@code null} if the send failed.
+ * @param errorCode   The reason the send failed, or {@code null} if it succeeded.
+ * @param httpStatus  The HTTP status of the FCM response, or {@code 0} if no response was received.
+ * @author Wai Leong
+ */
+public record FcmSendResult(String messageName, FcmErrorCode errorCode, int httpStatus) {
+
+    /**
+     * Creates the result of a successful send.
+     *
+     * @param message The message returned by FCM.
+     * @return A successful result.
+     */
+    public static FcmSendResult success(FcmMessage message) {
+        return new FcmSendResult(message != null ? message.getName() : null, null, 200);
+    }
+
+    /**
+     * Creates the result of a failed send.
+     *
+     * @param throwable The failure, possibly wrapped in a {@link CompletionException} or {@link ExecutionException}.
+     * @return A failed result.
+     */
+    public static FcmSendResult failure(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof FcmRestClientException ex) {
+            return new FcmSendResult(null, ex.getErrorCode(), ex.getHttpStatus());
+        }
+        if (cause instanceof FcmSendRejectedException ex) {
+            return new FcmSendResult(null, ex.getErrorCode(), 0);
+        }
+        return new FcmSendResult(null, FcmErrorCode.UNSPECIFIED_ERROR, 0);
+    }
+
+    /**
+     * Indicates whether the message was accepted by FCM.
+     *
+     * @return {@code true} if the send succeeded, {@code false} otherwise.
+     */
+    public boolean isSuccess() {
+        return errorCode == null;
+    }
+}
@@ -0,0 +1,101 @@
+package io.github.waileong.fcm.service.impl;
+
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Dispatches a sequence of sends with a bounded number of requests in flight.
+ * <p>
+ * Items are pulled from the source iterator only when an in-flight slot is free, so the calling thread is paced by
+ * FCM rather than by the size of the source. Every item produces exactly one {@link FcmSendResult}; failures never
+ * abort the remaining sends.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+final class FcmBulkDispatcher {
+
+    private FcmBulkDispatcher() {
+    }
+
+    /**
+     * Receives the result of each dispatched item.
+     *
+     * @param <T> The type of the dispatched items.
+     */
+    @FunctionalInterface
+    interface ResultSink<T> {
+        /**
+         * Accepts the result of a single item. May be called concurrently from HTTP client threads.
+         *
+         * @param index  The zero-based position of the item in the source.
+         * @param item   The dispatched item.
+         * @param result The result of sending the item.
+         */
+        void accept(long index, T item, FcmSendResult result);
+    }
+
+    /**
+     * Sends every item of the source and blocks until all of them have completed.
+     *
+     * @param items       The items to send.
+     * @param maxInFlight The maximum number of requests in flight at any time.
+     * @param sender      Starts the asynchronous send of a single item.
+     * @param sink        Receives the result of each item.
+     * @param <T>         The type of the dispatched items.
+     * @return The number of dispatched items.
+     */
+    static <T> long dispatch(Iterator<? extends T> items,
+                             int maxInFlight,
+                             Function<? super T, CompletableFuture<FcmMessage>> sender,
+                             ResultSink<? super T> sink) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        Semaphore permits = new Semaphore(maxInFlight);
+        long index = 0;
+        try {
+            while (true) {
+                // Take the slot first: hasNext() may already pull the next item, as iterators of streams do.
+                permits.acquire();
+                T item;
+                try {
+                    if (!items.hasNext()) {
+                        permits.release();
+                        break;
+                    }
+                    item = items.next();
+                } catch (RuntimeException ex) {
+                    permits.release();
+                    throw ex;
+                }
+                long itemIndex = index++;
+                CompletableFuture<FcmMessage> future;
+                try {
+                    future = sender.apply(item);
+                } catch (RuntimeException ex) {
+                    future = CompletableFuture.failedFuture(ex);
+                }
+                future.whenComplete((message, ex) -> {
+                    try {
+                        sink.accept(itemIndex, item, ex == null ? FcmSendResult.success(message) : FcmSendResult.failure(ex));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while dispatching FCM sends", ex);
+        } finally {
+            // Wait for every in-flight send, so that all results are visible to the caller.
+            permits.acquireUninterruptibly(maxInFlight);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,253 @@
+package io.github.waileong.fcm.service.impl;
+
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of independent JDK {@link HttpClient} instances that FCM requests are spread across.
+ * <p>
+ * A JDK {@code HttpClient} multiplexes all HTTP/2 requests to one origin onto a single connection, so the number of
+ * concurrent streams that connection allows caps the throughput of a single client. Each client in the pool owns its
+ * own connection, which multiplies that cap by the pool size. Requests are assigned to clients in
+ * {@link Selection#ROUND_ROBIN} order, or to the client with the fewest requests in flight
+ * ({@link Selection#LEAST_LOADED}).
+ * </p>
+ * <p>
+ * When {@code maxConcurrentStreams} is positive, no client carries more requests at once than that; requests beyond
+ * the capacity of the whole pool wait, without holding a thread, until a client has room.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmHttpClientPool {
+
+    /**
+     * How a client is chosen for each request.
+     */
+    public enum Selection {
+        /**
+         * The clients take turns.
+         */
+        ROUND_ROBIN,
+        /**
+         * The client with the fewest requests in flight is chosen.
+         */
+        LEAST_LOADED
+    }
+
+    private final Client[] clients;
+    private final Selection selection;
+    private final int maxConcurrentStreams;
+    private final AtomicInteger nextClient = new AtomicInteger();
+    private final ConcurrentLinkedQueue<CompletableFuture<Client>> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a new {@link FcmHttpClientPool}.
+     *
+     * @param httpClients          The clients of the pool, at least one.
+     * @param selection            How a client is chosen for each request.
+     * @param maxConcurrentStreams The maximum number of requests in flight per client, or {@code 0} for no limit.
+     */
+    public FcmHttpClientPool(List<HttpClient> httpClients, Selection selection, int maxConcurrentStreams) {
+        if (httpClients.isEmpty()) {
+            throw new IllegalArgumentException("At least one HttpClient is required");
+        }
+        this.clients = new Client[httpClients.size()];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Client(i, httpClients.get(i));
+        }
+        this.selection = selection != null ? selection : Selection.ROUND_ROBIN;
+        this.maxConcurrentStreams = Math.max(0, maxConcurrentStreams);
+    }
+
+    /**
+     * Creates a pool of a single client without a stream limit.
+     *
+     * @param httpClient The client.
+     * @return The pool.
+     */
+    public static FcmHttpClientPool of(HttpClient httpClient) {
+        return new FcmHttpClientPool(List.of(httpClient), Selection.ROUND_ROBIN, 0);
+    }
+
+    /**
+     * Gets the number of clients in the pool.
+     *
+     * @return The pool size.
+     */
+    public int size() {
+        return clients.length;
+    }
+
+    /**
+     * Indicates whether every request can simply go to the only client, with no accounting at all.
+     *
+     * @return {@code true} for a single client without a stream limit.
+     */
+    public boolean isSingleUnlimited() {
+        return clients.length == 1 && maxConcurrentStreams == 0;
+    }
+
+    /**
+     * Gets the client at the given position.
+     *
+     * @param index The position, between 0 and {@link #size()} exclusive.
+     * @return The client.
+     */
+    public HttpClient getHttpClient(int index) {
+        return clients[index].httpClient;
+    }
+
+    /**
+     * Gets the total number of requests in flight across all clients.
+     *
+     * @return The number of requests in flight.
+     */
+    public int getInFlight() {
+        int total = 0;
+        for (Client client : clients) {
+            total += client.inFlight.get();
+        }
+        return total;
+    }
+
+    /**
+     * Reserves a client for one request, waiting until one has room.
+     *
+     * @return The reserved client, which must be passed to {@link #release(Client)} once the request has completed.
+     */
+    public Client acquire() {
+        Client client = tryAcquire();
+        return client != null ? client : acquireAsync().join();
+    }
+
+    /**
+     * Reserves a client for one request. The returned future completes once a client has room.
+     *
+     * @return A future completed with the reserved client, which must be passed to {@link #release(Client)} once
+     * the request has completed.
+     */
+    public CompletableFuture<Client> acquireAsync() {
+        Client client = tryAcquire();
+        if (client != null) {
+            return CompletableFuture.completedFuture(client);
+        }
+        CompletableFuture<Client> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // A client may have been released between the failed attempt and the registration of the waiter.
+        drainWaiters();
+        return waiter;
+    }
+
+    /**
+     * Releases a client reserved by {@link #acquire()} or {@link #acquireAsync()}.
+     *
+     * @param client The reserved client.
+     */
+    public void release(Client client) {
+        client.inFlight.decrementAndGet();
+        if (!waiters.isEmpty()) {
+            drainWaiters();
+        }
+    }
+
+    private void drainWaiters() {
+        while (!waiters.isEmpty()) {
+            Client client = tryAcquire();
+            if (client == null) {
+                return;
+            }
+            CompletableFuture<Client> waiter = waiters.poll();
+            if (waiter == null || !waiter.complete(client)) {
+                client.inFlight.decrementAndGet();
+                if (waiter == null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Client tryAcquire() {
+        if (selection == Selection.LEAST_LOADED) {
+            return tryAcquireLeastLoaded();
+        }
+        int start = Math.floorMod(nextClient.getAndIncrement(), clients.length);
+        for (int i = 0; i < clients.length; i++) {
+            Client client = clients[(start + i) % clients.length];
+            if (client.tryReserve(maxConcurrentStreams)) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    private Client tryAcquireLeastLoaded() {
+        while (true) {
+            Client candidate = null;
+            int lowest = Integer.MAX_VALUE;
+            for (Client client : clients) {
+                int inFlight = client.inFlight.get();
+                if (inFlight < lowest) {
+                    lowest = inFlight;
+                    candidate = client;
+                }
+            }
+            if (maxConcurrentStreams > 0 && lowest >= maxConcurrentStreams) {
+                return null;
+            }
+            if (candidate.inFlight.compareAndSet(lowest, lowest + 1)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * A client of the pool, reserved for the duration of one request.
+     */
+    public static final class Client {
+        private final int index;
+        private final HttpClient httpClient;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Client(int index, HttpClient httpClient) {
+            this.index = index;
+            this.httpClient = httpClient;
+        }
+
+        /**
+         * Gets the position of this client in the pool.
+         *
+         * @return The position.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the JDK client.
+         *
+         * @return The JDK client.
+         */
+        public HttpClient getHttpClient() {
+            return httpClient;
+        }
+
+        private boolean tryReserve(int maxConcurrentStreams) {
+            if (maxConcurrentStreams == 0) {
+                inFlight.incrementAndGet();
+                return true;
+            }
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= maxConcurrentStreams) {
+                    return false;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+            return true;
+        }
+    }
+}
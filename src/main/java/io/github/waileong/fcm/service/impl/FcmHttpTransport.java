@@ -0,0 +1,202 @@
+package io.github.waileong.fcm.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.exception.FcmRestClientResponseErrorHandler;
+import io.github.waileong.fcm.service.FcmMessageTemplate;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends already serialized FCM send requests asynchronously using the JDK {@link HttpClient}.
+ * <p>
+ * Each call is a single non-blocking HTTP exchange with the FCM {@code messages:send} endpoint: no thread is held
+ * while the request is in flight. Successful responses are deserialized into {@link FcmMessage} instances, and error
+ * responses are converted by the {@link FcmRestClientResponseErrorHandler}, so failures surface as the same
+ * {@link FcmRestClientException} that the blocking {@link org.springframework.web.client.RestClient} path throws.
+ * </p>
+ * <p>
+ * Exchanges are spread over the clients of an {@link FcmHttpClientPool}, each of which owns its own connection.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmHttpTransport {
+    private final FcmHttpClientPool httpClientPool;
+    private final URI sendUri;
+    private final Duration readTimeout;
+    private final ObjectMapper objectMapper;
+    private final FcmRestClientResponseErrorHandler errorHandler;
+
+    /**
+     * Constructs a new {@link FcmHttpTransport}.
+     *
+     * @param httpClient   The JDK HTTP client used for all exchanges.
+     * @param sendUri      The FCM {@code messages:send} endpoint of the configured project.
+     * @param readTimeout  The timeout applied to every request, or {@code null} for none.
+     * @param objectMapper The FCM object mapper used to serialize requests and deserialize responses.
+     * @param errorHandler The error handler used to convert FCM error responses into exceptions.
+     */
+    public FcmHttpTransport(HttpClient httpClient,
+                            URI sendUri,
+                            Duration readTimeout,
+                            ObjectMapper objectMapper,
+                            FcmRestClientResponseErrorHandler errorHandler) {
+        this(FcmHttpClientPool.of(httpClient), sendUri, readTimeout, objectMapper, errorHandler);
+    }
+
+    /**
+     * Constructs a new {@link FcmHttpTransport} that spreads its exchanges over a pool of clients.
+     *
+     * @param httpClientPool The pool of JDK HTTP clients used for the exchanges.
+     * @param sendUri        The FCM {@code messages:send} endpoint of the configured project.
+     * @param readTimeout    The timeout applied to every request, or {@code null} for none.
+     * @param objectMapper   The FCM object mapper used to serialize requests and deserialize responses.
+     * @param errorHandler   The error handler used to convert FCM error responses into exceptions.
+     */
+    public FcmHttpTransport(FcmHttpClientPool httpClientPool,
+                            URI sendUri,
+                            Duration readTimeout,
+                            ObjectMapper objectMapper,
+                            FcmRestClientResponseErrorHandler errorHandler) {
+        this.httpClientPool = httpClientPool;
+        this.sendUri = sendUri;
+        this.readTimeout = readTimeout;
+        this.objectMapper = objectMapper;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Serializes the given send request into the JSON body expected by FCM.
+     *
+     * @param sendRequest The request to serialize.
+     * @return The UTF-8 encoded JSON body.
+     * @throws IllegalArgumentException If the request cannot be serialized.
+     */
+    public byte[] serialize(FcmSendRequest sendRequest) {
+        try {
+            return objectMapper.writeValueAsBytes(sendRequest);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Failed to serialize FCM send request", ex);
+        }
+    }
+
+    /**
+     * Serializes the given message into a reusable {@link FcmMessageTemplate}.
+     *
+     * @param message      The message to send.
+     * @param validateOnly Whether the prepared requests should only be validated by FCM, or {@code null}.
+     * @param targetType   The kind of target supplied per send.
+     * @param lane         The priority lane every send of the template is scheduled in.
+     * @return The prepared template.
+     */
+    public FcmMessageTemplate prepare(FcmMessage message, Boolean validateOnly, FcmMessageTemplate.TargetType targetType,
+                                      FcmSendLane lane) {
+        return new FcmMessageTemplate(objectMapper, message, validateOnly, targetType, lane);
+    }
+
+    /**
+     * Sends a serialized request body to FCM.
+     *
+     * @param body        The serialized {@link FcmSendRequest}.
+     * @param accessToken The bearer token authenticating the request.
+     * @return A future completed with the sent message, or completed exceptionally with an
+     * {@link FcmRestClientException} for FCM error responses, or an {@link IOException} for transport failures.
+     */
+    public CompletableFuture<FcmMessage> send(byte[] body, String accessToken) {
+        return send(HttpRequest.BodyPublishers.ofByteArray(body), accessToken);
+    }
+
+    /**
+     * Sends a request body to FCM, as produced by a {@link HttpRequest.BodyPublisher}. This allows bodies that are
+     * assembled from several parts, such as those of a {@link FcmMessageTemplate},
+     * to be written without first being copied into a single array.
+     *
+     * @param body        The publisher of the serialized {@link FcmSendRequest}.
+     * @param accessToken The bearer token authenticating the request.
+     * @return A future completed with the sent message, or completed exceptionally with an
+     * {@link FcmRestClientException} for FCM error responses, or an {@link IOException} for transport failures.
+     */
+    public CompletableFuture<FcmMessage> send(HttpRequest.BodyPublisher body, String accessToken) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(sendUri)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken)
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(body);
+        if (readTimeout != null) {
+            builder.timeout(readTimeout);
+        }
+        HttpRequest request = builder.build();
+        if (httpClientPool.isSingleUnlimited()) {
+            return exchange(httpClientPool.getHttpClient(0), request);
+        }
+        // Completed by hand rather than with thenCompose, which would wrap failures in a CompletionException.
+        CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+        httpClientPool.acquireAsync().whenComplete((client, acquireEx) -> {
+            if (acquireEx != null) {
+                result.completeExceptionally(acquireEx instanceof CompletionException && acquireEx.getCause() != null
+                        ? acquireEx.getCause() : acquireEx);
+                return;
+            }
+            CompletableFuture<FcmMessage> exchange;
+            try {
+                exchange = exchange(client.getHttpClient(), request);
+            } catch (RuntimeException ex) {
+                // Thrown synchronously by HttpClient.sendAsync, for example for a request it cannot send.
+                httpClientPool.release(client);
+                result.completeExceptionally(ex);
+                return;
+            }
+            exchange.whenComplete((message, ex) -> {
+                httpClientPool.release(client);
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else {
+                    result.complete(message);
+                }
+            });
+        });
+        return result;
+    }
+
+    private CompletableFuture<FcmMessage> exchange(HttpClient httpClient, HttpRequest request) {
+        CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, ex) -> {
+                    if (ex != null) {
+                        result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null
+                                ? ex.getCause() : ex);
+                        return;
+                    }
+                    try {
+                        result.complete(readResponse(response));
+                    } catch (RuntimeException | IOException readEx) {
+                        result.completeExceptionally(readEx);
+                    }
+                });
+        return result;
+    }
+
+    private FcmMessage readResponse(HttpResponse<byte[]> response) throws IOException {
+        int statusCode = response.statusCode();
+        if (statusCode >= 400) {
+            throw errorHandler.createException(statusCode,
+                    response.headers().firstValue(HttpHeaders.RETRY_AFTER).orElse(null),
+                    response.body());
+        }
+        return objectMapper.readValue(response.body(), FcmMessage.class);
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.waileong.fcm.service.impl;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.FastByteArrayOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * A {@link ClientHttpRequestFactory} that spreads the requests of a blocking
+ * {@link org.springframework.web.client.RestClient} over the clients of an {@link FcmHttpClientPool}.
+ * <p>
+ * The body of each request is buffered, and a client is only reserved once the request is executed. The reservation
+ * is released when the response is closed, or when the exchange fails.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmPooledClientHttpRequestFactory implements ClientHttpRequestFactory {
+    private final FcmHttpClientPool pool;
+    private final List<? extends ClientHttpRequestFactory> requestFactories;
+
+    /**
+     * Constructs a new {@link FcmPooledClientHttpRequestFactory}.
+     *
+     * @param pool             The pool of clients.
+     * @param requestFactories One request factory per client of the pool, in the same order.
+     */
+    public FcmPooledClientHttpRequestFactory(FcmHttpClientPool pool,
+                                             List<? extends ClientHttpRequestFactory> requestFactories) {
+        if (requestFactories.size() != pool.size()) {
+            throw new IllegalArgumentException("One request factory is required per pooled HttpClient");
+        }
+        this.pool = pool;
+        this.requestFactories = List.copyOf(requestFactories);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new PooledClientHttpRequest(uri, httpMethod);
+    }
+
+    private final class PooledClientHttpRequest extends AbstractClientHttpRequest {
+        private final URI uri;
+        private final HttpMethod method;
+        private final FastByteArrayOutputStream body = new FastByteArrayOutputStream(1024);
+
+        private PooledClientHttpRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            FcmHttpClientPool.Client client = pool.acquire();
+            try {
+                ClientHttpRequest request = requestFactories.get(client.getIndex()).createRequest(uri, method);
+                request.getHeaders().putAll(headers);
+                if (body.size() > 0) {
+                    body.writeTo(request.getBody());
+                }
+                return new PooledClientHttpResponse(request.execute(), client);
+            } catch (IOException | RuntimeException | Error ex) {
+                pool.release(client);
+                throw ex;
+            }
+        }
+    }
+
+    private final class PooledClientHttpResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private FcmHttpClientPool.Client client;
+
+        private PooledClientHttpResponse(ClientHttpResponse delegate, FcmHttpClientPool.Client client) {
+            this.delegate = delegate;
+            this.client = client;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (client != null) {
+                    pool.release(client);
+                    client = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.waileong.fcm.service.impl;
+
+import io.github.waileong.fcm.config.FcmProperties;
+import io.github.waileong.fcm.service.FcmMessageTemplate;
+import io.github.waileong.fcm.service.FcmReactiveService;
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Implements the {@link FcmReactiveService} interface on top of the asynchronous send path of {@link FcmService}.
+ * <p>
+ * Every send goes through {@link FcmService#sendAsync(FcmSendRequest)}, and therefore shares its serialization,
+ * retries, interceptors and JDK {@code HttpClient} with the blocking API. Concurrency is bounded with
+ * {@link Flux#flatMapDelayError(Function, int, int)}, which requests a new element from upstream as soon as any send
+ * has completed and emits its result at once; the position of the element travels with the result instead of being
+ * restored by reordering, which would hold every later result behind the slowest send.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmReactiveServiceImpl implements FcmReactiveService {
+    private final FcmService fcmService;
+    private final FcmProperties fcmProperties;
+
+    public FcmReactiveServiceImpl(FcmService fcmService, FcmProperties fcmProperties) {
+        this.fcmService = fcmService;
+        this.fcmProperties = fcmProperties;
+    }
+
+    @Override
+    public Mono<FcmMessage> send(FcmSendRequest sendRequest) {
+        return Mono.fromFuture(() -> fcmService.sendAsync(sendRequest));
+    }
+
+    @Override
+    public Flux<Tuple2<Long, FcmSendResult>> sendEach(Publisher<FcmSendRequest> sendRequests) {
+        return sendEach(sendRequests, fcmProperties.getSend().getMaxInFlight());
+    }
+
+    @Override
+    public Flux<Tuple2<Long, FcmSendResult>> sendEach(Publisher<FcmSendRequest> sendRequests, int maxInFlight) {
+        return dispatch(Flux.from(sendRequests), maxInFlight, fcmService::sendAsync);
+    }
+
+    @Override
+    public Flux<Tuple2<Long, FcmSendResult>> sendMulticast(FcmMessage template, Publisher<String> tokens,
+                                                           int maxInFlight) {
+        return Flux.defer(() -> {
+            FcmMessageTemplate prepared = fcmService.prepareTemplate(template, FcmMessageTemplate.TargetType.TOKEN);
+            return dispatch(Flux.from(tokens), maxInFlight, token -> fcmService.sendAsync(prepared, token));
+        });
+    }
+
+    private <T> Flux<Tuple2<Long, FcmSendResult>> dispatch(Flux<T> source, int maxInFlight,
+                                                           Function<T, CompletableFuture<FcmMessage>> sender) {
+        if (maxInFlight < 1) {
+            return Flux.error(new IllegalArgumentException("maxInFlight must be positive"));
+        }
+        return source.index().flatMapDelayError(element -> Mono.fromFuture(() -> sender.apply(element.getT2()))
+                        .map(FcmSendResult::success)
+                        .onErrorResume(ex -> Mono.just(FcmSendResult.failure(ex)))
+                        .map(result -> Tuples.of(element.getT1(), result)),
+                maxInFlight, 1);
+    }
+}
@@ -1,22 +1,51 @@
 package io.github.waileong.fcm.service.impl;
 
-import io.github.waileong.fcm.authentication.FcmJwtToken;
+import io.github.waileong.fcm.authentication.FcmAccessTokenProvider;
+import io.github.waileong.fcm.config.FcmProperties;
+import io.github.waileong.fcm.idempotency.FcmIdempotencyGuard;
+import io.github.waileong.fcm.resilience.FcmRetryPolicy;
+import io.github.waileong.fcm.service.FcmMessageTemplate;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.github.waileong.fcm.service.FcmSendResultSink;
 import io.github.waileong.fcm.service.FcmService;
 import io.github.waileong.fcm.service.domain.FcmError;
 import io.github.waileong.fcm.service.domain.FcmErrorResponse;
 import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
 import io.github.waileong.fcm.service.domain.FcmSendRequest;
-import org.apache.commons.pool2.impl.GenericObjectPool;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import io.github.waileong.fcm.token.FcmBackgroundThrottle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
 import org.springframework.web.client.RestClient;
 
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
 /**
  * Implements the {@link FcmService} interface to send messages via Firebase Cloud Messaging (FCM).
  * <p>
  * Uses a {@link RestClient} for HTTP communication with the FCM REST API. The service sends message
  * requests encapsulated in {@link FcmSendRequest} objects and expects responses as {@link FcmMessage} instances.
+ * Asynchronous sends bypass the {@link RestClient} and use the {@link FcmHttpTransport} directly, which is backed
+ * by the same JDK {@code HttpClient}. Both paths serialize each request once and resend the same bytes when the
+ * {@link FcmRetryPolicy} retries a failed attempt. Every attempt is surrounded by the registered
+ * {@link FcmSendInterceptor} instances, which may pace, observe or reject it. When an {@link FcmIdempotencyGuard} is
+ * given, repeats of a recent send are swallowed before any attempt is made. When an {@link FcmBackgroundThrottle} is
+ * given, background messages sent to a token too often are suppressed, and complete with a message without a name.
+ * The throttle is only consulted for sends that are not repeats, and only a successful send counts as the last one
+ * sent to the token.
  * </p>
  * <p>
  * The {@link RegisterReflectionForBinding} annotation is used to ensure that reflection-based access to
@@ -30,43 +59,460 @@ import org.springframework.web.client.RestClient;
 public class FcmServiceImpl implements FcmService {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final RestClient fcmRestClient;
-    private final GenericObjectPool<FcmJwtToken> fcmJwtTokenPool;
+    private final FcmAccessTokenProvider fcmAccessTokenProvider;
+    private final FcmHttpTransport fcmHttpTransport;
+    private final FcmProperties fcmProperties;
+    private final FcmRetryPolicy fcmRetryPolicy;
+    private final FcmSendInterceptor[] interceptors;
+    private final FcmIdempotencyGuard fcmIdempotencyGuard;
+    private final FcmBackgroundThrottle fcmBackgroundThrottle;
 
     public FcmServiceImpl(RestClient fcmRestClient,
-                          GenericObjectPool<FcmJwtToken> fcmJwtTokenPool) {
+                          FcmAccessTokenProvider fcmAccessTokenProvider,
+                          FcmHttpTransport fcmHttpTransport,
+                          FcmProperties fcmProperties,
+                          FcmRetryPolicy fcmRetryPolicy,
+                          List<FcmSendInterceptor> interceptors) {
+        this(fcmRestClient, fcmAccessTokenProvider, fcmHttpTransport, fcmProperties, fcmRetryPolicy, interceptors,
+                null);
+    }
+
+    public FcmServiceImpl(RestClient fcmRestClient,
+                          FcmAccessTokenProvider fcmAccessTokenProvider,
+                          FcmHttpTransport fcmHttpTransport,
+                          FcmProperties fcmProperties,
+                          FcmRetryPolicy fcmRetryPolicy,
+                          List<FcmSendInterceptor> interceptors,
+                          FcmIdempotencyGuard fcmIdempotencyGuard) {
+        this(fcmRestClient, fcmAccessTokenProvider, fcmHttpTransport, fcmProperties, fcmRetryPolicy, interceptors,
+                fcmIdempotencyGuard, null);
+    }
+
+    public FcmServiceImpl(RestClient fcmRestClient,
+                          FcmAccessTokenProvider fcmAccessTokenProvider,
+                          FcmHttpTransport fcmHttpTransport,
+                          FcmProperties fcmProperties,
+                          FcmRetryPolicy fcmRetryPolicy,
+                          List<FcmSendInterceptor> interceptors,
+                          FcmIdempotencyGuard fcmIdempotencyGuard,
+                          FcmBackgroundThrottle fcmBackgroundThrottle) {
         this.fcmRestClient = fcmRestClient;
-        this.fcmJwtTokenPool = fcmJwtTokenPool;
+        this.fcmAccessTokenProvider = fcmAccessTokenProvider;
+        this.fcmHttpTransport = fcmHttpTransport;
+        this.fcmProperties = fcmProperties;
+        this.fcmRetryPolicy = fcmRetryPolicy;
+        this.interceptors = interceptors.toArray(new FcmSendInterceptor[0]);
+        this.fcmIdempotencyGuard = fcmIdempotencyGuard;
+        this.fcmBackgroundThrottle = fcmBackgroundThrottle;
     }
 
 
     @Override
     public FcmMessage send(FcmSendRequest sendRequest) {
-        return this.fcmRestClient.post()
-                .headers(httpHeaders -> httpHeaders.setBearerAuth(getAccessToken(fcmJwtTokenPool)))
-                .body(sendRequest)
-                .retrieve()
-                .body(FcmMessage.class);
+        if (fcmIdempotencyGuard == null) {
+            return sendThrottled(sendRequest, null);
+        }
+        // Serialize once, so that retries resend the same bytes.
+        final byte[] body = fcmHttpTransport.serialize(sendRequest);
+        return fcmIdempotencyGuard.send(sendRequest.getIdempotencyKey(), body, () -> sendThrottled(sendRequest, body));
     }
 
     /**
-     * Retrieves an access token from the JWT token pool for authenticating FCM requests. This method ensures
-     * that a valid token is always used for authentication by borrowing from and returning tokens to the pool.
+     * Sends a request through the {@link FcmBackgroundThrottle}, if any, and reports the outcome to it.
      *
-     * @param pool The pool of FCM JWT tokens.
-     * @return A valid JWT token string for FCM authentication.
+     * @param body The serialized request, or {@code null} if not serialized yet.
      */
-    private String getAccessToken(GenericObjectPool<FcmJwtToken> pool) {
-        FcmJwtToken fcmJwtToken = null;
+    private FcmMessage sendThrottled(FcmSendRequest sendRequest, byte[] body) {
+        String token = throttledToken(sendRequest);
+        if (token == null) {
+            return send(sendRequest, body != null ? body : fcmHttpTransport.serialize(sendRequest));
+        }
+        Map<String, String> data = fcmBackgroundThrottle.admit(sendRequest.getMessage());
+        if (data == null) {
+            return suppressed();
+        }
+        FcmSendRequest admitted = withData(sendRequest, data);
+        FcmMessage message;
         try {
-            fcmJwtToken = pool.borrowObject();
-            return fcmJwtToken.token();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            if (fcmJwtToken != null) {
-                pool.returnObject(fcmJwtToken);
+            message = send(admitted, admitted == sendRequest && body != null ? body
+                    : fcmHttpTransport.serialize(admitted));
+        } catch (RuntimeException ex) {
+            fcmBackgroundThrottle.failed(token, data);
+            throw ex;
+        }
+        fcmBackgroundThrottle.sent(token);
+        return message;
+    }
+
+    private FcmMessage send(FcmSendRequest sendRequest, byte[] body) {
+        final FcmSendContext context = createContext(sendRequest, body.length);
+        final long startNanos = System.nanoTime();
+        for (int attempt = 1; ; attempt++) {
+            beforeAttempt(context, attempt);
+            long attemptStartNanos = System.nanoTime();
+            try {
+                FcmMessage message = this.fcmRestClient.post()
+                        .headers(httpHeaders -> httpHeaders.setBearerAuth(fcmAccessTokenProvider.getAccessToken()))
+                        .body(body)
+                        .retrieve()
+                        .body(FcmMessage.class);
+                afterAttempt(context, attempt, System.nanoTime() - attemptStartNanos, null, interceptors.length);
+                return message;
+            } catch (RuntimeException ex) {
+                afterAttempt(context, attempt, System.nanoTime() - attemptStartNanos, ex, interceptors.length);
+                long delayNanos = fcmRetryPolicy.nextDelayNanos(attempt, ex, System.nanoTime() - startNanos);
+                if (delayNanos < 0) {
+                    throw ex;
+                }
+                logger.debug("FCM send attempt {} failed, retrying in {} ms: {}",
+                        attempt, TimeUnit.NANOSECONDS.toMillis(delayNanos), ex.getMessage());
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
             }
         }
     }
 
+    @Override
+    public CompletableFuture<FcmMessage> sendAsync(FcmSendRequest sendRequest) {
+        try {
+            if (fcmIdempotencyGuard == null) {
+                return sendThrottledAsync(sendRequest, null);
+            }
+            byte[] body = fcmHttpTransport.serialize(sendRequest);
+            return fcmIdempotencyGuard.sendAsync(sendRequest.getIdempotencyKey(), body,
+                    () -> sendThrottledAsync(sendRequest, body));
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * Sends a request asynchronously through the {@link FcmBackgroundThrottle}, if any, and reports the outcome to
+     * it.
+     *
+     * @param body The serialized request, or {@code null} if not serialized yet.
+     */
+    private CompletableFuture<FcmMessage> sendThrottledAsync(FcmSendRequest sendRequest, byte[] body) {
+        String token = throttledToken(sendRequest);
+        if (token == null) {
+            return sendAsync(sendRequest, body != null ? body : fcmHttpTransport.serialize(sendRequest));
+        }
+        Map<String, String> data = fcmBackgroundThrottle.admit(sendRequest.getMessage());
+        if (data == null) {
+            return CompletableFuture.completedFuture(suppressed());
+        }
+        FcmSendRequest admitted = withData(sendRequest, data);
+        CompletableFuture<FcmMessage> future;
+        try {
+            future = sendAsync(admitted, admitted == sendRequest && body != null ? body
+                    : fcmHttpTransport.serialize(admitted));
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        return reportToThrottle(token, data, future);
+    }
+
+    private CompletableFuture<FcmMessage> sendAsync(FcmSendRequest sendRequest, byte[] body) {
+        return sendWithRetry(createContext(sendRequest, body.length), HttpRequest.BodyPublishers.ofByteArray(body));
+    }
+
+    @Override
+    public List<FcmSendResult> sendEach(Iterable<FcmSendRequest> sendRequests) {
+        return sendEach(sendRequests, fcmProperties.getSend().getMaxInFlight());
+    }
+
+    @Override
+    public List<FcmSendResult> sendEach(Iterable<FcmSendRequest> sendRequests, int maxInFlight) {
+        List<FcmSendRequest> requests;
+        if (sendRequests instanceof List<FcmSendRequest> list) {
+            requests = list;
+        } else if (sendRequests instanceof Collection<FcmSendRequest> collection) {
+            requests = new ArrayList<>(collection);
+        } else {
+            requests = new ArrayList<>();
+            sendRequests.forEach(requests::add);
+        }
+        // Each slot is written by exactly one completion; the dispatcher's final wait publishes all of them.
+        FcmSendResult[] results = new FcmSendResult[requests.size()];
+        FcmBulkDispatcher.dispatch(requests.iterator(), maxInFlight,
+                sendRequest -> sendRequest != null
+                        ? sendAsync(sendRequest)
+                        : CompletableFuture.failedFuture(new IllegalArgumentException("sendRequest must not be null")),
+                (index, sendRequest, result) -> results[(int) index] = result);
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public List<FcmSendResult> sendMulticast(FcmMessage template, Collection<String> tokens) {
+        return sendMulticast(template, tokens, fcmProperties.getSend().getMaxInFlight());
+    }
+
+    @Override
+    public List<FcmSendResult> sendMulticast(FcmMessage template, Collection<String> tokens, int maxInFlight) {
+        return sendMulticast(prepareTemplate(template, FcmMessageTemplate.TargetType.TOKEN), tokens, maxInFlight);
+    }
+
+    @Override
+    public FcmMessageTemplate prepareTemplate(FcmMessage message, FcmMessageTemplate.TargetType targetType) {
+        return prepareTemplate(message, targetType, FcmSendLane.STANDARD);
+    }
+
+    @Override
+    public FcmMessageTemplate prepareTemplate(FcmMessage message, FcmMessageTemplate.TargetType targetType,
+                                              FcmSendLane lane) {
+        return fcmHttpTransport.prepare(message, null, targetType, lane);
+    }
+
+    @Override
+    public CompletableFuture<FcmMessage> sendAsync(FcmMessageTemplate template, String target) {
+        try {
+            if (fcmIdempotencyGuard != null) {
+                return fcmIdempotencyGuard.sendAsync(template, target, () -> sendThrottledAsync(template, target));
+            }
+            return sendThrottledAsync(template, target);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private CompletableFuture<FcmMessage> sendThrottledAsync(FcmMessageTemplate template, String target) {
+        HttpRequest.BodyPublisher body = template.bodyPublisher(target);
+        boolean topic = template.getTargetType() == FcmMessageTemplate.TargetType.TOPIC;
+        FcmSendContext context = new FcmSendContext(template.getMessage(),
+                topic ? null : target, topic ? target : null, body.contentLength(), template.getLane());
+        if (fcmBackgroundThrottle == null || topic || !FcmBackgroundThrottle.isBackground(template.getMessage())) {
+            return sendWithRetry(context, body);
+        }
+        Map<String, String> data = fcmBackgroundThrottle.admit(template.getMessage(), target);
+        if (data == null) {
+            return CompletableFuture.completedFuture(suppressed());
+        }
+        CompletableFuture<FcmMessage> future;
+        try {
+            if (data != template.getMessage().getData() && !data.isEmpty()) {
+                // The data of suppressed messages was merged, so the prepared body no longer fits.
+                FcmSendRequest merged = FcmSendRequest.Builder.aFcmSendRequest()
+                        .message(withData(template.getMessage(), target, data))
+                        .lane(template.getLane())
+                        .build();
+                future = sendAsync(merged, fcmHttpTransport.serialize(merged));
+            } else {
+                future = sendWithRetry(context, body);
+            }
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        return reportToThrottle(target, data, future);
+    }
+
+    @Override
+    public List<FcmSendResult> sendMulticast(FcmMessageTemplate template, Collection<String> targets, int maxInFlight) {
+        FcmSendResult[] results = new FcmSendResult[targets.size()];
+        FcmBulkDispatcher.dispatch(targets.iterator(), maxInFlight,
+                target -> sendAsync(template, target),
+                (index, target, result) -> results[(int) index] = result);
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public long sendStream(FcmMessage template, Iterator<String> tokens, int maxInFlight, FcmSendResultSink sink) {
+        return sendStream(prepareTemplate(template, FcmMessageTemplate.TargetType.TOKEN), tokens, maxInFlight, sink);
+    }
+
+    @Override
+    public long sendStream(FcmMessage template, Stream<String> tokens, int maxInFlight, FcmSendResultSink sink) {
+        return sendStream(template, tokens.iterator(), maxInFlight, sink);
+    }
+
+    @Override
+    public long sendStream(FcmMessageTemplate template, Iterator<String> targets, int maxInFlight,
+                           FcmSendResultSink sink) {
+        return FcmBulkDispatcher.dispatch(targets, maxInFlight,
+                target -> target != null
+                        ? sendAsync(template, target)
+                        : CompletableFuture.failedFuture(new IllegalArgumentException("target must not be null")),
+                sink::accept);
+    }
+
+    /**
+     * Sends a request body asynchronously, retrying failed attempts according to the {@link FcmRetryPolicy}.
+     * Retries are scheduled with a delayed executor, and interceptors admit each attempt through
+     * {@link FcmSendInterceptor#beforeAttemptAsync}, so no thread waits during the backoff or for a permit. The body
+     * publisher is resubscribed for every attempt, so the request is never serialized again.
+     *
+     * @param context The send being made, passed to the interceptors.
+     * @param body    The publisher of the serialized request.
+     * @return A future completed with the result of the last attempt.
+     */
+    private CompletableFuture<FcmMessage> sendWithRetry(FcmSendContext context, HttpRequest.BodyPublisher body) {
+        CompletableFuture<FcmMessage> result = new CompletableFuture<>();
+        attempt(context, body, 1, System.nanoTime(), result);
+        return result;
+    }
+
+    private void attempt(FcmSendContext context, HttpRequest.BodyPublisher body, int attempt, long startNanos,
+                         CompletableFuture<FcmMessage> result) {
+        beforeAttemptAsync(context, attempt, 0, result, () -> send(context, body, attempt, startNanos, result));
+    }
+
+    private void send(FcmSendContext context, HttpRequest.BodyPublisher body, int attempt, long startNanos,
+                      CompletableFuture<FcmMessage> result) {
+        final long attemptStartNanos = System.nanoTime();
+        CompletableFuture<FcmMessage> future;
+        try {
+            future = fcmHttpTransport.send(body, fcmAccessTokenProvider.getAccessToken());
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((message, ex) -> {
+            afterAttempt(context, attempt, System.nanoTime() - attemptStartNanos, ex, interceptors.length);
+            if (ex == null) {
+                result.complete(message);
+                return;
+            }
+            long delayNanos = fcmRetryPolicy.nextDelayNanos(attempt, ex, System.nanoTime() - startNanos);
+            if (delayNanos < 0) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            logger.debug("FCM send attempt {} failed, retrying in {} ms: {}",
+                    attempt, TimeUnit.NANOSECONDS.toMillis(delayNanos), ex.getMessage());
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS)
+                    .execute(() -> attempt(context, body, attempt + 1, startNanos, result));
+        });
+    }
+
+    /**
+     * Gets the token of a background message subject to the {@link FcmBackgroundThrottle}.
+     *
+     * @return The token, or {@code null} if the request is not throttled.
+     */
+    private String throttledToken(FcmSendRequest sendRequest) {
+        FcmMessage message = sendRequest.getMessage();
+        if (fcmBackgroundThrottle == null || message == null || message.getToken() == null
+                || !FcmBackgroundThrottle.isBackground(message)) {
+            return null;
+        }
+        return message.getToken();
+    }
+
+    /**
+     * Reports the outcome of a send admitted by the {@link FcmBackgroundThrottle} once it completes, so that only a
+     * successful send starts the interval of the token.
+     */
+    private CompletableFuture<FcmMessage> reportToThrottle(String token, Map<String, String> data,
+                                                           CompletableFuture<FcmMessage> future) {
+        return future.whenComplete((message, ex) -> {
+            if (ex == null) {
+                fcmBackgroundThrottle.sent(token);
+            } else {
+                fcmBackgroundThrottle.failed(token, data);
+            }
+        });
+    }
+
+    /**
+     * Gets the request to send once the {@link FcmBackgroundThrottle} admitted it.
+     *
+     * @return The request, with the data of suppressed messages merged in.
+     */
+    private static FcmSendRequest withData(FcmSendRequest sendRequest, Map<String, String> data) {
+        FcmMessage message = sendRequest.getMessage();
+        if (data == message.getData() || data.isEmpty()) {
+            return sendRequest;
+        }
+        return FcmSendRequest.Builder.aFcmSendRequest()
+                .validateOnly(sendRequest.getValidateOnly())
+                .message(withData(message, message.getToken(), data))
+                .lane(sendRequest.getLane())
+                .idempotencyKey(sendRequest.getIdempotencyKey())
+                .build();
+    }
+
+    private static FcmMessage withData(FcmMessage message, String token, Map<String, String> data) {
+        return FcmMessage.Builder.aFcmMessage()
+                .name(message.getName())
+                .data(data)
+                .notification(message.getNotification())
+                .android(message.getAndroid())
+                .webpush(message.getWebpush())
+                .apns(message.getApns())
+                .fcmOptions(message.getFcmOptions())
+                .token(token)
+                .build();
+    }
+
+    private static FcmMessage suppressed() {
+        return FcmMessage.Builder.aFcmMessage().build();
+    }
+
+    private static FcmSendContext createContext(FcmSendRequest sendRequest, long payloadSize) {
+        FcmMessage message = sendRequest.getMessage();
+        return new FcmSendContext(message,
+                message != null ? message.getToken() : null,
+                message != null ? message.getTopic() : null,
+                payloadSize,
+                FcmSendLane.of(sendRequest));
+    }
+
+    /**
+     * Invokes every interceptor before an attempt. If one of them rejects the attempt, the interceptors that already
+     * accepted it are notified before the rejection is rethrown.
+     */
+    private void beforeAttempt(FcmSendContext context, int attempt) {
+        for (int i = 0; i < interceptors.length; i++) {
+            try {
+                interceptors[i].beforeAttempt(context, attempt);
+            } catch (RuntimeException ex) {
+                afterAttempt(context, attempt, 0L, ex, i);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Admits an attempt through the interceptors from {@code index} on, without blocking the calling thread, then
+     * runs {@code proceed}. An interceptor that has to wait completes its admission later, and the remaining
+     * interceptors and the attempt then run on the thread completing it. If one of them rejects the attempt, the
+     * interceptors that already accepted it are notified and {@code result} fails with the rejection.
+     */
+    private void beforeAttemptAsync(FcmSendContext context, int attempt, int index,
+                                    CompletableFuture<FcmMessage> result, Runnable proceed) {
+        if (index == interceptors.length) {
+            proceed.run();
+            return;
+        }
+        CompletableFuture<Void> admission;
+        try {
+            admission = interceptors[index].beforeAttemptAsync(context, attempt);
+        } catch (RuntimeException ex) {
+            admission = CompletableFuture.failedFuture(ex);
+        }
+        admission.whenComplete((ignored, ex) -> {
+            if (ex == null) {
+                beforeAttemptAsync(context, attempt, index + 1, result, proceed);
+                return;
+            }
+            Throwable failure = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            afterAttempt(context, attempt, 0L, failure, index);
+            result.completeExceptionally(failure);
+        });
+    }
+
+    /**
+     * Invokes the first {@code count} interceptors after an attempt, in reverse order.
+     */
+    private void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            try {
+                interceptors[i].afterAttempt(context, attempt, latencyNanos, failure);
+            } catch (RuntimeException ex) {
+                logger.warn("FCM send interceptor {} failed", interceptors[i], ex);
+            }
+        }
+    }
 }
@@ -0,0 +1,235 @@
+package io.github.waileong.fcm.token;
+
+import io.github.waileong.fcm.service.domain.FcmApnsAps;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.util.BoundedExpiringMap;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses background messages sent to a device more often than once per {@code minInterval}, since the operating
+ * system throttles them anyway.
+ * <p>
+ * A background message is a message to a token without a visible notification: an APNs push with
+ * {@code content-available} set, or a data-only message. {@link #admit(FcmMessage, String)} reserves the next send to
+ * the token, and the caller reports its outcome with {@link #sent(String)} or {@link #failed(String, Map)}: only a
+ * successful send starts the interval, while a failed one hands its data back and lets the next message through. A
+ * reservation that is never reported lapses after {@code minInterval}. The time of the last background message sent
+ * to each token is kept for {@code timeToLive} after its last use in a {@link BoundedExpiringMap}, which tracks at most
+ * {@code maxTokens} tokens, the oldest being evicted first. With {@link Mode#MERGE}, the data of suppressed messages is merged into the next background
+ * message sent to the token, whose own values take precedence; with {@link Mode#DROP}, it is discarded.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmBackgroundThrottle {
+    private final Mode mode;
+    private final long minIntervalNanos;
+    private final long timeToLiveNanos;
+    private final BoundedExpiringMap<Entry> tokens;
+    private final ConcurrentMap<String, Entry> entries;
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    /**
+     * What happens to the data of a suppressed message.
+     */
+    public enum Mode {
+        /**
+         * The data is merged into the next background message sent to the token.
+         */
+        MERGE,
+        /**
+         * The data is discarded.
+         */
+        DROP
+    }
+
+    /**
+     * The last background message sent to a token. Only changed within {@link ConcurrentHashMap#compute}.
+     */
+    private static final class Entry extends BoundedExpiringMap.Entry {
+        private boolean sent;
+        private long lastSentNanos;
+        private boolean reserved;
+        private long reservedAtNanos;
+        private Map<String, String> suppressedData;
+
+        private Entry(String token, long reservedAtNanos, long expiresAtNanos) {
+            super(token, expiresAtNanos);
+            this.reserved = true;
+            this.reservedAtNanos = reservedAtNanos;
+        }
+    }
+
+    /**
+     * Constructs a new {@link FcmBackgroundThrottle}.
+     *
+     * @param minInterval The minimum time between two background messages sent to the same token.
+     * @param mode        What happens to the data of a suppressed message.
+     * @param timeToLive  How long a token is tracked after its last message, at least {@code minInterval}.
+     * @param maxTokens   The maximum number of tokens tracked, beyond which the oldest ones are evicted early.
+     */
+    public FcmBackgroundThrottle(Duration minInterval, Mode mode, Duration timeToLive, int maxTokens) {
+        if (minInterval == null || minInterval.isNegative() || minInterval.isZero()) {
+            throw new IllegalArgumentException("fcm.background-throttle.min-interval must be positive");
+        }
+        if (timeToLive == null || timeToLive.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("fcm.background-throttle.time-to-live must be at least " +
+                    "fcm.background-throttle.min-interval");
+        }
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("fcm.background-throttle.max-tokens must be at least 1");
+        }
+        this.mode = mode;
+        this.minIntervalNanos = minInterval.toNanos();
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.tokens = new BoundedExpiringMap<>(maxTokens);
+        this.entries = tokens.map();
+    }
+
+    /**
+     * Decides whether a background message to a token is sent, and if so reserves the send until its outcome is
+     * reported.
+     *
+     * @param message The message to send.
+     * @return {@code null} if the message is suppressed; otherwise the data to send, which is the data of the message
+     * unless the data of suppressed messages was merged into it.
+     */
+    public Map<String, String> admit(FcmMessage message) {
+        return admit(message, message.getToken());
+    }
+
+    /**
+     * Decides whether a background message to a token is sent, and if so reserves the send until its outcome is
+     * reported.
+     *
+     * @param message The message to send, whose token may be a placeholder of a template.
+     * @param token   The token the message is sent to.
+     * @return {@code null} if the message is suppressed; otherwise the data to send, which is the data of the message
+     * unless the data of suppressed messages was merged into it.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> admit(FcmMessage message, String token) {
+        long now = System.nanoTime();
+        Map<String, String> data = message.getData();
+        // [0]: the data to send, or null if suppressed; [1]: the entry created for a new token.
+        Object[] outcome = new Object[2];
+        entries.compute(token, (key, existing) -> {
+            if (existing == null || existing.isExpired(now)) {
+                Entry created = new Entry(key, now, now + timeToLiveNanos);
+                outcome[0] = data != null ? data : Map.of();
+                outcome[1] = created;
+                return created;
+            }
+            existing.setExpiresAtNanos(now + timeToLiveNanos);
+            boolean idle = !existing.reserved || now - existing.reservedAtNanos >= minIntervalNanos;
+            if (idle && (!existing.sent || now - existing.lastSentNanos >= minIntervalNanos)) {
+                existing.reserved = true;
+                existing.reservedAtNanos = now;
+                Map<String, String> merged = merge(existing.suppressedData, data);
+                outcome[0] = merged != null ? merged : Map.of();
+                existing.suppressedData = null;
+            } else if (mode == Mode.MERGE && data != null) {
+                existing.suppressedData = merge(existing.suppressedData, data);
+            }
+            return existing;
+        });
+        if (outcome[1] != null) {
+            tokens.inserted((Entry) outcome[1], now);
+        }
+        if (outcome[0] == null) {
+            suppressedCount.incrementAndGet();
+        }
+        return (Map<String, String>) outcome[0];
+    }
+
+    /**
+     * Reports that the background message admitted for a token was sent, which starts the interval in which further
+     * messages to the token are suppressed.
+     *
+     * @param token The token the message was sent to.
+     */
+    public void sent(String token) {
+        long now = System.nanoTime();
+        entries.computeIfPresent(token, (key, existing) -> {
+            existing.sent = true;
+            existing.lastSentNanos = now;
+            existing.reserved = false;
+            return existing;
+        });
+    }
+
+    /**
+     * Reports that the background message admitted for a token failed, so that the next message to the token is sent
+     * at once. With {@link Mode#MERGE}, the data of the failed message is merged into that next message, below the
+     * data of messages suppressed since.
+     *
+     * @param token The token the message was sent to.
+     * @param data  The data returned by {@link #admit(FcmMessage, String)} for the message.
+     */
+    public void failed(String token, Map<String, String> data) {
+        entries.computeIfPresent(token, (key, existing) -> {
+            existing.reserved = false;
+            if (mode == Mode.MERGE && data != null && !data.isEmpty()) {
+                existing.suppressedData = merge(data, existing.suppressedData);
+            }
+            return existing;
+        });
+    }
+
+    /**
+     * Gets the number of background messages suppressed.
+     *
+     * @return The number of suppressed messages.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * Gets the number of tokens tracked, including expired ones that have not been evicted yet.
+     *
+     * @return The number of tokens tracked.
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Checks whether a message is a background message: it has no visible notification, and either sets
+     * {@code content-available} for APNs or carries data.
+     *
+     * @param message The message to check.
+     * @return {@code true} if the message is a background message.
+     */
+    public static boolean isBackground(FcmMessage message) {
+        if (message == null || message.getNotification() != null
+                || (message.getAndroid() != null && message.getAndroid().getNotification() != null)
+                || (message.getWebpush() != null && message.getWebpush().getNotification() != null)) {
+            return false;
+        }
+        FcmApnsAps aps = message.getApns() != null && message.getApns().getPayload() != null
+                ? message.getApns().getPayload().getAps() : null;
+        if (aps != null && (aps.getAlert() != null || aps.getContentState() != null)) {
+            return false;
+        }
+        return (aps != null && Integer.valueOf(1).equals(aps.getContentAvailable()))
+                || (message.getData() != null && !message.getData().isEmpty());
+    }
+
+    private static Map<String, String> merge(Map<String, String> older, Map<String, String> newer) {
+        if (older == null) {
+            return newer;
+        }
+        Map<String, String> merged = new HashMap<>(older);
+        if (newer != null) {
+            merged.putAll(newer);
+        }
+        return merged;
+    }
+}
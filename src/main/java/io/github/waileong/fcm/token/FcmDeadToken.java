@@ -0,0 +1,17 @@
+package io.github.waileong.fcm.token;
+
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+
+import java.time.Instant;
+
+/**
+ * A registration token that FCM reported as no longer valid.
+ *
+ * @param token      The registration token.
+ * @param errorCode  The error code FCM returned for the token, usually {@link FcmErrorCode#UNREGISTERED} or
+ *                   {@link FcmErrorCode#INVALID_ARGUMENT}.
+ * @param detectedAt The time the token was found to be dead.
+ * @author Wai Leong
+ */
+public record FcmDeadToken(String token, FcmErrorCode errorCode, Instant detectedAt) {
+}
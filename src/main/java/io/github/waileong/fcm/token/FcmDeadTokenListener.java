@@ -0,0 +1,24 @@
+package io.github.waileong.fcm.token;
+
+import java.util.List;
+
+/**
+ * Listener notified of registration tokens that FCM reported as no longer valid, typically used to remove them from
+ * the application's database.
+ * <p>
+ * Tokens are delivered in batches on a background thread of the {@link FcmDeadTokenRegistry}, never on the send
+ * path. A token is delivered at most once per registry, unless it was evicted and reported dead again.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+@FunctionalInterface
+public interface FcmDeadTokenListener {
+
+    /**
+     * Called with a batch of newly detected dead tokens.
+     *
+     * @param deadTokens The dead tokens, in the order they were detected. Never empty.
+     */
+    void onDeadTokens(List<FcmDeadToken> deadTokens);
+}
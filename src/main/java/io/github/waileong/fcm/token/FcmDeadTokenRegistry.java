@@ -0,0 +1,279 @@
+package io.github.waileong.fcm.token;
+
+import io.github.waileong.fcm.exception.FcmDeadTokenException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.FcmSendInterceptor;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-process registry of registration tokens that FCM reported as no longer valid.
+ * <p>
+ * As an {@link FcmSendInterceptor}, the registry learns dead tokens from failed attempts whose
+ * {@link FcmRestClientException} reports an {@code UNREGISTERED} token, or an {@code INVALID_ARGUMENT} error on the
+ * {@code message.token} field, and rejects later sends to those tokens locally with an {@link FcmDeadTokenException},
+ * without a request to FCM.
+ * </p>
+ * <p>
+ * Lookups are lock-free. A Bloom filter in front of the token set answers the common case, a live token, with a few
+ * bit probes on the token's cached hash code, so the set is only consulted for tokens that are most likely dead. The
+ * set holds at most {@code maxTokens} tokens; the oldest ones are evicted first, and the filter is rebuilt once
+ * evictions have filled it with stale bits.
+ * </p>
+ * <p>
+ * Newly detected tokens are passed to the {@link FcmDeadTokenListener}s in batches, on a background thread, when
+ * {@code batchSize} tokens are pending or every {@code flushInterval}, whichever comes first.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public class FcmDeadTokenRegistry implements FcmSendInterceptor, Ordered, AutoCloseable {
+    private static final int HASH_FUNCTIONS = 7;
+    private static final int BITS_PER_TOKEN = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final int maxTokens;
+    private final int batchSize;
+    private final List<FcmDeadTokenListener> listeners;
+    private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+    private final ArrayDeque<String> insertionOrder = new ArrayDeque<>();
+    // A ReentrantLock rather than a monitor, so that virtual threads recording dead tokens never pin their carrier.
+    private final ReentrantLock insertionLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<FcmDeadToken> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private final int filterBits;
+    private volatile AtomicLongArray filter;
+    private int evictionsSinceRebuild;
+
+    /**
+     * Constructs a new {@link FcmDeadTokenRegistry}.
+     *
+     * @param maxTokens     The maximum number of dead tokens remembered.
+     * @param batchSize     The number of pending tokens that triggers an immediate listener notification.
+     * @param flushInterval The longest time a detected token waits before the listeners are notified.
+     * @param listeners     The listeners notified of newly detected dead tokens.
+     */
+    public FcmDeadTokenRegistry(int maxTokens, int batchSize, Duration flushInterval,
+                                List<FcmDeadTokenListener> listeners) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("fcm.dead-token.max-tokens must be at least 1");
+        }
+        this.maxTokens = maxTokens;
+        this.batchSize = Math.max(1, batchSize);
+        this.listeners = List.copyOf(listeners);
+        // Round up to whole longs; about 1% false positives at full capacity.
+        this.filterBits = (int) Math.min(Integer.MAX_VALUE - 63L, (long) maxTokens * BITS_PER_TOKEN + 63) & ~63;
+        this.filter = new AtomicLongArray(filterBits >>> 6);
+        if (this.listeners.isEmpty()) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fcm-dead-token-notifier");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = Math.max(1L, flushInterval.toMillis());
+            scheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Indicates whether the given registration token is known to be dead.
+     *
+     * @param token The registration token.
+     * @return {@code true} if FCM reported the token as no longer valid.
+     */
+    public boolean isDead(String token) {
+        return token != null && mightContain(filter, token.hashCode()) && tokens.contains(token);
+    }
+
+    /**
+     * Records a registration token as dead, for example one loaded from the application's own records at startup.
+     * Listeners are notified unless the token was already known.
+     *
+     * @param token     The registration token.
+     * @param errorCode The reason the token is dead.
+     * @return {@code true} if the token was not known to be dead before.
+     */
+    public boolean markDead(String token, FcmErrorCode errorCode) {
+        if (token == null || isDead(token)) {
+            return false;
+        }
+        insertionLock.lock();
+        try {
+            if (!tokens.add(token)) {
+                return false;
+            }
+            insertionOrder.addLast(token);
+            setBits(filter, token.hashCode());
+            while (insertionOrder.size() > maxTokens) {
+                tokens.remove(insertionOrder.pollFirst());
+                evictionsSinceRebuild++;
+            }
+            if (evictionsSinceRebuild >= maxTokens) {
+                rebuildFilter();
+            }
+        } finally {
+            insertionLock.unlock();
+        }
+        if (scheduler != null) {
+            pending.add(new FcmDeadToken(token, errorCode, Instant.now()));
+            if (pendingCount.incrementAndGet() == batchSize) {
+                scheduler.execute(this::flush);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets a registration token, so that sends to it are attempted again.
+     *
+     * @param token The registration token.
+     * @return {@code true} if the token was known to be dead.
+     */
+    public boolean remove(String token) {
+        insertionLock.lock();
+        try {
+            if (!tokens.remove(token)) {
+                return false;
+            }
+            insertionOrder.remove(token);
+            evictionsSinceRebuild++;
+            return true;
+        } finally {
+            insertionLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of dead tokens currently remembered.
+     *
+     * @return The number of dead tokens.
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    @Override
+    public void beforeAttempt(FcmSendContext context, int attempt) {
+        if (isDead(context.token())) {
+            throw new FcmDeadTokenException("FCM registration token is no longer valid: " + context.token());
+        }
+    }
+
+    @Override
+    public void afterAttempt(FcmSendContext context, int attempt, long latencyNanos, Throwable failure) {
+        if (failure instanceof FcmRestClientException ex && context.token() != null
+                && ex.isInvalidRegistrationToken()) {
+            markDead(context.token(), ex.getErrorCode());
+        }
+    }
+
+    /**
+     * Runs before the other interceptors, so that sends to dead tokens consume no quota or concurrency.
+     *
+     * @return The order of this interceptor.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 100;
+    }
+
+    /**
+     * Notifies the listeners of the pending tokens and stops the background notifier.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            flush();
+        }
+    }
+
+    private void flush() {
+        List<FcmDeadToken> batch = new ArrayList<>();
+        FcmDeadToken deadToken;
+        while ((deadToken = pending.poll()) != null) {
+            batch.add(deadToken);
+            pendingCount.decrementAndGet();
+            if (batch.size() == batchSize) {
+                notifyListeners(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            notifyListeners(batch);
+        }
+    }
+
+    private void notifyListeners(List<FcmDeadToken> batch) {
+        List<FcmDeadToken> deadTokens = List.copyOf(batch);
+        for (FcmDeadTokenListener listener : listeners) {
+            try {
+                listener.onDeadTokens(deadTokens);
+            } catch (RuntimeException ex) {
+                logger.warn("FCM dead token listener {} failed", listener, ex);
+            }
+        }
+    }
+
+    private void rebuildFilter() {
+        AtomicLongArray rebuilt = new AtomicLongArray(filterBits >>> 6);
+        for (String token : insertionOrder) {
+            setBits(rebuilt, token.hashCode());
+        }
+        this.filter = rebuilt;
+        this.evictionsSinceRebuild = 0;
+    }
+
+    private boolean mightContain(AtomicLongArray bits, int hash) {
+        int h2 = secondHash(hash);
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = Math.floorMod(hash + i * h2, filterBits);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setBits(AtomicLongArray bits, int hash) {
+        int h2 = secondHash(hash);
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = Math.floorMod(hash + i * h2, filterBits);
+            long mask = 1L << bit;
+            bits.getAndUpdate(bit >>> 6, word -> word | mask);
+        }
+    }
+
+    private static int secondHash(int hash) {
+        // Murmur3 finalizer, to derive an independent-looking second hash for double hashing.
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
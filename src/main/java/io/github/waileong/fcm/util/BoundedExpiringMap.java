@@ -0,0 +1,131 @@
+package io.github.waileong.fcm.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent map of expiring entries that holds at most {@code maxEntries} of them, evicting the oldest first.
+ * <p>
+ * Lookups and updates go straight to the backing {@link ConcurrentHashMap} returned by {@link #map()}. Every entry
+ * added to it must then be reported with {@link #inserted}, which keeps the entries in insertion order so that the
+ * oldest ones are evicted in amortized constant time once they have expired or once the map holds more than
+ * {@code maxEntries}. Entries that were removed from or replaced in the map are no longer counted: they are skipped
+ * when they reach the head of the insertion order, and purged whenever they make up most of it.
+ * </p>
+ *
+ * @param <E> The type of the entries.
+ * @author Wai Leong
+ */
+public final class BoundedExpiringMap<E extends BoundedExpiringMap.Entry> {
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, E> entries = new ConcurrentHashMap<>();
+    // Guarded by insertionLock. May hold entries already replaced or removed.
+    private final ArrayDeque<E> insertionOrder = new ArrayDeque<>();
+    private final ReentrantLock insertionLock = new ReentrantLock();
+
+    /**
+     * An entry of a {@link BoundedExpiringMap}, identified by its key.
+     */
+    public abstract static class Entry {
+        private final String key;
+        private volatile long expiresAtNanos;
+
+        /**
+         * Constructs a new {@link Entry}.
+         *
+         * @param key            The key the entry is stored under.
+         * @param expiresAtNanos The {@link System#nanoTime()} at which the entry expires.
+         */
+        protected Entry(String key, long expiresAtNanos) {
+            this.key = key;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        /**
+         * Gets the key the entry is stored under.
+         *
+         * @return The key.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Extends or shortens the life of the entry.
+         *
+         * @param expiresAtNanos The {@link System#nanoTime()} at which the entry expires.
+         */
+        public void setExpiresAtNanos(long expiresAtNanos) {
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        /**
+         * Checks whether the entry has expired.
+         *
+         * @param now The current {@link System#nanoTime()}.
+         * @return {@code true} if the entry has expired.
+         */
+        public boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
+    /**
+     * Constructs a new {@link BoundedExpiringMap}.
+     *
+     * @param maxEntries The maximum number of entries held, beyond which the oldest ones are evicted early.
+     */
+    public BoundedExpiringMap(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the backing map, which may hold expired entries that have not been evicted yet.
+     *
+     * @return The backing map.
+     */
+    public ConcurrentMap<String, E> map() {
+        return entries;
+    }
+
+    /**
+     * Gets the number of entries held, including expired ones that have not been evicted yet.
+     *
+     * @return The number of entries held.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Records an entry just added to the backing map, and evicts the oldest entries that have expired or exceed the
+     * maximum number of entries.
+     *
+     * @param entry The entry added.
+     * @param now   The current {@link System#nanoTime()}.
+     */
+    public void inserted(E entry, long now) {
+        insertionLock.lock();
+        try {
+            insertionOrder.addLast(entry);
+            E oldest;
+            while ((oldest = insertionOrder.peekFirst()) != null
+                    && (!isLive(oldest) || entries.size() > maxEntries || oldest.isExpired(now))) {
+                insertionOrder.pollFirst();
+                entries.remove(oldest.getKey(), oldest);
+            }
+            // Entries removed or replaced behind the head would otherwise pile up until they reach it.
+            if (insertionOrder.size() > 2 * Math.max(maxEntries, entries.size())) {
+                insertionOrder.removeIf(stale -> !isLive(stale));
+            }
+        } finally {
+            insertionLock.unlock();
+        }
+    }
+
+    private boolean isLive(E entry) {
+        return entries.get(entry.getKey()) == entry;
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.waileong.fcm.authentication;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the single-flight and refresh-ahead behavior of the {@link FcmAccessTokenProvider} with a stub token
+ * factory.
+ *
+ * @author Wai Leong
+ */
+public class FcmAccessTokenProviderTest {
+    private final AtomicInteger mints = new AtomicInteger();
+
+    @Test
+    public void testConcurrentCallersShareASingleMint() throws InterruptedException {
+        CountDownLatch minting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FcmAccessTokenProvider provider = new FcmAccessTokenProvider(factory(Duration.ofHours(1), () -> {
+            minting.countDown();
+            release.await();
+        }), Duration.ofMinutes(5), null);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<String>> tokens = IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(provider::getAccessToken, executor))
+                    .toList();
+            assertThat(minting.await(10, TimeUnit.SECONDS)).isTrue();
+            // Give the other callers time to arrive while the first mint is still running.
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(tokens).extracting(CompletableFuture::join).containsOnly("token-1");
+            assertThat(mints).hasValue(1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTokenInTheRefreshWindowIsServedWhileOneRefreshRunsInTheBackground() {
+        List<Runnable> scheduled = new ArrayList<>();
+        // Every token is minted inside its refresh window, so that each read asks for a refresh.
+        FcmAccessTokenProvider provider = new FcmAccessTokenProvider(factory(Duration.ofMinutes(1), () -> {
+        }), Duration.ofMinutes(5), scheduled::add);
+
+        assertThat(provider.getAccessToken()).isEqualTo("token-1");
+        assertThat(scheduled).isEmpty();
+
+        assertThat(provider.getAccessToken()).isEqualTo("token-1");
+        assertThat(provider.getAccessToken()).isEqualTo("token-1");
+        assertThat(scheduled).hasSize(1);
+        assertThat(mints).hasValue(1);
+
+        scheduled.remove(0).run();
+        assertThat(provider.getAccessToken()).isEqualTo("token-2");
+        assertThat(mints).hasValue(2);
+    }
+
+    @Test
+    public void testFailedMintIsNotCachedAndIsRetriedByTheNextCaller() {
+        AtomicInteger attempts = new AtomicInteger();
+        FcmAccessTokenProvider provider = new FcmAccessTokenProvider(factory(Duration.ofHours(1), () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("Metadata server unavailable");
+            }
+        }), Duration.ofMinutes(5), null);
+
+        assertThatThrownBy(provider::getAccessToken).isInstanceOf(IllegalStateException.class);
+        assertThat(provider.getCachedToken()).isNull();
+        assertThat(provider.getAccessToken()).isEqualTo("token-1");
+    }
+
+    private FcmJwtTokenPooledObjectFactory factory(Duration validity, MintStep step) {
+        return new FcmJwtTokenPooledObjectFactory((FcmCredentialMaterial) null) {
+            @Override
+            public FcmJwtToken create() throws Exception {
+                step.run();
+                return new FcmJwtToken("token-" + mints.incrementAndGet(),
+                        new Date(System.currentTimeMillis() + validity.toMillis()));
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface MintStep {
+        void run() throws Exception;
+    }
+}
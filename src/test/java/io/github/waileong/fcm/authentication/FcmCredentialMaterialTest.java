@@ -0,0 +1,88 @@
+package io.github.waileong.fcm.authentication;
+
+import io.github.waileong.fcm.config.FcmProperties;
+import io.github.waileong.fcm.testing.FcmTestCredentials;
+import io.github.waileong.fcm.util.RSAKeyPairUtil;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+
+/**
+ * Tests the validation of the {@link FcmCredentialMaterial}, and that its private key is parsed only once.
+ *
+ * @author Wai Leong
+ */
+public class FcmCredentialMaterialTest {
+    private final FcmTestCredentials credentials = FcmTestCredentials.generate("project");
+
+    @Test
+    public void testMissingOrBlankFieldsAreRejected() {
+        assertRejected(credential -> credential.setPrivateKeyId(null), "fcm.credential.private-key-id");
+        assertRejected(credential -> credential.setPrivateKeyId(" "), "fcm.credential.private-key-id");
+        assertRejected(credential -> credential.setPrivateKey(null), "fcm.credential.private-key");
+        assertRejected(credential -> credential.setPrivateKey(""), "fcm.credential.private-key");
+        assertRejected(credential -> credential.setClientEmail(null), "fcm.credential.client-email");
+        assertRejected(credential -> credential.setClientEmail(" "), "fcm.credential.client-email");
+        assertRejected(credential -> credential.setJwtExpireDuration(null), "fcm.credential.jwt-expire-duration");
+        assertRejected(credential -> credential.setJwtExpireDuration(Duration.ZERO),
+                "fcm.credential.jwt-expire-duration");
+        assertRejected(credential -> credential.setJwtExpireDuration(Duration.ofMinutes(-1)),
+                "fcm.credential.jwt-expire-duration");
+    }
+
+    @Test
+    public void testInvalidPrivateKeyIsRejected() {
+        FcmProperties.Credential notBase64 = credentials.toCredential();
+        notBase64.setPrivateKey("not a key");
+        assertThatThrownBy(() -> new FcmCredentialMaterial(notBase64)).isInstanceOf(IllegalArgumentException.class);
+
+        FcmProperties.Credential notPkcs8 = credentials.toCredential();
+        notPkcs8.setPrivateKey(Base64.getEncoder().encodeToString(credentials.getPublicKey().getEncoded()));
+        assertThatThrownBy(() -> new FcmCredentialMaterial(notPkcs8)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testPrivateKeyIsParsedOnceAndReusedWithTheHeader() throws Exception {
+        try (MockedStatic<RSAKeyPairUtil> keyPairUtil = mockStatic(RSAKeyPairUtil.class, CALLS_REAL_METHODS)) {
+            FcmCredentialMaterial material = new FcmCredentialMaterial(credentials.toCredential());
+            FcmJwtTokenPooledObjectFactory factory = new FcmJwtTokenPooledObjectFactory(material);
+
+            FcmJwtToken first = factory.create();
+            FcmJwtToken second = factory.create();
+
+            keyPairUtil.verify(() -> RSAKeyPairUtil.getPrivateKeyFromString(anyString()), times(1));
+            assertThat(material.getPrivateKey()).isSameAs(material.getPrivateKey());
+            assertThat(material.getHeader()).isSameAs(material.getHeader());
+            assertThat(header(first)).containsEntry("kid", credentials.getPrivateKeyId()).containsEntry("typ", "JWT");
+            assertThat(header(second)).containsEntry("kid", credentials.getPrivateKeyId()).containsEntry("typ", "JWT");
+        }
+    }
+
+    private void assertRejected(Consumer<FcmProperties.Credential> change, String property) {
+        FcmProperties.Credential credential = credentials.toCredential();
+        change.accept(credential);
+        assertThatThrownBy(() -> new FcmCredentialMaterial(credential))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(property);
+    }
+
+    private JwsHeader<?> header(FcmJwtToken token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(credentials.getPublicKey())
+                .build()
+                .parseClaimsJws(token.token())
+                .getHeader();
+    }
+}
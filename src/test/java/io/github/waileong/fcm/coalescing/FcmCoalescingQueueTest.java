@@ -0,0 +1,107 @@
+package io.github.waileong.fcm.coalescing;
+
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmAndroid;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link FcmCoalescingQueue} against a stub {@link FcmService} that records the sent messages.
+ *
+ * @author Wai Leong
+ */
+public class FcmCoalescingQueueTest {
+    private static final String SLOW_TOKEN = "slow-token";
+
+    private final List<FcmMessage> sent = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Void> slowResponse = new CompletableFuture<>();
+    private final FcmService fcmService = mock(FcmService.class);
+
+    @BeforeEach
+    public void setUp() {
+        when(fcmService.sendAsync(any(FcmSendRequest.class))).thenAnswer(invocation -> {
+            FcmSendRequest request = invocation.getArgument(0);
+            sent.add(request.getMessage());
+            FcmMessage response = FcmMessage.Builder.aFcmMessage()
+                    .name("projects/p/messages/" + sent.size())
+                    .data(request.getMessage().getData())
+                    .build();
+            return SLOW_TOKEN.equals(request.getMessage().getToken())
+                    ? slowResponse.thenApply(ignored -> response)
+                    : CompletableFuture.completedFuture(response);
+        });
+    }
+
+    @Test
+    public void testNewerMessagesReplaceThePendingOne() {
+        try (FcmCoalescingQueue queue = new FcmCoalescingQueue(fcmService, Duration.ofMillis(200), 10, 100)) {
+            CompletableFuture<FcmMessage> first = queue.submit(request("token-1", "score", "1-0"));
+            CompletableFuture<FcmMessage> second = queue.submit(request("token-1", "score", "2-0"));
+            CompletableFuture<FcmMessage> other = queue.submit(request("token-2", "score", "0-1"));
+            CompletableFuture<FcmMessage> uncollapsible = queue.submit(request("token-1", null, "goal"));
+
+            assertThat(uncollapsible.join().getData()).containsEntry("value", "goal");
+            assertThat(first.join().getData()).containsEntry("value", "2-0");
+            assertThat(second.join().getName()).isEqualTo(first.join().getName());
+            assertThat(other.join().getData()).containsEntry("value", "0-1");
+            assertThat(sent).hasSize(3);
+            assertThat(queue.getCoalescedCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testMessagesWithoutCollapseKeyAreQueuedWithoutBlocking() {
+        try (FcmCoalescingQueue queue = new FcmCoalescingQueue(fcmService, Duration.ofMinutes(1), 1, 100)) {
+            CompletableFuture<FcmMessage> slow = queue.submit(request(SLOW_TOKEN, null, "1"));
+            long start = System.nanoTime();
+            CompletableFuture<FcmMessage> queued = queue.submit(request("token-1", null, "2"));
+            CompletableFuture<FcmMessage> repeated = queue.submit(request("token-1", null, "2"));
+
+            // The only slot is taken by the slow send, yet neither submission waited for it.
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(500));
+            assertThat(queued).isNotDone();
+            assertThat(queue.getPendingCount()).isEqualTo(2);
+
+            slowResponse.complete(null);
+            assertThat(slow.join().getData()).containsEntry("value", "1");
+            assertThat(queued.join().getName()).isNotEqualTo(repeated.join().getName());
+            assertThat(sent).hasSize(3);
+            assertThat(queue.getCoalescedCount()).isZero();
+        }
+    }
+
+    @Test
+    public void testCloseSendsThePendingMessages() {
+        FcmCoalescingQueue queue = new FcmCoalescingQueue(fcmService, Duration.ofMinutes(1), 10, 100);
+        CompletableFuture<FcmMessage> pending = queue.submit(request("token-1", "score", "1-0"));
+
+        queue.close();
+
+        assertThat(pending.join().getData()).containsEntry("value", "1-0");
+        assertThat(queue.getPendingCount()).isZero();
+        assertThat(queue.submit(request("token-1", "score", "2-0"))).isCompletedExceptionally();
+    }
+
+    private static FcmSendRequest request(String token, String collapseKey, String value) {
+        return FcmSendRequest.Builder.aFcmSendRequest()
+                .message(FcmMessage.Builder.aFcmMessage()
+                        .token(token)
+                        .data(Map.of("value", value))
+                        .android(FcmAndroid.Builder.aFcmAndroid().collapseKey(collapseKey).build())
+                        .build())
+                .build();
+    }
+}
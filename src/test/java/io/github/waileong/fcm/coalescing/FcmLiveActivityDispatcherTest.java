@@ -0,0 +1,108 @@
+package io.github.waileong.fcm.coalescing;
+
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmApns;
+import io.github.waileong.fcm.service.domain.FcmApnsAps;
+import io.github.waileong.fcm.service.domain.FcmApnsContentState;
+import io.github.waileong.fcm.service.domain.FcmApnsPayload;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link FcmLiveActivityDispatcher} against a stub {@link FcmService} that records the sent updates.
+ *
+ * @author Wai Leong
+ */
+public class FcmLiveActivityDispatcherTest {
+    private final List<Object> sent = new CopyOnWriteArrayList<>();
+    private final FcmService fcmService = mock(FcmService.class);
+
+    @BeforeEach
+    public void setUp() {
+        when(fcmService.sendAsync(any(FcmSendRequest.class))).thenAnswer(invocation -> {
+            FcmSendRequest request = invocation.getArgument(0);
+            FcmApnsContentState state = request.getMessage().getApns().getPayload().getAps().getContentState();
+            sent.add(state.getContentState().get("score"));
+            return CompletableFuture.completedFuture(FcmMessage.Builder.aFcmMessage()
+                    .name("projects/p/messages/" + sent.size())
+                    .build());
+        });
+    }
+
+    @Test
+    public void testUpdatesAreThrottledToTheLatestStateAndEndIsFlushed() throws InterruptedException {
+        try (FcmLiveActivityDispatcher dispatcher = new FcmLiveActivityDispatcher(fcmService,
+                Duration.ofMillis(200), 100)) {
+            dispatcher.submit(update("activity-1", "update", 1, "0-0", null)).join();
+            CompletableFuture<FcmMessage> second = dispatcher.submit(update("activity-1", "update", 2, "1-0", null));
+            CompletableFuture<FcmMessage> third = dispatcher.submit(update("activity-1", "update", 3, "2-0", null));
+            CompletableFuture<FcmMessage> late = dispatcher.submit(update("activity-1", "update", 2, "1-0", null));
+            assertThat(sent).containsExactly("0-0");
+
+            assertThat(second.join().getName()).isEqualTo(third.join().getName()).isEqualTo(late.join().getName());
+            assertThat(sent).containsExactly("0-0", "2-0");
+
+            dispatcher.submit(update("activity-1", "update", 4, "3-0", null));
+            dispatcher.submit(update("activity-1", "end", 5, "3-1", null)).join();
+            assertThat(sent).containsExactly("0-0", "2-0", "3-1");
+            Thread.sleep(300);
+            assertThat(sent).hasSize(3);
+            assertThat(dispatcher.getCoalescedCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void testTheLeastRelevantUpdateIsDroppedUnderPressure() {
+        try (FcmLiveActivityDispatcher dispatcher = new FcmLiveActivityDispatcher(fcmService,
+                Duration.ofMinutes(1), 1)) {
+            dispatcher.submit(update("activity-1", "update", 1, "a0", 0.5)).join();
+            dispatcher.submit(update("activity-2", "update", 1, "b0", 0.5)).join();
+
+            CompletableFuture<FcmMessage> minor = dispatcher.submit(update("activity-1", "update", 2, "a1", 0.1));
+            CompletableFuture<FcmMessage> major = dispatcher.submit(update("activity-2", "update", 2, "b1", 0.9));
+            CompletableFuture<FcmMessage> rejected = dispatcher.submit(update("activity-1", "update", 3, "a2", 0.2));
+
+            assertThatThrownBy(minor::join).hasCauseInstanceOf(RejectedExecutionException.class);
+            assertThatThrownBy(rejected::join).hasCauseInstanceOf(RejectedExecutionException.class);
+            assertThat(major).isNotDone();
+            assertThat(dispatcher.getDroppedCount()).isEqualTo(2);
+        }
+        assertThat(sent).containsExactly("a0", "b0", "b1");
+    }
+
+    private static FcmSendRequest update(String activityToken, String event, long timestamp, String score,
+                                         Double relevanceScore) {
+        FcmApnsAps aps = FcmApnsAps.Builder.aFcmApnsAps()
+                .relevanceScore(relevanceScore)
+                .contentState(FcmApnsContentState.Builder.aFcmApnsContentState()
+                        .event(event)
+                        .timestamp(timestamp)
+                        .contentState(Map.of("score", score))
+                        .build())
+                .build();
+        return FcmSendRequest.Builder.aFcmSendRequest()
+                .message(FcmMessage.Builder.aFcmMessage()
+                        .token("token-1")
+                        .apns(FcmApns.Builder.aFcmApns()
+                                .liveActivityToken(activityToken)
+                                .payload(FcmApnsPayload.Builder.aFcmApnsPayload().aps(aps).build())
+                                .build())
+                        .build())
+                .build();
+    }
+}
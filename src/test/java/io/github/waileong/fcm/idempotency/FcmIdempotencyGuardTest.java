@@ -0,0 +1,133 @@
+package io.github.waileong.fcm.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.service.FcmMessageTemplate;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link FcmIdempotencyGuard} with an {@link FcmInMemoryIdempotencyStore}.
+ *
+ * @author Wai Leong
+ */
+public class FcmIdempotencyGuardTest {
+    private static final byte[] BODY = "{\"message\":{\"token\":\"token-1\"}}".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger sends = new AtomicInteger();
+
+    @Test
+    public void testRepeatsWithinTheWindowAreSwallowed() throws InterruptedException {
+        FcmIdempotencyGuard guard = new FcmIdempotencyGuard(new FcmInMemoryIdempotencyStore(100),
+                Duration.ofMillis(200));
+
+        FcmMessage first = guard.send(null, BODY, this::sendOnce);
+        FcmMessage repeat = guard.send(null, BODY.clone(), this::sendOnce);
+        guard.send(null, "{\"message\":{\"token\":\"token-2\"}}".getBytes(StandardCharsets.UTF_8), this::sendOnce);
+        guard.send("order-42", BODY, this::sendOnce);
+        guard.send("order-42", "{}".getBytes(StandardCharsets.UTF_8), this::sendOnce);
+
+        assertThat(repeat.getName()).isEqualTo(first.getName());
+        assertThat(sends).hasValue(3);
+
+        Thread.sleep(250);
+        guard.send(null, BODY, this::sendOnce);
+        assertThat(sends).hasValue(4);
+    }
+
+    @Test
+    public void testFailedSendsAreNotRemembered() {
+        FcmIdempotencyGuard guard = new FcmIdempotencyGuard(new FcmInMemoryIdempotencyStore(100),
+                Duration.ofMinutes(1));
+
+        assertThatThrownBy(() -> guard.send(null, BODY, () -> {
+            throw new IllegalStateException("unavailable");
+        })).isInstanceOf(IllegalStateException.class);
+
+        guard.send(null, BODY, this::sendOnce);
+        assertThat(sends).hasValue(1);
+    }
+
+    @Test
+    public void testConcurrentRepeatsShareTheOutcomeOfTheFirstSend() {
+        FcmIdempotencyGuard guard = new FcmIdempotencyGuard(new FcmInMemoryIdempotencyStore(100),
+                Duration.ofMinutes(1));
+        CompletableFuture<FcmMessage> response = new CompletableFuture<>();
+
+        CompletableFuture<FcmMessage> first = guard.sendAsync(null, BODY, () -> {
+            sends.incrementAndGet();
+            return response;
+        });
+        CompletableFuture<FcmMessage> repeat = guard.sendAsync(null, BODY, () -> {
+            sends.incrementAndGet();
+            return response;
+        });
+        assertThat(repeat).isNotDone();
+
+        response.complete(FcmMessage.Builder.aFcmMessage().name("projects/p/messages/1").build());
+        assertThat(first.join().getName()).isEqualTo("projects/p/messages/1");
+        assertThat(repeat.join().getName()).isEqualTo("projects/p/messages/1");
+        assertThat(sends).hasValue(1);
+    }
+
+    @Test
+    public void testStoreEvictsTheOldestEntriesBeyondItsCapacity() {
+        FcmInMemoryIdempotencyStore store = new FcmInMemoryIdempotencyStore(2);
+
+        assertThat(store.putIfAbsent("a", "1", Duration.ofMinutes(1))).isNull();
+        assertThat(store.putIfAbsent("b", "2", Duration.ofMinutes(1))).isNull();
+        assertThat(store.putIfAbsent("a", "3", Duration.ofMinutes(1))).isEqualTo("1");
+        assertThat(store.putIfAbsent("c", "4", Duration.ofMinutes(1))).isNull();
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.putIfAbsent("a", "5", Duration.ofMinutes(1))).isNull();
+    }
+
+    @Test
+    public void testRemovedAndReplacedKeysDoNotEvictLiveOnes() throws InterruptedException {
+        FcmInMemoryIdempotencyStore store = new FcmInMemoryIdempotencyStore(2);
+        store.putIfAbsent("live", "1", Duration.ofMinutes(1));
+
+        // A burst of failed sends, each of which removes its key.
+        for (int i = 0; i < 10; i++) {
+            store.putIfAbsent("failed-" + i, "2", Duration.ofMinutes(1));
+            store.remove("failed-" + i);
+        }
+        store.putIfAbsent("expired", "3", Duration.ofMillis(1));
+        Thread.sleep(10);
+        assertThat(store.putIfAbsent("expired", "4", Duration.ofMinutes(1))).isNull();
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.putIfAbsent("live", "5", Duration.ofMinutes(1))).isEqualTo("1");
+        assertThat(store.putIfAbsent("expired", "6", Duration.ofMinutes(1))).isEqualTo("4");
+    }
+
+    @Test
+    public void testTemplateSendsAreKeyedByTemplateAndTarget() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        FcmMessage message = FcmMessage.Builder.aFcmMessage().data(Map.of("inbox", "1")).build();
+        FcmMessageTemplate template = new FcmMessageTemplate(objectMapper, message, null,
+                FcmMessageTemplate.TargetType.TOKEN);
+        FcmMessageTemplate equal = new FcmMessageTemplate(objectMapper, message, null,
+                FcmMessageTemplate.TargetType.TOKEN);
+        FcmMessageTemplate topic = new FcmMessageTemplate(objectMapper, message, null,
+                FcmMessageTemplate.TargetType.TOPIC);
+
+        String key = FcmIdempotencyGuard.key(template, "token-1");
+        assertThat(FcmIdempotencyGuard.key(equal, "token-1")).isEqualTo(key);
+        assertThat(FcmIdempotencyGuard.key(template, "token-2")).isNotEqualTo(key);
+        assertThat(FcmIdempotencyGuard.key(topic, "token-1")).isNotEqualTo(key);
+    }
+
+    private FcmMessage sendOnce() {
+        return FcmMessage.Builder.aFcmMessage().name("projects/p/messages/" + sends.incrementAndGet()).build();
+    }
+}
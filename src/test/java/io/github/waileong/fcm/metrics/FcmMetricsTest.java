@@ -0,0 +1,106 @@
+package io.github.waileong.fcm.metrics;
+
+import io.github.waileong.fcm.authentication.FcmAccessTokenProvider;
+import io.github.waileong.fcm.authentication.FcmCredentialMaterial;
+import io.github.waileong.fcm.authentication.FcmJwtToken;
+import io.github.waileong.fcm.authentication.FcmJwtTokenPooledObjectFactory;
+import io.github.waileong.fcm.exception.FcmCircuitBreakerOpenException;
+import io.github.waileong.fcm.exception.FcmDeadTokenException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the meters of {@link FcmMetrics} and {@link FcmRejectionMetrics} against a {@link SimpleMeterRegistry}.
+ *
+ * @author Wai Leong
+ */
+public class FcmMetricsTest {
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FcmMetrics metrics = new FcmMetrics(registry, new double[]{0.99}, false);
+    private final FcmRejectionMetrics rejectionMetrics = new FcmRejectionMetrics(registry);
+
+    @Test
+    public void testAttemptsAreTimedByOutcomeAndErrorCode() {
+        FcmSendContext context = new FcmSendContext(null, "token-1", null, 256L);
+
+        attempt(context, 1, null);
+        attempt(context, 1, new FcmRestClientException(404, "Unregistered"));
+        attempt(context, 2, new FcmRestClientException(503, "Unavailable"));
+        attempt(context, 3, new IOException("Connection reset"));
+
+        assertThat(registry.get("fcm.send").tags("outcome", "success", "error", "none").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("fcm.send").tags("outcome", "success", "error", "none").timer()
+                .totalTime(TimeUnit.NANOSECONDS)).isEqualTo(LATENCY_NANOS);
+        assertThat(registry.get("fcm.send").tags("outcome", "error", "error", "UNREGISTERED").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("fcm.send").tags("outcome", "error", "error", "UNAVAILABLE").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("fcm.send").tags("outcome", "io_error").timer().count()).isEqualTo(1);
+        assertThat(registry.get("fcm.send.retries").counter().count()).isEqualTo(2);
+        assertThat(registry.get("fcm.send.payload.size").summary().count()).isEqualTo(2);
+        assertThat(registry.get("fcm.send.payload.size").summary().totalAmount()).isEqualTo(512);
+        assertThat(registry.get("fcm.send.in.flight").gauge().value()).isZero();
+        // None of these attempts was rejected locally.
+        assertThat(registry.find("fcm.send.rejected").counters())
+                .allSatisfy(counter -> assertThat(counter.count()).isZero());
+    }
+
+    @Test
+    public void testLocalRejectionsAreCountedByReasonAndNotTimed() {
+        FcmSendContext context = new FcmSendContext(null, "dead-token", null, 256L);
+
+        // Rejected by an interceptor between the two, so no request was made.
+        rejectionMetrics.beforeAttempt(context, 1);
+        rejectionMetrics.afterAttempt(context, 1, 0L, new FcmDeadTokenException("Dead token"));
+        rejectionMetrics.beforeAttempt(context, 1);
+        rejectionMetrics.afterAttempt(context, 1, 0L, new FcmCircuitBreakerOpenException("Open"));
+        rejectionMetrics.beforeAttempt(context, 1);
+        rejectionMetrics.afterAttempt(context, 1, 0L, new IllegalStateException("Rejected"));
+        // A failed request is not a local rejection.
+        rejectionMetrics.afterAttempt(context, 1, LATENCY_NANOS, new FcmRestClientException(503, "Unavailable"));
+        // A rejection reaching the last interceptor is not timed as an attempt.
+        metrics.beforeAttempt(context, 1);
+        metrics.afterAttempt(context, 1, 0L, new FcmDeadTokenException("Dead token"));
+
+        assertThat(registry.get("fcm.send.rejected").tag("reason", "dead_token").counter().count()).isEqualTo(1);
+        assertThat(registry.get("fcm.send.rejected").tag("reason", "circuit_open").counter().count()).isEqualTo(1);
+        assertThat(registry.get("fcm.send.rejected").tag("reason", "other").counter().count()).isEqualTo(1);
+        assertThat(registry.get("fcm.send.rejected").tag("reason", "rate_limit").counter().count()).isZero();
+        assertThat(registry.get("fcm.send").timers()).allSatisfy(timer -> assertThat(timer.count()).isZero());
+        assertThat(registry.get("fcm.send.in.flight").gauge().value()).isZero();
+    }
+
+    @Test
+    public void testTokenMintsAreTimed() {
+        FcmAccessTokenProvider provider = new FcmAccessTokenProvider(
+                new FcmJwtTokenPooledObjectFactory((FcmCredentialMaterial) null) {
+                    @Override
+                    public FcmJwtToken create() {
+                        return new FcmJwtToken("token", new Date(System.currentTimeMillis() + 3_600_000L));
+                    }
+                }, Duration.ofMinutes(5), null);
+        metrics.bindTo(provider);
+
+        provider.getAccessToken();
+        provider.getAccessToken();
+
+        assertThat(registry.get("fcm.token.mint").timer().count()).isEqualTo(1);
+    }
+
+    private void attempt(FcmSendContext context, int attempt, Throwable failure) {
+        metrics.beforeAttempt(context, attempt);
+        metrics.afterAttempt(context, attempt, LATENCY_NANOS, failure);
+    }
+}
@@ -0,0 +1,104 @@
+package io.github.waileong.fcm.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link FcmFileOutbox} against a stubbed {@link FcmService}.
+ *
+ * @author Wai Leong
+ */
+public class FcmFileOutboxTest {
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<FcmSendRequest> sent = new CopyOnWriteArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLaneAndIdempotencyKeyAreKept() throws InterruptedException {
+        try (FcmFileOutbox outbox = outbox(request -> FcmSendResult.success(request.getMessage()), 3)) {
+            outbox.enqueue(FcmSendRequest.Builder.aFcmSendRequest()
+                    .message(FcmMessage.Builder.aFcmMessage().token("token-1").build())
+                    .lane(FcmSendLane.CRITICAL)
+                    .idempotencyKey("order-42")
+                    .build());
+
+            awaitSent(1);
+            assertThat(sent.get(0).getLane()).isEqualTo(FcmSendLane.CRITICAL);
+            assertThat(sent.get(0).getIdempotencyKey()).isEqualTo("order-42");
+            assertThat(sent.get(0).getMessage().getToken()).isEqualTo("token-1");
+        }
+    }
+
+    @Test
+    public void testTransientFailuresAreDeadLetteredAfterMaxAttempts() throws InterruptedException, IOException {
+        FcmSendResult unavailable = new FcmSendResult(null, FcmErrorCode.UNAVAILABLE, 503);
+        try (FcmFileOutbox outbox = outbox(request -> unavailable, 3)) {
+            outbox.enqueue(FcmSendRequest.Builder.aFcmSendRequest()
+                    .message(FcmMessage.Builder.aFcmMessage().token("token-1").build())
+                    .lane(FcmSendLane.BULK)
+                    .build());
+
+            FcmOutboxLog deadLetterLog = outbox.getDeadLetterLog();
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (deadLetterLog.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            List<FcmOutboxLog.Entry> deadLetters = deadLetterLog.read(deadLetterLog.getAckedOffset(), 10);
+            assertThat(deadLetters).hasSize(1);
+            FcmFileOutbox.StoredRequest deadLetter = objectMapper.readValue(deadLetters.get(0).payload(),
+                    FcmFileOutbox.StoredRequest.class);
+            assertThat(deadLetter.attempts()).isEqualTo(3);
+            assertThat(deadLetter.lastError()).isEqualTo(FcmErrorCode.UNAVAILABLE.name());
+            assertThat(deadLetter.lane()).isEqualTo(FcmSendLane.BULK);
+            Thread.sleep(100);
+            assertThat(sent).hasSize(3);
+        }
+    }
+
+    private FcmFileOutbox outbox(Function<FcmSendRequest, FcmSendResult> responder, int maxAttempts) {
+        FcmService fcmService = mock(FcmService.class);
+        when(fcmService.sendEach(any())).thenAnswer(invocation -> {
+            List<FcmSendResult> results = new ArrayList<>();
+            for (FcmSendRequest request : invocation.<Iterable<FcmSendRequest>>getArgument(0)) {
+                sent.add(request);
+                results.add(responder.apply(request));
+            }
+            return results;
+        });
+        return new FcmFileOutbox(new FcmOutboxLog(directory.resolve("log"), SEGMENT_BYTES),
+                new FcmOutboxLog(directory.resolve("dead-letter"), SEGMENT_BYTES), fcmService, objectMapper, 10,
+                maxAttempts, Duration.ofMillis(1), Duration.ofMillis(10));
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (sent.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(sent).hasSizeGreaterThanOrEqualTo(count);
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.waileong.fcm.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.waileong.fcm.config.FcmAutoConfiguration;
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmNotification;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.testing.FcmStandInServer;
+import io.github.waileong.fcm.testing.FcmTestCredentials;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConfiguration;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link FcmJdbcOutbox} against an embedded H2 database and an {@link FcmStandInServer}.
+ *
+ * @author Wai Leong
+ */
+@SpringBootTest(classes = FcmJdbcOutboxTest.ContextConfiguration.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class FcmJdbcOutboxTest {
+    private static final String DEAD_TOKEN = "dead-token";
+    private static final FcmTestCredentials CREDENTIALS = FcmTestCredentials.generate("outbox-project");
+    private static final FcmStandInServer SERVER;
+
+    static {
+        try {
+            SERVER = FcmStandInServer.Builder.aFcmStandInServer()
+                    .credentials(CREDENTIALS)
+                    .unregisteredTokens(Set.of(DEAD_TOKEN))
+                    .start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Autowired
+    private FcmOutbox fcmOutbox;
+
+    @Autowired
+    private FcmService fcmService;
+
+    @Autowired
+    @Qualifier("fcmObjectMapper")
+    private ObjectMapper fcmObjectMapper;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void fcmProperties(DynamicPropertyRegistry registry) {
+        CREDENTIALS.toProperties(SERVER).forEach((name, value) -> registry.add(name, () -> value));
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:fcm-outbox;DB_CLOSE_DELAY=-1");
+        registry.add("spring.sql.init.schema-locations", () -> "classpath:db/fcm-outbox-schema.sql");
+        registry.add("fcm.outbox.enabled", () -> "true");
+        registry.add("fcm.outbox.store", () -> "jdbc");
+        registry.add("fcm.outbox.batch-size", () -> "10");
+        registry.add("fcm.outbox.poll-interval", () -> "10ms");
+        registry.add("fcm.idempotency.enabled", () -> "true");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        SERVER.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        new JdbcTemplate(dataSource).update("DELETE FROM fcm_outbox");
+        SERVER.reset();
+    }
+
+    @Test
+    public void testEnqueueJoinsTheCallerTransaction() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            fcmOutbox.enqueue(request("rolled-back"));
+            status.setRollbackOnly();
+        });
+
+        assertThat(new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM fcm_outbox", Long.class))
+                .isZero();
+    }
+
+    @Test
+    public void testNodesShareTheOutboxWithoutDoubleSends() throws InterruptedException {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        try (FcmJdbcOutbox secondNode = new FcmJdbcOutbox(jdbcTemplate, new TransactionTemplate(transactionManager),
+                fcmService, fcmObjectMapper, "fcm_outbox", 10, 4, 3, Duration.ofMillis(10), Duration.ofMillis(10))) {
+            for (int i = 0; i < 200; i++) {
+                (i % 2 == 0 ? fcmOutbox : secondNode).enqueue(request("token-" + i));
+            }
+            fcmOutbox.enqueue(request(DEAD_TOKEN));
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+            while (countByStatus(jdbcTemplate, "PENDING") > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+
+        assertThat(countByStatus(jdbcTemplate, "SENT")).isEqualTo(200);
+        assertThat(jdbcTemplate.queryForObject("SELECT last_error FROM fcm_outbox WHERE status = 'FAILED'",
+                String.class)).isEqualTo("UNREGISTERED");
+        assertThat(SERVER.getReceivedMessages())
+                .extracting(FcmStandInServer.ReceivedMessage::token)
+                .filteredOn(token -> !DEAD_TOKEN.equals(token))
+                .hasSize(200)
+                .doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void testLaneAndIdempotencyKeyAreKept() throws InterruptedException {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Two different messages under the same key: only the first one is sent if the key survives the table.
+        for (String token : List.of("token-1", "token-2")) {
+            FcmSendRequest request = request(token);
+            request.setLane(FcmSendLane.CRITICAL);
+            request.setIdempotencyKey("order-42");
+            fcmOutbox.enqueue(request);
+        }
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (countByStatus(jdbcTemplate, "PENDING") > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertThat(countByStatus(jdbcTemplate, "SENT")).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForList("SELECT DISTINCT lane FROM fcm_outbox", String.class))
+                .containsExactly("CRITICAL");
+        assertThat(SERVER.getReceivedMessages())
+                .extracting(FcmStandInServer.ReceivedMessage::token)
+                .containsExactly("token-1");
+    }
+
+    private static long countByStatus(JdbcTemplate jdbcTemplate, String status) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fcm_outbox WHERE status = ?", Long.class, status);
+    }
+
+    private static FcmSendRequest request(String token) {
+        return FcmSendRequest.Builder.aFcmSendRequest()
+                .message(FcmMessage.Builder.aFcmMessage()
+                        .token(token)
+                        .notification(FcmNotification.Builder.aFcmNotification()
+                                .title("Title")
+                                .body("Body")
+                                .build())
+                        .build())
+                .build();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @Import({FcmAutoConfiguration.class, TaskExecutionAutoConfiguration.class, DataSourceAutoConfiguration.class,
+            DataSourceTransactionManagerAutoConfiguration.class, SqlInitializationAutoConfiguration.class})
+    public static class ContextConfiguration {
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.waileong.fcm.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link FcmOutboxLog} segment rolling, acknowledgement and recovery.
+ *
+ * @author Wai Leong
+ */
+public class FcmOutboxLogTest {
+    private static final int SEGMENT_BYTES = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRecordsSpanSegmentsAndAckedSegmentsAreDeleted() throws IOException {
+        try (FcmOutboxLog log = new FcmOutboxLog(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(("message-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            assertThat(segmentCount()).isGreaterThan(1);
+
+            List<FcmOutboxLog.Entry> entries = log.read(log.getAckedOffset(), 100);
+            assertThat(entries).extracting(entry -> new String(entry.payload(), StandardCharsets.UTF_8))
+                    .containsExactly("message-0", "message-1", "message-2", "message-3", "message-4",
+                            "message-5", "message-6", "message-7", "message-8", "message-9");
+
+            log.ack(entries.get(entries.size() - 1).nextOffset());
+            assertThat(log.isEmpty()).isTrue();
+            assertThat(segmentCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testReopenResumesAfterAckedOffsetAndDropsTornRecord() throws IOException {
+        long tornOffset;
+        try (FcmOutboxLog log = new FcmOutboxLog(directory, SEGMENT_BYTES)) {
+            log.append("acked".getBytes(StandardCharsets.UTF_8));
+            log.append("pending".getBytes(StandardCharsets.UTF_8));
+            log.ack(log.read(0, 1).get(0).nextOffset());
+            tornOffset = log.append("torn".getBytes(StandardCharsets.UTF_8));
+        }
+        // Simulate a crash in the middle of the last append by corrupting its checksum.
+        Path lastSegment;
+        try (Stream<Path> files = Files.list(directory)) {
+            lastSegment = files.filter(path -> path.toString().endsWith(".log")).sorted()
+                    .reduce((first, second) -> second).orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(lastSegment, StandardOpenOption.WRITE)) {
+            long position = tornOffset - Long.parseLong(lastSegment.getFileName().toString().substring(0, 20));
+            channel.write(ByteBuffer.allocate(4).putInt(0, 42), position + 4);
+        }
+
+        try (FcmOutboxLog log = new FcmOutboxLog(directory, SEGMENT_BYTES)) {
+            assertThat(log.read(log.getAckedOffset(), 100))
+                    .extracting(entry -> new String(entry.payload(), StandardCharsets.UTF_8))
+                    .containsExactly("pending");
+
+            log.append("after-restart".getBytes(StandardCharsets.UTF_8));
+            assertThat(log.read(log.getAckedOffset(), 100))
+                    .extracting(entry -> new String(entry.payload(), StandardCharsets.UTF_8))
+                    .containsExactly("pending", "after-restart");
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".log")).count();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmCircuitBreakerOpenException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link FcmCircuitBreaker}.
+ *
+ * @author Wai Leong
+ */
+public class FcmCircuitBreakerTest {
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final FcmRestClientException UNAVAILABLE = new FcmRestClientException(503, "Unavailable");
+
+    @Test
+    public void testBreakerOpensThenProbesAndCloses() throws InterruptedException {
+        FcmCircuitBreaker breaker = breaker(Duration.ofSeconds(10), 2, FcmRateLimiter.Mode.FAIL_FAST, null);
+
+        attempt(breaker, null);
+        attempt(breaker, UNAVAILABLE);
+        attempt(breaker, null);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.CLOSED);
+        attempt(breaker, UNAVAILABLE);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> breaker.beforeAttempt(null, 1)).isInstanceOf(FcmCircuitBreakerOpenException.class);
+
+        Thread.sleep(150);
+        FcmSendContext probe1 = context();
+        FcmSendContext probe2 = context();
+        breaker.beforeAttempt(probe1, 1);
+        breaker.beforeAttempt(probe2, 1);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.HALF_OPEN);
+        // Both probe permits are taken.
+        assertThatThrownBy(() -> breaker.beforeAttempt(context(), 1))
+                .isInstanceOf(FcmCircuitBreakerOpenException.class);
+
+        breaker.afterAttempt(probe1, 1, LATENCY_NANOS, null);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.HALF_OPEN);
+        breaker.afterAttempt(probe2, 1, LATENCY_NANOS, null);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.CLOSED);
+
+        // The window was reset on closing: a single failure is below the minimum number of calls.
+        attempt(breaker, UNAVAILABLE);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testUnusedProbePermitIsHandedBackAndFailedProbeReopens() throws InterruptedException {
+        FcmCircuitBreaker breaker = breaker(Duration.ofSeconds(10), 1, FcmRateLimiter.Mode.FAIL_FAST, null);
+        trip(breaker);
+        Thread.sleep(150);
+
+        FcmSendContext probe = context();
+        breaker.beforeAttempt(probe, 1);
+        assertThatThrownBy(() -> breaker.beforeAttempt(context(), 1))
+                .isInstanceOf(FcmCircuitBreakerOpenException.class);
+        // Rejected by a later interceptor without a request.
+        breaker.afterAttempt(probe, 1, 0L, new IllegalStateException());
+        breaker.beforeAttempt(probe, 2);
+
+        breaker.afterAttempt(probe, 2, LATENCY_NANOS, UNAVAILABLE);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> breaker.beforeAttempt(null, 1)).isInstanceOf(FcmCircuitBreakerOpenException.class);
+    }
+
+    @Test
+    public void testOnlyProbesDecideWhetherTheBreakerCloses() throws InterruptedException {
+        FcmCircuitBreaker breaker = breaker(Duration.ofSeconds(10), 1, FcmRateLimiter.Mode.FAIL_FAST, null);
+        FcmSendContext slowCall = context();
+        breaker.beforeAttempt(slowCall, 1);
+        trip(breaker);
+        Thread.sleep(150);
+
+        FcmSendContext probe = context();
+        breaker.beforeAttempt(probe, 1);
+        // The slow call was let through while closed: neither its outcome nor its rejection concerns the probes.
+        breaker.afterAttempt(slowCall, 1, 0L, new IllegalStateException());
+        assertThatThrownBy(() -> breaker.beforeAttempt(context(), 1))
+                .isInstanceOf(FcmCircuitBreakerOpenException.class);
+        breaker.afterAttempt(slowCall, 1, LATENCY_NANOS, null);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.HALF_OPEN);
+
+        breaker.afterAttempt(probe, 1, LATENCY_NANOS, null);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testConcurrentProbesNeverExceedTheProbePermits() throws Exception {
+        int halfOpenCalls = 2;
+        int threads = 8;
+        FcmCircuitBreaker breaker = breaker(Duration.ofSeconds(10), halfOpenCalls, FcmRateLimiter.Mode.FAIL_FAST,
+                null);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 5; round++) {
+                trip(breaker);
+                Thread.sleep(150);
+
+                CyclicBarrier barrier = new CyclicBarrier(threads);
+                List<Future<FcmSendContext>> attempts = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    attempts.add(executor.submit(() -> {
+                        FcmSendContext context = context();
+                        barrier.await(10, TimeUnit.SECONDS);
+                        try {
+                            breaker.beforeAttempt(context, 1);
+                            return context;
+                        } catch (FcmCircuitBreakerOpenException ex) {
+                            return null;
+                        }
+                    }));
+                }
+                List<FcmSendContext> probes = new ArrayList<>();
+                for (Future<FcmSendContext> attempt : attempts) {
+                    FcmSendContext probe = attempt.get(10, TimeUnit.SECONDS);
+                    if (probe != null) {
+                        probes.add(probe);
+                    }
+                }
+
+                assertThat(probes).hasSize(halfOpenCalls);
+                probes.forEach(probe -> breaker.afterAttempt(probe, 1, LATENCY_NANOS, null));
+                assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.CLOSED);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testOutcomesOutsideTheSlidingWindowAreForgotten() throws InterruptedException {
+        FcmCircuitBreaker breaker = breaker(Duration.ofMillis(200), 1, FcmRateLimiter.Mode.FAIL_FAST, null);
+
+        attempt(breaker, UNAVAILABLE);
+        attempt(breaker, UNAVAILABLE);
+        attempt(breaker, UNAVAILABLE);
+        Thread.sleep(250);
+
+        // 1 failure in 4 calls; counting the rolled over buckets, it would be 4 failures in 7.
+        attempt(breaker, null);
+        attempt(breaker, null);
+        attempt(breaker, null);
+        attempt(breaker, UNAVAILABLE);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testAsyncWaitIsScheduledUntilTheBreakerHalfOpens() {
+        FcmCircuitBreaker breaker = breaker(Duration.ofSeconds(10), 1, FcmRateLimiter.Mode.BLOCK,
+                Duration.ofSeconds(1));
+        long start = System.nanoTime();
+        trip(breaker);
+
+        CompletableFuture<Void> probe = breaker.beforeAttemptAsync(context(), 1);
+        CompletableFuture<Void> rejected = breaker.beforeAttemptAsync(context(), 1);
+        // Neither call waits for the breaker to half-open.
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(100);
+        assertThat(probe).isNotDone();
+
+        CompletableFuture.anyOf(probe, rejected).join();
+        // The breaker opened after start, so it half-opens no sooner than the open duration after start.
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.HALF_OPEN);
+        // Only one probe is let through; the other waiter runs out of time while the probe is outstanding.
+        assertThatThrownBy(() -> CompletableFuture.allOf(probe, rejected).join())
+                .hasCauseInstanceOf(FcmCircuitBreakerOpenException.class);
+    }
+
+    private static FcmCircuitBreaker breaker(Duration slidingWindow, int halfOpenCalls, FcmRateLimiter.Mode mode,
+                                             Duration maxWait) {
+        return new FcmCircuitBreaker(0.5, 1.0, Duration.ofSeconds(5), slidingWindow, 4, Duration.ofMillis(100),
+                halfOpenCalls, mode, maxWait);
+    }
+
+    private static void trip(FcmCircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            attempt(breaker, UNAVAILABLE);
+        }
+        assertThat(breaker.getState()).isEqualTo(FcmCircuitBreaker.State.OPEN);
+    }
+
+    private static void attempt(FcmCircuitBreaker breaker, Throwable failure) {
+        FcmSendContext context = context();
+        breaker.beforeAttempt(context, 1);
+        breaker.afterAttempt(context, 1, LATENCY_NANOS, failure);
+    }
+
+    private static FcmSendContext context() {
+        return new FcmSendContext(null, "token", null, 0L);
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.config.FcmAutoConfiguration;
+import io.github.waileong.fcm.exception.FcmConcurrencyLimitExceededException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmService;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.testing.FcmLatencyDistribution;
+import io.github.waileong.fcm.testing.FcmStandInServer;
+import io.github.waileong.fcm.testing.FcmTestCredentials;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link FcmConcurrencyLimiter}, on its own and in front of an {@link FcmStandInServer} whose latency is
+ * changed to move the limit.
+ *
+ * @author Wai Leong
+ */
+@SpringBootTest(classes = FcmConcurrencyLimiterTest.ContextConfiguration.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class FcmConcurrencyLimiterTest {
+    private static final FcmTestCredentials CREDENTIALS = FcmTestCredentials.generate("stand-in-project");
+    private static final FcmStandInServer SERVER;
+
+    static {
+        try {
+            SERVER = FcmStandInServer.Builder.aFcmStandInServer()
+                    .credentials(CREDENTIALS)
+                    .recordMessages(false)
+                    .start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Autowired
+    private FcmService fcmService;
+
+    @Autowired
+    private FcmConcurrencyLimiter fcmConcurrencyLimiter;
+
+    @DynamicPropertySource
+    static void fcmProperties(DynamicPropertyRegistry registry) {
+        CREDENTIALS.toProperties(SERVER).forEach((name, value) -> registry.add(name, () -> value));
+        registry.add("fcm.concurrency-limit.enabled", () -> "true");
+        registry.add("fcm.concurrency-limit.initial-limit", () -> "8");
+        registry.add("fcm.concurrency-limit.min-limit", () -> "4");
+        registry.add("fcm.concurrency-limit.max-limit", () -> "200");
+        registry.add("fcm.concurrency-limit.latency-tolerance", () -> "1.5");
+        registry.add("fcm.concurrency-limit.max-wait", () -> "30s");
+        registry.add("logging.level.root", () -> "info");
+        registry.add("logging.level.io.github.waileong.fcm", () -> "info");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        SERVER.close();
+    }
+
+    @Test
+    public void testLimitFollowsTheLatencyOfTheServer() {
+        // Well above the time spent on the client, so that the latency only moves with the server.
+        SERVER.setLatency(FcmLatencyDistribution.fixed(Duration.ofMillis(100)));
+        sendAll(400);
+        int raised = fcmConcurrencyLimiter.getLimit();
+        assertThat(raised).isGreaterThan(8);
+
+        // Three times the baseline latency, twice the tolerance: requests now queue up at the server.
+        SERVER.setLatency(FcmLatencyDistribution.fixed(Duration.ofMillis(300)));
+        sendAll(100);
+        assertThat(fcmConcurrencyLimiter.getLimit()).isLessThan(raised);
+        assertThat(fcmConcurrencyLimiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void testOverloadLowersTheLimitOncePerWindow() {
+        FcmConcurrencyLimiter limiter = new FcmConcurrencyLimiter(40, 4, 100, FcmRateLimiter.Mode.FAIL_FAST,
+                Duration.ofSeconds(1), 0.5, 2.0);
+        FcmRestClientException quotaExceeded = new FcmRestClientException(429, "Quota exceeded");
+
+        // A first sample of 1 s makes the window, within which a single decrease applies, 1 s long.
+        limiter.acquire();
+        limiter.afterAttempt(null, 1, 1_000_000_000L, null);
+        limiter.acquire();
+        limiter.acquire();
+        limiter.afterAttempt(null, 1, 1_000_000L, quotaExceeded);
+        limiter.afterAttempt(null, 1, 1_000_000L, quotaExceeded);
+
+        assertThat(limiter.getLimit()).isEqualTo(20);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void testAsyncAcquireQueuesWithoutBlockingAndTimesOut() {
+        FcmConcurrencyLimiter limiter = new FcmConcurrencyLimiter(1, 1, 1, FcmRateLimiter.Mode.BLOCK,
+                Duration.ofMillis(200), 0.5, 2.0);
+
+        assertThat(limiter.acquireAsync()).isDone();
+        CompletableFuture<Void> queued = limiter.acquireAsync();
+        CompletableFuture<Void> timedOut = limiter.acquireAsync();
+        assertThat(queued).isNotDone();
+
+        limiter.release();
+        queued.join();
+        assertThatThrownBy(timedOut::join).hasCauseInstanceOf(FcmConcurrencyLimitExceededException.class);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    private void sendAll(int count) {
+        CompletableFuture.allOf(IntStream.range(0, count)
+                .mapToObj(i -> fcmService.sendAsync(FcmSendRequest.Builder.aFcmSendRequest()
+                        .message(FcmMessage.Builder.aFcmMessage().token("token-" + i).build())
+                        .build()))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @Import({FcmAutoConfiguration.class, TaskExecutionAutoConfiguration.class})
+    public static class ContextConfiguration {
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmConcurrencyLimitExceededException;
+import io.github.waileong.fcm.service.domain.FcmAndroid;
+import io.github.waileong.fcm.service.domain.FcmAndroidMessagePriority;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link FcmPriorityScheduler}.
+ *
+ * @author Wai Leong
+ */
+public class FcmPrioritySchedulerTest {
+
+    @Test
+    public void testAsyncSendsAreQueuedAsFuturesAndTimeOut() {
+        FcmPriorityScheduler scheduler = new FcmPriorityScheduler(() -> 1, 0.0, 0.0,
+                FcmPriorityScheduler.Scheduling.STRICT, 1, 1, 1, FcmRateLimiter.Mode.BLOCK, Duration.ofMillis(200));
+
+        assertThat(scheduler.acquireAsync(FcmSendLane.BULK)).isDone();
+        CompletableFuture<Void> queued = scheduler.acquireAsync(FcmSendLane.STANDARD);
+        CompletableFuture<Void> timedOut = scheduler.acquireAsync(FcmSendLane.BULK);
+        assertThat(queued).isNotDone();
+        assertThat(scheduler.getWaiting(FcmSendLane.STANDARD)).isEqualTo(1);
+
+        scheduler.release(FcmSendLane.BULK);
+        queued.join();
+        assertThat(scheduler.getInFlight(FcmSendLane.STANDARD)).isEqualTo(1);
+        assertThatThrownBy(timedOut::join).hasCauseInstanceOf(FcmConcurrencyLimitExceededException.class);
+        assertThat(scheduler.getWaiting(FcmSendLane.BULK)).isZero();
+        assertThat(scheduler.getInFlight(FcmSendLane.BULK)).isZero();
+    }
+
+    @Test
+    public void testReservedSharesKeepSlotsFreeForHigherLanes() {
+        FcmPriorityScheduler scheduler = new FcmPriorityScheduler(() -> 10, 0.2, 0.3,
+                FcmPriorityScheduler.Scheduling.STRICT, 1, 1, 1, FcmRateLimiter.Mode.FAIL_FAST, null);
+
+        // 2 slots are reserved for the critical lane and 3 for the standard lane.
+        acquire(scheduler, FcmSendLane.BULK, 5);
+        assertThatThrownBy(() -> scheduler.acquire(FcmSendLane.BULK))
+                .isInstanceOf(FcmConcurrencyLimitExceededException.class);
+        acquire(scheduler, FcmSendLane.STANDARD, 3);
+        assertThatThrownBy(() -> scheduler.acquire(FcmSendLane.STANDARD))
+                .isInstanceOf(FcmConcurrencyLimitExceededException.class);
+        acquire(scheduler, FcmSendLane.CRITICAL, 2);
+        assertThatThrownBy(() -> scheduler.acquire(FcmSendLane.CRITICAL))
+                .isInstanceOf(FcmConcurrencyLimitExceededException.class);
+
+        // A released bulk slot is not reserved, so any lane may take it.
+        scheduler.release(FcmSendLane.BULK);
+        scheduler.acquire(FcmSendLane.CRITICAL);
+        assertThat(scheduler.getInFlight(FcmSendLane.CRITICAL)).isEqualTo(3);
+    }
+
+    @Test
+    public void testWeightedSchedulingServesLanesInProportionToTheirWeights() {
+        assertThat(admissionsPerLane(FcmPriorityScheduler.Scheduling.WEIGHTED)).containsExactlyInAnyOrderEntriesOf(
+                Map.of(FcmSendLane.CRITICAL, 6, FcmSendLane.STANDARD, 3, FcmSendLane.BULK, 1));
+        assertThat(admissionsPerLane(FcmPriorityScheduler.Scheduling.STRICT)).containsExactlyInAnyOrderEntriesOf(
+                Map.of(FcmSendLane.CRITICAL, 10, FcmSendLane.STANDARD, 0, FcmSendLane.BULK, 0));
+    }
+
+    @Test
+    public void testLaneIsStandardUnlessSetOnTheRequest() {
+        FcmMessage highPriority = FcmMessage.Builder.aFcmMessage()
+                .token("token-1")
+                .android(FcmAndroid.Builder.aFcmAndroid().priority(FcmAndroidMessagePriority.HIGH).build())
+                .build();
+
+        assertThat(FcmSendLane.of(FcmSendRequest.Builder.aFcmSendRequest().message(highPriority).build()))
+                .isEqualTo(FcmSendLane.STANDARD);
+        assertThat(FcmSendLane.of(FcmSendRequest.Builder.aFcmSendRequest()
+                .message(highPriority)
+                .lane(FcmSendLane.CRITICAL)
+                .build())).isEqualTo(FcmSendLane.CRITICAL);
+    }
+
+    /**
+     * Queues 10 sends in every lane behind a single slot, then releases the slot 10 times and counts which lane it
+     * was handed to.
+     */
+    private static Map<FcmSendLane, Integer> admissionsPerLane(FcmPriorityScheduler.Scheduling scheduling) {
+        FcmPriorityScheduler scheduler = new FcmPriorityScheduler(() -> 1, 0.0, 0.0, scheduling, 6, 3, 1,
+                FcmRateLimiter.Mode.BLOCK, Duration.ofSeconds(10));
+        scheduler.acquire(FcmSendLane.BULK);
+        for (FcmSendLane lane : FcmSendLane.values()) {
+            for (int i = 0; i < 10; i++) {
+                scheduler.acquireAsync(lane);
+            }
+        }
+        Map<FcmSendLane, Integer> admissions = new EnumMap<>(FcmSendLane.class);
+        FcmSendLane holder = FcmSendLane.BULK;
+        for (int i = 0; i < 10; i++) {
+            scheduler.release(holder);
+            for (FcmSendLane lane : FcmSendLane.values()) {
+                if (scheduler.getInFlight(lane) == 1) {
+                    holder = lane;
+                }
+            }
+            admissions.merge(holder, 1, Integer::sum);
+        }
+        for (FcmSendLane lane : FcmSendLane.values()) {
+            admissions.putIfAbsent(lane, 0);
+        }
+        return admissions;
+    }
+
+    private static void acquire(FcmPriorityScheduler scheduler, FcmSendLane lane, int count) {
+        for (int i = 0; i < count; i++) {
+            scheduler.acquire(lane);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmRateLimitExceededException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link FcmRateLimiter}.
+ *
+ * @author Wai Leong
+ */
+public class FcmRateLimiterTest {
+
+    @Test
+    public void testAsyncAcquireSchedulesTheWaitInsteadOfParking() {
+        // 600 per minute: one permit every 100 ms, after a burst of 1.
+        FcmRateLimiter limiter = new FcmRateLimiter(600, 1, FcmRateLimiter.Mode.BLOCK, Duration.ofSeconds(5),
+                false, 600, 0.5, Duration.ofSeconds(1), 0.1);
+
+        long start = System.nanoTime();
+        CompletableFuture<Void> first = limiter.acquireAsync();
+        CompletableFuture<Void> second = limiter.acquireAsync();
+        CompletableFuture<Void> third = limiter.acquireAsync();
+        long callerNanos = System.nanoTime() - start;
+
+        assertThat(first).isDone();
+        assertThat(second).isNotDone();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(callerNanos)).isLessThan(50);
+        third.join();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(190);
+        assertThat(second).isDone();
+    }
+
+    @Test
+    public void testFailFastRejectsWithoutWaiting() {
+        FcmRateLimiter limiter = new FcmRateLimiter(60, 1, FcmRateLimiter.Mode.FAIL_FAST, Duration.ofSeconds(5),
+                false, 60, 0.5, Duration.ofSeconds(1), 0.1);
+
+        limiter.acquire();
+        assertThatThrownBy(limiter::acquire).isInstanceOf(FcmRateLimitExceededException.class);
+        assertThat(limiter.acquireAsync()).isCompletedExceptionally();
+    }
+
+    @Test
+    public void testAdaptiveRateIsCutOnQuotaExceededAndRecoversStepByStep() throws InterruptedException {
+        FcmRestClientException quotaExceeded = new FcmRestClientException(429, "Quota exceeded");
+        // Halved on each 429, down to 100 per minute; 60 per minute added back after each quiet 300 ms.
+        FcmRateLimiter limiter = new FcmRateLimiter(600, 1, FcmRateLimiter.Mode.BLOCK, Duration.ofSeconds(5),
+                true, 100, 0.5, Duration.ofMillis(300), 0.1);
+
+        limiter.afterAttempt(null, 1, 1_000L, quotaExceeded);
+        assertThat(limiter.getPermitsPerMinute()).isEqualTo(300);
+        // The other in-flight sends of the same breach, and successes right after it, change nothing.
+        limiter.afterAttempt(null, 1, 1_000L, quotaExceeded);
+        limiter.afterAttempt(null, 1, 1_000L, null);
+        assertThat(limiter.getPermitsPerMinute()).isEqualTo(300);
+
+        Thread.sleep(400);
+        limiter.afterAttempt(null, 1, 1_000L, null);
+        limiter.afterAttempt(null, 1, 1_000L, null);
+        assertThat(limiter.getPermitsPerMinute()).isEqualTo(360);
+        // An increase never delays the reaction to the next 429.
+        limiter.afterAttempt(null, 1, 1_000L, quotaExceeded);
+        assertThat(limiter.getPermitsPerMinute()).isEqualTo(180);
+
+        Thread.sleep(400);
+        limiter.afterAttempt(null, 1, 1_000L, quotaExceeded);
+        assertThat(limiter.getPermitsPerMinute()).isEqualTo(100);
+        Thread.sleep(400);
+        limiter.afterAttempt(null, 1, 1_000L, quotaExceeded);
+        assertThat(limiter.getPermitsPerMinute()).isEqualTo(100);
+
+        Thread.sleep(400);
+        limiter.afterAttempt(null, 1, 1_000L, null);
+        assertThat(limiter.getPermitsPerMinute()).isEqualTo(160);
+    }
+
+    @Test
+    public void testInterruptedWaitHandsItsPermitBack() throws InterruptedException {
+        // 60 per minute: one permit every second, after a burst of 1.
+        FcmRateLimiter limiter = new FcmRateLimiter(60, 1, FcmRateLimiter.Mode.BLOCK, Duration.ofSeconds(5),
+                false, 60, 0.5, Duration.ofSeconds(1), 0.1);
+        limiter.acquire();
+
+        Thread waiter = new Thread(() -> assertThatThrownBy(limiter::acquire)
+                .isInstanceOf(FcmRateLimitExceededException.class));
+        waiter.start();
+        Thread.sleep(100);
+        waiter.interrupt();
+        waiter.join(5_000);
+
+        // The next send waits for the slot the interrupted one gave up, not for the one after it.
+        long start = System.nanoTime();
+        limiter.acquire();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isBetween(500L, 1_500L);
+    }
+
+    @Test
+    public void testCriticalSendsDoNotWaitBehindReservedBulkPermits() {
+        // 600 per minute, half of it reserved for critical sends: each bucket gives a permit every 200 ms.
+        FcmRateLimiter limiter = new FcmRateLimiter(600, 1, FcmRateLimiter.Mode.BLOCK, Duration.ofSeconds(5),
+                false, 600, 0.5, Duration.ofSeconds(1), 0.1, 0.5);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> bulk = IntStream.range(0, 10)
+                .mapToObj(i -> limiter.acquireAsync(FcmSendLane.BULK))
+                .toList();
+        CompletableFuture<Void> firstCritical = limiter.acquireAsync(FcmSendLane.CRITICAL);
+        CompletableFuture<Void> secondCritical = limiter.acquireAsync(FcmSendLane.CRITICAL);
+
+        assertThat(firstCritical).isDone();
+        secondCritical.join();
+        // The second critical send waited for its own bucket only, not for the ten bulk permits ahead of it.
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+        assertThat(bulk.get(9)).isNotDone();
+        bulk.get(9).join();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(1_790);
+    }
+
+    @Test
+    public void testInvalidCriticalShareIsRejected() {
+        assertThatThrownBy(() -> new FcmRateLimiter(600, 1, FcmRateLimiter.Mode.BLOCK, Duration.ofSeconds(5),
+                false, 600, 0.5, Duration.ofSeconds(1), 0.1, 1.0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
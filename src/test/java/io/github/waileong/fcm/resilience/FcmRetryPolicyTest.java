@@ -0,0 +1,99 @@
+package io.github.waileong.fcm.resilience;
+
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link FcmRetryPolicy}.
+ *
+ * @author Wai Leong
+ */
+public class FcmRetryPolicyTest {
+    private static final FcmRestClientException UNAVAILABLE = new FcmRestClientException(503, "Unavailable");
+
+    @Test
+    public void testBackoffGrowsWithinItsBounds() {
+        FcmRetryPolicy policy = FcmRetryPolicy.Builder.aFcmRetryPolicy()
+                .maxAttempts(10)
+                .initialBackoff(Duration.ofMillis(100))
+                .maxBackoff(Duration.ofMillis(1_000))
+                .multiplier(2.0)
+                .jitter(0.0)
+                .deadline(null)
+                .build();
+
+        assertThat(policy.nextDelayNanos(1, UNAVAILABLE, 0L)).isEqualTo(Duration.ofMillis(100).toNanos());
+        assertThat(policy.nextDelayNanos(2, UNAVAILABLE, 0L)).isEqualTo(Duration.ofMillis(200).toNanos());
+        assertThat(policy.nextDelayNanos(4, UNAVAILABLE, 0L)).isEqualTo(Duration.ofMillis(800).toNanos());
+        assertThat(policy.nextDelayNanos(9, UNAVAILABLE, 0L)).isEqualTo(Duration.ofMillis(1_000).toNanos());
+        assertThat(policy.nextDelayNanos(10, UNAVAILABLE, 0L)).isEqualTo(-1L);
+    }
+
+    @Test
+    public void testJitterOnlyShortensTheBackoff() {
+        FcmRetryPolicy policy = FcmRetryPolicy.Builder.aFcmRetryPolicy()
+                .initialBackoff(Duration.ofMillis(100))
+                .jitter(0.5)
+                .build();
+
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(policy.nextDelayNanos(1, UNAVAILABLE, 0L))
+                    .isBetween(Duration.ofMillis(50).toNanos(), Duration.ofMillis(100).toNanos());
+        }
+    }
+
+    @Test
+    public void testRetryAfterLongerThanTheBackoffTakesPrecedence() {
+        FcmRetryPolicy policy = FcmRetryPolicy.Builder.aFcmRetryPolicy()
+                .initialBackoff(Duration.ofMillis(100))
+                .jitter(0.0)
+                .build();
+        FcmRestClientException quotaExceeded = new FcmRestClientException(429, "Quota exceeded",
+                Duration.ofSeconds(5));
+        FcmRestClientException shortRetryAfter = new FcmRestClientException(503, "Unavailable",
+                Duration.ofMillis(10));
+
+        assertThat(policy.nextDelayNanos(1, new CompletionException(quotaExceeded), 0L))
+                .isEqualTo(Duration.ofSeconds(5).toNanos());
+        assertThat(policy.nextDelayNanos(1, shortRetryAfter, 0L)).isEqualTo(Duration.ofMillis(100).toNanos());
+    }
+
+    @Test
+    public void testNoRetryStartsAfterTheDeadline() {
+        FcmRetryPolicy policy = FcmRetryPolicy.Builder.aFcmRetryPolicy()
+                .maxAttempts(10)
+                .initialBackoff(Duration.ofSeconds(1))
+                .jitter(0.0)
+                .deadline(Duration.ofSeconds(10))
+                .build();
+
+        assertThat(policy.nextDelayNanos(1, UNAVAILABLE, Duration.ofSeconds(9).toNanos()))
+                .isEqualTo(Duration.ofSeconds(1).toNanos());
+        assertThat(policy.nextDelayNanos(1, UNAVAILABLE, Duration.ofMillis(9_001).toNanos())).isEqualTo(-1L);
+        // A Retry-After beyond the deadline is not waited for either.
+        assertThat(policy.nextDelayNanos(1, new FcmRestClientException(429, "Quota exceeded", Duration.ofSeconds(30)),
+                0L)).isEqualTo(-1L);
+    }
+
+    @Test
+    public void testOnlyTransientFailuresAreRetried() {
+        FcmRetryPolicy policy = FcmRetryPolicy.Builder.aFcmRetryPolicy().build();
+
+        assertThat(policy.isRetryable(UNAVAILABLE)).isTrue();
+        assertThat(policy.isRetryable(new FcmRestClientException(500, "Internal"))).isTrue();
+        assertThat(policy.isRetryable(new CompletionException(new HttpTimeoutException("timed out")))).isTrue();
+        assertThat(policy.isRetryable(new FcmRestClientException(400, "Invalid argument"))).isFalse();
+        assertThat(policy.isRetryable(new FcmRestClientException(404, "Unregistered"))).isFalse();
+        assertThat(policy.isRetryable(new IllegalStateException())).isFalse();
+        assertThat(FcmRetryPolicy.Builder.aFcmRetryPolicy().retryOnIoException(false).build()
+                .isRetryable(new IOException("reset"))).isFalse();
+        assertThat(FcmRetryPolicy.noRetry().nextDelayNanos(1, UNAVAILABLE, 0L)).isEqualTo(-1L);
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.waileong.fcm.service;
+
+import io.github.waileong.fcm.config.FcmAutoConfiguration;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmNotification;
+import io.github.waileong.fcm.service.domain.FcmSendLane;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import io.github.waileong.fcm.testing.FcmStandInServer;
+import io.github.waileong.fcm.testing.FcmTestCredentials;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.util.function.Tuple2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link FcmService} end to end against an {@link FcmStandInServer}, without network access or real
+ * Firebase credentials.
+ *
+ * @author Wai Leong
+ */
+@SpringBootTest(classes = FcmServiceStandInTest.ContextConfiguration.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class FcmServiceStandInTest {
+    private static final String DEAD_TOKEN = "dead-token";
+    private static final FcmTestCredentials CREDENTIALS = FcmTestCredentials.generate("stand-in-project");
+    private static final FcmStandInServer SERVER;
+
+    static {
+        try {
+            SERVER = FcmStandInServer.Builder.aFcmStandInServer()
+                    .credentials(CREDENTIALS)
+                    .unregisteredTokens(Set.of(DEAD_TOKEN))
+                    .start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Autowired
+    private FcmService fcmService;
+
+    @Autowired
+    private FcmReactiveService fcmReactiveService;
+
+    @Autowired
+    private LaneRecorder laneRecorder;
+
+    @DynamicPropertySource
+    static void fcmProperties(DynamicPropertyRegistry registry) {
+        CREDENTIALS.toProperties(SERVER).forEach((name, value) -> registry.add(name, () -> value));
+        registry.add("fcm.retry.enabled", () -> "true");
+        registry.add("fcm.retry.initial-backoff", () -> "10ms");
+        registry.add("fcm.connection.client-count", () -> "2");
+        registry.add("fcm.connection.max-concurrent-streams", () -> "4");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        SERVER.close();
+    }
+
+    @BeforeEach
+    void resetServer() {
+        SERVER.reset();
+        SERVER.clearErrorRates();
+        laneRecorder.lanes.clear();
+    }
+
+    @Test
+    public void testSendIsAuthenticatedAndDelivered() {
+        FcmMessage response = fcmService.send(request("token-1"));
+
+        assertThat(response.getName()).startsWith("projects/stand-in-project/messages/");
+        assertThat(SERVER.getReceivedMessages())
+                .extracting(FcmStandInServer.ReceivedMessage::token)
+                .containsExactly("token-1");
+    }
+
+    @Test
+    public void testUnregisteredTokenIsReported() {
+        assertThatThrownBy(() -> fcmService.send(request(DEAD_TOKEN)))
+                .isInstanceOfSatisfying(FcmRestClientException.class, ex -> {
+                    assertThat(ex.getErrorCode()).isEqualTo(FcmErrorCode.UNREGISTERED);
+                    assertThat(ex.isInvalidRegistrationToken()).isTrue();
+                });
+    }
+
+    @Test
+    public void testUnavailableIsRetried() {
+        SERVER.setErrorRate(FcmErrorCode.UNAVAILABLE, 1.0);
+        SERVER.setRetryAfter(Duration.ZERO);
+        assertThatThrownBy(() -> fcmService.send(request("token-1")))
+                .isInstanceOf(FcmRestClientException.class);
+        assertThat(SERVER.getErrorCount(FcmErrorCode.UNAVAILABLE)).isEqualTo(3);
+    }
+
+    @Test
+    public void testMulticastReportsTheResultOfEachToken() {
+        List<FcmSendResult> results = fcmService.sendMulticast(FcmMessage.Builder.aFcmMessage()
+                .notification(FcmNotification.Builder.aFcmNotification().title("Title").body("Body").build())
+                .build(), List.of("token-1", DEAD_TOKEN, "token-2"));
+        assertThat(results).extracting(FcmSendResult::errorCode)
+                .containsExactly(null, FcmErrorCode.UNREGISTERED, null);
+    }
+
+    @Test
+    public void testReactiveSendEachIndexesResultsAndBoundsDemand() {
+        AtomicLong maxRequested = new AtomicLong();
+        Flux<FcmSendRequest> requests = Flux.range(0, 20)
+                .map(i -> request(i == 7 ? DEAD_TOKEN : "token-" + i))
+                .doOnRequest(n -> maxRequested.accumulateAndGet(n, Math::max));
+
+        Map<Long, FcmSendResult> results = fcmReactiveService.sendEach(requests, 4)
+                .collectMap(Tuple2::getT1, Tuple2::getT2)
+                .block();
+
+        assertThat(results).hasSize(20);
+        assertThat(results.get(7L).errorCode()).isEqualTo(FcmErrorCode.UNREGISTERED);
+        assertThat(results.values()).filteredOn(FcmSendResult::isSuccess).hasSize(19);
+        assertThat(maxRequested.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void testTemplateSendsAreScheduledInTheLaneOfTheTemplate() {
+        FcmMessage message = request("ignored").getMessage();
+        FcmMessageTemplate campaign = fcmService.prepareTemplate(message, FcmMessageTemplate.TargetType.TOKEN,
+                FcmSendLane.BULK);
+
+        fcmService.sendMulticast(campaign, List.of("bulk-1", "bulk-2"), 2);
+        fcmService.sendStream(campaign, List.of("bulk-3").iterator(), 1, (index, token, result) -> {
+        });
+        fcmService.sendMulticast(message, List.of("standard-1"));
+
+        assertThat(laneRecorder.lanes).containsOnly(
+                Map.entry("bulk-1", FcmSendLane.BULK),
+                Map.entry("bulk-2", FcmSendLane.BULK),
+                Map.entry("bulk-3", FcmSendLane.BULK),
+                Map.entry("standard-1", FcmSendLane.STANDARD));
+    }
+
+    @Test
+    public void testSendStreamPullsTokensOnlyAsSlotsFree() {
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        AtomicLong failedIndex = new AtomicLong(-1);
+        Stream<String> tokens = IntStream.range(0, 500)
+                .mapToObj(i -> i == 42 ? DEAD_TOKEN : "token-" + i)
+                .peek(token -> maxAhead.accumulateAndGet(pulled.incrementAndGet() - completed.get(), Math::max));
+
+        long sent = fcmService.sendStream(request("ignored").getMessage(), tokens, 8, (index, token, result) -> {
+            if (!result.isSuccess()) {
+                failedIndex.set(index);
+            }
+            completed.incrementAndGet();
+        });
+
+        assertThat(sent).isEqualTo(500);
+        assertThat(completed).hasValue(500);
+        assertThat(failedIndex).hasValue(42);
+        assertThat(maxAhead.get()).isLessThanOrEqualTo(8);
+    }
+
+    private static FcmSendRequest request(String token) {
+        return FcmSendRequest.Builder.aFcmSendRequest()
+                .message(FcmMessage.Builder.aFcmMessage()
+                        .token(token)
+                        .notification(FcmNotification.Builder.aFcmNotification()
+                                .title("Title")
+                                .body("Body")
+                                .build())
+                        .build())
+                .build();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @Import({FcmAutoConfiguration.class, TaskExecutionAutoConfiguration.class})
+    public static class ContextConfiguration {
+
+        @Bean
+        public LaneRecorder laneRecorder() {
+            return new LaneRecorder();
+        }
+    }
+
+    /**
+     * Records the lane each registration token was last sent in.
+     */
+    public static class LaneRecorder implements FcmSendInterceptor {
+        private final Map<String, FcmSendLane> lanes = new ConcurrentHashMap<>();
+
+        @Override
+        public void beforeAttempt(FcmSendContext context, int attempt) {
+            if (context.token() != null) {
+                lanes.put(context.token(), context.lane());
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.waileong.fcm.service;
+
+import io.github.waileong.fcm.config.FcmAutoConfiguration;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmNotification;
+import io.github.waileong.fcm.service.domain.FcmSendRequest;
+import io.github.waileong.fcm.service.domain.FcmSendResult;
+import io.github.waileong.fcm.testing.FcmStandInServer;
+import io.github.waileong.fcm.testing.FcmTestCredentials;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies with Java Flight Recorder that sending on the FCM virtual thread executor never pins a carrier thread,
+ * across token minting, serialization, retries and error handling.
+ *
+ * @author Wai Leong
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@SpringBootTest(classes = FcmVirtualThreadPinningTest.ContextConfiguration.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class FcmVirtualThreadPinningTest {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String DEAD_TOKEN = "dead-token";
+    private static final FcmTestCredentials CREDENTIALS = FcmTestCredentials.generate("pinning-project");
+    private static final FcmStandInServer SERVER;
+
+    static {
+        try {
+            SERVER = FcmStandInServer.Builder.aFcmStandInServer()
+                    .credentials(CREDENTIALS)
+                    .unregisteredTokens(Set.of(DEAD_TOKEN))
+                    .start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Autowired
+    private FcmService fcmService;
+
+    @Autowired
+    @Qualifier("fcmVirtualThreadExecutor")
+    private ExecutorService fcmVirtualThreadExecutor;
+
+    @DynamicPropertySource
+    static void fcmProperties(DynamicPropertyRegistry registry) {
+        CREDENTIALS.toProperties(SERVER).forEach((name, value) -> registry.add(name, () -> value));
+        registry.add("fcm.connection.virtual-threads", () -> "true");
+        registry.add("fcm.retry.enabled", () -> "true");
+        registry.add("fcm.retry.initial-backoff", () -> "1ms");
+        registry.add("fcm.dead-token.enabled", () -> "true");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        SERVER.close();
+    }
+
+    @Test
+    public void testSendDoesNotPinCarrierThreads(@TempDir Path tempDir) throws Exception {
+        SERVER.setErrorRate(FcmErrorCode.UNAVAILABLE, 0.2);
+        SERVER.setRetryAfter(Duration.ZERO);
+        Path dump = tempDir.resolve("pinning.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            List<Future<?>> sends = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                FcmSendRequest request = request(i % 50 == 0 ? DEAD_TOKEN : "token-" + i);
+                sends.add(fcmVirtualThreadExecutor.submit(() -> FcmSendResult.success(fcmService.send(request))));
+            }
+            sends.add(fcmVirtualThreadExecutor.submit(() -> fcmService.sendEach(List.of(request("token-a"),
+                    request(DEAD_TOKEN), request("token-b")))));
+            for (Future<?> send : sends) {
+                try {
+                    send.get();
+                } catch (Exception ignored) {
+                    // Failed sends are expected; only pinning matters here.
+                }
+            }
+
+            recording.stop();
+            recording.dump(dump);
+        } finally {
+            SERVER.clearErrorRates();
+        }
+
+        List<RecordedEvent> pinned = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> PINNED_EVENT.equals(event.getEventType().getName()))
+                .toList();
+        assertThat(pinned).as("virtual thread pinned events").isEmpty();
+    }
+
+    private static FcmSendRequest request(String token) {
+        return FcmSendRequest.Builder.aFcmSendRequest()
+                .message(FcmMessage.Builder.aFcmMessage()
+                        .token(token)
+                        .notification(FcmNotification.Builder.aFcmNotification()
+                                .title("Title")
+                                .body("Body")
+                                .build())
+                        .build())
+                .build();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @Import({FcmAutoConfiguration.class, TaskExecutionAutoConfiguration.class})
+    public static class ContextConfiguration {
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.waileong.fcm.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link FcmHttpClientPool}.
+ *
+ * @author Wai Leong
+ */
+public class FcmHttpClientPoolTest {
+
+    @Test
+    public void testLeastLoadedClientIsChosen() {
+        FcmHttpClientPool pool = pool(3, FcmHttpClientPool.Selection.LEAST_LOADED, 0);
+
+        List<FcmHttpClientPool.Client> first = List.of(pool.acquire(), pool.acquire(), pool.acquire());
+        assertThat(first).extracting(FcmHttpClientPool.Client::getIndex).containsExactlyInAnyOrder(0, 1, 2);
+
+        // Every client carries one request; once one of them completes, it is the least loaded.
+        FcmHttpClientPool.Client idle = first.get(1);
+        pool.release(idle);
+        assertThat(pool.acquire().getIndex()).isEqualTo(idle.getIndex());
+        assertThat(pool.acquire().getIndex()).isNotEqualTo(pool.acquire().getIndex());
+        assertThat(pool.getInFlight()).isEqualTo(5);
+    }
+
+    @Test
+    public void testStreamCapMakesRequestsWaitForRoom() {
+        FcmHttpClientPool pool = pool(2, FcmHttpClientPool.Selection.ROUND_ROBIN, 2);
+        List<FcmHttpClientPool.Client> reserved = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            reserved.add(pool.acquire());
+        }
+        assertThat(reserved).extracting(FcmHttpClientPool.Client::getIndex).containsExactlyInAnyOrder(0, 0, 1, 1);
+
+        CompletableFuture<FcmHttpClientPool.Client> waiting = pool.acquireAsync();
+        assertThat(waiting).isNotDone();
+        pool.release(reserved.get(3));
+        assertThat(waiting.join().getIndex()).isEqualTo(reserved.get(3).getIndex());
+        assertThat(pool.getInFlight()).isEqualTo(4);
+    }
+
+    @Test
+    public void testStreamCapHoldsUnderContention() throws InterruptedException {
+        FcmHttpClientPool pool = pool(2, FcmHttpClientPool.Selection.LEAST_LOADED, 3);
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CompletableFuture.allOf(IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                        for (int j = 0; j < 1_000; j++) {
+                            FcmHttpClientPool.Client client = pool.acquire();
+                            maxInFlight.accumulateAndGet(pool.getInFlight(), Math::max);
+                            pool.release(client);
+                        }
+                    }, executor))
+                    .toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(6);
+        assertThat(pool.getInFlight()).isZero();
+    }
+
+    private static FcmHttpClientPool pool(int size, FcmHttpClientPool.Selection selection, int maxConcurrentStreams) {
+        List<HttpClient> httpClients = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            httpClients.add(HttpClient.newHttpClient());
+        }
+        return new FcmHttpClientPool(httpClients, selection, maxConcurrentStreams);
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.waileong.fcm.token;
+
+import io.github.waileong.fcm.service.domain.FcmApns;
+import io.github.waileong.fcm.service.domain.FcmApnsAps;
+import io.github.waileong.fcm.service.domain.FcmApnsPayload;
+import io.github.waileong.fcm.service.domain.FcmMessage;
+import io.github.waileong.fcm.service.domain.FcmNotification;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link FcmBackgroundThrottle}.
+ *
+ * @author Wai Leong
+ */
+public class FcmBackgroundThrottleTest {
+
+    @Test
+    public void testSuppressedDataIsMergedIntoTheNextMessage() throws InterruptedException {
+        FcmBackgroundThrottle throttle = new FcmBackgroundThrottle(Duration.ofMillis(200),
+                FcmBackgroundThrottle.Mode.MERGE, Duration.ofMinutes(1), 100);
+
+        assertThat(throttle.admit(data("token-1", Map.of("inbox", "1")))).containsEntry("inbox", "1");
+        assertThat(throttle.admit(data("token-1", Map.of("inbox", "2", "sync", "contacts")))).isNull();
+        assertThat(throttle.admit(data("token-1", Map.of("inbox", "3")))).isNull();
+        assertThat(throttle.admit(data("token-2", Map.of("inbox", "1")))).isNotNull();
+        assertThat(throttle.getSuppressedCount()).isEqualTo(2);
+
+        Thread.sleep(250);
+        assertThat(throttle.admit(data("token-1", Map.of("inbox", "4"))))
+                .isEqualTo(Map.of("inbox", "4", "sync", "contacts"));
+        assertThat(throttle.admit(data("token-1", Map.of("inbox", "5")))).isNull();
+    }
+
+    @Test
+    public void testDroppedDataIsNotMergedAndOldestTokensAreEvicted() throws InterruptedException {
+        FcmBackgroundThrottle throttle = new FcmBackgroundThrottle(Duration.ofMillis(100),
+                FcmBackgroundThrottle.Mode.DROP, Duration.ofMillis(100), 2);
+
+        throttle.admit(data("token-1", Map.of("a", "1")));
+        assertThat(throttle.admit(data("token-1", Map.of("b", "2")))).isNull();
+        throttle.admit(data("token-2", Map.of("a", "1")));
+        throttle.admit(data("token-3", Map.of("a", "1")));
+        assertThat(throttle.size()).isEqualTo(2);
+
+        Thread.sleep(150);
+        assertThat(throttle.admit(data("token-1", Map.of("c", "3")))).isEqualTo(Map.of("c", "3"));
+        assertThat(throttle.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testOnlySuccessfulSendsStartTheInterval() {
+        FcmBackgroundThrottle throttle = new FcmBackgroundThrottle(Duration.ofMinutes(1),
+                FcmBackgroundThrottle.Mode.MERGE, Duration.ofMinutes(1), 100);
+
+        Map<String, String> first = throttle.admit(data("token-1", Map.of("inbox", "1")));
+        // The first send is still in flight.
+        assertThat(throttle.admit(data("token-1", Map.of("sync", "contacts")))).isNull();
+        throttle.failed("token-1", first);
+
+        assertThat(throttle.admit(data("token-1", Map.of("inbox", "2"))))
+                .isEqualTo(Map.of("inbox", "2", "sync", "contacts"));
+        throttle.sent("token-1");
+        assertThat(throttle.admit(data("token-1", Map.of("inbox", "3")))).isNull();
+    }
+
+    @Test
+    public void testOnlyMessagesWithoutVisibleNotificationAreBackground() {
+        FcmMessage silent = FcmMessage.Builder.aFcmMessage()
+                .token("token-1")
+                .apns(FcmApns.Builder.aFcmApns()
+                        .payload(FcmApnsPayload.Builder.aFcmApnsPayload()
+                                .aps(FcmApnsAps.Builder.aFcmApnsAps().contentAvailable(1).build())
+                                .build())
+                        .build())
+                .build();
+        FcmMessage visible = FcmMessage.Builder.aFcmMessage()
+                .token("token-1")
+                .data(Map.of("a", "1"))
+                .notification(FcmNotification.Builder.aFcmNotification().title("Hello").build())
+                .build();
+
+        assertThat(FcmBackgroundThrottle.isBackground(silent)).isTrue();
+        assertThat(FcmBackgroundThrottle.isBackground(data("token-1", Map.of("a", "1")))).isTrue();
+        assertThat(FcmBackgroundThrottle.isBackground(visible)).isFalse();
+    }
+
+    private static FcmMessage data(String token, Map<String, String> data) {
+        return FcmMessage.Builder.aFcmMessage().token(token).data(data).build();
+    }
+}
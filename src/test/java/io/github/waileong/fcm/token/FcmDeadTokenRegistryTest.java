@@ -0,0 +1,80 @@
+package io.github.waileong.fcm.token;
+
+import io.github.waileong.fcm.exception.FcmDeadTokenException;
+import io.github.waileong.fcm.exception.FcmRestClientException;
+import io.github.waileong.fcm.service.FcmSendContext;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link FcmDeadTokenRegistry}.
+ *
+ * @author Wai Leong
+ */
+public class FcmDeadTokenRegistryTest {
+
+    @Test
+    public void testSendsToUnregisteredTokensAreRejectedUntilRemoved() {
+        FcmDeadTokenRegistry registry = new FcmDeadTokenRegistry(100, 10, Duration.ofMinutes(1), List.of());
+
+        registry.beforeAttempt(context("token-1"), 1);
+        registry.afterAttempt(context("token-1"), 1, 1_000L, new FcmRestClientException(404, "Unregistered"));
+        // Neither an overload nor an invalid argument unrelated to the token says anything about the token.
+        registry.afterAttempt(context("token-2"), 1, 1_000L, new FcmRestClientException(503, "Unavailable"));
+        registry.afterAttempt(context("token-3"), 1, 1_000L, new FcmRestClientException(400, "Invalid argument"));
+
+        assertThatThrownBy(() -> registry.beforeAttempt(context("token-1"), 1))
+                .isInstanceOf(FcmDeadTokenException.class)
+                .extracting(ex -> ((FcmDeadTokenException) ex).getErrorCode())
+                .isEqualTo(FcmErrorCode.UNREGISTERED);
+        registry.beforeAttempt(context("token-2"), 1);
+        registry.beforeAttempt(context("token-3"), 1);
+        registry.beforeAttempt(context(null), 1);
+        assertThat(registry.size()).isEqualTo(1);
+
+        assertThat(registry.remove("token-1")).isTrue();
+        registry.beforeAttempt(context("token-1"), 1);
+    }
+
+    @Test
+    public void testOldestTokensExpireBeyondTheCapacity() {
+        FcmDeadTokenRegistry registry = new FcmDeadTokenRegistry(3, 10, Duration.ofMinutes(1), List.of());
+
+        // Enough evictions to rebuild the filter twice.
+        IntStream.range(0, 10).forEach(i -> registry.markDead("token-" + i, FcmErrorCode.UNREGISTERED));
+
+        assertThat(registry.size()).isEqualTo(3);
+        assertThat(IntStream.range(0, 10).filter(i -> registry.isDead("token-" + i))).containsExactly(7, 8, 9);
+        assertThat(registry.markDead("token-9", FcmErrorCode.UNREGISTERED)).isFalse();
+        assertThat(registry.markDead("token-0", FcmErrorCode.UNREGISTERED)).isTrue();
+        assertThat(registry.isDead("token-7")).isFalse();
+    }
+
+    @Test
+    public void testListenersAreNotifiedInBatches() {
+        List<List<FcmDeadToken>> batches = new CopyOnWriteArrayList<>();
+        FcmDeadTokenRegistry registry = new FcmDeadTokenRegistry(100, 2, Duration.ofMinutes(1),
+                List.of(batches::add));
+
+        registry.markDead("token-1", FcmErrorCode.UNREGISTERED);
+        registry.markDead("token-2", FcmErrorCode.INVALID_ARGUMENT);
+        registry.markDead("token-3", FcmErrorCode.UNREGISTERED);
+        registry.close();
+
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(0)).extracting(FcmDeadToken::token).containsExactly("token-1", "token-2");
+        assertThat(batches.get(1)).extracting(FcmDeadToken::token).containsExactly("token-3");
+    }
+
+    private static FcmSendContext context(String token) {
+        return new FcmSendContext(null, token, null, 0L);
+    }
+}
@@ -0,0 +1,11 @@
+CREATE TABLE fcm_outbox (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    request         TEXT NOT NULL,
+    status          VARCHAR(16) NOT NULL,
+    attempts        INT NOT NULL,
+    next_attempt_at TIMESTAMP NOT NULL,
+    last_error      VARCHAR(64),
+    lane            VARCHAR(16),
+    idempotency_key VARCHAR(255)
+);
+CREATE INDEX fcm_outbox_due ON fcm_outbox (status, next_attempt_at);
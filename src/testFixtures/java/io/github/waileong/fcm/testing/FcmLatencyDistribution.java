@@ -0,0 +1,71 @@
+package io.github.waileong.fcm.testing;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The distribution of the artificial latency the {@link FcmStandInServer} adds before answering a request.
+ *
+ * @author Wai Leong
+ */
+@FunctionalInterface
+public interface FcmLatencyDistribution {
+
+    /**
+     * Draws the latency of the next request.
+     *
+     * @return The latency in nanoseconds, never negative.
+     */
+    long nextNanos();
+
+    /**
+     * No added latency.
+     *
+     * @return The distribution.
+     */
+    static FcmLatencyDistribution none() {
+        return () -> 0L;
+    }
+
+    /**
+     * The same latency for every request.
+     *
+     * @param latency The latency.
+     * @return The distribution.
+     */
+    static FcmLatencyDistribution fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return () -> nanos;
+    }
+
+    /**
+     * A latency drawn uniformly between two bounds.
+     *
+     * @param min The lowest latency.
+     * @param max The highest latency.
+     * @return The distribution.
+     */
+    static FcmLatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("max must not be lower than min");
+        }
+        return () -> minNanos == maxNanos ? minNanos : ThreadLocalRandom.current().nextLong(minNanos, maxNanos + 1);
+    }
+
+    /**
+     * A log-normal latency, the usual shape of network service latencies: most requests are close to the median,
+     * with a long tail reaching the given 99th percentile.
+     *
+     * @param median The median latency.
+     * @param p99    The 99th percentile latency, at least the median.
+     * @return The distribution.
+     */
+    static FcmLatencyDistribution logNormal(Duration median, Duration p99) {
+        double mu = Math.log(median.toNanos());
+        // 2.326 is the 99th percentile of the standard normal distribution.
+        double sigma = Math.max(0.0, (Math.log(p99.toNanos()) - mu) / 2.326);
+        return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+}
@@ -0,0 +1,636 @@
+package io.github.waileong.fcm.testing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.waileong.fcm.service.domain.FcmErrorCode;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process stand-in for the FCM HTTP v1 API, implementing {@code POST /v1/projects/{id}/messages:send}.
+ * <p>
+ * The server verifies the bearer JWT of every request against the public keys of the registered
+ * {@link FcmTestCredentials}, answers with the same JSON bodies and status codes as FCM, and can inject the
+ * behaviour a production client has to cope with: latency drawn from a {@link FcmLatencyDistribution}, a random mix
+ * of error codes, permanently unregistered tokens, per-project quotas answered with {@code QUOTA_EXCEEDED} and a
+ * {@code Retry-After} header, and connections closed by the server after a number of requests.
+ * </p>
+ * <p>
+ * The server is built on the JDK {@link HttpServer}, which speaks HTTP/1.1 only. The HTTP/2 {@code GOAWAY} frame, by
+ * which FCM asks clients to move to a new connection, is therefore approximated with a {@code Connection: close}
+ * response header, which forces the client to open a new connection just the same.
+ * </p>
+ * <p>
+ * Failure injection can be changed while the server is running, which lets a test script an outage and a recovery.
+ * </p>
+ * <p>
+ * The JDK {@link HttpServer} does not set {@code TCP_NODELAY} unless the {@code sun.net.httpserver.nodelay} system
+ * property is {@code true}, and delayed ACKs then add tens of milliseconds to every loopback round trip. The server
+ * leaves this JVM-wide setting alone: tests that measure latency or throughput should pass
+ * {@code -Dsun.net.httpserver.nodelay=true} to the test JVM, where it is read when the first server is created.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public final class FcmStandInServer implements AutoCloseable {
+    private static final Pattern SEND_PATH = Pattern.compile("^/v1/projects/([^/]+)/messages:send$");
+    private static final String AUDIENCE = "https://fcm.googleapis.com/";
+    private static final String FCM_ERROR_TYPE = "type.googleapis.com/google.firebase.fcm.v1.FcmError";
+    private static final String BAD_REQUEST_TYPE = "type.googleapis.com/google.rpc.BadRequest";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, FcmTestCredentials> credentials;
+    private final Map<String, Long> verifiedTokens = new ConcurrentHashMap<>();
+    private final Map<InetSocketAddress, AtomicInteger> connectionRequests = new ConcurrentHashMap<>();
+    private final Map<String, ProjectQuota> quotas = new ConcurrentHashMap<>();
+    private final Set<String> unregisteredTokens = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<ReceivedMessage> receivedMessages = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong successCount = new AtomicLong();
+    private final AtomicLongArray errorCounts = new AtomicLongArray(FcmErrorCode.values().length);
+    private final AtomicLong messageIds = new AtomicLong(1_500_000_000_000L);
+
+    private volatile FcmLatencyDistribution latency;
+    private volatile double[] errorRates;
+    private volatile Duration retryAfter;
+    private volatile int requestsPerConnection;
+    private volatile boolean recordMessages;
+
+    private FcmStandInServer(Builder builder) throws IOException {
+        this.credentials = Map.copyOf(builder.credentials);
+        this.latency = builder.latency;
+        this.errorRates = builder.errorRates.clone();
+        this.retryAfter = builder.retryAfter;
+        this.requestsPerConnection = builder.requestsPerConnection;
+        this.recordMessages = builder.recordMessages;
+        this.unregisteredTokens.addAll(builder.unregisteredTokens);
+        builder.quotas.forEach(this::setProjectQuota);
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 1024);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fcm-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Gets the base URL of the server, to be used as {@code fcm.connection.base-url}.
+     *
+     * @return The base URL, without a trailing slash.
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the total number of requests received, including rejected ones.
+     *
+     * @return The number of requests.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Gets the number of messages accepted.
+     *
+     * @return The number of successful sends.
+     */
+    public long getSuccessCount() {
+        return successCount.get();
+    }
+
+    /**
+     * Gets the number of requests answered with the given error.
+     *
+     * @param errorCode The FCM error code.
+     * @return The number of requests answered with it.
+     */
+    public long getErrorCount(FcmErrorCode errorCode) {
+        return errorCounts.get(errorCode.ordinal());
+    }
+
+    /**
+     * Gets the messages accepted so far, in the order they were accepted, unless recording was disabled.
+     *
+     * @return A snapshot of the accepted messages.
+     */
+    public List<ReceivedMessage> getReceivedMessages() {
+        return new ArrayList<>(receivedMessages);
+    }
+
+    /**
+     * Forgets the recorded messages and resets all counters.
+     */
+    public void reset() {
+        receivedMessages.clear();
+        requestCount.set(0);
+        successCount.set(0);
+        for (int i = 0; i < errorCounts.length(); i++) {
+            errorCounts.set(i, 0);
+        }
+    }
+
+    /**
+     * Sets the latency added before every response.
+     *
+     * @param latency The latency distribution.
+     */
+    public void setLatency(FcmLatencyDistribution latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the probability with which a request is answered with the given error. Probabilities of all error codes
+     * add up; the remaining requests succeed.
+     *
+     * @param errorCode   The FCM error code.
+     * @param probability The probability, between 0 and 1.
+     */
+    public void setErrorRate(FcmErrorCode errorCode, double probability) {
+        double[] rates = errorRates.clone();
+        rates[errorCode.ordinal()] = probability;
+        this.errorRates = rates;
+    }
+
+    /**
+     * Stops injecting random errors.
+     */
+    public void clearErrorRates() {
+        this.errorRates = new double[FcmErrorCode.values().length];
+    }
+
+    /**
+     * Marks registration tokens as unregistered; every send to them fails with {@code UNREGISTERED}.
+     *
+     * @param tokens The tokens.
+     */
+    public void addUnregisteredTokens(Collection<String> tokens) {
+        unregisteredTokens.addAll(tokens);
+    }
+
+    /**
+     * Limits the number of messages a project may send per minute; excess requests fail with
+     * {@code QUOTA_EXCEEDED} until the next one-minute window starts.
+     *
+     * @param projectId        The FCM project ID.
+     * @param messagesPerMinute The quota, or a negative value for none.
+     */
+    public void setProjectQuota(String projectId, long messagesPerMinute) {
+        if (messagesPerMinute < 0) {
+            quotas.remove(projectId);
+        } else {
+            quotas.put(projectId, new ProjectQuota(messagesPerMinute));
+        }
+    }
+
+    /**
+     * Closes every connection after it has carried the given number of requests, like FCM sending {@code GOAWAY}.
+     *
+     * @param requestsPerConnection The number of requests per connection, or {@code 0} to keep connections open.
+     */
+    public void setRequestsPerConnection(int requestsPerConnection) {
+        this.requestsPerConnection = requestsPerConnection;
+    }
+
+    /**
+     * Sets the {@code Retry-After} delay sent with {@code UNAVAILABLE} and {@code QUOTA_EXCEEDED} errors.
+     *
+     * @param retryAfter The delay, or {@code null} to send no header.
+     */
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Sets whether accepted messages are recorded. Disable recording for long load tests.
+     *
+     * @param recordMessages {@code true} to record accepted messages.
+     */
+    public void setRecordMessages(boolean recordMessages) {
+        this.recordMessages = recordMessages;
+    }
+
+    /**
+     * Stops the server immediately.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            if (isConnectionExhausted(exchange)) {
+                exchange.getResponseHeaders().set("Connection", "close");
+            }
+            Matcher matcher = SEND_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!"POST".equals(exchange.getRequestMethod()) || !matcher.matches()) {
+                sendError(exchange, 404, "NOT_FOUND", "Method not found.", null, null);
+                return;
+            }
+            String projectId = matcher.group(1);
+            if (!isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"), projectId)) {
+                sendError(exchange, 401, "UNAUTHENTICATED",
+                        "Request had invalid authentication credentials.", FcmErrorCode.THIRD_PARTY_AUTH_ERROR, null);
+                return;
+            }
+
+            JsonNode request;
+            try {
+                request = objectMapper.readTree(body);
+            } catch (IOException ex) {
+                sendFcmError(exchange, FcmErrorCode.INVALID_ARGUMENT, "Invalid JSON payload received.", null);
+                return;
+            }
+            JsonNode message = request != null ? request.get("message") : null;
+            String token = text(message, "token");
+            String topic = text(message, "topic");
+            String condition = text(message, "condition");
+            int targets = (token != null ? 1 : 0) + (topic != null ? 1 : 0) + (condition != null ? 1 : 0);
+            if (message == null || targets != 1) {
+                sendFcmError(exchange, FcmErrorCode.INVALID_ARGUMENT,
+                        "Exactly one of token, topic or condition must be specified.", null);
+                return;
+            }
+            if (token != null && token.isBlank()) {
+                sendFcmError(exchange, FcmErrorCode.INVALID_ARGUMENT,
+                        "The registration token is not a valid FCM registration token", "message.token");
+                return;
+            }
+
+            long latencyNanos = latency.nextNanos();
+            if (latencyNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            }
+
+            ProjectQuota quota = quotas.get(projectId);
+            if (quota != null && !quota.tryAcquire()) {
+                sendFcmError(exchange, FcmErrorCode.QUOTA_EXCEEDED,
+                        "Quota exceeded for quota metric 'Send requests'.", null);
+                return;
+            }
+            if (token != null && unregisteredTokens.contains(token)) {
+                sendFcmError(exchange, FcmErrorCode.UNREGISTERED, "Requested entity was not found.", null);
+                return;
+            }
+            FcmErrorCode injected = drawError();
+            if (injected != null) {
+                sendFcmError(exchange, injected, "Injected " + injected + " error.", null);
+                return;
+            }
+
+            boolean validateOnly = request.path("validate_only").asBoolean(request.path("validateOnly").asBoolean());
+            String name = "projects/" + projectId + "/messages/"
+                    + (validateOnly ? "fake_message_id" : "0:" + messageIds.incrementAndGet());
+            if (recordMessages && !validateOnly) {
+                receivedMessages.add(new ReceivedMessage(projectId, token, topic, condition, message.toString()));
+            }
+            successCount.incrementAndGet();
+            ObjectNode response = objectMapper.createObjectNode().put("name", name);
+            sendJson(exchange, 200, objectMapper.writeValueAsBytes(response));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isConnectionExhausted(HttpExchange exchange) {
+        int limit = requestsPerConnection;
+        if (limit <= 0) {
+            return false;
+        }
+        InetSocketAddress remote = exchange.getRemoteAddress();
+        int count = connectionRequests.computeIfAbsent(remote, key -> new AtomicInteger()).incrementAndGet();
+        if (count >= limit) {
+            connectionRequests.remove(remote);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isAuthorized(String authorization, String projectId) {
+        if (authorization == null || !authorization.startsWith("Bearer ") || authorization.length() <= 7) {
+            return false;
+        }
+        String jwt = authorization.substring(7);
+        if (credentials.isEmpty()) {
+            return true;
+        }
+        Long expireAt = verifiedTokens.get(projectId + ' ' + jwt);
+        if (expireAt != null && expireAt > System.currentTimeMillis()) {
+            return true;
+        }
+        FcmTestCredentials credential = credentials.get(projectId);
+        if (credential == null) {
+            return false;
+        }
+        try {
+            Claims claims = Jwts.parserBuilder()
+                    .setSigningKey(credential.getPublicKey())
+                    .requireIssuer(credential.getClientEmail())
+                    .requireAudience(AUDIENCE)
+                    .build()
+                    .parseClaimsJws(jwt)
+                    .getBody();
+            if (claims.getExpiration() == null) {
+                return false;
+            }
+            // Verifying an RS256 signature is far slower than the rest of a request; verify every token once.
+            verifiedTokens.put(projectId + ' ' + jwt, claims.getExpiration().getTime());
+            return true;
+        } catch (JwtException | IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private FcmErrorCode drawError() {
+        double[] rates = errorRates;
+        double draw = ThreadLocalRandom.current().nextDouble();
+        double cumulative = 0.0;
+        for (FcmErrorCode errorCode : FcmErrorCode.values()) {
+            cumulative += rates[errorCode.ordinal()];
+            if (draw < cumulative) {
+                return errorCode;
+            }
+        }
+        return null;
+    }
+
+    private void sendFcmError(HttpExchange exchange, FcmErrorCode errorCode, String message, String field)
+            throws IOException {
+        int status = switch (errorCode) {
+            case INVALID_ARGUMENT -> 400;
+            case THIRD_PARTY_AUTH_ERROR -> 401;
+            case SENDER_ID_MISMATCH -> 403;
+            case UNREGISTERED -> 404;
+            case QUOTA_EXCEEDED -> 429;
+            case UNAVAILABLE -> 503;
+            default -> 500;
+        };
+        String grpcStatus = switch (errorCode) {
+            case INVALID_ARGUMENT -> "INVALID_ARGUMENT";
+            case THIRD_PARTY_AUTH_ERROR -> "UNAUTHENTICATED";
+            case SENDER_ID_MISMATCH -> "PERMISSION_DENIED";
+            case UNREGISTERED -> "NOT_FOUND";
+            case QUOTA_EXCEEDED -> "RESOURCE_EXHAUSTED";
+            case UNAVAILABLE -> "UNAVAILABLE";
+            case INTERNAL -> "INTERNAL";
+            default -> "UNKNOWN";
+        };
+        Duration delay = retryAfter;
+        if (delay != null && (errorCode == FcmErrorCode.QUOTA_EXCEEDED || errorCode == FcmErrorCode.UNAVAILABLE)) {
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(Math.max(0L, delay.toSeconds())));
+        }
+        sendError(exchange, status, grpcStatus, message, errorCode, field);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String grpcStatus, String message,
+                           FcmErrorCode errorCode, String field) throws IOException {
+        errorCounts.incrementAndGet((errorCode != null ? errorCode : FcmErrorCode.UNSPECIFIED_ERROR).ordinal());
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("code", status).put("message", message).put("status", grpcStatus);
+        if (errorCode != null) {
+            var details = error.putArray("details");
+            details.addObject().put("@type", FCM_ERROR_TYPE).put("errorCode", errorCode.name());
+            if (field != null) {
+                details.addObject().put("@type", BAD_REQUEST_TYPE)
+                        .putArray("fieldViolations").addObject().put("field", field).put("description", message);
+            }
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.set("error", error);
+        sendJson(exchange, status, objectMapper.writeValueAsBytes(response));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node != null ? node.get(field) : null;
+        return value != null && value.isTextual() ? value.asText() : null;
+    }
+
+    /**
+     * A message accepted by the server.
+     *
+     * @param projectId The project the message was sent for.
+     * @param token     The registration token, or {@code null}.
+     * @param topic     The topic, or {@code null}.
+     * @param condition The condition, or {@code null}.
+     * @param json      The JSON of the {@code message} object as received.
+     */
+    public record ReceivedMessage(String projectId, String token, String topic, String condition, String json) {
+    }
+
+    /**
+     * A quota of messages per fixed one-minute window.
+     */
+    private static final class ProjectQuota {
+        private final long messagesPerMinute;
+        private long windowStart = System.nanoTime();
+        private long used;
+
+        private ProjectQuota(long messagesPerMinute) {
+            this.messagesPerMinute = messagesPerMinute;
+        }
+
+        private synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            if (now - windowStart >= TimeUnit.MINUTES.toNanos(1)) {
+                windowStart = now;
+                used = 0;
+            }
+            if (used >= messagesPerMinute) {
+                return false;
+            }
+            used++;
+            return true;
+        }
+    }
+
+    /**
+     * Builder class for {@link FcmStandInServer}.
+     * Provides a fluent interface for configuring and starting an {@link FcmStandInServer} instance.
+     */
+    public static final class Builder {
+        private final Map<String, FcmTestCredentials> credentials = new HashMap<>();
+        private final double[] errorRates = new double[FcmErrorCode.values().length];
+        private final Set<String> unregisteredTokens = new HashSet<>();
+        private final Map<String, Long> quotas = new HashMap<>();
+        private FcmLatencyDistribution latency = FcmLatencyDistribution.none();
+        private Duration retryAfter;
+        private int requestsPerConnection;
+        private boolean recordMessages = true;
+        private int port;
+
+        private Builder() {
+        }
+
+        /**
+         * Creates a new Builder instance.
+         *
+         * @return A new instance of Builder.
+         */
+        public static Builder aFcmStandInServer() {
+            return new Builder();
+        }
+
+        /**
+         * Accepts access tokens signed with the given credentials for their project. When no credentials are
+         * registered, any bearer token is accepted.
+         *
+         * @param credentials The test credentials.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder credentials(FcmTestCredentials credentials) {
+            this.credentials.put(credentials.getProjectId(), credentials);
+            return this;
+        }
+
+        /**
+         * Specifies the latency added before every response.
+         *
+         * @param latency The latency distribution.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder latency(FcmLatencyDistribution latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Specifies the probability with which a request is answered with the given error.
+         *
+         * @param errorCode   The FCM error code.
+         * @param probability The probability, between 0 and 1.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder errorRate(FcmErrorCode errorCode, double probability) {
+            this.errorRates[errorCode.ordinal()] = probability;
+            return this;
+        }
+
+        /**
+         * Specifies registration tokens that always fail with {@code UNREGISTERED}.
+         *
+         * @param tokens The tokens.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder unregisteredTokens(Collection<String> tokens) {
+            this.unregisteredTokens.addAll(tokens);
+            return this;
+        }
+
+        /**
+         * Specifies the number of messages a project may send per minute.
+         *
+         * @param projectId         The FCM project ID.
+         * @param messagesPerMinute The quota.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder projectQuota(String projectId, long messagesPerMinute) {
+            this.quotas.put(projectId, messagesPerMinute);
+            return this;
+        }
+
+        /**
+         * Specifies the number of requests after which a connection is closed, emulating {@code GOAWAY}.
+         *
+         * @param requestsPerConnection The number of requests per connection, or {@code 0} for no limit.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder requestsPerConnection(int requestsPerConnection) {
+            this.requestsPerConnection = requestsPerConnection;
+            return this;
+        }
+
+        /**
+         * Specifies the {@code Retry-After} delay sent with {@code UNAVAILABLE} and {@code QUOTA_EXCEEDED} errors.
+         *
+         * @param retryAfter The delay, or {@code null} for none.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        /**
+         * Specifies whether accepted messages are recorded.
+         *
+         * @param recordMessages {@code true} to record accepted messages.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder recordMessages(boolean recordMessages) {
+            this.recordMessages = recordMessages;
+            return this;
+        }
+
+        /**
+         * Specifies the port to listen on.
+         *
+         * @param port The port, or {@code 0} for an ephemeral one.
+         * @return This Builder instance for method chaining.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Starts an {@link FcmStandInServer} with the configured behaviour.
+         *
+         * @return The running server.
+         * @throws IOException If the server cannot be bound.
+         */
+        public FcmStandInServer start() throws IOException {
+            return new FcmStandInServer(this);
+        }
+    }
+}
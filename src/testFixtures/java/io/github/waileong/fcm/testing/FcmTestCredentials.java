@@ -0,0 +1,113 @@
+package io.github.waileong.fcm.testing;
+
+import io.github.waileong.fcm.config.FcmProperties;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A throwaway service account for tests, backed by a freshly generated RSA key pair.
+ * <p>
+ * The private key signs the access tokens minted by the client, and the public key lets the
+ * {@link FcmStandInServer} verify them.
+ * </p>
+ *
+ * @author Wai Leong
+ */
+public final class FcmTestCredentials {
+    private final String projectId;
+    private final String privateKeyId;
+    private final String clientEmail;
+    private final KeyPair keyPair;
+
+    private FcmTestCredentials(String projectId, KeyPair keyPair) {
+        this.projectId = projectId;
+        this.privateKeyId = "test-key-" + Integer.toHexString(keyPair.getPublic().hashCode());
+        this.clientEmail = "firebase-adminsdk@" + projectId + ".iam.gserviceaccount.com";
+        this.keyPair = keyPair;
+    }
+
+    /**
+     * Generates credentials for the given project.
+     *
+     * @param projectId The FCM project ID.
+     * @return The generated credentials.
+     */
+    public static FcmTestCredentials generate(String projectId) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return new FcmTestCredentials(projectId, generator.generateKeyPair());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("RSA is not supported by this JVM", ex);
+        }
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public String getPrivateKeyId() {
+        return privateKeyId;
+    }
+
+    public String getClientEmail() {
+        return clientEmail;
+    }
+
+    /**
+     * Gets the base64 encoded PKCS#8 private key, in the format expected by {@code fcm.credential.private-key}.
+     *
+     * @return The encoded private key.
+     */
+    public String getPrivateKey() {
+        return Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+    }
+
+    /**
+     * Gets the public key the access tokens are verified with.
+     *
+     * @return The public key.
+     */
+    public RSAPublicKey getPublicKey() {
+        return (RSAPublicKey) keyPair.getPublic();
+    }
+
+    /**
+     * Creates the matching {@link FcmProperties.Credential}.
+     *
+     * @return The credential properties.
+     */
+    public FcmProperties.Credential toCredential() {
+        FcmProperties.Credential credential = new FcmProperties.Credential();
+        credential.setProjectId(projectId);
+        credential.setPrivateKeyId(privateKeyId);
+        credential.setClientEmail(clientEmail);
+        credential.setPrivateKey(getPrivateKey());
+        credential.setJwtExpireDuration(Duration.ofHours(1));
+        return credential;
+    }
+
+    /**
+     * Creates the application properties pointing the client at the given server with these credentials, for use
+     * with {@code @DynamicPropertySource} or {@code SpringApplicationBuilder#properties}.
+     *
+     * @param server The stand-in server.
+     * @return The properties, keyed by name.
+     */
+    public Map<String, String> toProperties(FcmStandInServer server) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("fcm.connection.base-url", server.getBaseUrl());
+        properties.put("fcm.credential.project-id", projectId);
+        properties.put("fcm.credential.private-key-id", privateKeyId);
+        properties.put("fcm.credential.client-email", clientEmail);
+        properties.put("fcm.credential.private-key", getPrivateKey());
+        return properties;
+    }
+}